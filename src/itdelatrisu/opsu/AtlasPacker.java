@@ -0,0 +1,221 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs rectangles into one or more square-bounded texture atlas pages.
+ * <p>
+ * Rectangles are placed on horizontal shelves in order of decreasing height.
+ * Each rectangle is surrounded by a border (for edge extrusion, so that
+ * filtering never samples a neighbouring sprite), and each page is sized to
+ * the smallest power of two that holds its contents. This class only computes
+ * the layout and does not depend on any image or OpenGL classes.
+ */
+public class AtlasPacker {
+	/** A packed rectangle (the sprite area, excluding its border). */
+	public static class Rect {
+		/** The page index. */
+		public final int page;
+
+		/** The position within the page. */
+		public final int x, y;
+
+		/** The dimensions. */
+		public final int width, height;
+
+		/** Constructor. */
+		public Rect(int page, int x, int y, int width, int height) {
+			this.page = page;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Rect(page=%d, %d,%d %dx%d)", page, x, y, width, height);
+		}
+	}
+
+	/** The maximum page size. */
+	private final int maxSize;
+
+	/** The border size around each rectangle. */
+	private final int border;
+
+	/** Rectangle dimensions, in insertion order. */
+	private final List<int[]> sizes = new ArrayList<int[]>();
+
+	/** Packed rectangles (null until packed, or for rectangles that do not fit). */
+	private Rect[] rects;
+
+	/** Page dimensions. */
+	private final List<int[]> pages = new ArrayList<int[]>();
+
+	/**
+	 * Constructor.
+	 * @param maxSize the maximum page width and height (a power of two)
+	 * @param border the border size around each rectangle
+	 * @throws IllegalArgumentException if the sizes are invalid
+	 */
+	public AtlasPacker(int maxSize, int border) {
+		if (maxSize <= 0 || Integer.bitCount(maxSize) != 1)
+			throw new IllegalArgumentException(String.format("Page size %d is not a power of two.", maxSize));
+		if (border < 0)
+			throw new IllegalArgumentException(String.format("Invalid border size %d.", border));
+		this.maxSize = maxSize;
+		this.border = border;
+	}
+
+	/**
+	 * Adds a rectangle to be packed.
+	 * @param width the width
+	 * @param height the height
+	 * @return the rectangle ID
+	 * @throws IllegalArgumentException if the dimensions are not positive
+	 * @throws IllegalStateException if already packed
+	 */
+	public int add(int width, int height) {
+		if (rects != null)
+			throw new IllegalStateException("Rectangles have already been packed.");
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException(String.format("Invalid rectangle size %dx%d.", width, height));
+		sizes.add(new int[] { width, height });
+		return sizes.size() - 1;
+	}
+
+	/**
+	 * Packs all added rectangles. Rectangles larger than a page are skipped.
+	 */
+	public void pack() {
+		if (rects != null)
+			return;
+
+		// sort by decreasing height, then decreasing width (stable for equal sizes)
+		Integer[] order = new Integer[sizes.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int[] sa = sizes.get(a), sb = sizes.get(b);
+				if (sa[1] != sb[1])
+					return Integer.compare(sb[1], sa[1]);
+				if (sa[0] != sb[0])
+					return Integer.compare(sb[0], sa[0]);
+				return Integer.compare(a, b);
+			}
+		});
+
+		rects = new Rect[sizes.size()];
+		int page = -1, x = 0, y = 0, shelfHeight = 0, usedWidth = 0, usedHeight = 0;
+		for (int id : order) {
+			int[] size = sizes.get(id);
+			int w = size[0] + border * 2, h = size[1] + border * 2;
+			if (w > maxSize || h > maxSize)
+				continue;
+
+			// start a new shelf or page if needed
+			if (page >= 0 && x + w > maxSize) {
+				y += shelfHeight;
+				x = 0;
+				shelfHeight = 0;
+			}
+			if (page < 0 || y + h > maxSize) {
+				if (page >= 0)
+					addPage(usedWidth, usedHeight);
+				page++;
+				x = y = shelfHeight = usedWidth = usedHeight = 0;
+			}
+
+			rects[id] = new Rect(page, x + border, y + border, size[0], size[1]);
+			x += w;
+			shelfHeight = Math.max(shelfHeight, h);
+			usedWidth = Math.max(usedWidth, x);
+			usedHeight = Math.max(usedHeight, y + h);
+		}
+		if (page >= 0)
+			addPage(usedWidth, usedHeight);
+	}
+
+	/**
+	 * Records the dimensions of a finished page.
+	 * @param usedWidth the width of the page contents
+	 * @param usedHeight the height of the page contents
+	 */
+	private void addPage(int usedWidth, int usedHeight) {
+		pages.add(new int[] { get2Fold(usedWidth), get2Fold(usedHeight) });
+	}
+
+	/**
+	 * Returns the packed rectangle for an ID.
+	 * @param id the rectangle ID (from {@link #add(int, int)})
+	 * @return the rectangle, or null if it did not fit on a page
+	 * @throws IllegalStateException if not yet packed
+	 */
+	public Rect getRect(int id) {
+		if (rects == null)
+			throw new IllegalStateException("Rectangles have not been packed.");
+		return rects[id];
+	}
+
+	/**
+	 * Returns the number of rectangles added.
+	 */
+	public int size() { return sizes.size(); }
+
+	/**
+	 * Returns the number of pages.
+	 */
+	public int getPageCount() { return pages.size(); }
+
+	/**
+	 * Returns the width of a page (a power of two).
+	 * @param page the page index
+	 */
+	public int getPageWidth(int page) { return pages.get(page)[0]; }
+
+	/**
+	 * Returns the height of a page (a power of two).
+	 * @param page the page index
+	 */
+	public int getPageHeight(int page) { return pages.get(page)[1]; }
+
+	/**
+	 * Returns the border size around each rectangle.
+	 */
+	public int getBorder() { return border; }
+
+	/**
+	 * Returns the smallest power of two greater than or equal to a value.
+	 * @param n the value
+	 */
+	private static int get2Fold(int n) {
+		int ret = 2;
+		while (ret < n)
+			ret *= 2;
+		return ret;
+	}
+}
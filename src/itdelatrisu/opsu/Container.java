@@ -30,6 +30,7 @@ import itdelatrisu.opsu.downloads.Updater;
 import itdelatrisu.opsu.options.Options;
 import itdelatrisu.opsu.render.CurveRenderState;
 import itdelatrisu.opsu.render.LegacyCurveRenderState;
+import itdelatrisu.opsu.replay.ReplayWriter;
 import itdelatrisu.opsu.ui.UI;
 
 import org.lwjgl.opengl.Display;
@@ -182,6 +183,9 @@ public class Container extends AppGameContainer {
 		CurveRenderState.shutdown();
 		LegacyCurveRenderState.shutdown();
 
+		// finish writing any queued replays
+		ReplayWriter.shutdown();
+
 		// destroy watch service
 		if (!Options.isWatchServiceEnabled())
 			BeatmapWatchService.destroy();
@@ -0,0 +1,140 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import itdelatrisu.opsu.beatmap.BeatmapWatchService;
+import itdelatrisu.opsu.beatmap.BeatmapWatchService.BeatmapWatchServiceListener;
+import itdelatrisu.opsu.beatmap.LRUCache;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent.Kind;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * Cached, case-insensitive file name index for image directories.
+ * <p>
+ * Each directory is listed once, and all file lookups in it are served from
+ * the listing instead of probing the file system for every candidate name.
+ * Indexes of beatmap directories are invalidated by {@link BeatmapWatchService}
+ * events; all indexes are cleared when the skin is (re)loaded.
+ */
+public class DirectoryIndex {
+	/** Maximum number of directory indexes to keep. */
+	private static final int MAX_DIRECTORIES = 64;
+
+	/** Directory indexes (lower-case file name to file). */
+	private static final Map<File, Map<String, File>> indexes =
+		Collections.synchronizedMap(new LRUCache<File, Map<String, File>>(MAX_DIRECTORIES));
+
+	/** Results of default resource location lookups. */
+	private static final Map<String, Boolean> resources =
+		Collections.synchronizedMap(new HashMap<String, Boolean>());
+
+	/** Watch service listener that invalidates changed directories. */
+	private static final BeatmapWatchServiceListener listener = new BeatmapWatchServiceListener() {
+		@Override
+		public void eventReceived(Kind<?> kind, Path child) {
+			if (kind == StandardWatchEventKinds.ENTRY_MODIFY)
+				return;
+			File file = child.toFile().getAbsoluteFile();
+			indexes.remove(file);
+			indexes.remove(file.getParentFile());
+		}
+	};
+
+	// This class should not be instantiated.
+	private DirectoryIndex() {}
+
+	/**
+	 * Clears all indexes, and starts listening for beatmap directory changes.
+	 */
+	public static void init() {
+		clear();
+		BeatmapWatchService.removeListener(listener);
+		BeatmapWatchService.addListener(listener);
+	}
+
+	/**
+	 * Clears all indexes and cached resource lookups.
+	 */
+	public static void clear() {
+		indexes.clear();
+		resources.clear();
+	}
+
+	/**
+	 * Invalidates the index of a directory.
+	 * @param dir the directory
+	 */
+	public static void invalidate(File dir) { indexes.remove(dir.getAbsoluteFile()); }
+
+	/**
+	 * Returns the file with the given name in a directory, ignoring case.
+	 * @param dir the directory
+	 * @param name the file name
+	 * @return the file, or null if the directory contains no such file
+	 */
+	public static File getFile(File dir, String name) {
+		File file = getIndex(dir).get(name.toLowerCase(Locale.ENGLISH));
+		return (file != null && file.isFile()) ? file : null;
+	}
+
+	/**
+	 * Returns whether a resource exists in the default resource locations.
+	 * @param name the resource name
+	 * @see ResourceLoader#resourceExists(String)
+	 */
+	public static boolean resourceExists(String name) {
+		Boolean exists = resources.get(name);
+		if (exists == null) {
+			exists = ResourceLoader.resourceExists(name);
+			resources.put(name, exists);
+		}
+		return exists;
+	}
+
+	/**
+	 * Returns the index of a directory, listing it if not already indexed.
+	 * @param dir the directory
+	 */
+	private static Map<String, File> getIndex(File dir) {
+		File key = dir.getAbsoluteFile();
+		Map<String, File> index = indexes.get(key);
+		if (index == null) {
+			index = new HashMap<String, File>();
+			File[] files = key.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					String name = file.getName().toLowerCase(Locale.ENGLISH);
+					if (!index.containsKey(name))
+						index.put(name, file);
+				}
+			}
+			indexes.put(key, index);
+		}
+		return index;
+	}
+}
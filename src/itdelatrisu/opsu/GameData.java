@@ -23,14 +23,13 @@ import itdelatrisu.opsu.audio.MusicController;
 import itdelatrisu.opsu.audio.SoundController;
 import itdelatrisu.opsu.audio.SoundEffect;
 import itdelatrisu.opsu.beatmap.Beatmap;
-import itdelatrisu.opsu.beatmap.Health;
 import itdelatrisu.opsu.beatmap.HitObject;
 import itdelatrisu.opsu.downloads.Updater;
 import itdelatrisu.opsu.objects.curves.Curve;
 import itdelatrisu.opsu.options.Options;
 import itdelatrisu.opsu.replay.LifeFrame;
 import itdelatrisu.opsu.replay.Replay;
-import itdelatrisu.opsu.replay.ReplayFrame;
+import itdelatrisu.opsu.replay.ReplayFrames;
 import itdelatrisu.opsu.ui.Colors;
 import itdelatrisu.opsu.ui.Fonts;
 import itdelatrisu.opsu.ui.UI;
@@ -54,7 +53,7 @@ import org.newdawn.slick.Image;
 /**
  * Holds game data and renders all related elements.
  */
-public class GameData {
+public class GameData extends GameScore {
 	/** Time, in milliseconds, for a hit result to remain existent. */
 	public static final int HITRESULT_TIME = 833;
 
@@ -167,30 +166,12 @@ public class GameData {
 	/** Hit result-related images (indexed by HIT_* constants to HIT_MAX). */
 	private Image[] hitResults;
 
-	/** Counts of each hit result so far (indexed by HIT_* constants to HIT_MAX). */
-	private int[] hitResultCount;
-
-	/** Total objects including slider hits/ticks (for determining Full Combo status). */
-	private int fullObjectCount;
-
-	/** The current combo streak. */
-	private int combo;
-
-	/** The max combo streak obtained. */
-	private int comboMax;
+	/** Color filter used to draw images with alpha (reused to avoid per-frame allocations). */
+	private final Color alphaFilter = new Color(1f, 1f, 1f, 1f);
 
 	/** The current combo pop timer, in milliseconds. */
 	private int comboPopTime;
 
-	/**
-	 * Hit result types accumulated this streak (bitmask), for Katu/Geki status.
-	 * <ul>
-	 * <li>&1: 100
-	 * <li>&2: 50/Miss
-	 * </ul>
-	 */
-	private byte comboEnd;
-
 	/** Combo burst images. */
 	private Image[] comboBurstImages;
 
@@ -306,8 +287,28 @@ public class GameData {
 		}
 	}
 
-	/** Current game score. */
-	private long score;
+	/**
+	 * Snapshot of the scoring state, used to quickly seek backwards in replays.
+	 * Display-only state (hit result animations and the hit error bar) is not saved.
+	 */
+	public static class State {
+		/** Game score. */
+		private long score;
+
+		/** Health values. */
+		private float health, healthUncapped;
+
+		/** Hit result counts. */
+		private int[] hitResultCount;
+
+		/** Number of recorded hit errors. */
+		private int hitErrorCount;
+
+		/** Combo state. */
+		private int fullObjectCount, combo, comboMax;
+		private byte comboEnd;
+		private int comboBurstIndex;
+	}
 
 	/** Displayed game score (for animation, slightly behind score). */
 	private long scoreDisplay;
@@ -315,12 +316,6 @@ public class GameData {
 	/** Displayed game score percent (for animation, slightly behind score percent). */
 	private float scorePercentDisplay;
 
-	/** Health. */
-	private Health health = new Health();
-
-	/** The difficulty multiplier used in the score formula. */
-	private int difficultyMultiplier = 2;
-
 	/** Default text symbol images. */
 	private Image[] defaultSymbols;
 
@@ -389,12 +384,11 @@ public class GameData {
 	/**
 	 * Clears all data and re-initializes object.
 	 */
+	@Override
 	public void clear() {
-		score = 0;
+		super.clear();
 		scoreDisplay = 0;
 		scorePercentDisplay = 0f;
-		health.reset();
-		hitResultCount = new int[HIT_MAX];
 		if (hitResultList != null) {
 			for (HitObjectResult hitResult : hitResultList) {
 				if (hitResult.curve != null)
@@ -405,15 +399,57 @@ public class GameData {
 		hitErrorList = new LinkedBlockingDeque<HitErrorInfo>();
 		hitErrors = new ArrayList<Integer>();
 		performanceString = null;
-		fullObjectCount = 0;
-		combo = 0;
-		comboMax = 0;
 		comboPopTime = COMBO_POP_TIME;
-		comboEnd = 0;
 		comboBurstIndex = -1;
 		scoreData = null;
 	}
 
+	/**
+	 * Returns a snapshot of the current scoring state.
+	 * @see #restoreState(State)
+	 */
+	public State saveState() {
+		State state = new State();
+		state.score = score;
+		state.health = health.getRawHealth();
+		state.healthUncapped = health.getUncappedRawHealth();
+		state.hitResultCount = hitResultCount.clone();
+		state.hitErrorCount = hitErrors.size();
+		state.fullObjectCount = fullObjectCount;
+		state.combo = combo;
+		state.comboMax = comboMax;
+		state.comboEnd = comboEnd;
+		state.comboBurstIndex = comboBurstIndex;
+		return state;
+	}
+
+	/**
+	 * Restores a snapshot of the scoring state, and clears all hit result animations.
+	 * Hit errors recorded after the snapshot was taken are discarded.
+	 * @param state the snapshot
+	 */
+	public void restoreState(State state) {
+		score = scoreDisplay = state.score;
+		health.setHealth(state.health, state.healthUncapped);
+		hitResultCount = state.hitResultCount.clone();
+		if (hitErrors.size() > state.hitErrorCount)
+			hitErrors.subList(state.hitErrorCount, hitErrors.size()).clear();
+		for (HitObjectResult hitResult : hitResultList) {
+			if (hitResult.curve != null)
+				hitResult.curve.discardGeometry();
+		}
+		hitResultList.clear();
+		hitErrorList.clear();
+		performanceString = null;
+		fullObjectCount = state.fullObjectCount;
+		combo = state.combo;
+		comboMax = state.comboMax;
+		comboPopTime = COMBO_POP_TIME;
+		comboEnd = state.comboEnd;
+		comboBurstIndex = state.comboBurstIndex;
+		comboBurstAlpha = 0f;
+	}
+
 	/**
 	 * Loads all game score images.
 	 */
@@ -508,14 +544,46 @@ public class GameData {
 		float cx = x + ((length - 1) * (digitWidth / 2));
 
 		for (int i = 0; i < length; i++) {
-			Image digit = getDefaultSymbolImage(n % 10).getScaledCopy(scale);
-			digit.setAlpha(alpha);
-			digit.drawCentered(cx, y);
+			drawScaledCentered(getDefaultSymbolImage(n % 10), cx, y, scale, alpha);
 			cx -= digitWidth;
 			n /= 10;
 		}
 	}
 
+	/**
+	 * Returns the width of an image scaled by {@link Image#getScaledCopy(float)}.
+	 * @param img the image
+	 * @param scale the scale to apply
+	 */
+	private static int scaledWidth(Image img, float scale) { return (int) (img.getWidth() * scale); }
+
+	/**
+	 * Draws a scaled image without creating a scaled copy.
+	 * @param img the image to draw
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param scale the scale to apply
+	 * @param alpha the alpha level
+	 */
+	private void drawScaled(Image img, float x, float y, float scale, float alpha) {
+		alphaFilter.a = alpha;
+		img.draw(x, y, scaledWidth(img, scale), (int) (img.getHeight() * scale), alphaFilter);
+	}
+
+	/**
+	 * Draws a scaled image centered at a location without creating a scaled copy.
+	 * @param img the image to draw
+	 * @param x the center x coordinate
+	 * @param y the center y coordinate
+	 * @param scale the scale to apply
+	 * @param alpha the alpha level
+	 */
+	private void drawScaledCentered(Image img, float x, float y, float scale, float alpha) {
+		int width = scaledWidth(img, scale), height = (int) (img.getHeight() * scale);
+		alphaFilter.a = alpha;
+		img.draw(x - (width / 2), y - (height / 2), width, height, alphaFilter);
+	}
+
 	/**
 	 * Draws a string of scoreSymbols.
 	 * @param str the string to draw
@@ -531,22 +599,14 @@ public class GameData {
 		if (rightAlign) {
 			for (int i = c.length - 1; i >= 0; i--) {
 				Image digit = getScoreSymbolImage(c[i]);
-				if (scale != 1.0f)
-					digit = digit.getScaledCopy(scale);
-				cx -= digit.getWidth();
-				digit.setAlpha(alpha);
-				digit.draw(cx, y);
-				digit.setAlpha(1f);
+				cx -= scaledWidth(digit, scale);
+				drawScaled(digit, cx, y, scale, alpha);
 			}
 		} else {
 			for (int i = 0; i < c.length; i++) {
 				Image digit = getScoreSymbolImage(c[i]);
-				if (scale != 1.0f)
-					digit = digit.getScaledCopy(scale);
-				digit.setAlpha(alpha);
-				digit.draw(cx, y);
-				digit.setAlpha(1f);
-				cx += digit.getWidth();
+				drawScaled(digit, cx, y, scale, alpha);
+				cx += scaledWidth(digit, scale);
 			}
 		}
 	}
@@ -567,21 +627,13 @@ public class GameData {
 		if (rightAlign) {
 			for (int i = c.length - 1; i >= 0; i--) {
 				Image digit = getScoreSymbolImage(c[i]);
-				if (scale != 1.0f)
-					digit = digit.getScaledCopy(scale);
 				cx -= fixedsize;
-				digit.setAlpha(alpha);
-				digit.draw(cx + (fixedsize - digit.getWidth()) / 2, y);
-				digit.setAlpha(1f);
+				drawScaled(digit, cx + (fixedsize - scaledWidth(digit, scale)) / 2, y, scale, alpha);
 			}
 		} else {
 			for (int i = 0; i < c.length; i++) {
 				Image digit = getScoreSymbolImage(c[i]);
-				if (scale != 1.0f)
-					digit = digit.getScaledCopy(scale);
-				digit.setAlpha(alpha);
-				digit.draw(cx + (fixedsize - digit.getWidth()) / 2, y);
-				digit.setAlpha(1f);
+				drawScaled(digit, cx + (fixedsize - scaledWidth(digit, scale)) / 2, y, scale, alpha);
 				cx += fixedsize;
 			}
 		}
@@ -837,10 +889,9 @@ public class GameData {
 					float tp = AnimationEquation.OUT_CUBIC.calc(t);
 					float scale = 2f - tp;
 					float alpha = tp;
-					Image img = hitResults[rankDrawOrder[i]].getScaledCopy(rankResultScale * scale);
-					img.setAlpha(alpha);
-					img.drawCentered(
-						(resultHitInitialX + offsetX) * uiScale, (resultHitInitialY + offsetY) * uiScale
+					drawScaledCentered(hitResults[rankDrawOrder[i]],
+						(resultHitInitialX + offsetX) * uiScale, (resultHitInitialY + offsetY) * uiScale,
+						rankResultScale * scale, alpha
 					);
 				}
 				if (time >= startTime + offsetTime) {
@@ -1058,9 +1109,7 @@ public class GameData {
 						float fadeProgress = AnimationEquation.OUT_CUBIC.calc(
 							(float) Utils.clamp((trackPosition - hitResult.time) - HITCIRCLE_FADE_TIME, 0, HITCIRCLE_TEXT_FADE_TIME) / HITCIRCLE_TEXT_FADE_TIME);
 						float alpha = 1f - fadeProgress;
-						Image scaledHitResult = hitResults[hitResult.result].getScaledCopy(scale);
-						scaledHitResult.setAlpha(alpha);
-						scaledHitResult.drawCentered(hitResult.x, hitResult.y);
+						drawScaledCentered(hitResults[hitResult.result], hitResult.x, hitResult.y, scale, alpha);
 					}
 
 					hitResult.alpha = 1 - ((float) (trackPosition - hitResult.time) / HITRESULT_FADE_TIME);
@@ -1159,47 +1208,6 @@ public class GameData {
 		}
 	}
 
-	/**
-	 * Returns the current health percentage.
-	 */
-	public float getHealthPercent() { return health.getHealth(); }
-
-	/**
-	 * Sets the health modifiers.
-	 * @param hpDrainRate the HP drain rate
-	 * @param hpMultiplierNormal the normal HP multiplier
-	 * @param hpMultiplierComboEnd the combo-end HP multiplier
-	 */
-	public void setHealthModifiers(float hpDrainRate, float hpMultiplierNormal, float hpMultiplierComboEnd) {
-		health.setModifiers(hpDrainRate, hpMultiplierNormal, hpMultiplierComboEnd);
-	}
-
-	/**
-	 * Returns false if health is zero.
-	 * If "No Fail" or "Auto" mods are active, this will always return true.
-	 */
-	public boolean isAlive() {
-		return (health.getHealth() > 0f || GameMod.NO_FAIL.isActive() || GameMod.AUTO.isActive() ||
-		        GameMod.RELAX.isActive() || GameMod.AUTOPILOT.isActive());
-	}
-
-	/**
-	 * Changes health by a raw value.
-	 * @param value the health value
-	 */
-	public void changeHealth(float value) { health.changeHealth(value); }
-
-	/**
-	 * Returns the raw score.
-	 */
-	public long getScore() { return score; }
-
-	/**
-	 * Changes score by a raw value (not affected by other modifiers).
-	 * @param value the score value
-	 */
-	public void changeScore(int value) { score += value; }
-
 	/**
 	 * Returns the raw score percentage.
 	 * @param hit300 the number of 300s
@@ -1360,19 +1368,13 @@ public class GameData {
 		}
 	}
 
-	/**
-	 * Returns the current combo streak.
-	 */
-	public int getComboStreak() { return combo; }
-
 	/**
 	 * Increases the combo streak by one.
 	 */
-	private void incrementComboStreak() {
-		combo++;
+	@Override
+	protected void incrementComboStreak() {
+		super.incrementComboStreak();
 		comboPopTime = 0;
-		if (combo > comboMax)
-			comboMax = combo;
 
 		// combo bursts (at 30, 60, 100+50x)
 		if (Options.isComboBurstEnabled() &&
@@ -1396,14 +1398,13 @@ public class GameData {
 	/**
 	 * Resets the combo streak to zero.
 	 */
-	private void resetComboStreak() {
-		if (combo > 20 && !(GameMod.RELAX.isActive() || GameMod.AUTOPILOT.isActive())) {
+	@Override
+	protected void resetComboStreak() {
+		if (combo > 20 && !(GameMod.RELAX.isActive(mods) || GameMod.AUTOPILOT.isActive(mods))) {
 			if (!Options.isGameplaySoundDisabled())
 				SoundController.playSound(SoundEffect.COMBOBREAK);
 		}
-		combo = 0;
-		if (GameMod.SUDDEN_DEATH.isActive())
-			health.setHealth(0f);
+		super.resetComboStreak();
 	}
 
 	/**
@@ -1441,38 +1442,20 @@ public class GameData {
 	 * @param repeat the current repeat number
 	 */
 	public void sendSliderTickResult(int time, int result, float x, float y, HitObject hitObject, int repeat) {
-		int hitValue = 0;
-		switch (result) {
-		case HIT_SLIDER30:
-			hitValue = 30;
+		if (result == HIT_SLIDER30)
 			SoundController.playHitSound(
 					hitObject.getEdgeHitSoundType(repeat),
 					hitObject.getSampleSet(repeat),
 					hitObject.getAdditionSampleSet(repeat));
-			break;
-		case HIT_SLIDER10:
-			hitValue = 10;
+		else if (result == HIT_SLIDER10)
 			SoundController.playHitSound(HitSound.SLIDERTICK);
-			break;
-		case HIT_MISS:
-			resetComboStreak();
-			break;
-		default:
-			return;
-		}
-
-		if (hitValue > 0) {
-			// calculate score and increment combo streak
-			score += hitValue;
-			incrementComboStreak();
-			health.changeHealthForHit(result);
 
+		if (handleSliderTickResult(result)) {
 			if (!Options.isPerfectHitBurstEnabled())
 				;  // hide perfect hit results
 			else
 				hitResultList.add(new HitObjectResult(time, result, x, y, null, HitObjectType.SLIDERTICK, null, false, false));
 		}
-		fullObjectCount++;
 	}
 
 	/**
@@ -1480,153 +1463,8 @@ public class GameData {
 	 * @param result the hit result (HIT_* constants)
 	 */
 	public void sendSpinnerSpinResult(int result) {
-		int hitValue = 0;
-		switch (result) {
-		case HIT_SPINNERSPIN:
-			hitValue = 100;
-			if (!Options.isGameplaySoundDisabled())
-				SoundController.playSound(SoundEffect.SPINNERSPIN);
-			break;
-		case HIT_SPINNERBONUS:
-			hitValue = 1100;
-			if (!Options.isGameplaySoundDisabled())
-				SoundController.playSound(SoundEffect.SPINNERBONUS);
-			break;
-		default:
-			return;
-		}
-
-		score += hitValue;
-		health.changeHealthForHit(result);
-	}
-
-	/**
-	 * Returns the score for a hit based on the following score formula:
-	 * <p>
-	 * Score = Hit Value + Hit Value * (Combo * Difficulty * Mod) / 25
-	 * <ul>
-	 * <li><strong>Hit Value:</strong> hit result (50, 100, 300), slider ticks, spinner bonus
-	 * <li><strong>Combo:</strong> combo before this hit - 1 (minimum 0)
-	 * <li><strong>Difficulty:</strong> the difficulty setting (see {@link #calculateDifficultyMultiplier(float, float, float)})
-	 * <li><strong>Mod:</strong> mod multipliers
-	 * </ul>
-	 * @param hitValue the hit value
-	 * @param hitObject the hit object
-	 * @return the score value
-	 * @see <a href="https://osu.ppy.sh/wiki/Score">https://osu.ppy.sh/wiki/Score</a>
-	 */
-	private int getScoreForHit(int hitValue, HitObject hitObject) {
-		int comboMultiplier = Math.max(combo - 1, 0);
-		if (hitObject.isSlider())
-			comboMultiplier++;
-		return (hitValue + (int)(hitValue * (comboMultiplier * difficultyMultiplier * GameMod.getScoreMultiplier()) / 25));
-	}
-
-	/**
-	 * Computes and stores the difficulty multiplier used in the score formula.
-	 * @param drainRate the raw HP drain rate value
-	 * @param circleSize the raw circle size value
-	 * @param overallDifficulty the raw overall difficulty value
-	 * @see <a href="https://osu.ppy.sh/wiki/Score#How_to_calculate_the_Difficulty_multiplier">https://osu.ppy.sh/wiki/Score#How_to_calculate_the_Difficulty_multiplier</a>
-	 */
-	public void calculateDifficultyMultiplier(float drainRate, float circleSize, float overallDifficulty) {
-		// TODO: find the actual formula (osu!wiki is wrong)
-		// seems to be based on hit object density? (total objects / time)
-		// 924 3x1/4 beat notes 0.14stars
-		// 924 3x1beat 0.28stars
-		// 912 3x1beat with 1 extra note 10 sec away 0.29stars
-
-		float sum = drainRate + circleSize + overallDifficulty;  // typically 2~27
-		if (sum <= 5f)
-			difficultyMultiplier = 2;
-		else if (sum <= 12f)
-			difficultyMultiplier = 3;
-		else if (sum <= 17f)
-			difficultyMultiplier = 4;
-		else if (sum <= 24f)
-			difficultyMultiplier = 5;
-		else //if (sum <= 30f)
-			difficultyMultiplier = 6;
-
-		//float multiplier = ((circleSize + overallDifficulty + drainRate) / 6) + 1.5f;
-		//difficultyMultiplier = (int) multiplier;
-	}
-
-	/**
-	 * Handles a hit result and performs all associated calculations.
-	 * @param time the object start time
-	 * @param result the base hit result (HIT_* constants)
-	 * @param x the x coordinate
-	 * @param y the y coordinate
-	 * @param color the combo color
-	 * @param end true if this is the last hit object in the combo
-	 * @param hitObject the hit object
-	 * @param hitResultType the type of hit object for the result
-	 * @param repeat the current repeat number (for sliders, or 0 otherwise)
-	 * @param noIncrementCombo if the combo should not be incremented by this result
-	 * @return the actual hit result (HIT_* constants)
-	 */
-	private int handleHitResult(int time, int result, float x, float y, Color color, boolean end,
-			HitObject hitObject, HitObjectType hitResultType, int repeat, boolean noIncrementCombo) {
-		// update health, score, and combo streak based on hit result
-		int hitValue = 0;
-		switch (result) {
-		case HIT_300:
-			hitValue = 300;
-			break;
-		case HIT_100:
-			hitValue = 100;
-			comboEnd |= 1;
-			break;
-		case HIT_50:
-			hitValue = 50;
-			comboEnd |= 2;
-			break;
-		case HIT_MISS:
-			hitValue = 0;
-			comboEnd |= 2;
-			resetComboStreak();
-			break;
-		default:
-			return HIT_MISS;
-		}
-		if (hitValue > 0) {
-			SoundController.playHitSound(
-					hitObject.getEdgeHitSoundType(repeat),
-					hitObject.getSampleSet(repeat),
-					hitObject.getAdditionSampleSet(repeat));
-
-			// calculate score and increment combo streak
-			changeScore(getScoreForHit(hitValue, hitObject));
-			if (!noIncrementCombo)
-				incrementComboStreak();
-		}
-		health.changeHealthForHit(result);
-		hitResultCount[result]++;
-		fullObjectCount++;
-
-		// last element in combo: check for Geki/Katu
-		if (end) {
-			if (comboEnd == 0) {
-				result = HIT_300G;
-				health.changeHealthForHit(HIT_300G);
-				hitResultCount[result]++;
-			} else if ((comboEnd & 2) == 0) {
-				if (result == HIT_100) {
-					result = HIT_100K;
-					health.changeHealthForHit(HIT_100K);
-					hitResultCount[result]++;
-				} else if (result == HIT_300) {
-					result = HIT_300K;
-					health.changeHealthForHit(HIT_300K);
-					hitResultCount[result]++;
-				}
-			} else if (hitValue > 0)
-				health.changeHealthForHit(HIT_MU);
-			comboEnd = 0;
-		}
-
-		return result;
+		if (handleSpinnerSpinResult(result) && !Options.isGameplaySoundDisabled())
+			SoundController.playSound((result == HIT_SPINNERSPIN) ? SoundEffect.SPINNERSPIN : SoundEffect.SPINNERBONUS);
 	}
 
 	/**
@@ -1649,9 +1487,14 @@ public class GameData {
 		boolean end, HitObject hitObject, HitObjectType hitResultType,
 		boolean expand, int repeat, Curve curve, boolean sliderHeldToEnd
 	) {
-		int hitResult = handleHitResult(time, result, x, y, color, end, hitObject, hitResultType, repeat, (curve != null && !sliderHeldToEnd));
+		if (result == HIT_300 || result == HIT_100 || result == HIT_50)
+			SoundController.playHitSound(
+					hitObject.getEdgeHitSoundType(repeat),
+					hitObject.getSampleSet(repeat),
+					hitObject.getAdditionSampleSet(repeat));
+		int hitResult = handleHitResult(result, end, hitObject, (curve != null && !sliderHeldToEnd));
 
-		if (hitResult == HIT_MISS && (GameMod.RELAX.isActive() || GameMod.AUTOPILOT.isActive()))
+		if (hitResult == HIT_MISS && (GameMod.RELAX.isActive(mods) || GameMod.AUTOPILOT.isActive(mods)))
 			return;  // "relax" and "autopilot" mods: hide misses
 
 		boolean hideResult = (hitResult == HIT_300 || hitResult == HIT_300G || hitResult == HIT_300K) && !Options.isPerfectHitBurstEnabled();
@@ -1680,23 +1523,10 @@ public class GameData {
 	 * @see #getScoreData(Beatmap)
 	 */
 	public ScoreData getCurrentScoreData(Beatmap beatmap, boolean slidingScore) {
-		ScoreData sd = new ScoreData();
+		ScoreData sd = createScoreData(beatmap);
 		sd.timestamp = System.currentTimeMillis() / 1000L;
-		sd.MID = beatmap.beatmapID;
-		sd.MSID = beatmap.beatmapSetID;
-		sd.title = beatmap.title;
-		sd.artist = beatmap.artist;
-		sd.creator = beatmap.creator;
-		sd.version = beatmap.version;
-		sd.hit300 = hitResultCount[HIT_300];
-		sd.hit100 = hitResultCount[HIT_100];
-		sd.hit50 = hitResultCount[HIT_50];
-		sd.geki = hitResultCount[HIT_300G];
-		sd.katu = hitResultCount[HIT_300K] + hitResultCount[HIT_100K];
-		sd.miss = hitResultCount[HIT_MISS];
-		sd.score = slidingScore ? scoreDisplay : score;
-		sd.combo = comboMax;
-		sd.perfect = (comboMax == fullObjectCount);
+		if (slidingScore)
+			sd.score = scoreDisplay;
 		sd.mods = GameMod.getModState();
 		sd.replayString = (replay == null) ? null : replay.getReplayFilename();
 		sd.playerName = GameMod.AUTO.isActive() ?
@@ -1712,7 +1542,7 @@ public class GameData {
 	 * @param beatmap the associated beatmap
 	 * @return the Replay object, or null if none exists and frames is null
 	 */
-	public Replay getReplay(ReplayFrame[] frames, LifeFrame[] lifeFrames, Beatmap beatmap) {
+	public Replay getReplay(ReplayFrames frames, LifeFrame[] lifeFrames, Beatmap beatmap) {
 		if (replay != null && frames == null)
 			return replay;
 
@@ -22,13 +22,20 @@ import itdelatrisu.opsu.options.Options;
 import itdelatrisu.opsu.ui.Fonts;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.newdawn.slick.Animation;
 import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
-import org.newdawn.slick.util.ResourceLoader;
+import org.newdawn.slick.opengl.ImageData;
 
 /**
  * Game images.
@@ -415,6 +422,110 @@ public enum GameImage {
 	/** The beatmap skin image array (optional, temporary). */
 	private Image[] skinImages;
 
+	/** The pending default image decode, if any. */
+	private Future<DecodedImages> pendingDecode;
+
+	/** Small images drawn many times per frame, packed into shared texture atlases. */
+	private static final EnumSet<GameImage> ATLAS_IMAGES = EnumSet.range(HIT_MISS, HIT_SLIDER30);
+	static {
+		ATLAS_IMAGES.addAll(EnumSet.range(DEFAULT_0, SCORE_X));
+	}
+
+	/** Texture atlas page size limit. */
+	private static final int ATLAS_PAGE_SIZE = 2048;
+
+	/** Border around each atlas sprite (filled with its edge pixels). */
+	private static final int ATLAS_BORDER = 1;
+
+	/** Maximum width and height of an image packed into a texture atlas. */
+	private static final int MAX_ATLAS_SPRITE_SIZE = 512;
+
+	/** Texture atlas pages holding beatmap skin images. */
+	private static List<Image> skinAtlasPages;
+
+	/** Number of beatmap skin images referencing {@link #skinAtlasPages}. */
+	private static int skinAtlasRefs = 0;
+
+	/** Whether the beatmap skin image is a texture atlas sub-image. */
+	private boolean isSkinImagePacked = false;
+
+	/** Maximum number of decoded (or decoding) images waiting to be uploaded. */
+	private static final int MAX_PENDING_UPLOADS = ImageDecoder.getThreadCount() * 4;
+
+	/** Preloaded images waiting to be decoded. */
+	private static final ArrayDeque<GameImage> decodeQueue = new ArrayDeque<GameImage>();
+
+	/** Images being decoded, in upload order. */
+	private static final ArrayDeque<GameImage> uploadQueue = new ArrayDeque<GameImage>();
+
+	/** Decoded image data for a resource, waiting to be uploaded. */
+	private static class DecodedImages {
+		/** The decoded images (one, unless this is an image array). */
+		private final List<ImageData> frames = new ArrayList<ImageData>();
+
+		/** Error messages, to be reported on the render thread. */
+		private final List<String> errors = new ArrayList<String>();
+
+		/** Whether this is an image array. */
+		private final boolean isArray;
+
+		/** Whether the images are HD (and should be scaled by half). */
+		private final boolean isHD;
+
+		/** Whether the images are from the game skin. */
+		private boolean isSkinned = false;
+
+		/** The texture atlas sub-image holding the decoded image, if packed. */
+		private Image packed;
+
+		/**
+		 * Constructor.
+		 * @param isArray whether this is an image array
+		 * @param isHD whether the images are HD
+		 */
+		public DecodedImages(boolean isArray, boolean isHD) {
+			this.isArray = isArray;
+			this.isHD = isHD;
+		}
+
+		/** Returns whether no images were decoded. */
+		public boolean isEmpty() { return frames.isEmpty(); }
+
+		/** Returns whether the image is small enough to be packed into a texture atlas. */
+		public boolean isAtlasCandidate() {
+			if (isArray || frames.size() != 1)
+				return false;
+			ImageData data = frames.get(0);
+			return (data.getDepth() == 24 || data.getDepth() == 32) &&
+			       data.getWidth() <= MAX_ATLAS_SPRITE_SIZE && data.getHeight() <= MAX_ATLAS_SPRITE_SIZE;
+		}
+
+		/** Reports all errors. */
+		public void reportErrors() {
+			for (String error : errors)
+				ErrorHandler.error(error, null, false);
+			errors.clear();
+		}
+
+		/**
+		 * Creates textures from the decoded images. Must be called from the render thread.
+		 * @return the images
+		 */
+		public Image[] upload() {
+			if (packed != null) {
+				frames.clear();
+				return new Image[] { isHD ? packed.getScaledCopy(0.5f) : packed };
+			}
+			Image[] images = new Image[frames.size()];
+			for (int i = 0; i < images.length; i++) {
+				Image img = new Image(frames.get(i));
+				images[i] = isHD ? img.getScaledCopy(0.5f) : img;
+			}
+			frames.clear();
+			return images;
+		}
+	}
+
 	/** Container dimensions. */
 	private static int containerWidth, containerHeight;
 
@@ -456,10 +567,14 @@ public enum GameImage {
 	 * This does NOT destroy images, so be careful of memory leaks!
 	 */
 	public static void clearReferences() {
+		cancelDecodes();
+		skinAtlasPages = null;
+		skinAtlasRefs = 0;
 		for (GameImage img : GameImage.values()) {
 			img.defaultImage = img.skinImage = null;
 			img.defaultImages = img.skinImages = null;
 			img.isSkinned = false;
+			img.isSkinImagePacked = false;
 		}
 	}
 
@@ -491,28 +606,26 @@ public enum GameImage {
 	 * @return the full file name, or null if no file found
 	 */
 	private static String getImageFileName(String filename, File dir, byte type, boolean dirOnly) {
-		ArrayList<String> names = new ArrayList<String>(2);
-		if ((type & IMG_PNG) != 0)
-			names.add(String.format("%s.png", filename));
-		if ((type & IMG_JPG) != 0)
-			names.add(String.format("%s.jpg", filename));
-		int size = names.size();
+		String png = ((type & IMG_PNG) != 0) ? filename + ".png" : null;
+		String jpg = ((type & IMG_JPG) != 0) ? filename + ".jpg" : null;
 
 		// look through directory
 		if (dir != null) {
-			for (int i = 0; i < size; i++) {
-				File file = new File(dir, names.get(i));
-				if (file.isFile())
-					return file.getAbsolutePath();
-			}
+			File file = null;
+			if (png != null)
+				file = DirectoryIndex.getFile(dir, png);
+			if (file == null && jpg != null)
+				file = DirectoryIndex.getFile(dir, jpg);
+			if (file != null)
+				return file.getAbsolutePath();
 		}
 
 		// look through default resource path
 		if (!dirOnly || dir == null) {
-			for (int i = 0; i < size; i++) {
-				if (ResourceLoader.resourceExists(names.get(i)))
-					return names.get(i);
-			}
+			if (png != null && DirectoryIndex.resourceExists(png))
+				return png;
+			if (jpg != null && DirectoryIndex.resourceExists(jpg))
+				return jpg;
 		}
 
 		return null;
@@ -681,33 +794,112 @@ public enum GameImage {
 	/**
 	 * Sets the default image for this resource.
 	 * If the default image has already been loaded, this will do nothing.
+	 * If the image is being decoded in the background, this waits for it.
 	 */
 	public void setDefaultImage() {
 		if (defaultImage != null || defaultImages != null || Options.getSkin() == null)
 			return;
 
-		// check for multiple images first, then single images
+		if (ATLAS_IMAGES.contains(this))
+			loadDefaultImageAtlas();
+		else
+			setDefaultImage(takeDefaultDecode());
+	}
 
-		// try to load from skin directory
-		File skinDir = Options.getSkin().getDirectory();
-		if (skinDir != null) {
-			if ((filenameFormat != null && (defaultImages = loadImageArray(skinDir)) != null) ||
-			    (defaultImage = loadImageSingle(skinDir)) != null) {
-				isSkinned = true;
-				process();
-				return;
-			}
-		}
+	/**
+	 * Returns the decoded default image(s), waiting for or removing any queued decode.
+	 * @return the decoded images
+	 */
+	private DecodedImages takeDefaultDecode() {
+		DecodedImages decoded = null;
+		if (pendingDecode != null) {
+			uploadQueue.remove(this);
+			decoded = awaitDecode(pendingDecode);
+			pendingDecode = null;
+		} else
+			decodeQueue.remove(this);
+		return (decoded != null) ? decoded : decodeDefaultImage();
+	}
 
-		// try to load default image
-		if ((filenameFormat != null && (defaultImages = loadImageArray(null)) != null) ||
-		    (defaultImage = loadImageSingle(null)) != null) {
-			isSkinned = false;
-			process();
+	/**
+	 * Sets the default image(s) from decoded image data.
+	 * @param decoded the decoded images
+	 */
+	private void setDefaultImage(DecodedImages decoded) {
+		decoded.reportErrors();
+
+		if (decoded.isEmpty()) {
+			ErrorHandler.error(String.format("Could not find default image '%s'.", filename), null, false);
 			return;
 		}
+		if (decoded.isArray)
+			defaultImages = decoded.upload();
+		else
+			defaultImage = decoded.upload()[0];
+		isSkinned = decoded.isSkinned;
+		process();
+	}
 
-		ErrorHandler.error(String.format("Could not find default image '%s'.", filename), null, false);
+	/**
+	 * Loads the default images of all atlas resources that are not yet loaded,
+	 * packing them into shared textures.
+	 */
+	private static void loadDefaultImageAtlas() {
+		List<GameImage> images = new ArrayList<GameImage>();
+		for (final GameImage img : ATLAS_IMAGES) {
+			if (img.defaultImage != null || img.defaultImages != null)
+				continue;
+			images.add(img);
+			if (img.pendingDecode == null) {
+				decodeQueue.remove(img);
+				img.pendingDecode = ImageDecoder.submit(new Callable<DecodedImages>() {
+					@Override
+					public DecodedImages call() { return img.decodeDefaultImage(); }
+				});
+			}
+		}
+		DecodedImages[] decoded = new DecodedImages[images.size()];
+		for (int i = 0; i < decoded.length; i++)
+			decoded[i] = images.get(i).takeDefaultDecode();
+		packAtlas(images, decoded);
+		for (int i = 0; i < decoded.length; i++)
+			images.get(i).setDefaultImage(decoded[i]);
+	}
+
+	/**
+	 * Packs the decoded atlas resource images into texture atlas pages, and
+	 * sets their {@code packed} sub-images. Must be called from the render thread.
+	 * @param images the resources
+	 * @param decoded the decoded images for each resource (null entries are skipped)
+	 * @return the atlas pages (empty if nothing was packed)
+	 */
+	private static List<Image> packAtlas(List<GameImage> images, DecodedImages[] decoded) {
+		AtlasPacker packer = new AtlasPacker(ATLAS_PAGE_SIZE, ATLAS_BORDER);
+		List<DecodedImages> candidates = new ArrayList<DecodedImages>();
+		for (int i = 0; i < decoded.length; i++) {
+			DecodedImages d = decoded[i];
+			if (d == null || !ATLAS_IMAGES.contains(images.get(i)) || !d.isAtlasCandidate())
+				continue;
+			ImageData data = d.frames.get(0);
+			packer.add(data.getWidth(), data.getHeight());
+			candidates.add(d);
+		}
+		if (candidates.size() < 2)
+			return new ArrayList<Image>(0);
+
+		packer.pack();
+		ImageData[] data = new ImageData[candidates.size()];
+		for (int id = 0; id < data.length; id++)
+			data[id] = candidates.get(id).frames.get(0);
+		List<Image> pages = new ArrayList<Image>(packer.getPageCount());
+		for (int page = 0; page < packer.getPageCount(); page++)
+			pages.add(new Image(ImageDecoder.composeAtlasPage(packer, page, data)));
+		for (int id = 0; id < data.length; id++) {
+			AtlasPacker.Rect rect = packer.getRect(id);
+			if (rect != null)
+				candidates.get(id).packed = pages.get(rect.page).getSubImage(rect.x, rect.y, rect.width, rect.height);
+		}
+		return pages;
 	}
 
 	/**
@@ -727,72 +919,254 @@ public enum GameImage {
 		if (Options.isBeatmapSkinIgnored())
 			return false;
 
-		// try to load multiple images
-		if ((skinImages = loadImageArray(dir)) != null) {
-			process();
-			return true;
+		return setBeatmapSkinImage(decodeImages(dir));
+	}
+
+	/**
+	 * Sets the associated beatmap skin image from decoded image data.
+	 * @param decoded the decoded images
+	 * @return true if a new skin image is loaded, false otherwise
+	 */
+	private boolean setBeatmapSkinImage(DecodedImages decoded) {
+		decoded.reportErrors();
+		if (decoded.isEmpty())
+			return false;
+		isSkinImagePacked = (decoded.packed != null);
+		if (decoded.isArray)
+			skinImages = decoded.upload();
+		else
+			skinImage = decoded.upload()[0];
+		process();
+		return true;
+	}
+
+	/**
+	 * Sets the default and beatmap skin images for all beatmap-skinnable resources.
+	 * Beatmap skin images are decoded in parallel, then uploaded in order.
+	 * @param dir the beatmap directory to search
+	 */
+	public static void setBeatmapSkinImages(final File dir) {
+		List<GameImage> images = new ArrayList<GameImage>();
+		List<Future<DecodedImages>> futures = new ArrayList<Future<DecodedImages>>();
+		for (final GameImage img : GameImage.values()) {
+			if (!img.isBeatmapSkinnable())
+				continue;
+			img.destroyBeatmapSkinImage();
+			images.add(img);
+			if (dir != null && !Options.isBeatmapSkinIgnored()) {
+				futures.add(ImageDecoder.submit(new Callable<DecodedImages>() {
+					@Override
+					public DecodedImages call() { return img.decodeImages(dir); }
+				}));
+			} else
+				futures.add(null);
+		}
+		DecodedImages[] decoded = new DecodedImages[images.size()];
+		for (int i = 0; i < decoded.length; i++) {
+			GameImage img = images.get(i);
+			img.setDefaultImage();
+			Future<DecodedImages> future = futures.get(i);
+			if (future != null) {
+				decoded[i] = awaitDecode(future);
+				if (decoded[i] == null)
+					decoded[i] = img.decodeImages(dir);
+			}
+		}
+
+		// pack small images into shared textures, then upload the rest
+		List<Image> pages = packAtlas(images, decoded);
+		int refs = 0;
+		for (int i = 0; i < decoded.length; i++) {
+			if (decoded[i] != null && images.get(i).setBeatmapSkinImage(decoded[i]) && images.get(i).isSkinImagePacked)
+				refs++;
+		}
+		if (refs > 0) {
+			skinAtlasPages = pages;
+			skinAtlasRefs = refs;
+		} else
+			destroyAtlasPages(pages);
+	}
+
+	/**
+	 * Destroys texture atlas pages.
+	 * @param pages the pages
+	 */
+	private static void destroyAtlasPages(List<Image> pages) {
+		try {
+			for (Image page : pages) {
+				if (!page.isDestroyed())
+					page.destroy();
+			}
+		} catch (SlickException e) {
+			ErrorHandler.error("Failed to destroy texture atlas.", e, true);
+		}
+	}
+
+	/**
+	 * Starts decoding the default images of all preloaded resources in the background.
+	 * Decoded images are uploaded by {@link #uploadPendingImages(int)}, or when first used.
+	 */
+	public static void preloadDefaultImages() {
+		for (GameImage img : GameImage.values()) {
+			if (img.isPreload() && img.defaultImage == null && img.defaultImages == null &&
+			    img.pendingDecode == null && !decodeQueue.contains(img))
+				decodeQueue.add(img);
 		}
+		submitDecodes();
+	}
 
-		// try to load a single image
-		if ((skinImage = loadImageSingle(dir)) != null) {
-			process();
+	/**
+	 * Uploads decoded images in the order they were queued, until the time
+	 * budget is used up. Must be called from the render thread.
+	 * @param budget the time budget, in milliseconds
+	 * @return true if no images are left to upload
+	 */
+	public static boolean uploadPendingImages(int budget) {
+		if (uploadQueue.isEmpty() && decodeQueue.isEmpty())
 			return true;
+
+		long deadline = System.nanoTime() + budget * 1000000L;
+		GameImage img;
+		while ((img = uploadQueue.peek()) != null && img.pendingDecode.isDone()) {
+			img.setDefaultImage();
+			submitDecodes();
+			if (System.nanoTime() >= deadline)
+				break;
 		}
+		submitDecodes();
+		return uploadQueue.isEmpty() && decodeQueue.isEmpty();
+	}
 
-		return false;
+	/**
+	 * Submits queued decodes until the upload queue is full.
+	 */
+	private static void submitDecodes() {
+		while (uploadQueue.size() < MAX_PENDING_UPLOADS && !decodeQueue.isEmpty()) {
+			final GameImage img = decodeQueue.poll();
+			img.pendingDecode = ImageDecoder.submit(new Callable<DecodedImages>() {
+				@Override
+				public DecodedImages call() { return img.decodeDefaultImage(); }
+			});
+			uploadQueue.add(img);
+		}
+	}
+
+	/**
+	 * Cancels all queued decodes.
+	 */
+	private static void cancelDecodes() {
+		for (GameImage img : uploadQueue) {
+			img.pendingDecode.cancel(false);
+			img.pendingDecode = null;
+		}
+		uploadQueue.clear();
+		decodeQueue.clear();
 	}
 
 	/**
-	 * Attempts to load multiple Images from the GameImage.
+	 * Waits for a decoding task.
+	 * @param future the task's future
+	 * @return the decoded images, or null if the task failed
+	 */
+	private static DecodedImages awaitDecode(Future<DecodedImages> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | CancellationException e) {}
+		return null;
+	}
+
+	/**
+	 * Decodes the default image(s), first looking in the skin directory.
+	 * Does not require an OpenGL context.
+	 * @return the decoded images (empty if not found)
+	 */
+	private DecodedImages decodeDefaultImage() {
+		// try to load from skin directory
+		List<String> errors = new ArrayList<String>();
+		File skinDir = Options.getSkin().getDirectory();
+		if (skinDir != null) {
+			DecodedImages decoded = decodeImages(skinDir);
+			if (!decoded.isEmpty()) {
+				decoded.isSkinned = true;
+				return decoded;
+			}
+			errors.addAll(decoded.errors);
+		}
+
+		// try to load default image
+		DecodedImages decoded = decodeImages(null);
+		decoded.errors.addAll(0, errors);
+		return decoded;
+	}
+
+	/**
+	 * Decodes multiple images first, then single images.
+	 * Does not require an OpenGL context.
 	 * @param dir the image directory to search, or null to use the default resource locations
-	 * @return an array of the loaded images, or null if not found
+	 * @return the decoded images (empty if not found)
 	 */
-	private Image[] loadImageArray(File dir) {
+	private DecodedImages decodeImages(File dir) {
+		List<String> errors = new ArrayList<String>();
+		DecodedImages decoded = decodeImageArray(dir, errors);
+		if (decoded == null)
+			decoded = decodeImageSingle(dir, errors);
+		if (decoded == null)
+			decoded = new DecodedImages(false, false);
+		decoded.errors.addAll(0, errors);
+		return decoded;
+	}
+
+	/**
+	 * Attempts to decode multiple images for the GameImage.
+	 * @param dir the image directory to search, or null to use the default resource locations
+	 * @param errors list to add error messages to
+	 * @return the decoded images, or null if not found
+	 */
+	private DecodedImages decodeImageArray(File dir, List<String> errors) {
 		if (filenameFormat != null) {
 			for (String suffix : getSuffixes()) {
-				List<Image> list = new ArrayList<Image>();
+				DecodedImages decoded = new DecodedImages(true, suffix.equals(HD_SUFFIX));
 				int i = 0;
 				while (true) {
 					// look for next image
-					String filenameFormatted = String.format(filenameFormat + suffix, i++);
+					String filenameFormatted = String.format(filenameFormat, i++) + suffix;
 					String name = getImageFileName(filenameFormatted, dir, type, true);
 					if (name == null)
 						break;
 
 					// add image to list
 					try {
-						Image img = new Image(name);
-						if (suffix.equals(HD_SUFFIX))
-							img = img.getScaledCopy(0.5f);
-						list.add(img);
-					} catch (SlickException e) {
-						ErrorHandler.error(String.format("Failed to set image '%s'.", name), null, false);
+						decoded.frames.add(ImageDecoder.decode(name));
+					} catch (IOException e) {
+						errors.add(String.format("Failed to set image '%s'.", name));
 						break;
 					}
 				}
-				if (!list.isEmpty())
-					return list.toArray(new Image[list.size()]);
+				if (!decoded.isEmpty())
+					return decoded;
 			}
 		}
 		return null;
 	}
 
 	/**
-	 * Attempts to load a single Image from the GameImage.
+	 * Attempts to decode a single image for the GameImage.
 	 * @param dir the image directory to search, or null to use the default resource locations
-	 * @return the loaded image, or null if not found
+	 * @param errors list to add error messages to
+	 * @return the decoded image, or null if not found
 	 */
-	private Image loadImageSingle(File dir) {
+	private DecodedImages decodeImageSingle(File dir, List<String> errors) {
 		for (String suffix : getSuffixes()) {
 			String name = getImageFileName(filename + suffix, dir, type, true);
 			if (name != null) {
 				try {
-					Image img = new Image(name);
-					if (suffix.equals(HD_SUFFIX))
-						img = img.getScaledCopy(0.5f);
-					return img;
-				} catch (SlickException e) {
-					ErrorHandler.error(String.format("Failed to set image '%s'.", filename), null, false);
+					DecodedImages decoded = new DecodedImages(false, suffix.equals(HD_SUFFIX));
+					decoded.frames.add(ImageDecoder.decode(name));
+					return decoded;
+				} catch (IOException e) {
+					errors.add(String.format("Failed to set image '%s'.", filename));
 				}
 			}
 		}
@@ -825,7 +1199,14 @@ public enum GameImage {
 			return;
 		try {
 			if (skinImage != null) {
-				if (!skinImage.isDestroyed())
+				if (isSkinImagePacked) {
+					// destroy the shared atlas once no skin image uses it
+					isSkinImagePacked = false;
+					if (--skinAtlasRefs == 0 && skinAtlasPages != null) {
+						destroyAtlasPages(skinAtlasPages);
+						skinAtlasPages = null;
+					}
+				} else if (!skinImage.isDestroyed())
 					skinImage.destroy();
 				skinImage = null;
 			}
@@ -214,17 +214,24 @@ public enum GameMod {
 	 * Returns the current score multiplier from all active mods.
 	 */
 	public static float getScoreMultiplier() {
-		if (scoreMultiplier < 0f) {
-			float multiplier = 1f;
-			for (GameMod mod : GameMod.values()) {
-				if (mod.isActive())
-					multiplier *= mod.getMultiplier();
-			}
-			scoreMultiplier = multiplier;
-		}
+		if (scoreMultiplier < 0f)
+			scoreMultiplier = getScoreMultiplier(getModState());
 		return scoreMultiplier;
 	}
 
+	/**
+	 * Returns the score multiplier from all mods in the given state.
+	 * @param state the state (bitwise OR of active mods)
+	 */
+	public static float getScoreMultiplier(int state) {
+		float multiplier = 1f;
+		for (GameMod mod : GameMod.values()) {
+			if (mod.isActive(state))
+				multiplier *= mod.getMultiplier();
+		}
+		return multiplier;
+	}
+
 	/**
 	 * Returns the current track speed multiplier from all active mods.
 	 */
@@ -244,17 +251,24 @@ public enum GameMod {
 	 * Returns the current difficulty multiplier from all active mods.
 	 */
 	public static float getDifficultyMultiplier() {
-		if (difficultyMultiplier < 0f) {
-			if (HARD_ROCK.isActive())
-				difficultyMultiplier = 1.4f;
-			else if (EASY.isActive())
-				difficultyMultiplier = 0.5f;
-			else
-				difficultyMultiplier = 1f;
-		}
+		if (difficultyMultiplier < 0f)
+			difficultyMultiplier = getDifficultyMultiplier(getModState());
 		return difficultyMultiplier;
 	}
 
+	/**
+	 * Returns the difficulty multiplier from all mods in the given state.
+	 * @param state the state (bitwise OR of active mods)
+	 */
+	public static float getDifficultyMultiplier(int state) {
+		if (HARD_ROCK.isActive(state))
+			return 1.4f;
+		else if (EASY.isActive(state))
+			return 0.5f;
+		else
+			return 1f;
+	}
+
 	/**
 	 * Returns the current game mod state (bitwise OR of active mods).
 	 */
@@ -410,6 +424,13 @@ public enum GameMod {
 	 */
 	public boolean isActive() { return active; }
 
+	/**
+	 * Returns whether or not the mod is active in the given state.
+	 * @param state the state (bitwise OR of active mods)
+	 * @return true if active
+	 */
+	public boolean isActive(int state) { return (state & bit) > 0; }
+
 	/**
 	 * Returns the image associated with the mod.
 	 * @return the associated image
@@ -0,0 +1,353 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import itdelatrisu.opsu.beatmap.Beatmap;
+import itdelatrisu.opsu.beatmap.Health;
+import itdelatrisu.opsu.beatmap.HitObject;
+
+/**
+ * Scoring and health state of a play.
+ * <p>
+ * Applies the score, combo and health rules for hit results without any
+ * rendering or audio, so that gameplay ({@link GameData}) and the replay
+ * simulator share the same code. Subclasses can override the combo methods
+ * to add effects.
+ */
+public class GameScore {
+	/** Current game score. */
+	protected long score;
+
+	/** Health. */
+	protected Health health = new Health();
+
+	/**
+	 * Hit result types accumulated this streak (bitmask), for Katu/Geki status.
+	 * <ul>
+	 * <li>&1: 100
+	 * <li>&2: 50/Miss
+	 * </ul>
+	 */
+	protected byte comboEnd;
+
+	/** Current and maximum combo streaks. */
+	protected int combo, comboMax;
+
+	/** Total objects including slider hits/ticks (for determining Full Combo status). */
+	protected int fullObjectCount;
+
+	/** Total number of hits per result type (indexed by GameData.HIT_* constants). */
+	protected int[] hitResultCount = new int[GameData.HIT_MAX];
+
+	/** Beatmap difficulty multiplier (used in score calculation). */
+	protected int difficultyMultiplier = 2;
+
+	/** Active mods (bitwise OR of mod bits). */
+	protected int mods;
+
+	/** Score multiplier from the active mods. */
+	private float scoreMultiplier = 1f;
+
+	/**
+	 * Clears the score, combo, hit result counts, and health (including the health modifiers).
+	 * The mods and the difficulty multiplier are kept.
+	 */
+	public void clear() {
+		score = 0;
+		health.reset();
+		hitResultCount = new int[GameData.HIT_MAX];
+		fullObjectCount = 0;
+		combo = 0;
+		comboMax = 0;
+		comboEnd = 0;
+	}
+
+	/**
+	 * Sets the active mods.
+	 * @param mods the mod state (bitwise OR of active mods)
+	 */
+	public void setMods(int mods) {
+		this.mods = mods;
+		this.scoreMultiplier = GameMod.getScoreMultiplier(mods);
+	}
+
+	/**
+	 * Returns the active mods (bitwise OR of active mods).
+	 */
+	public int getMods() { return mods; }
+
+	/**
+	 * Returns the current health percentage.
+	 */
+	public float getHealthPercent() { return health.getHealth(); }
+
+	/**
+	 * Sets the health modifiers.
+	 * @param hpDrainRate the HP drain rate
+	 * @param hpMultiplierNormal the normal HP multiplier
+	 * @param hpMultiplierComboEnd the combo-end HP multiplier
+	 */
+	public void setHealthModifiers(float hpDrainRate, float hpMultiplierNormal, float hpMultiplierComboEnd) {
+		health.setModifiers(hpDrainRate, hpMultiplierNormal, hpMultiplierComboEnd);
+	}
+
+	/**
+	 * Returns false if health is zero.
+	 * If "No Fail", "Auto", "Relax", or "Autopilot" mods are active, this will always return true.
+	 */
+	public boolean isAlive() {
+		return (health.getHealth() > 0f || GameMod.NO_FAIL.isActive(mods) || GameMod.AUTO.isActive(mods) ||
+		        GameMod.RELAX.isActive(mods) || GameMod.AUTOPILOT.isActive(mods));
+	}
+
+	/**
+	 * Changes health by a raw value.
+	 * @param value the health value
+	 */
+	public void changeHealth(float value) { health.changeHealth(value); }
+
+	/**
+	 * Returns the raw score.
+	 */
+	public long getScore() { return score; }
+
+	/**
+	 * Changes score by a raw value (not affected by other modifiers).
+	 * @param value the score value
+	 */
+	public void changeScore(int value) { score += value; }
+
+	/**
+	 * Returns the current combo streak.
+	 */
+	public int getComboStreak() { return combo; }
+
+	/**
+	 * Increases the combo streak by one.
+	 */
+	protected void incrementComboStreak() {
+		combo++;
+		if (combo > comboMax)
+			comboMax = combo;
+	}
+
+	/**
+	 * Resets the combo streak to zero.
+	 */
+	protected void resetComboStreak() {
+		combo = 0;
+		if (GameMod.SUDDEN_DEATH.isActive(mods))
+			health.setHealth(0f);
+	}
+
+	/**
+	 * Returns the score for a hit based on the following score formula:
+	 * <p>
+	 * Score = Hit Value + Hit Value * (Combo * Difficulty * Mod) / 25
+	 * <ul>
+	 * <li><strong>Hit Value:</strong> hit result (50, 100, 300), slider ticks, spinner bonus
+	 * <li><strong>Combo:</strong> combo before this hit - 1 (minimum 0)
+	 * <li><strong>Difficulty:</strong> the difficulty setting (see {@link #calculateDifficultyMultiplier(float, float, float)})
+	 * <li><strong>Mod:</strong> mod multipliers
+	 * </ul>
+	 * @param hitValue the hit value
+	 * @param hitObject the hit object
+	 * @return the score value
+	 * @see <a href="https://osu.ppy.sh/wiki/Score">https://osu.ppy.sh/wiki/Score</a>
+	 */
+	protected int getScoreForHit(int hitValue, HitObject hitObject) {
+		int comboMultiplier = Math.max(combo - 1, 0);
+		if (hitObject.isSlider())
+			comboMultiplier++;
+		return (hitValue + (int)(hitValue * (comboMultiplier * difficultyMultiplier * scoreMultiplier) / 25));
+	}
+
+	/**
+	 * Computes and stores the difficulty multiplier used in the score formula.
+	 * @param drainRate the raw HP drain rate value
+	 * @param circleSize the raw circle size value
+	 * @param overallDifficulty the raw overall difficulty value
+	 * @see <a href="https://osu.ppy.sh/wiki/Score#How_to_calculate_the_Difficulty_multiplier">https://osu.ppy.sh/wiki/Score#How_to_calculate_the_Difficulty_multiplier</a>
+	 */
+	public void calculateDifficultyMultiplier(float drainRate, float circleSize, float overallDifficulty) {
+		// TODO: find the actual formula (osu!wiki is wrong)
+		// seems to be based on hit object density? (total objects / time)
+		// 924 3x1/4 beat notes 0.14stars
+		// 924 3x1beat 0.28stars
+		// 912 3x1beat with 1 extra note 10 sec away 0.29stars
+
+		float sum = drainRate + circleSize + overallDifficulty;  // typically 2~27
+		if (sum <= 5f)
+			difficultyMultiplier = 2;
+		else if (sum <= 12f)
+			difficultyMultiplier = 3;
+		else if (sum <= 17f)
+			difficultyMultiplier = 4;
+		else if (sum <= 24f)
+			difficultyMultiplier = 5;
+		else //if (sum <= 30f)
+			difficultyMultiplier = 6;
+
+		//float multiplier = ((circleSize + overallDifficulty + drainRate) / 6) + 1.5f;
+		//difficultyMultiplier = (int) multiplier;
+	}
+
+	/**
+	 * Applies a hit object result to the health, score, and combo streak.
+	 * @param result the base hit result (HIT_* constants)
+	 * @param end true if this is the last hit object in the combo
+	 * @param hitObject the hit object
+	 * @param noIncrementCombo if the combo should not be incremented by this result
+	 * @return the actual hit result (HIT_* constants)
+	 */
+	public int handleHitResult(int result, boolean end, HitObject hitObject, boolean noIncrementCombo) {
+		int hitValue = 0;
+		switch (result) {
+		case GameData.HIT_300:
+			hitValue = 300;
+			break;
+		case GameData.HIT_100:
+			hitValue = 100;
+			comboEnd |= 1;
+			break;
+		case GameData.HIT_50:
+			hitValue = 50;
+			comboEnd |= 2;
+			break;
+		case GameData.HIT_MISS:
+			hitValue = 0;
+			comboEnd |= 2;
+			resetComboStreak();
+			break;
+		default:
+			return GameData.HIT_MISS;
+		}
+		if (hitValue > 0) {
+			// calculate score and increment combo streak
+			changeScore(getScoreForHit(hitValue, hitObject));
+			if (!noIncrementCombo)
+				incrementComboStreak();
+		}
+		health.changeHealthForHit(result);
+		hitResultCount[result]++;
+		fullObjectCount++;
+
+		// last element in combo: check for Geki/Katu
+		if (end) {
+			if (comboEnd == 0) {
+				result = GameData.HIT_300G;
+				health.changeHealthForHit(GameData.HIT_300G);
+				hitResultCount[result]++;
+			} else if ((comboEnd & 2) == 0) {
+				if (result == GameData.HIT_100) {
+					result = GameData.HIT_100K;
+					health.changeHealthForHit(GameData.HIT_100K);
+					hitResultCount[result]++;
+				} else if (result == GameData.HIT_300) {
+					result = GameData.HIT_300K;
+					health.changeHealthForHit(GameData.HIT_300K);
+					hitResultCount[result]++;
+				}
+			} else if (hitValue > 0)
+				health.changeHealthForHit(GameData.HIT_MU);
+			comboEnd = 0;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Applies a slider tick result to the health, score, and combo streak.
+	 * @param result the hit result (HIT_* constants)
+	 * @return true if the tick was hit
+	 */
+	public boolean handleSliderTickResult(int result) {
+		int hitValue = 0;
+		switch (result) {
+		case GameData.HIT_SLIDER30:
+			hitValue = 30;
+			break;
+		case GameData.HIT_SLIDER10:
+			hitValue = 10;
+			break;
+		case GameData.HIT_MISS:
+			resetComboStreak();
+			break;
+		default:
+			return false;
+		}
+
+		if (hitValue > 0) {
+			// calculate score and increment combo streak
+			score += hitValue;
+			incrementComboStreak();
+			health.changeHealthForHit(result);
+		}
+		fullObjectCount++;
+		return (hitValue > 0);
+	}
+
+	/**
+	 * Applies a spinner spin result to the health and score.
+	 * @param result the hit result (HIT_* constants)
+	 * @return true if the result was applied
+	 */
+	public boolean handleSpinnerSpinResult(int result) {
+		int hitValue = 0;
+		switch (result) {
+		case GameData.HIT_SPINNERSPIN:
+			hitValue = 100;
+			break;
+		case GameData.HIT_SPINNERBONUS:
+			hitValue = 1100;
+			break;
+		default:
+			return false;
+		}
+
+		score += hitValue;
+		health.changeHealthForHit(result);
+		return true;
+	}
+
+	/**
+	 * Returns a new ScoreData object with the beatmap, hit result, score, combo, and mods fields set.
+	 * @param beatmap the beatmap
+	 */
+	public ScoreData createScoreData(Beatmap beatmap) {
+		ScoreData sd = new ScoreData();
+		sd.MID = beatmap.beatmapID;
+		sd.MSID = beatmap.beatmapSetID;
+		sd.title = beatmap.title;
+		sd.artist = beatmap.artist;
+		sd.creator = beatmap.creator;
+		sd.version = beatmap.version;
+		sd.hit300 = hitResultCount[GameData.HIT_300];
+		sd.hit100 = hitResultCount[GameData.HIT_100];
+		sd.hit50 = hitResultCount[GameData.HIT_50];
+		sd.geki = hitResultCount[GameData.HIT_300G];
+		sd.katu = hitResultCount[GameData.HIT_300K] + hitResultCount[GameData.HIT_100K];
+		sd.miss = hitResultCount[GameData.HIT_MISS];
+		sd.score = score;
+		sd.combo = comboMax;
+		sd.perfect = (comboMax == fullObjectCount);
+		sd.mods = mods;
+		return sd;
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.opengl.ImageData;
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.LoadableImageData;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * Decodes image files into texture-ready buffers on a pool of worker threads.
+ * <p>
+ * Decoding does not require an OpenGL context; the resulting {@link ImageData}
+ * is turned into a texture later on the render thread (e.g. with
+ * {@code new Image(ImageData)}). Small images can also be combined into
+ * texture atlas pages laid out by an {@link AtlasPacker}.
+ */
+public class ImageDecoder {
+	/** The decoder pool (created on first use). */
+	private static ThreadPoolExecutor executor;
+
+	/** Decoded image data backed by a direct buffer. */
+	public static class DecodedImageData implements ImageData {
+		/** The image properties. */
+		private final int depth, width, height, texWidth, texHeight;
+
+		/** The texture data. */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Constructor.
+		 * @param depth the bit depth
+		 * @param width the image width
+		 * @param height the image height
+		 * @param texWidth the texture width
+		 * @param texHeight the texture height
+		 * @param buffer the texture data
+		 */
+		public DecodedImageData(int depth, int width, int height, int texWidth, int texHeight, ByteBuffer buffer) {
+			this.depth = depth;
+			this.width = width;
+			this.height = height;
+			this.texWidth = texWidth;
+			this.texHeight = texHeight;
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Constructor, needed because {@code ImageIOImageData} doesn't implement {@code getImageBufferData()}.
+		 * @param imageData the class holding the image properties
+		 * @param buffer the texture data
+		 */
+		public DecodedImageData(ImageData imageData, ByteBuffer buffer) {
+			this(imageData.getDepth(), imageData.getWidth(), imageData.getHeight(),
+			     imageData.getTexWidth(), imageData.getTexHeight(), buffer);
+		}
+
+		@Override public int getDepth() { return depth; }
+		@Override public int getWidth() { return width; }
+		@Override public int getHeight() { return height; }
+		@Override public int getTexWidth() { return texWidth; }
+		@Override public int getTexHeight() { return texHeight; }
+		@Override public ByteBuffer getImageBufferData() { return buffer; }
+	}
+
+	// This class should not be instantiated.
+	private ImageDecoder() {}
+
+	/**
+	 * Decodes an image in the calling thread.
+	 * @param ref the image resource name or file path (as in {@code new Image(ref)})
+	 * @return the decoded image data
+	 * @throws IOException if the image could not be found or decoded
+	 */
+	public static ImageData decode(String ref) throws IOException {
+		InputStream in;
+		try {
+			in = ResourceLoader.getResourceAsStream(ref);
+		} catch (RuntimeException e) {
+			throw new IOException(String.format("Resource not found: %s", ref), e);
+		}
+		try (BufferedInputStream bin = new BufferedInputStream(in)) {
+			LoadableImageData imageData = ImageDataFactory.getImageDataFor(ref);
+			ByteBuffer buffer = imageData.loadImage(bin, false, null);
+			if (buffer == null)
+				throw new IOException(String.format("Failed to decode image: %s", ref));
+			return new DecodedImageData(imageData, buffer);
+		}
+	}
+
+	/**
+	 * Composes a texture atlas page from packed images, in RGBA format.
+	 * Each image is extruded into its border by repeating its edge pixels.
+	 * Does not require an OpenGL context.
+	 * @param packer the packer (already packed)
+	 * @param page the page index
+	 * @param images the images, indexed by rectangle ID (24- or 32-bit; null entries are skipped)
+	 * @return the page image data
+	 */
+	public static ImageData composeAtlasPage(AtlasPacker packer, int page, ImageData[] images) {
+		int width = packer.getPageWidth(page), height = packer.getPageHeight(page), border = packer.getBorder();
+		ByteBuffer dst = BufferUtils.createByteBuffer(width * height * 4);
+		for (int id = 0; id < images.length; id++) {
+			AtlasPacker.Rect rect = packer.getRect(id);
+			ImageData image = images[id];
+			if (rect == null || rect.page != page || image == null)
+				continue;
+
+			ByteBuffer src = image.getImageBufferData();
+			int bpp = image.getDepth() / 8, srcStride = image.getTexWidth() * bpp;
+			for (int dy = -border; dy < rect.height + border; dy++) {
+				int sy = Math.max(0, Math.min(dy, rect.height - 1));
+				int dstRow = ((rect.y + dy) * width + rect.x) * 4;
+				for (int dx = -border; dx < rect.width + border; dx++) {
+					int sx = Math.max(0, Math.min(dx, rect.width - 1));
+					int i = sy * srcStride + sx * bpp, j = dstRow + dx * 4;
+					dst.put(j, src.get(i));
+					dst.put(j + 1, src.get(i + 1));
+					dst.put(j + 2, src.get(i + 2));
+					dst.put(j + 3, (bpp == 4) ? src.get(i + 3) : (byte) 0xFF);
+				}
+			}
+		}
+		return new DecodedImageData(32, width, height, width, height, dst);
+	}
+
+	/**
+	 * Submits a decoding task to the worker pool.
+	 * @param task the task
+	 * @return the task's future
+	 */
+	public static synchronized <T> Future<T> submit(Callable<T> task) {
+		if (executor == null)
+			executor = createExecutor();
+		return executor.submit(task);
+	}
+
+	/**
+	 * Returns the number of decoder threads.
+	 */
+	public static int getThreadCount() {
+		return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	}
+
+	/**
+	 * Creates the worker pool (leaving one core for the render thread).
+	 */
+	private static ThreadPoolExecutor createExecutor() {
+		int threads = getThreadCount();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+			threads, threads, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ImageDecoder");
+					t.setDaemon(true);
+					return t;
+				}
+			}
+		);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+}
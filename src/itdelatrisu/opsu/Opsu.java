@@ -19,6 +19,7 @@
 package itdelatrisu.opsu;
 
 import itdelatrisu.opsu.audio.MusicController;
+import itdelatrisu.opsu.beatmap.BeatmapDifficultyService;
 import itdelatrisu.opsu.db.DBController;
 import itdelatrisu.opsu.downloads.DownloadList;
 import itdelatrisu.opsu.downloads.Updater;
@@ -259,6 +260,9 @@ public class Opsu extends StateBasedGame {
 	 * Closes all resources.
 	 */
 	public static void close() {
+		// save computed star ratings
+		BeatmapDifficultyService.flush();
+
 		// close databases
 		DBController.closeConnections();
 
@@ -187,6 +187,33 @@ public class ScoreData implements Comparable<ScoreData> {
 		this.playerName = rs.getString(19);
 	}
 
+	/**
+	 * Creates a copy of a score data object.
+	 * Display values computed from the fields are not copied.
+	 * @param s the score data to copy
+	 */
+	public ScoreData(ScoreData s) {
+		this.timestamp = s.timestamp;
+		this.MID = s.MID;
+		this.MSID = s.MSID;
+		this.title = s.title;
+		this.artist = s.artist;
+		this.creator = s.creator;
+		this.version = s.version;
+		this.hit300 = s.hit300;
+		this.hit100 = s.hit100;
+		this.hit50 = s.hit50;
+		this.geki = s.geki;
+		this.katu = s.katu;
+		this.miss = s.miss;
+		this.score = s.score;
+		this.combo = s.combo;
+		this.perfect = s.perfect;
+		this.mods = s.mods;
+		this.replayString = s.replayString;
+		this.playerName = s.playerName;
+	}
+
 	/**
 	 * Returns the timestamp as a string.
 	 */
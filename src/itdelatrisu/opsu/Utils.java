@@ -20,6 +20,7 @@ package itdelatrisu.opsu;
 
 import itdelatrisu.opsu.audio.SoundController;
 import itdelatrisu.opsu.audio.SoundEffect;
+import itdelatrisu.opsu.beatmap.BackgroundThumbnailCache;
 import itdelatrisu.opsu.beatmap.HitObject;
 import itdelatrisu.opsu.downloads.Download;
 import itdelatrisu.opsu.downloads.DownloadNode;
@@ -140,6 +141,9 @@ public class Utils {
 		// calculate UI scale
 		GameImage.init(width, height);
 
+		// initialize image directory indexes
+		DirectoryIndex.init();
+
 		// create fonts
 		try {
 			Fonts.init();
@@ -150,11 +154,8 @@ public class Utils {
 		// load skin
 		Options.loadSkin();
 
-		// initialize game images
-		for (GameImage img : GameImage.values()) {
-			if (img.isPreload())
-				img.setDefaultImage();
-		}
+		// start decoding game images (uploaded as they are used, or each frame)
+		GameImage.preloadDefaultImages();
 
 		// initialize game mods
 		GameMod.init(width, height);
@@ -168,6 +169,9 @@ public class Utils {
 		// initialize download nodes
 		DownloadNode.init(width, height);
 
+		// initialize background thumbnail size
+		BackgroundThumbnailCache.init(width, height);
+
 		// initialize UI components
 		UI.init(container, game);
 
@@ -0,0 +1,360 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.beatmap;
+
+import itdelatrisu.opsu.GameImage;
+import itdelatrisu.opsu.ImageDecoder.DecodedImageData;
+import itdelatrisu.opsu.options.Options;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.opengl.ImageData;
+import org.newdawn.slick.util.Log;
+
+/**
+ * Persistent cache of downscaled, pre-decoded background images.
+ * <p>
+ * Backgrounds are never drawn larger than the screen (plus parallax), so
+ * after the original file is decoded once, a copy scaled to cover the
+ * display is stored as raw pixel data (deflated) in the cache directory.
+ * Thumbnails are keyed by the source file path, size, and modification time,
+ * and by the target dimensions, so a changed file or display size produces
+ * a new thumbnail. Stale thumbnails are pruned on startup, by age of last use
+ * and by total size.
+ */
+public class BackgroundThumbnailCache {
+	/** File signature ("OPTH"). */
+	private static final int MAGIC = 0x4F505448;
+
+	/** Thumbnail format version. */
+	private static final byte VERSION = 1;
+
+	/** Thumbnail file extension. */
+	private static final String EXTENSION = ".thb";
+
+	/** Maximum total size of all thumbnails, in bytes. */
+	private static final long MAX_CACHE_SIZE = 256L * 1024 * 1024;
+
+	/** Time, in milliseconds, after which an unused thumbnail is deleted (30 days). */
+	private static final long MAX_UNUSED_TIME = 30L * 24 * 60 * 60 * 1000;
+
+	/** The target dimensions (the thumbnail covers this area). */
+	private static int targetWidth = 0, targetHeight = 0;
+
+	/** Whether the cache directory has been pruned. */
+	private static boolean pruned = false;
+
+	// This class should not be instantiated.
+	private BackgroundThumbnailCache() {}
+
+	/**
+	 * Initializes the target thumbnail size, and prunes the cache directory
+	 * in the background (once per session).
+	 * @param width the container width
+	 * @param height the container height
+	 */
+	public static void init(int width, int height) {
+		targetWidth = (int) Math.ceil(width * GameImage.PARALLAX_SCALE);
+		targetHeight = (int) Math.ceil(height * GameImage.PARALLAX_SCALE);
+
+		if (!pruned) {
+			pruned = true;
+			Thread t = new Thread() {
+				@Override
+				public void run() { prune(); }
+			};
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			t.start();
+		}
+	}
+
+	/**
+	 * Deletes thumbnails (and leftover temporary files) that have not been
+	 * used in {@link #MAX_UNUSED_TIME}, then the least recently used
+	 * thumbnails until the total size is within {@link #MAX_CACHE_SIZE}.
+	 */
+	private static void prune() {
+		File[] files = Options.THUMBNAIL_DIR.listFiles();
+		if (files == null)
+			return;
+
+		// sort by last use (see read()), most recent first
+		final long[] lastModified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			lastModified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) { return Long.compare(lastModified[b], lastModified[a]); }
+		});
+
+		long expiry = System.currentTimeMillis() - MAX_UNUSED_TIME, size = 0;
+		int deleted = 0;
+		for (int i : order) {
+			File file = files[i];
+			if (!file.isFile())
+				continue;
+			long length = file.length();
+			if (lastModified[i] >= expiry && size + length <= MAX_CACHE_SIZE)
+				size += length;
+			else if (file.delete())
+				deleted++;
+		}
+		if (deleted > 0)
+			Log.debug(String.format("Pruned %d background thumbnails.", deleted));
+	}
+
+	/**
+	 * Reads the thumbnail for an image file, if one exists.
+	 * @param file the source image file
+	 * @return the thumbnail image data, or null if none is cached
+	 */
+	public static ImageData read(File file) {
+		String key = getKey(file);
+		if (key == null)
+			return null;
+		File thumb = getThumbnailFile(key);
+		if (!thumb.isFile())
+			return null;
+
+		try (
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(thumb)));
+			InflaterInputStream zin = new InflaterInputStream(in);  // pixel data follows the header
+		) {
+			if (in.readInt() != MAGIC || in.readByte() != VERSION || !in.readUTF().equals(key))
+				return null;
+			int depth = in.readByte(), width = in.readInt(), height = in.readInt();
+			int texWidth = get2Fold(width), texHeight = get2Fold(height);
+			int bpp = depth / 8;
+			if (bpp < 1 || bpp > 4 || width <= 0 || height <= 0)
+				throw new IOException("Invalid thumbnail header.");
+
+			ByteBuffer buffer = BufferUtils.createByteBuffer(texWidth * texHeight * bpp);
+			byte[] row = new byte[width * bpp];
+			for (int y = 0; y < height; y++) {
+				readFully(zin, row);
+				buffer.position(y * texWidth * bpp);
+				buffer.put(row);
+			}
+			buffer.rewind();
+			thumb.setLastModified(System.currentTimeMillis());  // mark as used (see prune())
+			return new DecodedImageData(depth, width, height, texWidth, texHeight, buffer);
+		} catch (IOException e) {
+			Log.warn(String.format("Failed to read background thumbnail for '%s'.", file), e);
+			thumb.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Downscales decoded image data to cover the display, and stores the result.
+	 * Nothing is stored if the image is already small enough, since the raw
+	 * pixel data would usually be larger than the source file.
+	 * @param file the source image file
+	 * @param data the decoded image data (in texture layout)
+	 * @return the thumbnail image data, or the original data if it is already
+	 *         small enough
+	 */
+	public static ImageData write(File file, ImageData data) {
+		String key = getKey(file);
+		if (key == null)
+			return data;
+
+		ImageData thumbData = scale(data);
+		if (thumbData == data)
+			return data;
+		File thumb = getThumbnailFile(key);
+		File tmp = new File(thumb.getParentFile(), thumb.getName() + ".tmp");
+		try {
+			if (!thumb.getParentFile().isDirectory() && !thumb.getParentFile().mkdirs())
+				throw new IOException("Failed to create thumbnail directory.");
+			writeFile(tmp, key, thumbData);
+			try {
+				Files.move(tmp.toPath(), thumb.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), thumb.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			Log.warn(String.format("Failed to write background thumbnail for '%s'.", file), e);
+		}
+		return thumbData;
+	}
+
+	/**
+	 * Writes a thumbnail file.
+	 * @param file the file to write
+	 * @param key the cache key
+	 * @param data the image data
+	 * @throws IOException if writing failed
+	 */
+	private static void writeFile(File file, String key, ImageData data) throws IOException {
+		int bpp = data.getDepth() / 8, width = data.getWidth(), height = data.getHeight();
+		ByteBuffer buffer = data.getImageBufferData().duplicate();
+		byte[] row = new byte[width * bpp];
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeUTF(key);
+			out.writeByte(data.getDepth());
+			out.writeInt(width);
+			out.writeInt(height);
+
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				DeflaterOutputStream zout = new DeflaterOutputStream(out, deflater);
+				for (int y = 0; y < height; y++) {
+					buffer.position(y * data.getTexWidth() * bpp);
+					buffer.get(row);
+					zout.write(row);
+				}
+				zout.finish();
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Downscales image data with a box filter so that it just covers the target size.
+	 * @param data the image data
+	 * @return the scaled image data, or the original data if no scaling is needed
+	 */
+	private static ImageData scale(ImageData data) {
+		int width = data.getWidth(), height = data.getHeight();
+		if (targetWidth <= 0 || targetHeight <= 0)
+			return data;
+		float scale = Math.max(targetWidth / (float) width, targetHeight / (float) height);
+		if (scale >= 1f)
+			return data;
+
+		int dw = Math.max(Math.round(width * scale), 1), dh = Math.max(Math.round(height * scale), 1);
+		int bpp = data.getDepth() / 8, srcStride = data.getTexWidth() * bpp;
+		int texWidth = get2Fold(dw), texHeight = get2Fold(dh), dstStride = texWidth * bpp;
+		ByteBuffer src = data.getImageBufferData();
+		ByteBuffer dst = BufferUtils.createByteBuffer(texWidth * texHeight * bpp);
+
+		// source column range of each destination column
+		int[] x0 = new int[dw], x1 = new int[dw];
+		for (int dx = 0; dx < dw; dx++) {
+			x0[dx] = (int) ((long) dx * width / dw);
+			x1[dx] = Math.max((int) ((long) (dx + 1) * width / dw), x0[dx] + 1);
+		}
+		int[] sum = new int[dw * bpp];
+		for (int dy = 0; dy < dh; dy++) {
+			int y0 = (int) ((long) dy * height / dh);
+			int y1 = Math.max((int) ((long) (dy + 1) * height / dh), y0 + 1);
+			Arrays.fill(sum, 0);
+			for (int sy = y0; sy < y1; sy++) {
+				int rowOffset = sy * srcStride;
+				for (int dx = 0; dx < dw; dx++) {
+					int s = dx * bpp;
+					for (int sx = x0[dx]; sx < x1[dx]; sx++) {
+						int i = rowOffset + sx * bpp;
+						for (int c = 0; c < bpp; c++)
+							sum[s + c] += src.get(i + c) & 0xFF;
+					}
+				}
+			}
+			int rowOffset = dy * dstStride;
+			for (int dx = 0; dx < dw; dx++) {
+				int count = (x1[dx] - x0[dx]) * (y1 - y0), s = dx * bpp;
+				for (int c = 0; c < bpp; c++)
+					dst.put(rowOffset + s + c, (byte) ((sum[s + c] + count / 2) / count));
+			}
+		}
+		return new DecodedImageData(data.getDepth(), dw, dh, texWidth, texHeight, dst);
+	}
+
+	/**
+	 * Returns the cache key for an image file, or null if the file does not exist.
+	 * @param file the source image file
+	 */
+	private static String getKey(File file) {
+		long length = file.length(), lastModified = file.lastModified();
+		if (lastModified == 0L)
+			return null;
+		return String.format("%s|%d|%d|%dx%d", file.getAbsolutePath(), length, lastModified, targetWidth, targetHeight);
+	}
+
+	/**
+	 * Returns the thumbnail file for a cache key.
+	 * @param key the cache key
+	 */
+	private static File getThumbnailFile(String key) {
+		StringBuilder name = new StringBuilder();
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			for (byte b : md.digest(key.getBytes(StandardCharsets.UTF_8)))
+				name.append(String.format("%02x", b));
+		} catch (NoSuchAlgorithmException e) {
+			name.append(Integer.toHexString(key.hashCode()));
+		}
+		return new File(Options.THUMBNAIL_DIR, name.append(EXTENSION).toString());
+	}
+
+	/**
+	 * Reads exactly {@code b.length} bytes from a stream.
+	 * @throws EOFException if the stream ended early
+	 */
+	private static void readFully(InflaterInputStream in, byte[] b) throws IOException {
+		int off = 0;
+		while (off < b.length) {
+			int n = in.read(b, off, b.length - off);
+			if (n < 0)
+				throw new EOFException();
+			off += n;
+		}
+	}
+
+	/**
+	 * Returns the smallest power of two greater than or equal to a value.
+	 * @param n the value
+	 */
+	private static int get2Fold(int n) {
+		int ret = 2;
+		while (ret < n)
+			ret *= 2;
+		return ret;
+	}
+}
@@ -22,9 +22,16 @@ import itdelatrisu.opsu.GameImage;
 import itdelatrisu.opsu.options.Options;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.Image;
@@ -37,13 +44,23 @@ public class Beatmap implements Comparable<Beatmap> {
 	/** Game modes. */
 	public static final byte MODE_OSU = 0, MODE_TAIKO = 1, MODE_CTB = 2, MODE_MANIA = 3;
 
-	/** Background image cache. */
+	/** Binary format version for array fields (see {@link #timingPointsToBytes()}). */
+	private static final byte ARRAY_FORMAT_VERSION = 1;
+
+	/** Maximum total size of decoded background images in the cache, in bytes. */
+	private static final long BG_IMAGE_CACHE_SIZE = 128L * 1024 * 1024;
+
+	/** Background image cache, weighted by decoded texture size. */
 	@SuppressWarnings("serial")
-	private static final LRUCache<File, ImageLoader> bgImageCache = new LRUCache<File, ImageLoader>(10) {
+	private static final WeightedLRUCache<File, ImageLoader> bgImageCache = new WeightedLRUCache<File, ImageLoader>(BG_IMAGE_CACHE_SIZE) {
+		@Override
+		protected long weigh(ImageLoader imageLoader) { return imageLoader.getByteSize(); }
+
 		@Override
 		public void eldestRemoved(Map.Entry<File, ImageLoader> eldest) {
 			if (eldest.getKey() == lastBG)
 				lastBG = null;
+			prefetchedBGs.remove(eldest.getKey());
 			ImageLoader imageLoader = eldest.getValue();
 			imageLoader.destroy();
 		}
@@ -52,13 +69,60 @@ public class Beatmap implements Comparable<Beatmap> {
 	/** The last background image loaded. */
 	private static File lastBG;
 
+	/** Background images currently being prefetched. */
+	private static final Set<File> prefetchedBGs = new HashSet<File>();
+
 	/**
 	 * Clears the background image cache.
 	 * <p>
 	 * NOTE: This does NOT destroy the images in the cache, and will cause
 	 * memory leaks if all images have not been destroyed.
 	 */
-	public static void clearBackgroundImageCache() { bgImageCache.clear(); }
+	public static void clearBackgroundImageCache() {
+		bgImageCache.clear();
+		prefetchedBGs.clear();
+		lastBG = null;
+	}
+
+	/**
+	 * Loads the background images of the given beatmaps in the background,
+	 * so that they are ready when focused. Prefetches from a previous call
+	 * that are still loading and no longer requested are cancelled.
+	 * @param beatmaps the beatmaps to prefetch
+	 */
+	public static void prefetchBackgrounds(List<Beatmap> beatmaps) {
+		Set<File> files = new HashSet<File>();
+		for (Beatmap beatmap : beatmaps) {
+			if (beatmap.bg != null)
+				files.add(beatmap.bg);
+		}
+
+		// cancel stale prefetches
+		Iterator<File> iter = prefetchedBGs.iterator();
+		while (iter.hasNext()) {
+			File file = iter.next();
+			ImageLoader imageLoader = bgImageCache.get(file);
+			if (imageLoader == null || !imageLoader.isLoading())
+				iter.remove();
+			else if (!files.contains(file)) {
+				iter.remove();
+				bgImageCache.remove(file);
+				imageLoader.destroy();
+			}
+		}
+
+		// queue new prefetches
+		for (File file : files) {
+			if (bgImageCache.containsKey(file) || !file.isFile())
+				continue;
+			if (lastBG != null)
+				bgImageCache.get(lastBG);  // evict other images before the focused one
+			ImageLoader imageLoader = new ImageLoader(file);
+			bgImageCache.put(file, imageLoader);
+			imageLoader.load(true);
+			prefetchedBGs.add(file);
+		}
+	}
 
 	/** The OSU File object associated with this beatmap. */
 	private File file;
@@ -242,6 +306,9 @@ public class Beatmap implements Comparable<Beatmap> {
 	/** Last object end time (in ms). */
 	public int endTime = -1;
 
+	/** Byte offset of the [HitObjects] section header in the OSU file, or -1 if unknown. */
+	public long hitObjectsOffset = -1;
+
 	/**
 	 * Constructor.
 	 * @param file the file associated with this beatmap
@@ -296,13 +363,23 @@ public class Beatmap implements Comparable<Beatmap> {
 	 * Loads the beatmap background image.
 	 */
 	public void loadBackground() {
-		if (bg == null || bgImageCache.containsKey(bg) || !bg.isFile())
+		if (bg == null)
+			return;
+		if (bgImageCache.containsKey(bg)) {
+			// promote a prefetched image so it is not cancelled
+			bgImageCache.get(bg);
+			prefetchedBGs.remove(bg);
+			lastBG = bg;
+			bgImageCache.trim();
+			return;
+		}
+		if (!bg.isFile())
 			return;
 
 		if (lastBG != null) {
 			ImageLoader lastImageLoader = bgImageCache.get(lastBG);
 			if (lastImageLoader != null && lastImageLoader.isLoading()) {
-				lastImageLoader.interrupt();  // only allow loading one image at a time
+				lastImageLoader.interrupt();  // only allow loading one focused image at a time
 				bgImageCache.remove(lastBG);
 			}
 		}
@@ -521,6 +598,180 @@ public class Beatmap implements Comparable<Beatmap> {
 			this.combo = colors.toArray(new Color[colors.size()]);
 	}
 
+	/**
+	 * Returns the {@link #breaks} field in binary form,
+	 * or null if the field is null.
+	 * <p>
+	 * Format: version byte, varint count, then each time as a zigzag varint
+	 * delta from the previous time.
+	 */
+	public byte[] breaksToBytes() {
+		if (breaks == null)
+			return null;
+
+		ByteBuffer buf = newArrayBuffer(breaks.size() * 5);
+		writeVarInt(buf, breaks.size());
+		int last = 0;
+		for (int i : breaks) {
+			writeVarInt(buf, zigzag(i - last));
+			last = i;
+		}
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+
+	/**
+	 * Sets the {@link #breaks} field from binary data (see {@link #breaksToBytes()}).
+	 * @param b the data
+	 * @throws IllegalArgumentException if the format version is unsupported
+	 */
+	public void breaksFromBytes(byte[] b) {
+		if (b == null)
+			return;
+
+		ByteBuffer buf = readArrayBuffer(b);
+		int size = readVarInt(buf);
+		this.breaks = new ArrayList<Integer>(size);
+		int last = 0;
+		for (int i = 0; i < size; i++) {
+			last += unzigzag(readVarInt(buf));
+			breaks.add(last);
+		}
+	}
+
+	/**
+	 * Returns the {@link #timingPoints} field in binary form,
+	 * or null if the field is null.
+	 * <p>
+	 * Format: version byte, varint count, then for each timing point its time
+	 * as a zigzag varint delta from the previous time, followed by the fields
+	 * written by {@link TimingPoint#writeFields(ByteBuffer)}.
+	 */
+	public byte[] timingPointsToBytes() {
+		if (timingPoints == null)
+			return null;
+
+		ByteBuffer buf = newArrayBuffer(timingPoints.size() * (5 + TimingPoint.FIELDS_SIZE));
+		writeVarInt(buf, timingPoints.size());
+		int last = 0;
+		for (TimingPoint p : timingPoints) {
+			writeVarInt(buf, zigzag(p.getTime() - last));
+			last = p.getTime();
+			p.writeFields(buf);
+		}
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+
+	/**
+	 * Sets the {@link #timingPoints} field from binary data (see {@link #timingPointsToBytes()}).
+	 * @param b the data
+	 * @throws IllegalArgumentException if the format version is unsupported
+	 */
+	public void timingPointsFromBytes(byte[] b) {
+		if (b == null) {
+			this.timingPoints = new ArrayList<TimingPoint>();
+			return;
+		}
+
+		ByteBuffer buf = readArrayBuffer(b);
+		int size = readVarInt(buf);
+		this.timingPoints = new ArrayList<TimingPoint>(size);
+		int last = 0;
+		for (int i = 0; i < size; i++) {
+			last += unzigzag(readVarInt(buf));
+			timingPoints.add(new TimingPoint(last, buf));
+		}
+	}
+
+	/**
+	 * Returns the {@link #combo} field in binary form,
+	 * or null if the field is null.
+	 * <p>
+	 * Format: version byte, varint count, then 3 bytes (RGB) per color.
+	 */
+	public byte[] comboToBytes() {
+		if (combo == null)
+			return null;
+
+		ByteBuffer buf = newArrayBuffer(combo.length * 3);
+		writeVarInt(buf, combo.length);
+		for (int i = 0; i < combo.length; i++) {
+			Color c = combo[i];
+			buf.put((byte) c.getRed());
+			buf.put((byte) c.getGreen());
+			buf.put((byte) c.getBlue());
+		}
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+
+	/**
+	 * Sets the {@link #combo} field from binary data (see {@link #comboToBytes()}).
+	 * @param b the data
+	 * @throws IllegalArgumentException if the format version is unsupported
+	 */
+	public void comboFromBytes(byte[] b) {
+		if (b == null)
+			return;
+
+		ByteBuffer buf = readArrayBuffer(b);
+		int size = readVarInt(buf);
+		if (size < 1)
+			return;
+		Color[] colors = new Color[size];
+		for (int i = 0; i < size; i++)
+			colors[i] = new Color(buf.get() & 0xFF, buf.get() & 0xFF, buf.get() & 0xFF);
+		this.combo = colors;
+	}
+
+	/**
+	 * Allocates a buffer for binary array fields and writes the format version.
+	 * @param size the maximum size of the data (excluding the header)
+	 */
+	private static ByteBuffer newArrayBuffer(int size) {
+		ByteBuffer buf = ByteBuffer.allocate(size + 6).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put(ARRAY_FORMAT_VERSION);
+		return buf;
+	}
+
+	/**
+	 * Wraps binary array field data and checks the format version.
+	 * @param b the data
+	 * @throws IllegalArgumentException if the format version is unsupported
+	 */
+	private static ByteBuffer readArrayBuffer(byte[] b) {
+		ByteBuffer buf = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+		byte version = buf.get();
+		if (version != ARRAY_FORMAT_VERSION)
+			throw new IllegalArgumentException(String.format("Unsupported array format version %d.", version));
+		return buf;
+	}
+
+	/** Writes an unsigned variable-length integer (7 bits per byte). */
+	private static void writeVarInt(ByteBuffer buf, int value) {
+		while ((value & ~0x7F) != 0) {
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+
+	/** Reads an unsigned variable-length integer (7 bits per byte). */
+	private static int readVarInt(ByteBuffer buf) {
+		int value = 0, shift = 0;
+		byte b;
+		do {
+			b = buf.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/** Maps a signed integer to an unsigned integer (small magnitudes to small values). */
+	private static int zigzag(int n) { return (n << 1) ^ (n >> 31); }
+
+	/** Inverse of {@link #zigzag(int)}. */
+	private static int unzigzag(int n) { return (n >>> 1) ^ -(n & 1); }
+
 	/**
 	 * Returns the {@link #sliderBorder} field formatted as a string,
 	 * or null if the field is null.
@@ -19,12 +19,9 @@
 package itdelatrisu.opsu.beatmap;
 
 import itdelatrisu.opsu.db.BeatmapDB;
-import itdelatrisu.opsu.objects.curves.Curve;
-import itdelatrisu.opsu.objects.curves.Vec2f;
+import itdelatrisu.opsu.objects.curves.CurveSampler;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 import org.newdawn.slick.util.Log;
 
@@ -57,11 +54,72 @@ public class BeatmapDifficultyCalculator {
 	/** The weighting of each strain value decays to 0.9 * its previous value. */
 	private static final double DECAY_WEIGHT = 0.9;
 
+	/**
+	 * Factor by how much speed / aim strain decays per second. Those values are results
+	 * of tweaking a lot and taking into account general feedback.
+	 * Opinionated observation: Speed is easier to maintain than accurate jumps.
+	 */
+	private static final double[] DECAY_BASE = { 0.3, 0.15 };
+
+	/** Almost the normed diameter of a circle (104 osu pixel). That is -after- position transforming. */
+	private static final double ALMOST_DIAMETER = 90;
+
+	/**
+	 * Pseudo threshold values to distinguish between "singles" and "streams".
+	 * Of course the border can not be defined clearly, therefore the algorithm
+	 * has a smooth transition between those values. They also are based on tweaking
+	 * and general feedback.
+	 */
+	private static final double STREAM_SPACING_TRESHOLD = 110, SINGLE_SPACING_TRESHOLD = 125;
+
+	/**
+	 * Scaling values for weightings to keep aim and speed difficulty in balance.
+	 * Found from testing a very large map pool (containing all ranked maps) and
+	 * keeping the average values the same.
+	 */
+	private static final double[] SPACING_WEIGHT_SCALING = { 1400, 26.25 };
+
+	/**
+	 * In milliseconds. The smaller the value, the more accurate sliders are approximated.
+	 * 0 leads to an infinite loop, so use something bigger.
+	 */
+	private static final int LAZY_SLIDER_STEP_LENGTH = 1;
+
 	/** The beatmap. */
 	private final Beatmap beatmap;
 
-	/** The beatmap's hit objects. */
-	private tpHitObject[] tpHitObjects;
+	/** The number of hit objects. */
+	private int objectCount;
+
+	/** The hit object times. */
+	private int[] times;
+
+	/** The hit object types (HitObject type flags). */
+	private int[] types;
+
+	/** The slider repeat counts. */
+	private int[] repeats;
+
+	/** The normalized start and end positions. */
+	private float[] startX, startY, endX, endY;
+
+	/** Whether a normalized end position exists. */
+	private boolean[] hasEnd;
+
+	/** The lazy slider lengths. */
+	private float[] lazyLengthFirst, lazyLengthSubsequent;
+
+	/** The strain values, indexed by the {@code DIFFICULTY_*} constants. */
+	private double[][] strains;
+
+	/** Strain peaks of each time interval (scratch space for {@link #calculateDifficulty(int)}). */
+	private double[] highestStrains;
+
+	/** The slider curve sampler. */
+	private CurveSampler curveSampler;
+
+	/** The lazy cursor position (scratch space for {@link #moveLazyCursor(float, float, float, int, int)}). */
+	private float cursorX, cursorY;
 
 	/** The computed star rating. */
 	private double starRating = -1;
@@ -113,10 +171,10 @@ public class BeatmapDifficultyCalculator {
 			return;
 		}
 
-		// Fill our custom tpHitObject class, that carries additional information
+		// Fill the hit object arrays with the additional information needed for the strains
 		// TODO: apply hit object stacking algorithm?
 		HitObject[] hitObjects = beatmap.objects;
-		this.tpHitObjects = new tpHitObject[hitObjects.length];
+		allocate(hitObjects.length);
 		float circleRadius = (PLAYFIELD_WIDTH / 16.0f) * (1.0f - 0.7f * (beatmap.circleSize - 5.0f) / 5.0f);
 		int timingPointIndex = 0;
 		float beatLengthBase = 1, beatLength = 1;
@@ -143,7 +201,7 @@ public class BeatmapDifficultyCalculator {
 				timingPointIndex++;
 			}
 
-			tpHitObjects[i] = new tpHitObject(hitObject, circleRadius, beatmap, beatLength);
+			setHitObject(i, hitObject, circleRadius, beatLength);
 		}
 
 		if (!calculateStrainValues()) {
@@ -191,6 +249,138 @@ public class BeatmapDifficultyCalculator {
 				Math.abs(stars[DIFFICULTY_SPEED] - stars[DIFFICULTY_AIM]) * EXTREME_SCALING_FACTOR;
 	}
 
+	/**
+	 * Allocates the hit object arrays.
+	 * @param count the number of hit objects
+	 */
+	private void allocate(int count) {
+		objectCount = count;
+		times = new int[count];
+		types = new int[count];
+		repeats = new int[count];
+		startX = new float[count];
+		startY = new float[count];
+		endX = new float[count];
+		endY = new float[count];
+		hasEnd = new boolean[count];
+		lazyLengthFirst = new float[count];
+		lazyLengthSubsequent = new float[count];
+		strains = new double[2][count];
+		Arrays.fill(strains[DIFFICULTY_SPEED], 1);
+		Arrays.fill(strains[DIFFICULTY_AIM], 1);
+	}
+
+	/**
+	 * Fills in the arrays for a hit object.
+	 * @param i the hit object index
+	 * @param hitObject the hit object
+	 * @param circleRadius the circle radius
+	 * @param beatLength the current beat length
+	 */
+	private void setHitObject(int i, HitObject hitObject, float circleRadius, float beatLength) {
+		times[i] = hitObject.getTime();
+		types[i] = hitObject.getType();
+		repeats[i] = hitObject.getRepeatCount();
+
+		// We will scale everything by this factor, so we can assume a uniform CircleSize among beatmaps.
+		float scalingFactor = (52.0f / circleRadius);
+		startX[i] = hitObject.getX() * scalingFactor;
+		startY[i] = hitObject.getY() * scalingFactor;
+
+		// Calculate approximation of lazy movement on the slider
+		if (hitObject.isSlider()) {
+			if (curveSampler == null)
+				curveSampler = new CurveSampler();
+			curveSampler.sample(hitObject);
+
+			// Not sure if this is correct, but here we do not need 100% exact values. This comes pretty darn close in my tests.
+			float sliderFollowCircleRadius = circleRadius * 3;
+
+			int segmentLength = (int) hitObject.getSliderTime(beatmap.sliderMultiplier, beatLength);
+			int segmentEndTime = times[i] + segmentLength;
+
+			// For simplifying this step we use actual osu! coordinates and simply scale the length,
+			// that we obtain by the ScalingFactor later
+			cursorX = hitObject.getX();
+			cursorY = hitObject.getY();
+
+			// Actual computation of the first lazy curve.
+			// The slider position was always sampled at an integer number of segments,
+			// so the cursor follows the curve's start point for the whole first segment.
+			lazyLengthFirst[i] = moveLazyCursor(curveSampler.getStartX(), curveSampler.getStartY(),
+					sliderFollowCircleRadius, times[i] + LAZY_SLIDER_STEP_LENGTH, segmentEndTime) * scalingFactor;
+
+			// If we have an odd amount of repetitions the current position will be the end of the slider.
+			// Note that this will -always- be triggered if baseHitObject.SegmentCount <= 1, because
+			// baseHitObject.SegmentCount can not be smaller than 1. Therefore normalizedEndPosition will
+			// always be initialized
+			if (repeats[i] % 2 == 1)
+				setEnd(i, cursorX * scalingFactor, cursorY * scalingFactor);
+
+			// If we have more than one segment, then we also need to compute the length of subsequent
+			// lazy curves. They are different from the first one, since the first one starts right
+			// at the beginning of the slider.
+			if (repeats[i] > 1) {
+				// Use the next segment (which always samples the curve's end point)
+				segmentEndTime += segmentLength;
+				lazyLengthSubsequent[i] = moveLazyCursor(curveSampler.getEndX(), curveSampler.getEndY(),
+						sliderFollowCircleRadius, segmentEndTime - segmentLength + LAZY_SLIDER_STEP_LENGTH, segmentEndTime) * scalingFactor;
+
+				// If we have an even amount of repetitions the current position will be the end of the slider
+				if (repeats[i] % 2 == 0) // == 1)
+					setEnd(i, cursorX * scalingFactor, cursorY * scalingFactor);
+			}
+		} else {
+			// We have a normal HitCircle or a spinner
+			setEnd(i, startX[i], startY[i]);
+		}
+	}
+
+	/**
+	 * Sets the normalized end position of a hit object.
+	 * @param i the hit object index
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 */
+	private void setEnd(int i, float x, float y) {
+		endX[i] = x;
+		endY[i] = y;
+		hasEnd[i] = true;
+	}
+
+	/**
+	 * Moves the lazy cursor towards a fixed slider position once per step in
+	 * {@code [startTime, endTime)}, keeping it within the follow circle.
+	 * Stops early once the cursor no longer moves, since every further step
+	 * would be identical.
+	 * @param x the slider x coordinate
+	 * @param y the slider y coordinate
+	 * @param followRadius the follow circle radius
+	 * @param startTime the first step time
+	 * @param endTime the end time (exclusive)
+	 * @return the distance moved by the cursor
+	 */
+	private float moveLazyCursor(float x, float y, float followRadius, int startTime, int endTime) {
+		float length = 0;
+		for (int time = startTime; time < endTime; time += LAZY_SLIDER_STEP_LENGTH) {
+			float dx = x - cursorX, dy = y - cursorY;
+			float distance = (float) Math.sqrt(dx * dx + dy * dy);
+
+			// Did we move away too far?
+			if (!(distance > followRadius))
+				break;
+
+			// Yep, we need to move the cursor
+			dx /= distance;  // Obtain the direction of difference. We do no longer need the actual difference
+			dy /= distance;
+			distance -= followRadius;
+			cursorX += dx * distance;  // We move the cursor just as far as needed to stay in the follow circle
+			cursorY += dy * distance;
+			length += distance;
+		}
+		return length;
+	}
+
 	/**
 	 * Computes the strain values for the beatmap.
 	 * @return true if successful, false otherwise
@@ -198,21 +388,22 @@ public class BeatmapDifficultyCalculator {
 	private boolean calculateStrainValues() {
 		// Traverse hitObjects in pairs to calculate the strain value of NextHitObject from
 		// the strain value of CurrentHitObject and environment.
-		if (tpHitObjects.length == 0) {
+		if (objectCount == 0) {
 			Log.warn("Can not compute difficulty of empty beatmap.");
 			return false;
 		}
 
-		tpHitObject currentHitObject = tpHitObjects[0];
-		tpHitObject nextHitObject;
-		int index = 0;
-
 		// First hitObject starts at strain 1. 1 is the default for strain values,
-		// so we don't need to set it here. See tpHitObject.
-		while (++index < tpHitObjects.length) {
-			nextHitObject = tpHitObjects[index];
-			nextHitObject.calculateStrains(currentHitObject);
-			currentHitObject = nextHitObject;
+		// so we don't need to set it here. See allocate().
+		for (int index = 1; index < objectCount; index++) {
+			// sliders with no repeats have no end position to measure spacing from
+			if (!hasEnd[index - 1] && (types[index] & HitObject.TYPE_SPINNER) == 0 &&
+			    (types[index] & (HitObject.TYPE_CIRCLE | HitObject.TYPE_SLIDER)) > 0) {
+				Log.warn(String.format("Slider at %d ms has no end position.", times[index - 1]));
+				return false;
+			}
+			calculateSpecificStrain(index, DIFFICULTY_SPEED);
+			calculateSpecificStrain(index, DIFFICULTY_AIM);
 		}
 
 		return true;
@@ -225,25 +416,28 @@ public class BeatmapDifficultyCalculator {
 	 */
 	private double calculateDifficulty(int type) {
 		// Find the highest strain value within each strain step
-		List<Double> highestStrains = new ArrayList<Double>();
+		if (highestStrains == null)
+			highestStrains = new double[64];
+		int highestStrainCount = 0;
 		double intervalEndTime = STRAIN_STEP;
 		double maximumStrain = 0; // We need to keep track of the maximum strain in the current interval
 
-		tpHitObject previousHitObject = null;
-		for (int i = 0; i < tpHitObjects.length; i++) {
-			tpHitObject hitObject = tpHitObjects[i];
-
+		double[] strain = strains[type];
+		int previous = -1;
+		for (int i = 0; i < objectCount; i++) {
 			// While we are beyond the current interval push the currently available maximum to our strain list
-			while (hitObject.baseHitObject.getTime() > intervalEndTime) {
-				highestStrains.add(maximumStrain);
+			while (times[i] > intervalEndTime) {
+				if (highestStrainCount == highestStrains.length)
+					highestStrains = Arrays.copyOf(highestStrains, highestStrainCount * 2);
+				highestStrains[highestStrainCount++] = maximumStrain;
 
 				// The maximum strain of the next interval is not zero by default! We need to take the last
 				// hitObject we encountered, take its strain and apply the decay until the beginning of the next interval.
-				if (previousHitObject == null)
+				if (previous < 0)
 					maximumStrain = 0;
 				else {
-					double decay = Math.pow(tpHitObject.DECAY_BASE[type], (intervalEndTime - previousHitObject.baseHitObject.getTime()) / 1000);
-					maximumStrain = previousHitObject.getStrain(type) * decay;
+					double decay = Math.pow(DECAY_BASE[type], (intervalEndTime - times[previous]) / 1000);
+					maximumStrain = strain[previous] * decay;
 				}
 
 				// Go to the next time interval
@@ -251,171 +445,23 @@ public class BeatmapDifficultyCalculator {
 			}
 
 			// Obtain maximum strain
-			if (hitObject.getStrain(type) > maximumStrain)
-				maximumStrain = hitObject.getStrain(type);
+			if (strain[i] > maximumStrain)
+				maximumStrain = strain[i];
 
-			previousHitObject = hitObject;
+			previous = i;
 		}
 
 		// Build the weighted sum over the highest strains for each interval
 		double difficulty = 0;
 		double weight = 1;
-		Collections.sort(highestStrains, Collections.reverseOrder()); // Sort from highest to lowest strain.
-		for (double strain : highestStrains) {
-			difficulty += weight * strain;
+		Arrays.sort(highestStrains, 0, highestStrainCount);
+		for (int i = highestStrainCount - 1; i >= 0; i--) { // Sum from highest to lowest strain.
+			difficulty += weight * highestStrains[i];
 			weight *= DECAY_WEIGHT;
 		}
 
 		return difficulty;
 	}
-}
-
-/**
- * Hit object helper class for calculating strains.
- */
-class tpHitObject {
-	/**
-	 * Factor by how much speed / aim strain decays per second. Those values are results
-	 * of tweaking a lot and taking into account general feedback.
-	 * Opinionated observation: Speed is easier to maintain than accurate jumps.
-	 */
-	public static final double[] DECAY_BASE = { 0.3, 0.15 };
-
-	/** Almost the normed diameter of a circle (104 osu pixel). That is -after- position transforming. */
-	private static final double ALMOST_DIAMETER = 90;
-
-	/**
-	 * Pseudo threshold values to distinguish between "singles" and "streams".
-	 * Of course the border can not be defined clearly, therefore the algorithm
-	 * has a smooth transition between those values. They also are based on tweaking
-	 * and general feedback.
-	 */
-	private static final double STREAM_SPACING_TRESHOLD = 110, SINGLE_SPACING_TRESHOLD = 125;
-
-	/**
-	 * Scaling values for weightings to keep aim and speed difficulty in balance.
-	 * Found from testing a very large map pool (containing all ranked maps) and
-	 * keeping the average values the same.
-	 */
-	private static final double[] SPACING_WEIGHT_SCALING = { 1400, 26.25 };
-
-	/**
-	 * In milliseconds. The smaller the value, the more accurate sliders are approximated.
-	 * 0 leads to an infinite loop, so use something bigger.
-	 */
-	private static final int LAZY_SLIDER_STEP_LENGTH = 1;
-
-	/** The base hit object. */
-	public final HitObject baseHitObject;
-
-	/** The strain values, indexed by the {@code DIFFICULTY_*} constants. */
-	private double[] strains = { 1, 1 };
-
-	/** The normalized start and end positions. */
-	private Vec2f normalizedStartPosition, normalizedEndPosition;
-
-	/** The slider lengths. */
-	private float lazySliderLengthFirst = 0, lazySliderLengthSubsequent = 0;
-
-	/**
-	 * Constructor.
-	 * @param baseHitObject the base hit object
-	 * @param circleRadius the circle radius
-	 * @param beatmap the beatmap that contains the hit object
-	 * @param beatLength the current beat length
-	 */
-	public tpHitObject(HitObject baseHitObject, float circleRadius, Beatmap beatmap, float beatLength) {
-		this.baseHitObject = baseHitObject;
-
-		// We will scale everything by this factor, so we can assume a uniform CircleSize among beatmaps.
-		float scalingFactor = (52.0f / circleRadius);
-		normalizedStartPosition = new Vec2f(baseHitObject.getX(), baseHitObject.getY()).scale(scalingFactor);
-
-		// Calculate approximation of lazy movement on the slider
-		if (baseHitObject.isSlider()) {
-			tpSlider slider = new tpSlider(baseHitObject, beatmap.sliderMultiplier, beatLength);
-
-			// Not sure if this is correct, but here we do not need 100% exact values. This comes pretty darn close in my tests.
-			float sliderFollowCircleRadius = circleRadius * 3;
-
-			int segmentLength = slider.getSegmentLength(); // baseHitObject.Length / baseHitObject.SegmentCount;
-			int segmentEndTime = baseHitObject.getTime() + segmentLength;
-
-			// For simplifying this step we use actual osu! coordinates and simply scale the length,
-			// that we obtain by the ScalingFactor later
-			Vec2f cursorPos = new Vec2f(baseHitObject.getX(), baseHitObject.getY());
-
-			// Actual computation of the first lazy curve
-			for (int time = baseHitObject.getTime() + LAZY_SLIDER_STEP_LENGTH; time < segmentEndTime; time += LAZY_SLIDER_STEP_LENGTH) {
-				Vec2f difference = slider.getPositionAtTime(time).sub(cursorPos);
-				float distance = difference.len();
-
-				// Did we move away too far?
-				if (distance > sliderFollowCircleRadius) {
-					// Yep, we need to move the cursor
-					difference.normalize(); // Obtain the direction of difference. We do no longer need the actual difference
-					distance -= sliderFollowCircleRadius;
-					cursorPos.add(difference.cpy().scale(distance)); // We move the cursor just as far as needed to stay in the follow circle
-					lazySliderLengthFirst += distance;
-				}
-			}
-
-			lazySliderLengthFirst *= scalingFactor;
-
-			// If we have an odd amount of repetitions the current position will be the end of the slider.
-			// Note that this will -always- be triggered if baseHitObject.SegmentCount <= 1, because
-			// baseHitObject.SegmentCount can not be smaller than 1. Therefore normalizedEndPosition will
-			// always be initialized
-			if (baseHitObject.getRepeatCount() % 2 == 1)
-				normalizedEndPosition = cursorPos.cpy().scale(scalingFactor);
-
-			// If we have more than one segment, then we also need to compute the length of subsequent
-			// lazy curves. They are different from the first one, since the first one starts right
-			// at the beginning of the slider.
-			if (baseHitObject.getRepeatCount() > 1) {
-				// Use the next segment
-				segmentEndTime += segmentLength;
-
-				for (int time = segmentEndTime - segmentLength + LAZY_SLIDER_STEP_LENGTH; time < segmentEndTime; time += LAZY_SLIDER_STEP_LENGTH) {
-					Vec2f difference = slider.getPositionAtTime(time).sub(cursorPos);
-					float distance = difference.len();
-
-					// Did we move away too far?
-					if (distance > sliderFollowCircleRadius) {
-						// Yep, we need to move the cursor
-						difference.normalize(); // Obtain the direction of difference. We do no longer need the actual difference
-						distance -= sliderFollowCircleRadius;
-						cursorPos.add(difference.cpy().scale(distance)); // We move the cursor just as far as needed to stay in the follow circle
-						lazySliderLengthSubsequent += distance;
-					}
-				}
-
-				lazySliderLengthSubsequent *= scalingFactor;
-
-				// If we have an even amount of repetitions the current position will be the end of the slider
-				if (baseHitObject.getRepeatCount() % 2 == 0) // == 1)
-					normalizedEndPosition = cursorPos.cpy().scale(scalingFactor);
-			}
-		} else {
-			// We have a normal HitCircle or a spinner
-			normalizedEndPosition = normalizedStartPosition.cpy(); //baseHitObject.EndPosition * ScalingFactor;
-		}
-	}
-
-	/**
-	 * Returns the strain value for a difficulty type.
-	 * @param type the difficulty type ({@code DIFFICULTY_* constant})
-	 */
-	public double getStrain(int type) { return strains[type]; }
-
-	/**
-	 * Calculates the strain values given the previous hit object.
-	 * @param previousHitObject the previous hit object
-	 */
-	public void calculateStrains(tpHitObject previousHitObject) {
-		calculateSpecificStrain(previousHitObject, BeatmapDifficultyCalculator.DIFFICULTY_SPEED);
-		calculateSpecificStrain(previousHitObject, BeatmapDifficultyCalculator.DIFFICULTY_AIM);
-	}
 
 	/**
 	 * Returns the spacing weight for a distance.
@@ -425,7 +471,7 @@ class tpHitObject {
 	private static double spacingWeight(double distance, int type) {
 		// Caution: The subjective values are strong with this one
 		switch (type) {
-		case BeatmapDifficultyCalculator.DIFFICULTY_SPEED:
+		case DIFFICULTY_SPEED:
 			double weight;
 			if (distance > SINGLE_SPACING_TRESHOLD)
 				weight = 2.5;
@@ -438,7 +484,7 @@ class tpHitObject {
 			else
 				weight = 0.95;
 			return weight;
-		case BeatmapDifficultyCalculator.DIFFICULTY_AIM:
+		case DIFFICULTY_AIM:
 			return Math.pow(distance, 0.99);
 		default:
 			// Should never happen.
@@ -447,40 +493,42 @@ class tpHitObject {
 	}
 
 	/**
-	 * Calculates the strain value for a difficulty type given the previous hit object.
-	 * @param previousHitObject the previous hit object
+	 * Calculates the strain value of a hit object for a difficulty type given the previous hit object.
+	 * @param index the hit object index (the previous hit object is at {@code index - 1})
 	 * @param type the difficulty type ({@code DIFFICULTY_* constant})
 	 */
-	private void calculateSpecificStrain(tpHitObject previousHitObject, int type) {
+	private void calculateSpecificStrain(int index, int type) {
+		int previous = index - 1;
 		double addition = 0;
-		double timeElapsed = baseHitObject.getTime() - previousHitObject.baseHitObject.getTime();
+		double timeElapsed = times[index] - times[previous];
 		double decay = Math.pow(DECAY_BASE[type], timeElapsed / 1000);
 
-		if (baseHitObject.isSpinner()) {
+		int hitObjectType = types[index];
+		if ((hitObjectType & HitObject.TYPE_SPINNER) > 0) {
 			// Do nothing for spinners
-		} else if (baseHitObject.isSlider()) {
+		} else if ((hitObjectType & HitObject.TYPE_SLIDER) > 0) {
 			switch (type) {
-			case BeatmapDifficultyCalculator.DIFFICULTY_SPEED:
+			case DIFFICULTY_SPEED:
 				// For speed strain we treat the whole slider as a single spacing entity,
 				// since "Speed" is about how hard it is to click buttons fast.
 				// The spacing weight exists to differentiate between being able to easily
 				// alternate or having to single.
-				addition = spacingWeight(previousHitObject.lazySliderLengthFirst +
-						previousHitObject.lazySliderLengthSubsequent * (Math.max(previousHitObject.baseHitObject.getRepeatCount(), 1) - 1) +
-						distanceTo(previousHitObject), type) * SPACING_WEIGHT_SCALING[type];
+				addition = spacingWeight(lazyLengthFirst[previous] +
+						lazyLengthSubsequent[previous] * (Math.max(repeats[previous], 1) - 1) +
+						distance(index, previous), type) * SPACING_WEIGHT_SCALING[type];
 				break;
 
-			case BeatmapDifficultyCalculator.DIFFICULTY_AIM:
+			case DIFFICULTY_AIM:
 				// For Aim strain we treat each slider segment and the jump after the end of
 				// the slider as separate jumps, since movement-wise there is no difference
 				// to multiple jumps.
-				addition = (spacingWeight(previousHitObject.lazySliderLengthFirst, type) +
-						spacingWeight(previousHitObject.lazySliderLengthSubsequent, type) * (Math.max(previousHitObject.baseHitObject.getRepeatCount(), 1) - 1) +
-						spacingWeight(distanceTo(previousHitObject), type)) * SPACING_WEIGHT_SCALING[type];
+				addition = (spacingWeight(lazyLengthFirst[previous], type) +
+						spacingWeight(lazyLengthSubsequent[previous], type) * (Math.max(repeats[previous], 1) - 1) +
+						spacingWeight(distance(index, previous), type)) * SPACING_WEIGHT_SCALING[type];
 				break;
 			}
-		} else if (baseHitObject.isCircle()) {
-			addition = spacingWeight(distanceTo(previousHitObject), type) * SPACING_WEIGHT_SCALING[type];
+		} else if ((hitObjectType & HitObject.TYPE_CIRCLE) > 0) {
+			addition = spacingWeight(distance(index, previous), type) * SPACING_WEIGHT_SCALING[type];
 		}
 
 		// Scale addition by the time, that elapsed. Filter out HitObjects that are too
@@ -488,57 +536,17 @@ class tpHitObject {
 		// You will never find maps that require this amongst ranked maps.
 		addition /= Math.max(timeElapsed, 50);
 
-		strains[type] = previousHitObject.strains[type] * decay + addition;
+		strains[type][index] = strains[type][previous] * decay + addition;
 	}
 
 	/**
-	 * Returns the distance to another hit object.
-	 * @param other the other hit object
+	 * Returns the distance from a hit object's start position to another hit object's end position.
+	 * @param index the hit object index
+	 * @param other the other hit object index
 	 */
-	public double distanceTo(tpHitObject other) {
+	private double distance(int index, int other) {
 		// Scale the distance by circle size.
-		return (normalizedStartPosition.cpy().sub(other.normalizedEndPosition)).len();
-	}
-}
-
-/**
- * Slider helper class to fill in some missing pieces needed in the strain calculations.
- */
-class tpSlider {
-	/** The slider start time. */
-	private final int startTime;
-
-	/** The time duration of the slider, in milliseconds. */
-	private final int sliderTime;
-
-	/** The slider Curve. */
-	private final Curve curve;
-
-	/**
-	 * Constructor.
-	 * @param hitObject the hit object
-	 * @param sliderMultiplier the slider movement speed multiplier
-	 * @param beatLength the beat length
-	 */
-	public tpSlider(HitObject hitObject, float sliderMultiplier, float beatLength) {
-		this.startTime = hitObject.getTime();
-		this.sliderTime = (int) hitObject.getSliderTime(sliderMultiplier, beatLength);
-		this.curve = hitObject.getSliderCurve(false);
-	}
-
-	/**
-	 * Returns the time duration of a slider segment, in milliseconds.
-	 */
-	public int getSegmentLength() { return sliderTime; }
-
-	/**
-	 * Returns the coordinates of the slider at a given track position.
-	 * @param time the track position
-	 */
-	public Vec2f getPositionAtTime(int time) {
-		float t = (time - startTime) / sliderTime;
-		float floor = (float) Math.floor(t);
-		t = (floor % 2 == 0) ? t - floor : floor + 1 - t;
-		return curve.pointAt(t);
+		float dx = startX[index] - endX[other], dy = startY[index] - endY[other];
+		return (float) Math.sqrt(dx * dx + dy * dy);
 	}
 }
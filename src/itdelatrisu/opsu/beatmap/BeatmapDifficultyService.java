@@ -0,0 +1,337 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.beatmap;
+
+import itdelatrisu.opsu.db.BeatmapDB;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.newdawn.slick.util.Log;
+
+/**
+ * Computes missing beatmap star ratings in the background.
+ * <p>
+ * Beatmaps are handed to a small pool of low-priority worker threads, with the
+ * focused beatmap set and its neighbors taking precedence over the rest of the
+ * library. Workers only operate on detached copies of the beatmaps; all database
+ * access and all writes to the shared {@link Beatmap} objects happen in
+ * {@link #update()}, which must be called from the main thread.
+ * Finished ratings are applied immediately, but written to the database in
+ * batches to keep transaction commits off most frames.
+ */
+public class BeatmapDifficultyService {
+	/** Maximum number of jobs handed to the worker pool at once. */
+	private static final int MAX_QUEUED_JOBS = 8;
+
+	/** Number of neighboring beatmap sets (in each direction) to prioritize. */
+	private static final int NEIGHBOR_COUNT = 3;
+
+	/** Number of unsaved star ratings that triggers a database write. */
+	private static final int FLUSH_SIZE = 64;
+
+	/** Maximum time, in milliseconds, that star ratings may remain unsaved. */
+	private static final int FLUSH_INTERVAL = 1000;
+
+	/** A finished star rating calculation. */
+	private static class Result {
+		/** The beatmap. */
+		private final Beatmap beatmap;
+
+		/** The star rating (-1 if the calculation failed). */
+		private final double starRating;
+
+		/** The service generation in which the job was submitted. */
+		private final int generation;
+
+		/** Constructor. */
+		public Result(Beatmap beatmap, double starRating, int generation) {
+			this.beatmap = beatmap;
+			this.starRating = starRating;
+			this.generation = generation;
+		}
+	}
+
+	/** The worker pool (created on first use). */
+	private static ThreadPoolExecutor executor;
+
+	/** Beatmaps to calculate before anything else. */
+	private static final ArrayDeque<Beatmap> priorityQueue = new ArrayDeque<Beatmap>();
+
+	/** All remaining beatmaps in the library. */
+	private static final ArrayDeque<Beatmap> libraryQueue = new ArrayDeque<Beatmap>();
+
+	/** Beatmaps already handed to the workers in this generation. */
+	private static final Map<Beatmap, Boolean> submitted = new IdentityHashMap<Beatmap, Boolean>();
+
+	/** Finished calculations, waiting to be applied on the main thread. */
+	private static final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<Result>();
+
+	/** Applied star ratings not yet written to the database. */
+	private static final List<Beatmap> unsaved = new ArrayList<Beatmap>();
+
+	/** Time of the first unsaved star rating (see {@link System#currentTimeMillis()}). */
+	private static long unsavedTime;
+
+	/** Number of submitted jobs whose results have not yet been applied. */
+	private static int pendingJobs = 0;
+
+	/** Whether the library has been queued in this generation. */
+	private static boolean libraryQueued = false;
+
+	/** The current generation (incremented on each reset to discard stale results). */
+	private static int generation = 0;
+
+	// This class should not be instantiated.
+	private BeatmapDifficultyService() {}
+
+	/**
+	 * Prioritizes the beatmaps in the given node's set and its neighbors,
+	 * and queues the rest of the library if not done already.
+	 * @param node the focused beatmap set node
+	 */
+	public static void prioritize(BeatmapSetNode node) {
+		BeatmapSetList list = BeatmapSetList.get();
+		if (!libraryQueued) {
+			for (BeatmapSetNode n : list.getParsedNodes())
+				addUncalculated(n.getBeatmapSet(), libraryQueue);
+			libraryQueued = true;
+		}
+
+		priorityQueue.clear();
+		if (node != null) {
+			addUncalculated(node.getBeatmapSet(), priorityQueue);
+			for (int i = 1; i <= NEIGHBOR_COUNT; i++) {
+				BeatmapSetNode prev = list.getBaseNode(node.index - i), next = list.getBaseNode(node.index + i);
+				if (prev != null)
+					addUncalculated(prev.getBeatmapSet(), priorityQueue);
+				if (next != null)
+					addUncalculated(next.getBeatmapSet(), priorityQueue);
+			}
+		}
+		submitJobs();
+	}
+
+	/**
+	 * Applies all finished results and submits new jobs to the workers.
+	 * Applied results are written to the database in a single transaction once
+	 * {@link #FLUSH_SIZE} of them are pending or after {@link #FLUSH_INTERVAL}.
+	 * Must be called from the main thread.
+	 */
+	public static void update() {
+		boolean changed = false;
+		Result result;
+		while ((result = results.poll()) != null) {
+			if (result.generation != generation)
+				continue;
+			pendingJobs--;
+			if (result.starRating < 0 || result.beatmap.starRating >= 0)
+				continue;
+			result.beatmap.starRating = result.starRating;
+			if (unsaved.isEmpty())
+				unsavedTime = System.currentTimeMillis();
+			unsaved.add(result.beatmap);
+			changed = true;
+		}
+		if (changed)
+			BeatmapSetList.get().starRatingsChanged();
+		if (unsaved.size() >= FLUSH_SIZE ||
+		    (!unsaved.isEmpty() && System.currentTimeMillis() - unsavedTime >= FLUSH_INTERVAL))
+			flush();
+
+		submitJobs();
+	}
+
+	/**
+	 * Writes all applied star ratings to the database.
+	 * Must be called from the main thread.
+	 */
+	public static void flush() {
+		if (unsaved.isEmpty())
+			return;
+		BeatmapDB.setStars(unsaved);
+		unsaved.clear();
+	}
+
+	/**
+	 * Discards all queued beatmaps and unapplied results (e.g. before the library is reloaded).
+	 * Jobs that are already running will finish, but their results will be ignored.
+	 */
+	public static void reset() {
+		flush();
+		generation++;
+		priorityQueue.clear();
+		libraryQueue.clear();
+		submitted.clear();
+		results.clear();
+		pendingJobs = 0;
+		libraryQueued = false;
+		if (executor != null)
+			executor.getQueue().clear();
+	}
+
+	/**
+	 * Adds all beatmaps in a set without a star rating to a queue.
+	 * @param beatmapSet the beatmap set
+	 * @param queue the queue
+	 */
+	private static void addUncalculated(BeatmapSet beatmapSet, ArrayDeque<Beatmap> queue) {
+		for (Beatmap beatmap : beatmapSet) {
+			if (beatmap.starRating < 0 && !submitted.containsKey(beatmap))
+				queue.add(beatmap);
+		}
+	}
+
+	/**
+	 * Returns the next beatmap to calculate, or null if none.
+	 */
+	private static Beatmap nextBeatmap() {
+		while (!priorityQueue.isEmpty() || !libraryQueue.isEmpty()) {
+			Beatmap beatmap = !priorityQueue.isEmpty() ? priorityQueue.poll() : libraryQueue.poll();
+			if (beatmap.starRating < 0 && !submitted.containsKey(beatmap))
+				return beatmap;
+		}
+		return null;
+	}
+
+	/**
+	 * Fills the worker queue up to its capacity.
+	 * Array fields for the detached copies are loaded here in one batch,
+	 * so that the workers never touch the database.
+	 */
+	private static void submitJobs() {
+		int capacity = MAX_QUEUED_JOBS - pendingJobs;
+		if (capacity <= 0)
+			return;
+
+		List<Beatmap> sources = new ArrayList<Beatmap>(capacity);
+		List<Beatmap> copies = new ArrayList<Beatmap>(capacity);
+		List<Beatmap> loadList = new ArrayList<Beatmap>(capacity);
+		Beatmap beatmap;
+		while (sources.size() < capacity && (beatmap = nextBeatmap()) != null) {
+			Beatmap copy = createDetachedCopy(beatmap);
+			sources.add(beatmap);
+			copies.add(copy);
+			if (copy.timingPoints == null)
+				loadList.add(copy);
+			submitted.put(beatmap, Boolean.TRUE);
+		}
+		if (sources.isEmpty())
+			return;
+		if (!loadList.isEmpty())
+			BeatmapDB.load(loadList, BeatmapDB.LOAD_ARRAY);
+
+		if (executor == null)
+			executor = createExecutor();
+		for (int i = 0, n = sources.size(); i < n; i++) {
+			executor.execute(new CalculationJob(sources.get(i), copies.get(i), generation));
+			pendingJobs++;
+		}
+	}
+
+	/**
+	 * Returns a copy of a beatmap containing only the fields needed for difficulty
+	 * calculations, so that hit objects are never parsed into the shared object.
+	 * @param beatmap the beatmap
+	 */
+	private static Beatmap createDetachedCopy(Beatmap beatmap) {
+		Beatmap copy = new Beatmap(beatmap.getFile());
+		copy.title = beatmap.title;
+		copy.artist = beatmap.artist;
+		copy.version = beatmap.version;
+		copy.source = beatmap.source;
+		copy.circleSize = beatmap.circleSize;
+		copy.sliderMultiplier = beatmap.sliderMultiplier;
+		copy.hitObjectCircle = beatmap.hitObjectCircle;
+		copy.hitObjectSlider = beatmap.hitObjectSlider;
+		copy.hitObjectSpinner = beatmap.hitObjectSpinner;
+		copy.hitObjectsOffset = beatmap.hitObjectsOffset;
+		if (beatmap.timingPoints != null) {
+			copy.timingPoints = beatmap.timingPoints;
+			copy.combo = beatmap.combo;
+		}
+		return copy;
+	}
+
+	/**
+	 * Creates the worker pool.
+	 */
+	private static ThreadPoolExecutor createExecutor() {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+			threads, threads, 30, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_QUEUED_JOBS),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, String.format("BeatmapDifficultyService-%d", threadCount.incrementAndGet()));
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			}
+		);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/** Calculates the star rating of a detached beatmap copy. */
+	private static class CalculationJob implements Runnable {
+		/** The shared beatmap (not modified here). */
+		private final Beatmap beatmap;
+
+		/** The detached copy to calculate. */
+		private final Beatmap copy;
+
+		/** The service generation in which the job was submitted. */
+		private final int generation;
+
+		/** Constructor. */
+		public CalculationJob(Beatmap beatmap, Beatmap copy, int generation) {
+			this.beatmap = beatmap;
+			this.copy = copy;
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			double starRating = -1;
+			try {
+				if (copy.timingPoints != null) {
+					BeatmapDifficultyCalculator diffCalc = new BeatmapDifficultyCalculator(copy);
+					diffCalc.calculate();
+					starRating = diffCalc.getStarRating();
+				}
+			} catch (Exception e) {
+				Log.warn(String.format("Failed to calculate star rating for beatmap '%s'.", beatmap.toString()), e);
+			}
+			results.add(new Result(beatmap, starRating, generation));
+		}
+	}
+}
@@ -19,27 +19,28 @@
 package itdelatrisu.opsu.beatmap;
 
 import itdelatrisu.opsu.ErrorHandler;
-import itdelatrisu.opsu.Utils;
 import itdelatrisu.opsu.db.BeatmapDB;
-import itdelatrisu.opsu.io.MD5InputStreamWrapper;
+import itdelatrisu.opsu.io.OsuTokenizer;
 import itdelatrisu.opsu.options.Options;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.util.Log;
@@ -49,28 +50,61 @@ import org.newdawn.slick.util.Log;
  */
 public class BeatmapParser {
 	/** The string lookup database. */
-	private static HashMap<String, String> stringdb = new HashMap<String, String>();
+	private static ConcurrentHashMap<String, String> stringdb = new ConcurrentHashMap<String, String>();
 
 	/** The expected pattern for beatmap directories, used to find beatmap set IDs. */
 	private static final String DIR_MSID_PATTERN = "^\\d+ .*";
 
-	/** The current file being parsed. */
-	private static File currentFile;
+	/** Keys for combo colors in the [Colours] section. */
+	private static final String[] COMBO_COLOR_KEYS = {
+		"Combo1", "Combo2", "Combo3", "Combo4", "Combo5", "Combo6", "Combo7", "Combo8"
+	};
+
+	/** The current file being parsed (the most recent one, if parsing in parallel). */
+	private static volatile File currentFile;
 
 	/** The current directory number while parsing. */
-	private static int currentDirectoryIndex = -1;
+	private static final AtomicInteger currentDirectoryIndex = new AtomicInteger(-1);
 
 	/** The total number of directories to parse. */
-	private static int totalDirectories = -1;
+	private static volatile int totalDirectories = -1;
 
 	/** Parser statuses. */
 	public enum Status { NONE, PARSING, CACHE, INSERTING };
 
 	/** The current status. */
-	private static Status status = Status.NONE;
+	private static volatile Status status = Status.NONE;
 
 	/** If no Provider supports a MessageDigestSpi implementation for the MD5 algorithm. */
-	private static boolean hasNoMD5Algorithm = false;
+	private static volatile boolean hasNoMD5Algorithm = false;
+
+	/** The beatmaps found in a single directory. */
+	private static class DirectoryResult {
+		/** The directory. */
+		private final File dir;
+
+		/** The song group (standard mode beatmaps only). */
+		private final ArrayList<Beatmap> beatmaps;
+
+		/** Beatmaps to be loaded from the database. */
+		private final List<Beatmap> cachedBeatmaps = new ArrayList<Beatmap>();
+
+		/** Beatmaps loaded from the parser. */
+		private final List<Beatmap> parsedBeatmaps = new ArrayList<Beatmap>();
+
+		/** File names of out-of-sync database entries. */
+		private final List<String> staleFiles = new ArrayList<String>();
+
+		/**
+		 * Constructor.
+		 * @param dir the directory
+		 * @param size the number of OSU files in the directory
+		 */
+		public DirectoryResult(File dir, int size) {
+			this.dir = dir;
+			this.beatmaps = new ArrayList<Beatmap>(size);
+		}
+	}
 
 	// This class should not be instantiated.
 	private BeatmapParser() {}
@@ -117,17 +151,17 @@ public class BeatmapParser {
 	 * @param oldBeatmapList the old beatmap list to copy non-parsed fields from
 	 * @return the last BeatmapSetNode parsed, or null if none
 	 */
-	public static BeatmapSetNode parseDirectories(File[] dirs, BeatmapSetList oldBeatmapList) {
+	public static BeatmapSetNode parseDirectories(File[] dirs, final BeatmapSetList oldBeatmapList) {
 		if (dirs == null)
 			return null;
 
 		// progress tracking
 		status = Status.PARSING;
-		currentDirectoryIndex = 0;
+		currentDirectoryIndex.set(0);
 		totalDirectories = dirs.length;
 
 		// get last modified map from database
-		Map<String, BeatmapDB.LastModifiedMapEntry> lastModifiedMap = BeatmapDB.getLastModifiedMap();
+		final Map<String, BeatmapDB.LastModifiedMapEntry> lastModifiedMap = BeatmapDB.getLastModifiedMap();
 
 		// beatmap lists
 		List<ArrayList<Beatmap>> allBeatmaps = new LinkedList<ArrayList<Beatmap>>();
@@ -139,88 +173,85 @@ public class BeatmapParser {
 
 		// parse directories
 		BeatmapSetNode lastNode = null;
-		long timestamp = System.currentTimeMillis();
-		for (File dir : dirs) {
-			currentDirectoryIndex++;
-			if (!dir.isDirectory())
-				continue;
-
-			// find all OSU files
-			File[] files = dir.listFiles(new FilenameFilter() {
+		final long timestamp = System.currentTimeMillis();
+		List<DirectoryResult> results = new ArrayList<DirectoryResult>(dirs.length);
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (Options.isParallelParsingEnabled() && threads > 1 && dirs.length > 1) {
+			// parse each directory in a worker thread
+			ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
 				@Override
-				public boolean accept(File dir, String name) {
-					return name.toLowerCase().endsWith(".osu");
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "BeatmapParser");
+					t.setDaemon(true);
+					t.setPriority(Thread.NORM_PRIORITY - 1);
+					return t;
 				}
 			});
-			if (files == null || files.length < 1)
-				continue;
-
-			// create a new group entry
-			ArrayList<Beatmap> beatmaps = new ArrayList<Beatmap>(files.length);
-			for (File file : files) {
-				currentFile = file;
-
-				// check if beatmap is cached
-				String beatmapPath = String.format("%s/%s", dir.getName(), file.getName());
-				if (lastModifiedMap != null) {
-					BeatmapDB.LastModifiedMapEntry entry = lastModifiedMap.get(beatmapPath);
-					if (entry != null) {
-						// check last modified times
-						if (entry.getLastModified() == file.lastModified()) {
-							if (entry.getMode() == Beatmap.MODE_OSU) {  // only support standard mode
-								// add to cached beatmap list
-								Beatmap beatmap = new Beatmap(file);
-								beatmaps.add(beatmap);
-								cachedBeatmaps.add(beatmap);
-							}
-							continue;
-						} else  // out of sync, delete cache entry and re-parse
-							BeatmapDB.delete(dir.getName(), file.getName());
+			List<Future<DirectoryResult>> futures = new ArrayList<Future<DirectoryResult>>(dirs.length);
+			for (final File dir : dirs) {
+				futures.add(executor.submit(new Callable<DirectoryResult>() {
+					@Override
+					public DirectoryResult call() {
+						try {
+							return parseDirectory(dir, lastModifiedMap, oldBeatmapList, timestamp);
+						} finally {
+							currentDirectoryIndex.incrementAndGet();
+						}
 					}
-				}
+				}));
+			}
+			executor.shutdown();
 
-				// parse beatmap
-				Beatmap beatmap = null;
+			// collect results in directory order
+			boolean interrupted = false;
+			for (Future<DirectoryResult> future : futures) {
+				if (interrupted && !future.isDone())
+					continue;
 				try {
-					// Parse hit objects only when needed to save time/memory.
-					// Change boolean to 'true' to parse them immediately.
-					beatmap = parseFile(file, dir, beatmaps, false);
-				} catch (Exception e) {
-					ErrorHandler.error(String.format("Failed to parse beatmap file '%s'.",
-							file.getAbsolutePath()), e, true);
+					DirectoryResult result = future.get();
+					if (result != null)
+						results.add(result);
+				} catch (InterruptedException e) {
+					// stop parsing files, but keep any finished results
+					interrupted = true;
+					executor.shutdownNow();
+				} catch (CancellationException e) {
+					continue;
+				} catch (ExecutionException e) {
+					ErrorHandler.error("Failed to parse beatmap directory.", e.getCause(), true);
 				}
+			}
+		} else {
+			for (File dir : dirs) {
+				currentDirectoryIndex.incrementAndGet();
+				DirectoryResult result = parseDirectory(dir, lastModifiedMap, oldBeatmapList, timestamp);
+				if (result != null)
+					results.add(result);
+
+				// stop parsing files (interrupted)
+				if (Thread.interrupted())
+					break;
+			}
+		}
 
-				// add to parsed beatmap list
-				if (beatmap != null) {
-					// copy non-parsed fields
-					Beatmap oldBeatmap;
-					if (oldBeatmapList != null && (oldBeatmap = oldBeatmapList.getBeatmapFromHash(beatmap.md5Hash)) != null)
-						oldBeatmap.copyAdditionalFields(beatmap);
-
-					// add timestamp
-					if (beatmap.dateAdded < 1)
-						beatmap.dateAdded = timestamp;
-
-					// only support standard mode
-					if (beatmap.mode == Beatmap.MODE_OSU)
-						beatmaps.add(beatmap);
+		// merge directory results
+		for (DirectoryResult result : results) {
+			// delete out-of-sync cache entries
+			for (String file : result.staleFiles)
+				BeatmapDB.delete(result.dir.getName(), file);
 
-					parsedBeatmaps.add(beatmap);
-				}
-			}
+			cachedBeatmaps.addAll(result.cachedBeatmaps);
+			parsedBeatmaps.addAll(result.parsedBeatmaps);
 
 			// add group entry if non-empty
-			if (!beatmaps.isEmpty()) {
-				beatmaps.trimToSize();
-				allBeatmaps.add(beatmaps);
+			if (!result.beatmaps.isEmpty()) {
+				result.beatmaps.trimToSize();
+				allBeatmaps.add(result.beatmaps);
 				if (ws != null)
-					ws.registerAll(dir.toPath());
+					ws.registerAll(result.dir.toPath());
 			}
-
-			// stop parsing files (interrupted)
-			if (Thread.interrupted())
-				break;
 		}
+		results = null;
 
 		// load cached entries from database
 		if (!cachedBeatmaps.isEmpty()) {
@@ -238,7 +269,7 @@ public class BeatmapParser {
 		}
 
 		// clear string DB
-		stringdb = new HashMap<String, String>();
+		stringdb = new ConcurrentHashMap<String, String>();
 
 		// add beatmap entries to database
 		if (!parsedBeatmaps.isEmpty()) {
@@ -248,11 +279,96 @@ public class BeatmapParser {
 
 		status = Status.NONE;
 		currentFile = null;
-		currentDirectoryIndex = -1;
+		currentDirectoryIndex.set(-1);
 		totalDirectories = -1;
 		return lastNode;
 	}
 
+	/**
+	 * Invokes parser for each OSU file in a directory.
+	 * <p>
+	 * This method does not modify the beatmap database or any shared state other
+	 * than the string database, so it can be called from multiple threads.
+	 * @param dir the directory to parse
+	 * @param lastModifiedMap the last modified map from the database, or null if none
+	 * @param oldBeatmapList the old beatmap list to copy non-parsed fields from
+	 * @param timestamp the timestamp to use for newly added beatmaps
+	 * @return the parsing result, or null if not a directory or no OSU files were found
+	 */
+	private static DirectoryResult parseDirectory(
+		File dir, Map<String, BeatmapDB.LastModifiedMapEntry> lastModifiedMap,
+		BeatmapSetList oldBeatmapList, long timestamp
+	) {
+		if (!dir.isDirectory())
+			return null;
+
+		// find all OSU files
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.toLowerCase().endsWith(".osu");
+			}
+		});
+		if (files == null || files.length < 1)
+			return null;
+
+		// create a new group entry
+		DirectoryResult result = new DirectoryResult(dir, files.length);
+		ArrayList<Beatmap> beatmaps = result.beatmaps;
+		for (File file : files) {
+			currentFile = file;
+
+			// check if beatmap is cached
+			String beatmapPath = String.format("%s/%s", dir.getName(), file.getName());
+			if (lastModifiedMap != null) {
+				BeatmapDB.LastModifiedMapEntry entry = lastModifiedMap.get(beatmapPath);
+				if (entry != null) {
+					// check last modified times
+					if (entry.getLastModified() == file.lastModified()) {
+						if (entry.getMode() == Beatmap.MODE_OSU) {  // only support standard mode
+							// add to cached beatmap list
+							Beatmap beatmap = new Beatmap(file);
+							beatmaps.add(beatmap);
+							result.cachedBeatmaps.add(beatmap);
+						}
+						continue;
+					} else  // out of sync, delete cache entry and re-parse
+						result.staleFiles.add(file.getName());
+				}
+			}
+
+			// parse beatmap
+			Beatmap beatmap = null;
+			try {
+				// Parse hit objects only when needed to save time/memory.
+				// Change boolean to 'true' to parse them immediately.
+				beatmap = parseFile(file, dir, beatmaps, false);
+			} catch (Exception e) {
+				ErrorHandler.error(String.format("Failed to parse beatmap file '%s'.",
+						file.getAbsolutePath()), e, true);
+			}
+
+			// add to parsed beatmap list
+			if (beatmap != null) {
+				// copy non-parsed fields
+				Beatmap oldBeatmap;
+				if (oldBeatmapList != null && (oldBeatmap = oldBeatmapList.getBeatmapFromHash(beatmap.md5Hash)) != null)
+					oldBeatmap.copyAdditionalFields(beatmap);
+
+				// add timestamp
+				if (beatmap.dateAdded < 1)
+					beatmap.dateAdded = timestamp;
+
+				// only support standard mode
+				if (beatmap.mode == Beatmap.MODE_OSU)
+					beatmaps.add(beatmap);
+
+				result.parsedBeatmaps.add(beatmap);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Parses a beatmap.
 	 * @param file the file to parse
@@ -265,399 +381,318 @@ public class BeatmapParser {
 		Beatmap beatmap = new Beatmap(file);
 		beatmap.timingPoints = new ArrayList<TimingPoint>();
 
-		try (
-			InputStream bis = new BufferedInputStream(new FileInputStream(file));
-			MD5InputStreamWrapper md5stream = (!hasNoMD5Algorithm) ? new MD5InputStreamWrapper(bis) : null;
-			BufferedReader in = new BufferedReader(new InputStreamReader((md5stream != null) ? md5stream : bis, "UTF-8"));
-		) {
-			String line = in.readLine();
-			String tokens[] = null;
-			while (line != null) {
-				line = line.trim();
-				if (!isValidLine(line)) {
-					line = in.readLine();
-					continue;
-				}
-				switch (line) {
-				case "[General]":
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
-						if ((tokens = tokenize(line)) == null)
-							continue;
-						try {
-							switch (tokens[0]) {
-							case "AudioFilename":
-								File audioFileName = new File(dir, tokens[1]);
-								if (!beatmaps.isEmpty()) {
-									// if possible, reuse the same File object from another Beatmap in the group
-									File groupAudioFileName = beatmaps.get(0).audioFilename;
-									if (groupAudioFileName != null &&
-									    tokens[1].equalsIgnoreCase(groupAudioFileName.getName()))
-										audioFileName = groupAudioFileName;
-								}
-								if (!audioFileName.isFile()) {
-									// try to find the file with a case-insensitive match
-									boolean match = false;
-									for (String s : dir.list()) {
-										if (s.equalsIgnoreCase(tokens[1])) {
-											audioFileName = new File(dir, s);
-											match = true;
-											break;
-										}
-									}
-									if (!match) {
-										Log.error(String.format("Audio file '%s' not found in directory '%s'.", tokens[1], dir.getName()));
-										return null;
+		OsuTokenizer t;
+		try {
+			t = new OsuTokenizer(file, !hasNoMD5Algorithm);
+		} catch (IOException e) {
+			ErrorHandler.error(String.format("Failed to read file '%s'.", file.getAbsolutePath()), e, false);
+			return null;
+		} catch (NoSuchAlgorithmException e) {
+			ErrorHandler.error("Failed to get MD5 hash stream.", e, true);
+
+			// retry without MD5
+			hasNoMD5Algorithm = true;
+			return parseFile(file, dir, beatmaps, parseObjects);
+		}
+
+		boolean hasLine = t.nextLine();
+		while (hasLine) {
+			if (!t.isValidLine()) {
+				hasLine = t.nextLine();
+				continue;
+			}
+			if (t.lineEquals("[General]")) {
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
+					if (!tokenize(t))
+						continue;
+					try {
+						if (t.keyEquals("AudioFilename")) {
+							String audioName = t.getValueString();
+							File audioFileName = new File(dir, audioName);
+							if (!beatmaps.isEmpty()) {
+								// if possible, reuse the same File object from another Beatmap in the group
+								File groupAudioFileName = beatmaps.get(0).audioFilename;
+								if (groupAudioFileName != null &&
+								    audioName.equalsIgnoreCase(groupAudioFileName.getName()))
+									audioFileName = groupAudioFileName;
+							}
+							if (!audioFileName.isFile()) {
+								// try to find the file with a case-insensitive match
+								boolean match = false;
+								for (String s : dir.list()) {
+									if (s.equalsIgnoreCase(audioName)) {
+										audioFileName = new File(dir, s);
+										match = true;
+										break;
 									}
 								}
-								beatmap.audioFilename = audioFileName;
-								break;
-							case "AudioLeadIn":
-								beatmap.audioLeadIn = Integer.parseInt(tokens[1]);
-								break;
-//							case "AudioHash":  // deprecated
-//								beatmap.audioHash = tokens[1];
-//								break;
-							case "PreviewTime":
-								beatmap.previewTime = Integer.parseInt(tokens[1]);
-								break;
-							case "Countdown":
-								beatmap.countdown = Byte.parseByte(tokens[1]);
-								break;
-							case "SampleSet":
-								beatmap.sampleSet = getDBString(tokens[1]);
-								break;
-							case "StackLeniency":
-								beatmap.stackLeniency = Float.parseFloat(tokens[1]);
-								break;
-							case "Mode":
-								beatmap.mode = Byte.parseByte(tokens[1]);
-								break;
-							case "LetterboxInBreaks":
-								beatmap.letterboxInBreaks = Utils.parseBoolean(tokens[1]);
-								break;
-							case "WidescreenStoryboard":
-								beatmap.widescreenStoryboard = Utils.parseBoolean(tokens[1]);
-								break;
-							case "EpilepsyWarning":
-								beatmap.epilepsyWarning = Utils.parseBoolean(tokens[1]);
-								break;
-//							case "SpecialStyle":  // mania only
-//								beatmap.specialStyle = Utils.parseBoolean(tokens[1]);
-//								break;
-							default:
-								break;
+								if (!match) {
+									Log.error(String.format("Audio file '%s' not found in directory '%s'.", audioName, dir.getName()));
+									return null;
+								}
 							}
-						} catch (Exception e) {
-							Log.warn(String.format("Failed to read line '%s' for file '%s'.",
-									line, file.getAbsolutePath()), e);
-						}
+							beatmap.audioFilename = audioFileName;
+						} else if (t.keyEquals("AudioLeadIn"))
+							beatmap.audioLeadIn = t.getValueInt();
+//						else if (t.keyEquals("AudioHash"))  // deprecated
+//							beatmap.audioHash = t.getValueString();
+						else if (t.keyEquals("PreviewTime"))
+							beatmap.previewTime = t.getValueInt();
+						else if (t.keyEquals("Countdown"))
+							beatmap.countdown = t.getValueByte();
+						else if (t.keyEquals("SampleSet"))
+							beatmap.sampleSet = getDBString(t.getValueString());
+						else if (t.keyEquals("StackLeniency"))
+							beatmap.stackLeniency = t.getValueFloat();
+						else if (t.keyEquals("Mode"))
+							beatmap.mode = t.getValueByte();
+						else if (t.keyEquals("LetterboxInBreaks"))
+							beatmap.letterboxInBreaks = t.getValueBoolean();
+						else if (t.keyEquals("WidescreenStoryboard"))
+							beatmap.widescreenStoryboard = t.getValueBoolean();
+						else if (t.keyEquals("EpilepsyWarning"))
+							beatmap.epilepsyWarning = t.getValueBoolean();
+//						else if (t.keyEquals("SpecialStyle"))  // mania only
+//							beatmap.specialStyle = t.getValueBoolean();
+					} catch (Exception e) {
+						Log.warn(String.format("Failed to read line '%s' for file '%s'.",
+								t.getLine(), file.getAbsolutePath()), e);
 					}
-					break;
-				case "[Editor]":
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
-						/* Not implemented. */
-//						if ((tokens = tokenize(line)) == null)
-//							continue;
-//						try {
-//							switch (tokens[0]) {
-//							case "Bookmarks":
-//								String[] bookmarks = tokens[1].split(",");
-//								beatmap.bookmarks = new int[bookmarks.length];
-//								for (int i = 0; i < bookmarks.length; i++)
-//									osu.bookmarks[i] = Integer.parseInt(bookmarks[i]);
-//								break;
-//							case "DistanceSpacing":
-//								beatmap.distanceSpacing = Float.parseFloat(tokens[1]);
-//								break;
-//							case "BeatDivisor":
-//								beatmap.beatDivisor = Byte.parseByte(tokens[1]);
-//								break;
-//							case "GridSize":
-//								beatmap.gridSize = Integer.parseInt(tokens[1]);
-//								break;
-//							case "TimelineZoom":
-//								beatmap.timelineZoom = Integer.parseInt(tokens[1]);
-//								break;
-//							default:
-//								break;
-//							}
-//						} catch (Exception e) {
-//							Log.warn(String.format("Failed to read editor line '%s' for file '%s'.",
-//									line, file.getAbsolutePath()), e);
-//						}
+				}
+			} else if (t.lineEquals("[Editor]")) {
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
+					/* Not implemented. */
+				}
+			} else if (t.lineEquals("[Metadata]")) {
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
+					if (!tokenize(t))
+						continue;
+					try {
+						if (t.keyEquals("Title"))
+							beatmap.title = getDBString(t.getValueString());
+						else if (t.keyEquals("TitleUnicode"))
+							beatmap.titleUnicode = getDBString(t.getValueString());
+						else if (t.keyEquals("Artist"))
+							beatmap.artist = getDBString(t.getValueString());
+						else if (t.keyEquals("ArtistUnicode"))
+							beatmap.artistUnicode = getDBString(t.getValueString());
+						else if (t.keyEquals("Creator"))
+							beatmap.creator = getDBString(t.getValueString());
+						else if (t.keyEquals("Version"))
+							beatmap.version = getDBString(t.getValueString());
+						else if (t.keyEquals("Source"))
+							beatmap.source = getDBString(t.getValueString());
+						else if (t.keyEquals("Tags"))
+							beatmap.tags = getDBString(t.getValueString().toLowerCase());
+						else if (t.keyEquals("BeatmapID"))
+							beatmap.beatmapID = t.getValueInt();
+						else if (t.keyEquals("BeatmapSetID"))
+							beatmap.beatmapSetID = t.getValueInt();
+					} catch (Exception e) {
+						Log.warn(String.format("Failed to read metadata '%s' for file '%s'.",
+								t.getLine(), file.getAbsolutePath()), e);
 					}
-					break;
-				case "[Metadata]":
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
-						if ((tokens = tokenize(line)) == null)
-							continue;
-						try {
-							switch (tokens[0]) {
-							case "Title":
-								beatmap.title = getDBString(tokens[1]);
-								break;
-							case "TitleUnicode":
-								beatmap.titleUnicode = getDBString(tokens[1]);
-								break;
-							case "Artist":
-								beatmap.artist = getDBString(tokens[1]);
-								break;
-							case "ArtistUnicode":
-								beatmap.artistUnicode = getDBString(tokens[1]);
-								break;
-							case "Creator":
-								beatmap.creator = getDBString(tokens[1]);
-								break;
-							case "Version":
-								beatmap.version = getDBString(tokens[1]);
-								break;
-							case "Source":
-								beatmap.source = getDBString(tokens[1]);
-								break;
-							case "Tags":
-								beatmap.tags = getDBString(tokens[1].toLowerCase());
-								break;
-							case "BeatmapID":
-								beatmap.beatmapID = Integer.parseInt(tokens[1]);
-								break;
-							case "BeatmapSetID":
-								beatmap.beatmapSetID = Integer.parseInt(tokens[1]);
-								break;
-							}
-						} catch (Exception e) {
-							Log.warn(String.format("Failed to read metadata '%s' for file '%s'.",
-									line, file.getAbsolutePath()), e);
-						}
-						if (beatmap.beatmapSetID <= 0) {  // try to determine MSID from directory name
-							if (dir != null && dir.isDirectory()) {
-								String dirName = dir.getName();
-								if (!dirName.isEmpty() && dirName.matches(DIR_MSID_PATTERN))
-									beatmap.beatmapSetID = Integer.parseInt(dirName.substring(0, dirName.indexOf(' ')));
-							}
-						}
+				}
+				if (beatmap.beatmapSetID <= 0) {  // try to determine MSID from directory name
+					if (dir != null && dir.isDirectory()) {
+						String dirName = dir.getName();
+						if (!dirName.isEmpty() && dirName.matches(DIR_MSID_PATTERN))
+							beatmap.beatmapSetID = Integer.parseInt(dirName.substring(0, dirName.indexOf(' ')));
 					}
-					break;
-				case "[Difficulty]":
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
-						if ((tokens = tokenize(line)) == null)
-							continue;
+				}
+			} else if (t.lineEquals("[Difficulty]")) {
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
+					if (!tokenize(t))
+						continue;
+					try {
+						if (t.keyEquals("HPDrainRate"))
+							beatmap.HPDrainRate = t.getValueFloat();
+						else if (t.keyEquals("CircleSize"))
+							beatmap.circleSize = t.getValueFloat();
+						else if (t.keyEquals("OverallDifficulty"))
+							beatmap.overallDifficulty = t.getValueFloat();
+						else if (t.keyEquals("ApproachRate"))
+							beatmap.approachRate = t.getValueFloat();
+						else if (t.keyEquals("SliderMultiplier"))
+							beatmap.sliderMultiplier = t.getValueFloat();
+						else if (t.keyEquals("SliderTickRate"))
+							beatmap.sliderTickRate = t.getValueFloat();
+					} catch (Exception e) {
+						Log.warn(String.format("Failed to read difficulty '%s' for file '%s'.",
+								t.getLine(), file.getAbsolutePath()), e);
+					}
+				}
+				if (beatmap.approachRate == -1f)  // not in old format
+					beatmap.approachRate = beatmap.overallDifficulty;
+			} else if (t.lineEquals("[Events]")) {
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
+					t.resetFields();
+					t.expectField(0, ',');
+					if (t.fieldEquals(0, "0")) {  // background image
+						t.expectField(0, ',');
+						t.expectField(0, ',');
+						String bgName = t.getFieldString(0).replaceAll("^\"|\"$", "");
+						String ext = BeatmapParser.getExtension(bgName);
+						if (ext.equals("jpg") || ext.equals("png"))
+							beatmap.bg = new File(dir, getDBString(bgName));
+					} else if (t.fieldEquals(0, "1") || t.fieldEquals(0, "Video")) {  // background video
+						t.expectField(0, ',');
+						int videoOffset = t.getFieldInt(0);
+						t.expectField(0, ',');
+						beatmap.video = new File(dir, getDBString(t.getFieldString(0).replaceAll("^\"|\"$", "")));
+						beatmap.videoOffset = videoOffset;
+					} else if (t.fieldEquals(0, "2")) {  // break periods
 						try {
-							switch (tokens[0]) {
-							case "HPDrainRate":
-								beatmap.HPDrainRate = Float.parseFloat(tokens[1]);
-								break;
-							case "CircleSize":
-								beatmap.circleSize = Float.parseFloat(tokens[1]);
-								break;
-							case "OverallDifficulty":
-								beatmap.overallDifficulty = Float.parseFloat(tokens[1]);
-								break;
-							case "ApproachRate":
-								beatmap.approachRate = Float.parseFloat(tokens[1]);
-								break;
-							case "SliderMultiplier":
-								beatmap.sliderMultiplier = Float.parseFloat(tokens[1]);
-								break;
-							case "SliderTickRate":
-								beatmap.sliderTickRate = Float.parseFloat(tokens[1]);
-								break;
-							}
+							if (beatmap.breaks == null)  // optional, create if needed
+								beatmap.breaks = new ArrayList<Integer>();
+							t.expectField(0, ',');
+							int breakStart = t.getFieldInt(0);
+							t.expectField(0, ',');
+							int breakEnd = t.getFieldInt(0);
+							beatmap.breaks.add(breakStart);
+							beatmap.breaks.add(breakEnd);
 						} catch (Exception e) {
-							Log.warn(String.format("Failed to read difficulty '%s' for file '%s'.",
-									line, file.getAbsolutePath()), e);
+							Log.warn(String.format("Failed to read break period '%s' for file '%s'.",
+									t.getLine(), file.getAbsolutePath()), e);
 						}
 					}
-					if (beatmap.approachRate == -1f)  // not in old format
-						beatmap.approachRate = beatmap.overallDifficulty;
-					break;
-				case "[Events]":
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
-						tokens = line.split(",");
-						switch (tokens[0]) {
-						case "0":  // background image
-							tokens[2] = tokens[2].replaceAll("^\"|\"$", "");
-							String ext = BeatmapParser.getExtension(tokens[2]);
-							if (ext.equals("jpg") || ext.equals("png"))
-								beatmap.bg = new File(dir, getDBString(tokens[2]));
-							break;
-						case "1":
-						case "Video":  // background video
-							tokens[2] = tokens[2].replaceAll("^\"|\"$", "");
-							beatmap.video = new File(dir, getDBString(tokens[2]));
-							beatmap.videoOffset = Integer.parseInt(tokens[1]);
-							break;
-						case "2":  // break periods
-							try {
-								if (beatmap.breaks == null)  // optional, create if needed
-									beatmap.breaks = new ArrayList<Integer>();
-								beatmap.breaks.add(Integer.parseInt(tokens[1]));
-								beatmap.breaks.add(Integer.parseInt(tokens[2]));
-							} catch (Exception e) {
-								Log.warn(String.format("Failed to read break period '%s' for file '%s'.",
-										line, file.getAbsolutePath()), e);
-							}
-							break;
-						default:
-							/* Not implemented. */
-							break;
-						}
-					}
-					if (beatmap.breaks != null)
-						beatmap.breaks.trimToSize();
-					break;
-				case "[TimingPoints]":
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
+					/* Not implemented. */
+				}
+				if (beatmap.breaks != null)
+					beatmap.breaks.trimToSize();
+			} else if (t.lineEquals("[TimingPoints]")) {
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
 
-						try {
-							// parse timing point
-							TimingPoint timingPoint = new TimingPoint(line);
-							beatmap.timingPoints.add(timingPoint);
-
-							// calculate BPM
-							if (!timingPoint.isInherited()) {
-								int bpm = Math.round(60000 / timingPoint.getBeatLength());
-								if (beatmap.bpmMin == 0) {
-									beatmap.bpmMin = beatmap.bpmMax = bpm;
-								} else if (bpm < beatmap.bpmMin) {
-									beatmap.bpmMin = bpm;
-								} else if (bpm > beatmap.bpmMax) {
-									beatmap.bpmMax = bpm;
-								}
+					try {
+						// parse timing point
+						TimingPoint timingPoint = new TimingPoint(t);
+						beatmap.timingPoints.add(timingPoint);
+
+						// calculate BPM
+						if (!timingPoint.isInherited()) {
+							int bpm = Math.round(60000 / timingPoint.getBeatLength());
+							if (beatmap.bpmMin == 0) {
+								beatmap.bpmMin = beatmap.bpmMax = bpm;
+							} else if (bpm < beatmap.bpmMin) {
+								beatmap.bpmMin = bpm;
+							} else if (bpm > beatmap.bpmMax) {
+								beatmap.bpmMax = bpm;
 							}
-						} catch (Exception e) {
-							Log.warn(String.format("Failed to read timing point '%s' for file '%s'.",
-									line, file.getAbsolutePath()), e);
 						}
+					} catch (Exception e) {
+						Log.warn(String.format("Failed to read timing point '%s' for file '%s'.",
+								t.getLine(), file.getAbsolutePath()), e);
 					}
-					beatmap.timingPoints.trimToSize();
-					break;
-				case "[Colours]":
-					LinkedList<Color> colors = new LinkedList<Color>();
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
-						if ((tokens = tokenize(line)) == null)
-							continue;
-						try {
-							String[] rgb = tokens[1].split(",");
-							Color color = new Color(
-								Integer.parseInt(rgb[0]),
-								Integer.parseInt(rgb[1]),
-								Integer.parseInt(rgb[2])
-							);
-							switch (tokens[0]) {
-							case "Combo1":
-							case "Combo2":
-							case "Combo3":
-							case "Combo4":
-							case "Combo5":
-							case "Combo6":
-							case "Combo7":
-							case "Combo8":
-								colors.add(color);
-								break;
-							case "SliderBorder":
-								beatmap.sliderBorder = color;
-								break;
-							default:
-								break;
-							}
-						} catch (Exception e) {
-							Log.warn(String.format("Failed to read color '%s' for file '%s'.",
-									line, file.getAbsolutePath()), e);
-						}
+				}
+				beatmap.timingPoints.trimToSize();
+			} else if (t.lineEquals("[Colours]")) {
+				LinkedList<Color> colors = new LinkedList<Color>();
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
+					if (!tokenize(t))
+						continue;
+					try {
+						t.resetValueFields();
+						t.expectField(0, ',');
+						int r = t.getFieldInt(0);
+						t.expectField(0, ',');
+						int g = t.getFieldInt(0);
+						t.expectField(0, ',');
+						int b = t.getFieldInt(0);
+						Color color = new Color(r, g, b);
+						if (isComboColorKey(t))
+							colors.add(color);
+						else if (t.keyEquals("SliderBorder"))
+							beatmap.sliderBorder = color;
+					} catch (Exception e) {
+						Log.warn(String.format("Failed to read color '%s' for file '%s'.",
+								t.getLine(), file.getAbsolutePath()), e);
 					}
-					if (!colors.isEmpty())
-						beatmap.combo = colors.toArray(new Color[colors.size()]);
-					break;
-				case "[HitObjects]":
-					int type = 0;
-					while ((line = in.readLine()) != null) {
-						line = line.trim();
-						if (!isValidLine(line))
-							continue;
-						if (line.charAt(0) == '[')
-							break;
-						/* Only type counts parsed at this time. */
-						tokens = line.split(",");
-						try {
-							type = Integer.parseInt(tokens[3]);
-							if ((type & HitObject.TYPE_CIRCLE) > 0)
-								beatmap.hitObjectCircle++;
-							else if ((type & HitObject.TYPE_SLIDER) > 0)
-								beatmap.hitObjectSlider++;
-							else //if ((type & HitObject.TYPE_SPINNER) > 0)
-								beatmap.hitObjectSpinner++;
-						} catch (Exception e) {
-							Log.warn(String.format("Failed to read hit object '%s' for file '%s'.",
-									line, file.getAbsolutePath()), e);
-						}
+				}
+				if (!colors.isEmpty())
+					beatmap.combo = colors.toArray(new Color[colors.size()]);
+			} else if (t.lineEquals("[HitObjects]")) {
+				beatmap.hitObjectsOffset = t.getLineOffset();
+				int type = 0;
+				Exception endTimeException = null;
+				while ((hasLine = t.nextLine())) {
+					if (!t.isValidLine())
+						continue;
+					if (t.isSectionHeader())
+						break;
+					/* Only type counts parsed at this time. */
+					try {
+						t.resetFields();
+						t.skipFields(0, ',', 3);
+						t.expectField(0, ',');
+						type = t.getFieldInt(0);
+						if ((type & HitObject.TYPE_CIRCLE) > 0)
+							beatmap.hitObjectCircle++;
+						else if ((type & HitObject.TYPE_SLIDER) > 0)
+							beatmap.hitObjectSlider++;
+						else //if ((type & HitObject.TYPE_SPINNER) > 0)
+							beatmap.hitObjectSpinner++;
+					} catch (Exception e) {
+						Log.warn(String.format("Failed to read hit object '%s' for file '%s'.",
+								t.getLine(), file.getAbsolutePath()), e);
 					}
 
+					// map length = last object end time (TODO: end on slider?)
 					try {
-						// map length = last object end time (TODO: end on slider?)
+						endTimeException = null;
+						t.resetFields();
 						if ((type & HitObject.TYPE_SPINNER) > 0) {
+							t.skipFields(0, ',', 5);
+							t.expectField(0, ',');
+
 							// some 'endTime' fields contain a ':' character (?)
-							int index = tokens[5].indexOf(':');
+							int index = t.fieldIndexOf(0, ':');
 							if (index != -1)
-								tokens[5] = tokens[5].substring(0, index);
-							beatmap.endTime = Integer.parseInt(tokens[5]);
-						} else if (type != 0)
-							beatmap.endTime = Integer.parseInt(tokens[2]);
+								t.truncateField(0, index);
+							beatmap.endTime = t.getFieldInt(0);
+						} else if (type != 0) {
+							t.skipFields(0, ',', 2);
+							t.expectField(0, ',');
+							beatmap.endTime = t.getFieldInt(0);
+						}
 					} catch (Exception e) {
-						Log.warn(String.format("Failed to read hit object end time '%s' for file '%s'.",
-								line, file.getAbsolutePath()), e);
+						endTimeException = e;
 					}
-					break;
-				default:
-					line = in.readLine();
-					break;
 				}
-			}
-			if (md5stream != null)
-				beatmap.md5Hash = md5stream.getMD5();
-		} catch (IOException e) {
-			ErrorHandler.error(String.format("Failed to read file '%s'.", file.getAbsolutePath()), e, false);
-		} catch (NoSuchAlgorithmException e) {
-			ErrorHandler.error("Failed to get MD5 hash stream.", e, true);
-
-			// retry without MD5
-			hasNoMD5Algorithm = true;
-			return parseFile(file, dir, beatmaps, parseObjects);
+				if (endTimeException != null)
+					Log.warn(String.format("Failed to read hit object end time for file '%s'.",
+							file.getAbsolutePath()), endTimeException);
+			} else
+				hasLine = t.nextLine();
 		}
+		beatmap.md5Hash = t.getMD5();
 
 		// no associated audio file?
 		if (beatmap.audioFilename == null)
@@ -680,96 +715,112 @@ public class BeatmapParser {
 
 		beatmap.objects = new HitObject[(beatmap.hitObjectCircle + beatmap.hitObjectSlider + beatmap.hitObjectSpinner)];
 
-		try (BufferedReader in = new BufferedReader(new FileReader(beatmap.getFile()))) {
-			String line = in.readLine();
-			while (line != null) {
-				line = line.trim();
-				if (!line.equals("[HitObjects]"))
-					line = in.readLine();
-				else
+		// seek directly to the [HitObjects] section, if its offset is known
+		OsuTokenizer t = null;
+		if (beatmap.hitObjectsOffset >= 0) {
+			try {
+				t = new OsuTokenizer(beatmap.getFile(), beatmap.hitObjectsOffset);
+				if (!t.nextLine() || !t.lineEquals("[HitObjects]")) {
+					Log.debug(String.format("Invalid hit object offset %d for beatmap '%s'.",
+							beatmap.hitObjectsOffset, beatmap.toString()));
+					t = null;
+				}
+			} catch (IOException e) {
+				t = null;
+			}
+		}
+
+		// otherwise, scan the file for the section header
+		if (t == null) {
+			try {
+				t = new OsuTokenizer(beatmap.getFile(), false);
+			} catch (IOException | NoSuchAlgorithmException e) {
+				ErrorHandler.error(String.format("Failed to read file '%s'.", beatmap.getFile().getAbsolutePath()), e, false);
+				return;
+			}
+
+			boolean hasLine;
+			while ((hasLine = t.nextLine())) {
+				if (t.lineEquals("[HitObjects]"))
 					break;
 			}
-			if (line == null) {
+			if (!hasLine) {
 				Log.warn(String.format("No hit objects found in Beatmap '%s'.", beatmap.toString()));
 				return;
 			}
+			beatmap.hitObjectsOffset = t.getLineOffset();
+		}
 
-			// combo info
-			Color[] combo = beatmap.getComboColors();
-			int comboIndex = 0;   // color index
-			int comboNumber = 1;  // combo number
+		// combo info
+		Color[] combo = beatmap.getComboColors();
+		int comboIndex = 0;   // color index
+		int comboNumber = 1;  // combo number
 
-			int objectIndex = 0;
-			boolean first = true;
-			while ((line = in.readLine()) != null && objectIndex < beatmap.objects.length) {
-				line = line.trim();
-				if (!isValidLine(line))
-					continue;
-				if (line.charAt(0) == '[')
-					break;
+		int objectIndex = 0;
+		boolean first = true;
+		while (t.nextLine() && objectIndex < beatmap.objects.length) {
+			if (!t.isValidLine())
+				continue;
+			if (t.isSectionHeader())
+				break;
 
-				// lines must have at minimum 5 parameters
-				int tokenCount = line.length() - line.replace(",", "").length();
-				if (tokenCount < 4)
-					continue;
+			// lines must have at minimum 5 parameters
+			if (t.countInLine(',') < 4)
+				continue;
 
-				try {
-					// create a new HitObject for each line
-					HitObject hitObject = new HitObject(line);
-
-					// set combo info
-					// - new combo: get next combo index, reset combo number
-					// - else:      maintain combo index, increase combo number
-					if (hitObject.isNewCombo() || first) {
-						int skip = (hitObject.isSpinner() ? 0 : 1) + hitObject.getComboSkip();
-						for (int i = 0; i < skip; i++) {
-							comboIndex = (comboIndex + 1) % combo.length;
-							comboNumber = 1;
-						}
-						first = false;
+			try {
+				// create a new HitObject for each line
+				HitObject hitObject = new HitObject(t);
+
+				// set combo info
+				// - new combo: get next combo index, reset combo number
+				// - else:      maintain combo index, increase combo number
+				if (hitObject.isNewCombo() || first) {
+					int skip = (hitObject.isSpinner() ? 0 : 1) + hitObject.getComboSkip();
+					for (int i = 0; i < skip; i++) {
+						comboIndex = (comboIndex + 1) % combo.length;
+						comboNumber = 1;
 					}
+					first = false;
+				}
 
-					hitObject.setComboIndex(comboIndex);
-					hitObject.setComboNumber(comboNumber++);
+				hitObject.setComboIndex(comboIndex);
+				hitObject.setComboNumber(comboNumber++);
 
-					beatmap.objects[objectIndex++] = hitObject;
-				} catch (Exception e) {
-					Log.warn(String.format("Failed to read hit object '%s' for beatmap '%s'.",
-							line, beatmap.toString()), e);
-				}
+				beatmap.objects[objectIndex++] = hitObject;
+			} catch (Exception e) {
+				Log.warn(String.format("Failed to read hit object '%s' for beatmap '%s'.",
+						t.getLine(), beatmap.toString()), e);
 			}
-
-			// check that all objects were parsed
-			if (objectIndex != beatmap.objects.length)
-				ErrorHandler.error(String.format("Parsed %d objects for beatmap '%s', %d objects expected.",
-						objectIndex, beatmap.toString(), beatmap.objects.length), null, true);
-		} catch (IOException e) {
-			ErrorHandler.error(String.format("Failed to read file '%s'.", beatmap.getFile().getAbsolutePath()), e, false);
 		}
+
+		// check that all objects were parsed
+		if (objectIndex != beatmap.objects.length)
+			ErrorHandler.error(String.format("Parsed %d objects for beatmap '%s', %d objects expected.",
+					objectIndex, beatmap.toString(), beatmap.objects.length), null, true);
 	}
 
 	/**
-	 * Returns false if the line is too short or commented.
+	 * Splits the current line into a key and value.
+	 * @return false if no ':' character is present
 	 */
-	private static boolean isValidLine(String line) {
-		return (line.length() > 1 && !line.startsWith("//"));
+	private static boolean tokenize(OsuTokenizer t) {
+		if (!t.splitKeyValue()) {
+			Log.debug(String.format("Failed to tokenize line: '%s'.", t.getLine()));
+			return false;
+		}
+		return true;
 	}
 
 	/**
-	 * Splits line into two strings: tag, value.
-	 * If no ':' character is present, null will be returned.
+	 * Returns whether the current key is a combo color key ("Combo1" through "Combo8").
 	 */
-	private static String[] tokenize(String line) {
-		int index = line.indexOf(':');
-		if (index == -1) {
-			Log.debug(String.format("Failed to tokenize line: '%s'.", line));
-			return null;
+	private static boolean isComboColorKey(OsuTokenizer t) {
+		for (String key : COMBO_COLOR_KEYS) {
+			if (t.keyEquals(key))
+				return true;
 		}
-
-		String[] tokens = new String[2];
-		tokens[0] = line.substring(0, index).trim();
-		tokens[1] = line.substring(index + 1).trim();
-		return tokens;
+		return false;
 	}
 
 	/**
@@ -796,10 +847,11 @@ public class BeatmapParser {
 	 * @return the completion percent [0, 100] or -1
 	 */
 	public static int getParserProgress() {
-		if (currentDirectoryIndex == -1 || totalDirectories == -1)
+		int index = currentDirectoryIndex.get(), total = totalDirectories;
+		if (index == -1 || total == -1)
 			return -1;
 
-		return currentDirectoryIndex * 100 / totalDirectories;
+		return Math.min(index, total) * 100 / total;
 	}
 
 	/**
@@ -814,11 +866,10 @@ public class BeatmapParser {
 	 * @return the string object
 	 */
 	public static String getDBString(String s) {
-		String DBString = stringdb.get(s);
-		if (DBString == null) {
-			stringdb.put(s, s);
-			return s;
-		} else
-			return DBString;
+		if (s == null)
+			return null;
+
+		String DBString = stringdb.putIfAbsent(s, s);
+		return (DBString == null) ? s : DBString;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,471 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.beatmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * In-memory search index over all beatmap sets.
+ * <p>
+ * Text searches use n-gram postings (up to {@value #MAX_GRAM} characters) over
+ * the same lowercased fields checked by {@link BeatmapSet#matches(String)}:
+ * shorter terms are answered directly by their postings, and longer terms are
+ * verified against the candidates of their rarest n-gram. Conditional searches
+ * use sorted arrays of the values checked by
+ * {@link BeatmapSet#matches(String, String, float)}, which are rebuilt lazily.
+ * <p>
+ * Each indexed beatmap set is assigned an ID, and all queries return the set of
+ * matching IDs. Removed sets are only marked as deleted until enough of them
+ * accumulate, at which point the index is rebuilt.
+ * <p>
+ * All public methods are synchronized, so that searches can run on a background
+ * thread while the list is modified.
+ */
+public class BeatmapSearchIndex {
+	/** Maximum n-gram length. */
+	private static final int MAX_GRAM = 3;
+
+	/** Separator between indexed fields (never part of a search term). */
+	private static final char SEPARATOR = '\n';
+
+	/** Minimum number of removed sets before the index is compacted. */
+	private static final int COMPACT_THRESHOLD = 1024;
+
+	/** Conditional search types. */
+	private static final String[] CONDITION_TYPES = { "ar", "cs", "od", "hp", "bpm", "length", "stars" };
+
+	/** Growable list of beatmap set IDs (in increasing order). */
+	private static class Postings {
+		/** The IDs. */
+		private int[] ids = new int[4];
+
+		/** The number of IDs. */
+		private int size = 0;
+
+		/** Adds an ID, ignoring duplicates of the last ID. */
+		public void add(int id) {
+			if (size > 0 && ids[size - 1] == id)
+				return;
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+		}
+	}
+
+	/** Sorted values of a conditional search type. */
+	private static class ConditionValues {
+		/** The values, in ascending order. */
+		private float[] values;
+
+		/** The beatmap set ID of each value. */
+		private int[] ids;
+
+		/** Whether the values must be rebuilt before use. */
+		private boolean dirty = true;
+	}
+
+	/** Beatmap sets, by ID. */
+	private BeatmapSet[] sets;
+
+	/** Searchable text of each beatmap set, by ID. */
+	private String[] texts;
+
+	/** IDs of all beatmap sets that have not been removed. */
+	private BitSet live;
+
+	/** The next ID to assign. */
+	private int nextId;
+
+	/** Number of removed beatmap sets still in the postings. */
+	private int removedCount;
+
+	/** N-gram postings. */
+	private HashMap<Long, Postings> postings;
+
+	/** Sorted condition values, by type (same order as {@link #CONDITION_TYPES}). */
+	private final ConditionValues[] conditions = new ConditionValues[CONDITION_TYPES.length];
+
+	/**
+	 * Constructor.
+	 * @param nodes the beatmap set nodes to index
+	 */
+	public BeatmapSearchIndex(List<BeatmapSetNode> nodes) {
+		for (int i = 0; i < conditions.length; i++)
+			conditions[i] = new ConditionValues();
+		clear(nodes.size());
+		for (BeatmapSetNode node : nodes)
+			add(node.getBeatmapSet());
+	}
+
+	/**
+	 * Clears the index.
+	 * @param capacity the initial capacity
+	 */
+	private void clear(int capacity) {
+		capacity = Math.max(capacity, 16);
+		sets = new BeatmapSet[capacity];
+		texts = new String[capacity];
+		live = new BitSet(capacity);
+		nextId = 0;
+		removedCount = 0;
+		postings = new HashMap<Long, Postings>();
+		invalidateConditions();
+	}
+
+	/**
+	 * Adds a beatmap set to the index.
+	 * @param beatmapSet the beatmap set
+	 */
+	public synchronized void add(BeatmapSet beatmapSet) {
+		int id = nextId++;
+		if (id == sets.length) {
+			sets = Arrays.copyOf(sets, id * 2);
+			texts = Arrays.copyOf(texts, id * 2);
+		}
+		String text = getSearchText(beatmapSet);
+		sets[id] = beatmapSet;
+		texts[id] = text;
+		live.set(id);
+		beatmapSet.searchIndexId = id;
+
+		// add n-grams
+		for (int i = 0, length = text.length(); i < length; i++) {
+			long key = 0;
+			for (int n = 1; n <= MAX_GRAM && i + n <= length; n++) {
+				char c = text.charAt(i + n - 1);
+				if (c == SEPARATOR)
+					break;
+				key = (key << 16) | c;
+				Long gram = gramKey(key, n);
+				Postings p = postings.get(gram);
+				if (p == null) {
+					p = new Postings();
+					postings.put(gram, p);
+				}
+				p.add(id);
+			}
+		}
+		invalidateConditions();
+	}
+
+	/**
+	 * Removes a beatmap set from the index.
+	 * @param beatmapSet the beatmap set
+	 */
+	public synchronized void remove(BeatmapSet beatmapSet) {
+		int id = beatmapSet.searchIndexId;
+		if (id < 0 || id >= nextId || sets[id] != beatmapSet)
+			return;
+		sets[id] = null;
+		texts[id] = null;
+		live.clear(id);
+		beatmapSet.searchIndexId = -1;
+		invalidateConditions();
+
+		// compact the index if enough sets were removed
+		if (++removedCount >= COMPACT_THRESHOLD && removedCount > nextId / 2) {
+			BeatmapSet[] oldSets = sets;
+			int oldCount = nextId;
+			clear(oldCount - removedCount);
+			for (int i = 0; i < oldCount; i++) {
+				if (oldSets[i] != null)
+					add(oldSets[i]);
+			}
+		}
+	}
+
+	/**
+	 * Re-indexes a beatmap set (e.g. after one of its beatmaps was removed).
+	 * @param beatmapSet the beatmap set
+	 */
+	public synchronized void update(BeatmapSet beatmapSet) {
+		remove(beatmapSet);
+		add(beatmapSet);
+	}
+
+	/**
+	 * Marks the values of a conditional search type as changed.
+	 * @param type the condition type (ar, cs, od, hp, bpm, length, star/stars)
+	 */
+	public synchronized void invalidateCondition(String type) {
+		int index = getConditionIndex(type);
+		if (index != -1)
+			conditions[index].dirty = true;
+	}
+
+	/**
+	 * Marks the values of all conditional search types as changed.
+	 */
+	private void invalidateConditions() {
+		for (ConditionValues c : conditions)
+			c.dirty = true;
+	}
+
+	/**
+	 * Returns the IDs of all beatmap sets matching a search term.
+	 * @param term the search term (lowercase, no whitespace)
+	 * @return the matching IDs
+	 * @see BeatmapSet#matches(String)
+	 */
+	public synchronized BitSet find(String term) {
+		BitSet result = new BitSet(nextId);
+		int length = term.length();
+		if (length == 0)
+			return result;
+
+		if (length <= MAX_GRAM) {
+			// exact n-gram match
+			long key = 0;
+			for (int i = 0; i < length; i++)
+				key = (key << 16) | term.charAt(i);
+			Postings p = postings.get(gramKey(key, length));
+			if (p != null) {
+				for (int i = 0; i < p.size; i++)
+					result.set(p.ids[i]);
+				result.and(live);
+			}
+			return result;
+		}
+
+		// find the rarest n-gram in the term
+		Postings rarest = null;
+		for (int i = 0; i + MAX_GRAM <= length; i++) {
+			long key = 0;
+			for (int n = 0; n < MAX_GRAM; n++)
+				key = (key << 16) | term.charAt(i + n);
+			Postings p = postings.get(gramKey(key, MAX_GRAM));
+			if (p == null)
+				return result;
+			if (rarest == null || p.size < rarest.size)
+				rarest = p;
+		}
+
+		// verify candidates
+		for (int i = 0; i < rarest.size; i++) {
+			int id = rarest.ids[i];
+			String text = texts[id];
+			if (text != null && text.contains(term))
+				result.set(id);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the IDs of all beatmap sets matching a condition.
+	 * @param type the condition type (ar, cs, od, hp, bpm, length, star/stars)
+	 * @param operator the operator {@literal (=/==, >, >=, <, <=)}
+	 * @param value the value
+	 * @return the matching IDs
+	 * @see BeatmapSet#matches(String, String, float)
+	 */
+	public synchronized BitSet find(String type, String operator, float value) {
+		BitSet result = new BitSet(nextId);
+		int index = getConditionIndex(type);
+		if (index == -1 || Float.isNaN(value))
+			return result;
+		ConditionValues c = conditions[index];
+		if (c.dirty)
+			buildConditionValues(c, CONDITION_TYPES[index]);
+
+		// find range of matching values
+		int from, to;
+		switch (operator) {
+			case "=":
+			case "==": from = lowerBound(c.values, value); to = upperBound(c.values, value); break;
+			case ">":  from = upperBound(c.values, value); to = c.values.length; break;
+			case ">=": from = lowerBound(c.values, value); to = c.values.length; break;
+			case "<":  from = 0; to = lowerBound(c.values, value); break;
+			case "<=": from = 0; to = upperBound(c.values, value); break;
+			default: return result;
+		}
+		for (int i = from; i < to; i++)
+			result.set(c.ids[i]);
+		return result;
+	}
+
+	/**
+	 * Returns the given nodes whose beatmap sets are matches.
+	 * @param nodes the nodes (in order)
+	 * @param matches the matching IDs
+	 * @return a new list of matching nodes (in the same order)
+	 */
+	public synchronized ArrayList<BeatmapSetNode> select(BeatmapSetNode[] nodes, BitSet matches) {
+		ArrayList<BeatmapSetNode> list = new ArrayList<BeatmapSetNode>();
+		for (BeatmapSetNode node : nodes) {
+			int id = node.getBeatmapSet().searchIndexId;
+			if (id >= 0 && matches.get(id))
+				list.add(node);
+		}
+		return list;
+	}
+
+	/**
+	 * Removes all nodes whose beatmap sets do not match a search term.
+	 * @param nodes the nodes
+	 * @param term the search term (lowercase, no whitespace)
+	 * @see BeatmapSet#matches(String)
+	 */
+	public synchronized void retain(List<BeatmapSetNode> nodes, String term) {
+		Iterator<BeatmapSetNode> iter = nodes.iterator();
+		while (iter.hasNext()) {
+			int id = iter.next().getBeatmapSet().searchIndexId;
+			if (id < 0 || !texts[id].contains(term))
+				iter.remove();
+		}
+	}
+
+	/**
+	 * Removes all nodes whose beatmap sets do not match a condition.
+	 * @param nodes the nodes
+	 * @param type the condition type (ar, cs, od, hp, bpm, length, star/stars)
+	 * @param operator the operator {@literal (=/==, >, >=, <, <=)}
+	 * @param value the value
+	 * @see BeatmapSet#matches(String, String, float)
+	 */
+	public synchronized void retain(List<BeatmapSetNode> nodes, String type, String operator, float value) {
+		Iterator<BeatmapSetNode> iter = nodes.iterator();
+		while (iter.hasNext()) {
+			BeatmapSet beatmapSet = iter.next().getBeatmapSet();
+			if (beatmapSet.searchIndexId < 0 || !beatmapSet.matches(type, operator, value))
+				iter.remove();
+		}
+	}
+
+	/**
+	 * Returns the number of beatmap sets in the index.
+	 */
+	public synchronized int size() { return nextId - removedCount; }
+
+	/**
+	 * Rebuilds the sorted values of a conditional search type.
+	 * @param c the values to rebuild
+	 * @param type the condition type
+	 */
+	private void buildConditionValues(ConditionValues c, String type) {
+		// sort (value, ID) pairs packed into longs, using order-preserving float bits
+		long[] keys = new long[16];
+		int count = 0;
+		for (int id = live.nextSetBit(0); id >= 0; id = live.nextSetBit(id + 1)) {
+			for (Beatmap beatmap : sets[id]) {
+				float v = BeatmapSet.getConditionValue(beatmap, type);
+				if (Float.isNaN(v))
+					continue;
+				int bits = Float.floatToIntBits(v);
+				bits ^= (bits >> 31) & 0x7fffffff;
+				if (count == keys.length)
+					keys = Arrays.copyOf(keys, count * 2);
+				keys[count++] = ((long) bits << 32) | id;
+			}
+		}
+		Arrays.sort(keys, 0, count);
+
+		c.values = new float[count];
+		c.ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			int bits = (int) (keys[i] >> 32);
+			bits ^= (bits >> 31) & 0x7fffffff;
+			c.values[i] = Float.intBitsToFloat(bits);
+			c.ids[i] = (int) keys[i];
+		}
+		c.dirty = false;
+	}
+
+	/**
+	 * Returns the index of the first value not less than the given value.
+	 * @param values the sorted values
+	 * @param value the value
+	 */
+	private static int lowerBound(float[] values, float value) {
+		int lo = 0, hi = values.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] < value)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the first value greater than the given value.
+	 * @param values the sorted values
+	 * @param value the value
+	 */
+	private static int upperBound(float[] values, float value) {
+		int lo = 0, hi = values.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] <= value)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of a conditional search type, or -1 if unknown.
+	 * @param type the condition type
+	 */
+	private static int getConditionIndex(String type) {
+		if (type.equals("star"))
+			type = "stars";
+		for (int i = 0; i < CONDITION_TYPES.length; i++) {
+			if (CONDITION_TYPES[i].equals(type))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the key of an n-gram.
+	 * @param chars the n-gram characters (16 bits each)
+	 * @param length the n-gram length
+	 */
+	private static Long gramKey(long chars, int length) {
+		return Long.valueOf(((long) length << 48) | chars);
+	}
+
+	/**
+	 * Returns the searchable text of a beatmap set, containing the fields
+	 * checked by {@link BeatmapSet#matches(String)} joined by {@link #SEPARATOR}.
+	 * @param beatmapSet the beatmap set
+	 */
+	private static String getSearchText(BeatmapSet beatmapSet) {
+		StringBuilder sb = new StringBuilder();
+		Beatmap beatmap = beatmapSet.get(0);
+		sb.append(beatmap.title.toLowerCase()).append(SEPARATOR);
+		sb.append(beatmap.titleUnicode.toLowerCase()).append(SEPARATOR);
+		sb.append(beatmap.artist.toLowerCase()).append(SEPARATOR);
+		sb.append(beatmap.artistUnicode.toLowerCase()).append(SEPARATOR);
+		sb.append(beatmap.creator.toLowerCase()).append(SEPARATOR);
+		sb.append(beatmap.source.toLowerCase());
+		for (Beatmap bm : beatmapSet) {
+			sb.append(SEPARATOR).append(bm.version.toLowerCase());
+			sb.append(SEPARATOR).append(bm.tags);
+		}
+		return sb.toString();
+	}
+}
@@ -34,6 +34,9 @@ public class BeatmapSet implements Iterable<Beatmap> {
 	/** List of associated beatmaps. */
 	private final ArrayList<Beatmap> beatmaps;
 
+	/** The ID of this set in the search index (-1 if not indexed). */
+	int searchIndexId = -1;
+
 	/**
 	 * Constructor.
 	 * @param beatmaps the beatmaps in this set
@@ -155,18 +158,9 @@ public class BeatmapSet implements Iterable<Beatmap> {
 	public boolean matches(String type, String operator, float value) {
 		for (Beatmap beatmap : beatmaps) {
 			// get value
-			float v;
-			switch (type) {
-				case "ar": v = beatmap.approachRate; break;
-				case "cs": v = beatmap.circleSize; break;
-				case "od": v = beatmap.overallDifficulty; break;
-				case "hp": v = beatmap.HPDrainRate; break;
-				case "bpm": v = beatmap.bpmMax; break;
-				case "length": v = beatmap.endTime / 1000; break;
-				case "star":
-				case "stars": v = Math.round(beatmap.starRating * 100) / 100f; break;
-				default: return false;
-			}
+			float v = getConditionValue(beatmap, type);
+			if (Float.isNaN(v))
+				return false;
 
 			// get operator
 			boolean met;
@@ -187,6 +181,26 @@ public class BeatmapSet implements Iterable<Beatmap> {
 		return false;
 	}
 
+	/**
+	 * Returns the value of a beatmap used in conditional searches.
+	 * @param beatmap the beatmap
+	 * @param type the condition type (ar, cs, od, hp, bpm, length, star/stars)
+	 * @return the value, or {@code Float.NaN} if the type is unknown
+	 */
+	static float getConditionValue(Beatmap beatmap, String type) {
+		switch (type) {
+			case "ar": return beatmap.approachRate;
+			case "cs": return beatmap.circleSize;
+			case "od": return beatmap.overallDifficulty;
+			case "hp": return beatmap.HPDrainRate;
+			case "bpm": return beatmap.bpmMax;
+			case "length": return beatmap.endTime / 1000;
+			case "star":
+			case "stars": return Math.round(beatmap.starRating * 100) / 100f;
+			default: return Float.NaN;
+		}
+	}
+
 	/**
 	 * Returns whether this beatmap set is a "favorite".
 	 */
@@ -28,11 +28,14 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -75,6 +78,18 @@ public class BeatmapSetList {
 	/** The last search query. */
 	private String lastQuery;
 
+	/** Search index over all parsed nodes (built on {@link #init()}). */
+	private BeatmapSearchIndex searchIndex;
+
+	/** The search in progress, or finished but unpublished (null if none). */
+	private SearchTask pendingSearch;
+
+	/** The query of the published search results (null if none, or if they cannot be refined). */
+	private SearchQuery publishedQuery;
+
+	/** Executor for background searches. */
+	private static ExecutorService searchExecutor;
+
 	/**
 	 * Creates a new instance of this class (overwriting any previous instance).
 	 */
@@ -104,6 +119,8 @@ public class BeatmapSetList {
 		expandedIndex = -1;
 		expandedStartNode = expandedEndNode = null;
 		lastQuery = null;
+		cancelSearch();
+		publishedQuery = null;
 	}
 
 	/**
@@ -121,6 +138,10 @@ public class BeatmapSetList {
 		BeatmapSetNode node = new BeatmapSetNode(beatmapSet);
 		parsedNodes.add(node);
 		mapCount += beatmaps.size();
+		if (searchIndex != null) {
+			searchIndex.add(beatmapSet);
+			searchIndexChanged();
+		}
 
 		// add beatmap set ID to set
 		int msid = beatmaps.get(0).beatmapSetID;
@@ -173,6 +194,10 @@ public class BeatmapSetList {
 		parsedNodes.remove(eCur);
 		groupNodes.remove(eCur);
 		mapCount -= beatmapSet.size();
+		if (searchIndex != null) {
+			searchIndex.remove(beatmapSet);
+			searchIndexChanged();
+		}
 		if (beatmap.beatmapSetID > 0)
 			MSIDdb.remove(beatmap.beatmapSetID);
 		for (Beatmap bm : beatmapSet) {
@@ -252,6 +277,10 @@ public class BeatmapSetList {
 		mapCount--;
 		if (beatmap.md5Hash != null)
 			beatmapHashDB.remove(beatmap.md5Hash);
+		if (searchIndex != null) {
+			searchIndex.update(node.getBeatmapSet());
+			searchIndexChanged();
+		}
 
 		// re-link nodes
 		if (node.prev != null)
@@ -288,6 +317,11 @@ public class BeatmapSetList {
 	 */
 	public int getMapSetCount() { return parsedNodes.size(); }
 
+	/**
+	 * Returns all parsed nodes, regardless of the current group or search.
+	 */
+	public List<BeatmapSetNode> getParsedNodes() { return Collections.unmodifiableList(parsedNodes); }
+
 	/**
 	 * Returns the BeatmapSetNode at an index, disregarding expansions.
 	 * @param index the node index
@@ -407,6 +441,8 @@ public class BeatmapSetList {
 	 * Initializes the links in the list.
 	 */
 	public void init() {
+		if (searchIndex == null)
+			searchIndex = new BeatmapSearchIndex(parsedNodes);
 		if (size() < 1)
 			return;
 
@@ -431,11 +467,18 @@ public class BeatmapSetList {
 	}
 
 	/**
-	 * Creates a new list of song groups in which each group contains a match to a search query.
+	 * Starts a search for song groups containing a match to a search query.
+	 * The search runs in the background, and the results replace the current
+	 * list only when {@link #publishSearchResult()} is called. Any search still
+	 * in progress is cancelled.
+	 * <p>
+	 * If the query is a refinement of the currently published one (i.e. every
+	 * previous term is contained in a new term), only the current results are
+	 * filtered instead of the whole group.
 	 * @param query the search query (terms separated by spaces)
 	 * @return false if query is the same as the previous one, true otherwise
 	 */
-	public boolean search(String query) {
+	public boolean startSearch(String query) {
 		if (query == null)
 			return false;
 
@@ -444,86 +487,271 @@ public class BeatmapSetList {
 		if (lastQuery != null && query.equals(lastQuery))
 			return false;
 		lastQuery = query;
-		LinkedList<String> terms = new LinkedList<String>(Arrays.asList(query.split("\\s+")));
 
-		// if empty query, reset to original list
-		if (query.isEmpty() || terms.isEmpty()) {
-			nodes = groupNodes;
-			return true;
+		cancelSearch();
+		SearchQuery q = new SearchQuery(query);
+		if (q.isEmpty()) {
+			// if empty query, reset to original list
+			pendingSearch = new SearchTask(q, groupNodes);
+		} else {
+			boolean refine = (publishedQuery != null && q.refines(publishedQuery));
+			submitSearch(q, refine);
 		}
+		return true;
+	}
 
-		// find and remove any conditional search terms
-		LinkedList<String> condType     = new LinkedList<String>();
-		LinkedList<String> condOperator = new LinkedList<String>();
-		LinkedList<Float>  condValue    = new LinkedList<Float>();
-
-		Iterator<String> termIter = terms.iterator();
-		while (termIter.hasNext()) {
-			String term = termIter.next();
-			Matcher m = SEARCH_CONDITION_PATTERN.matcher(term);
-			if (m.find()) {
-				condType.add(m.group(1));
-				condOperator.add(m.group(2));
-				condValue.add(Float.parseFloat(m.group(3)));
-				termIter.remove();
-			}
+	/**
+	 * Replaces the current list with the results of the last search, if finished.
+	 * @return true if new results were published, false otherwise
+	 */
+	public boolean publishSearchResult() {
+		SearchTask task = pendingSearch;
+		if (task == null || task.result == null)
+			return false;
+
+		pendingSearch = null;
+		nodes = task.result;
+		publishedQuery = (task.query.isEmpty()) ? null : task.query;
+		return true;
+	}
+
+	/**
+	 * Returns whether a search is in progress or waiting to be published.
+	 */
+	public boolean isSearching() { return pendingSearch != null; }
+
+	/**
+	 * Notifies the search index that star ratings have changed.
+	 */
+	public void starRatingsChanged() {
+		if (searchIndex != null)
+			searchIndex.invalidateCondition("stars");
+		if (publishedQuery != null && publishedQuery.hasCondition("star", "stars"))
+			publishedQuery = null;
+	}
+
+	/**
+	 * Submits a search to the background executor.
+	 * @param query the search query
+	 * @param refine whether to filter the current results instead of the whole group
+	 */
+	private void submitSearch(SearchQuery query, boolean refine) {
+		if (searchIndex == null)
+			searchIndex = new BeatmapSearchIndex(parsedNodes);
+		List<BeatmapSetNode> candidates = (refine) ? nodes : groupNodes;
+		pendingSearch = new SearchTask(query, searchIndex, candidates.toArray(new BeatmapSetNode[candidates.size()]), refine);
+		if (searchExecutor == null) {
+			searchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "BeatmapSearch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
 		}
+		searchExecutor.execute(pendingSearch);
+	}
 
-		// build an initial list from first search term
-		nodes = new ArrayList<BeatmapSetNode>();
-		if (terms.isEmpty()) {
-			// conditional term
-			String type = condType.remove();
-			String operator = condOperator.remove();
-			float value = condValue.remove();
-			for (BeatmapSetNode node : groupNodes) {
-				if (node.getBeatmapSet().matches(type, operator, value))
-					nodes.add(node);
-			}
-		} else {
-			// normal term
-			String term = terms.remove();
-			for (BeatmapSetNode node : groupNodes) {
-				if (node.getBeatmapSet().matches(term))
-					nodes.add(node);
-			}
+	/**
+	 * Cancels the search in progress, if any.
+	 */
+	private void cancelSearch() {
+		if (pendingSearch != null) {
+			pendingSearch.cancelled = true;
+			pendingSearch = null;
 		}
+	}
 
-		// iterate through remaining normal search terms
-		while (!terms.isEmpty()) {
-			if (nodes.isEmpty())
-				return true;
+	/**
+	 * Handles changes to the parsed nodes: published results can no longer be
+	 * refined, and a search in progress is restarted.
+	 */
+	private void searchIndexChanged() {
+		publishedQuery = null;
+		SearchTask task = pendingSearch;
+		if (task != null && !task.query.isEmpty()) {
+			cancelSearch();
+			submitSearch(task.query, false);
+		}
+	}
 
-			String term = terms.remove();
+	/**
+	 * Parsed search query.
+	 */
+	private static class SearchQuery {
+		/** Normal search terms. */
+		private final List<String> terms = new ArrayList<String>();
+
+		/** Conditional search terms (type, operator, value). */
+		private final List<String> condType = new ArrayList<String>(), condOperator = new ArrayList<String>();
+		private final List<Float> condValue = new ArrayList<Float>();
+
+		/**
+		 * Constructor.
+		 * @param query the search query (trimmed and lowercase)
+		 */
+		public SearchQuery(String query) {
+			if (query.isEmpty())
+				return;
+
+			// separate conditional search terms
+			for (String term : query.split("\\s+")) {
+				Matcher m = SEARCH_CONDITION_PATTERN.matcher(term);
+				if (m.find()) {
+					condType.add(m.group(1));
+					condOperator.add(m.group(2));
+					condValue.add(Float.parseFloat(m.group(3)));
+				} else
+					terms.add(term);
+			}
+		}
 
-			// remove nodes from list if they don't match all terms
-			Iterator<BeatmapSetNode> nodeIter = nodes.iterator();
-			while (nodeIter.hasNext()) {
-				BeatmapSetNode node = nodeIter.next();
-				if (!node.getBeatmapSet().matches(term))
-					nodeIter.remove();
+		/** Returns whether the query has no terms. */
+		public boolean isEmpty() { return terms.isEmpty() && condType.isEmpty(); }
+
+		/**
+		 * Returns whether the query contains a condition of any of the given types.
+		 * @param types the condition types
+		 */
+		public boolean hasCondition(String... types) {
+			for (String type : types) {
+				if (condType.contains(type))
+					return true;
 			}
+			return false;
 		}
 
-		// iterate through remaining conditional terms
-		while (!condType.isEmpty()) {
-			if (nodes.isEmpty())
-				return true;
-
-			String type = condType.remove();
-			String operator = condOperator.remove();
-			float value = condValue.remove();
-
-			// remove nodes from list if they don't match all terms
-			Iterator<BeatmapSetNode> nodeIter = nodes.iterator();
-			while (nodeIter.hasNext()) {
-				BeatmapSetNode node = nodeIter.next();
-				if (!node.getBeatmapSet().matches(type, operator, value))
-					nodeIter.remove();
+		/**
+		 * Returns whether every match of this query is also a match of another query,
+		 * i.e. each of its terms is contained in one of this query's terms, and each
+		 * of its conditions is also a condition of this query.
+		 * @param q the other query
+		 */
+		public boolean refines(SearchQuery q) {
+			for (String prev : q.terms) {
+				boolean found = false;
+				for (String term : terms) {
+					if (term.contains(prev)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found)
+					return false;
+			}
+			for (int i = 0, n = q.condType.size(); i < n; i++) {
+				boolean found = false;
+				for (int j = 0, m = condType.size(); j < m; j++) {
+					if (condType.get(j).equals(q.condType.get(i)) &&
+					    condOperator.get(j).equals(q.condOperator.get(i)) &&
+					    condValue.get(j).equals(q.condValue.get(i))) {
+						found = true;
+						break;
+					}
+				}
+				if (!found)
+					return false;
 			}
+			return true;
 		}
+	}
 
-		return true;
+	/**
+	 * Background search.
+	 * The result list is only written once complete, so it can be published atomically.
+	 */
+	private static class SearchTask implements Runnable {
+		/** The search query. */
+		private final SearchQuery query;
+
+		/** The search index. */
+		private final BeatmapSearchIndex index;
+
+		/** Nodes to search (in order). */
+		private final BeatmapSetNode[] candidates;
+
+		/** Whether the candidates are previous results (rather than the whole group). */
+		private final boolean refine;
+
+		/** Whether this search was cancelled. */
+		private volatile boolean cancelled = false;
+
+		/** The search results (null until finished). */
+		private volatile ArrayList<BeatmapSetNode> result;
+
+		/**
+		 * Constructor for a finished search.
+		 * @param query the search query
+		 * @param result the search results
+		 */
+		public SearchTask(SearchQuery query, ArrayList<BeatmapSetNode> result) {
+			this.query = query;
+			this.index = null;
+			this.candidates = null;
+			this.refine = false;
+			this.result = result;
+		}
+
+		/**
+		 * Constructor.
+		 * @param query the search query
+		 * @param index the search index
+		 * @param candidates the nodes to search
+		 * @param refine whether the candidates are previous results
+		 */
+		public SearchTask(SearchQuery query, BeatmapSearchIndex index, BeatmapSetNode[] candidates, boolean refine) {
+			this.query = query;
+			this.index = index;
+			this.candidates = candidates;
+			this.refine = refine;
+		}
+
+		@Override
+		public void run() {
+			if (cancelled)
+				return;
+
+			ArrayList<BeatmapSetNode> list;
+			if (refine) {
+				// filter the previous results
+				list = new ArrayList<BeatmapSetNode>(Arrays.asList(candidates));
+				for (String term : query.terms) {
+					if (cancelled || list.isEmpty())
+						break;
+					index.retain(list, term);
+				}
+				for (int i = 0, n = query.condType.size(); i < n; i++) {
+					if (cancelled || list.isEmpty())
+						break;
+					index.retain(list, query.condType.get(i), query.condOperator.get(i), query.condValue.get(i));
+				}
+			} else {
+				// intersect the matches of all search terms
+				BitSet matches = null;
+				for (String term : query.terms) {
+					if (cancelled)
+						return;
+					BitSet termMatches = index.find(term);
+					if (matches == null)
+						matches = termMatches;
+					else
+						matches.and(termMatches);
+				}
+				for (int i = 0, n = query.condType.size(); i < n; i++) {
+					if (cancelled)
+						return;
+					BitSet condMatches = index.find(query.condType.get(i), query.condOperator.get(i), query.condValue.get(i));
+					if (matches == null)
+						matches = condMatches;
+					else
+						matches.and(condMatches);
+				}
+				list = index.select(candidates, matches);
+			}
+			if (!cancelled)
+				result = list;
+		}
 	}
 
 	/**
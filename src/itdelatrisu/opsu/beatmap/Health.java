@@ -109,6 +109,16 @@ public class Health {
 	/** Sets the current health value. */
 	public void setHealth(float value) { health = healthUncapped = value; }
 
+	/**
+	 * Sets the current and uncapped health values, and skips the display animation.
+	 * @param value the health value
+	 * @param uncappedValue the uncapped health value
+	 */
+	public void setHealth(float value, float uncappedValue) {
+		health = healthDisplay = value;
+		healthUncapped = uncappedValue;
+	}
+
 	/** Changes the current health by the given value. */
 	public void changeHealth(float value) {
 		health = Utils.clamp(health + value, 0f, HP_MAX);
@@ -19,10 +19,12 @@
 package itdelatrisu.opsu.beatmap;
 
 import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.io.OsuTokenizer;
 import itdelatrisu.opsu.objects.curves.CatmullCurve;
 import itdelatrisu.opsu.objects.curves.CircumscribedCircle;
 import itdelatrisu.opsu.objects.curves.Curve;
 import itdelatrisu.opsu.objects.curves.LinearBezier;
+import itdelatrisu.opsu.objects.curves.ScaledCurve;
 import itdelatrisu.opsu.objects.curves.Vec2f;
 
 import java.text.DecimalFormat;
@@ -141,6 +143,9 @@ public class HitObject {
 	/** Hit object index in the current stack. */
 	private int stack;
 
+	/** The unscaled slider curve (created on first use). */
+	private volatile Curve sliderCurve;
+
 	/**
 	 * Initializes the HitObject data type with container dimensions.
 	 * @param width the container width
@@ -271,6 +276,96 @@ public class HitObject {
 		}
 	}
 
+	/**
+	 * Constructor.
+	 * Parses the current line of the tokenizer, in the same format as {@link #HitObject(String)}.
+	 * @param t the tokenizer
+	 */
+	public HitObject(OsuTokenizer t) {
+		// common fields
+		t.resetFields();
+		t.expectField(0, ',');
+		this.x = t.getFieldFloat(0);
+		t.expectField(0, ',');
+		this.y = t.getFieldFloat(0);
+		t.expectField(0, ',');
+		this.time = t.getFieldInt(0);
+		t.expectField(0, ',');
+		this.type = t.getFieldInt(0);
+		t.expectField(0, ',');
+		this.hitSound = t.getFieldByte(0);
+
+		// type-specific fields
+		boolean hasAddition;
+		if ((type & HitObject.TYPE_CIRCLE) > 0)
+			hasAddition = t.nextField(0, ',');
+		else if ((type & HitObject.TYPE_SLIDER) > 0) {
+			// slider curve type and coordinates
+			t.expectField(0, ',');
+			int sliderTokens = t.countSubfields(0, '|');
+			t.expectField(1, '|');
+			this.sliderType = t.getFieldChar(1);
+			this.sliderX = new float[sliderTokens - 1];
+			this.sliderY = new float[sliderTokens - 1];
+			for (int j = 1; j < sliderTokens; j++) {
+				t.expectField(1, '|');
+				t.expectField(2, ':');
+				this.sliderX[j - 1] = t.getFieldInt(2);
+				t.expectField(2, ':');
+				this.sliderY[j - 1] = t.getFieldInt(2);
+			}
+			t.expectField(0, ',');
+			this.repeat = t.getFieldInt(0);
+			t.expectField(0, ',');
+			this.pixelLength = t.getFieldFloat(0);
+			if (t.nextField(0, ',')) {
+				this.edgeHitSound = new short[t.countSubfields(0, '|')];
+				for (int j = 0; j < edgeHitSound.length; j++) {
+					t.expectField(1, '|');
+					edgeHitSound[j] = t.getFieldShort(1);
+				}
+			}
+			if (t.nextField(0, ',')) {
+				this.edgeAddition = new byte[t.countSubfields(0, '|')][2];
+				for (int j = 0; j < edgeAddition.length; j++) {
+					t.expectField(1, '|');
+					t.expectField(2, ':');
+					edgeAddition[j][0] = t.getFieldByte(2);
+					t.expectField(2, ':');
+					edgeAddition[j][1] = t.getFieldByte(2);
+				}
+			}
+			hasAddition = t.nextField(0, ',');
+		} else { //if ((type & HitObject.TYPE_SPINNER) > 0) {
+			t.expectField(0, ',');
+
+			// some 'endTime' fields contain a ':' character (?)
+			int index = t.fieldIndexOf(0, ':');
+			if (index != -1)
+				t.truncateField(0, index);
+			this.endTime = t.getFieldInt(0);
+			hasAddition = t.nextField(0, ',');
+		}
+
+		// addition
+		if (hasAddition) {
+			int additionTokens = t.countSubfields(0, ':');
+			if (additionTokens > 1) {
+				this.addition = new byte[2];
+				t.expectField(1, ':');
+				addition[0] = t.getFieldByte(1);
+				t.expectField(1, ':');
+				addition[1] = t.getFieldByte(1);
+			}
+			if (additionTokens > 2 && t.nextField(1, ':'))
+				this.additionCustomSampleIndex = t.getFieldByte(1);
+			if (additionTokens > 3 && t.nextField(1, ':'))
+				this.additionHitSoundVolume = t.getFieldInt(1);
+			if (additionTokens > 4 && t.nextField(1, ':'))
+				this.additionHitSound = t.getFieldString(1);
+		}
+	}
+
 	/**
 	 * Returns the raw starting x coordinate.
 	 */
@@ -413,21 +508,35 @@ public class HitObject {
 
 	/**
 	 * Returns the slider curve.
+	 * <p>
+	 * The unscaled curve is only computed once. Scaled curves are created by
+	 * transforming its points, so the current stack position and mods are
+	 * applied without rebuilding the curve geometry.
 	 * @param scaled whether to use scaled coordinates
-	 * @return a new Curve instance
+	 * @return the cached unscaled Curve, or a new scaled Curve instance
 	 */
 	public Curve getSliderCurve(boolean scaled) {
+		Curve curve = sliderCurve;
+		if (curve == null)
+			sliderCurve = curve = createSliderCurve();
+		return (scaled) ? new ScaledCurve(this, curve) : curve;
+	}
+
+	/**
+	 * Creates the unscaled slider curve.
+	 */
+	private Curve createSliderCurve() {
 		if (sliderType == SLIDER_PERFECT_CURVE && sliderX.length == 2) {
 			Vec2f nora = new Vec2f(sliderX[0] - x, sliderY[0] - y).nor();
 			Vec2f norb = new Vec2f(sliderX[0] - sliderX[1], sliderY[0] - sliderY[1]).nor();
 			if (Math.abs(norb.x * nora.y - norb.y * nora.x) < 0.00001f)
-				return new LinearBezier(this, false, scaled);  // vectors parallel, use linear bezier instead
+				return new LinearBezier(this, false, false);  // vectors parallel, use linear bezier instead
 			else
-				return new CircumscribedCircle(this, scaled);
+				return new CircumscribedCircle(this, false);
 		} else if (sliderType == SLIDER_CATMULL)
-			return new CatmullCurve(this, scaled);
+			return new CatmullCurve(this, false);
 		else
-			return new LinearBezier(this, sliderType == SLIDER_LINEAR, scaled);
+			return new LinearBezier(this, sliderType == SLIDER_LINEAR, false);
 	}
 
 	/**
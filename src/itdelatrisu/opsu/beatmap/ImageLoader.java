@@ -18,11 +18,18 @@
 
 package itdelatrisu.opsu.beatmap;
 
+import itdelatrisu.opsu.ImageDecoder.DecodedImageData;
+
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
@@ -33,8 +40,15 @@ import org.newdawn.slick.util.Log;
 
 /**
  * Simple threaded image loader for a single image file.
+ * <p>
+ * Threaded loads are decoded on a small pool of worker threads shared by all
+ * loaders, instead of starting a new thread for every image, and are read
+ * from (or stored in) the {@link BackgroundThumbnailCache}.
  */
 public class ImageLoader {
+	/** The shared decoder pool (created on first use). */
+	private static ThreadPoolExecutor executor;
+
 	/** The image file. */
 	private final File file;
 
@@ -42,45 +56,29 @@ public class ImageLoader {
 	private Image image;
 
 	/** The image data. */
-	private LoadedImageData data;
-
-	/** The image loader thread. */
-	private Thread loaderThread;
-
-	/** ImageData wrapper, needed because {@code ImageIOImageData} doesn't implement {@code getImageBufferData()}. */
-	private class LoadedImageData implements ImageData {
-		/** The image data implementation. */
-		private final ImageData imageData;
-
-		/** The stored image. */
-		private final ByteBuffer buffer;
-
-		/**
-		 * Constructor.
-		 * @param imageData the class holding the image properties
-		 * @param buffer the stored image
-		 */
-		public LoadedImageData(ImageData imageData, ByteBuffer buffer) {
-			this.imageData = imageData;
-			this.buffer = buffer;
-		}
+	private volatile ImageData data;
 
-		@Override public int getDepth() { return imageData.getDepth(); }
-		@Override public int getWidth() { return imageData.getWidth(); }
-		@Override public int getHeight() { return imageData.getHeight();}
-		@Override public int getTexWidth() { return imageData.getTexWidth(); }
-		@Override public int getTexHeight() { return imageData.getTexHeight(); }
-		@Override public ByteBuffer getImageBufferData() { return buffer; }
-	}
+	/** The decoded texture size, in bytes (0 if not yet decoded). */
+	private volatile long byteSize = 0;
+
+	/** The pending decode task. */
+	private ImageLoaderTask task;
+
+	/** The pending decode task's future. */
+	private Future<?> future;
 
-	/** Image loading thread. */
-	private class ImageLoaderThread extends Thread {
+	/** Image decoding task. */
+	private class ImageLoaderTask implements Runnable {
 		/** The image file input stream. */
-		private BufferedInputStream in;
+		private volatile BufferedInputStream in;
 
-		@Override
-		public void interrupt() {
-			super.interrupt();
+		/** Whether the task was cancelled. */
+		private volatile boolean cancelled = false;
+
+		/** Cancels the task, interrupting any I/O in progress. */
+		public void cancel() {
+			cancelled = true;
+			BufferedInputStream in = this.in;
 			if (in != null) {
 				try {
 					in.close();  // interrupt I/O
@@ -90,18 +88,35 @@ public class ImageLoader {
 
 		@Override
 		public void run() {
+			if (cancelled)
+				return;
+
+			// use the cached thumbnail, if any
+			ImageData thumbnail = BackgroundThumbnailCache.read(file);
+			if (thumbnail != null) {
+				if (!cancelled)
+					setData(thumbnail);
+				return;
+			}
+
 			// load image data into a ByteBuffer to use constructor Image(ImageData)
 			LoadableImageData imageData = ImageDataFactory.getImageDataFor(file.getAbsolutePath());
 			try (BufferedInputStream in = this.in = new BufferedInputStream(new FileInputStream(file))) {
 				ByteBuffer textureBuffer = imageData.loadImage(in, false, null);
-				if (!isInterrupted())
-					data = new LoadedImageData(imageData, textureBuffer);
+				if (!cancelled)
+					setData(BackgroundThumbnailCache.write(file, new DecodedImageData(imageData, textureBuffer)));
 			} catch (Exception e) {
-				if (!isInterrupted())
+				if (!cancelled)
 					Log.warn(String.format("Failed to load background image '%s'.", file), e);
 			}
 			this.in = null;
 		}
+
+		/** Publishes the decoded image data. */
+		private void setData(ImageData imageData) {
+			byteSize = imageData.getImageBufferData().capacity();
+			data = imageData;
+		}
 	}
 
 	/**
@@ -114,20 +129,20 @@ public class ImageLoader {
 
 	/**
 	 * Loads the image.
-	 * @param threaded true to load the image data in a new thread
+	 * @param threaded true to load the image data in a background thread
 	 */
 	public void load(boolean threaded) {
 		if (!file.isFile())
 			return;
 
 		if (threaded) {
-			if (loaderThread != null && loaderThread.isAlive())
-				loaderThread.interrupt();
-			loaderThread = new ImageLoaderThread();
-			loaderThread.start();
+			interrupt();
+			task = new ImageLoaderTask();
+			future = getExecutor().submit(task);
 		} else {
 			try {
 				image = new Image(file.getAbsolutePath());
+				byteSize = (long) image.getTexture().getTextureWidth() * image.getTexture().getTextureHeight() * 4;
 			} catch (SlickException e) {
 				Log.warn(String.format("Failed to load background image '%s'.", file), e);
 			}
@@ -146,18 +161,26 @@ public class ImageLoader {
 		return image;
 	}
 
+	/**
+	 * Returns the size of the decoded image texture, in bytes.
+	 * @return the size, or 0 if the image has not been loaded yet
+	 */
+	public long getByteSize() { return byteSize; }
+
 	/**
 	 * Returns whether an image is currently loading in another thread.
 	 * @return true if loading, false otherwise
 	 */
-	public boolean isLoading() { return (loaderThread != null && loaderThread.isAlive()); }
+	public boolean isLoading() { return (future != null && !future.isDone()); }
 
 	/**
 	 * Interrupts the image loader, if running.
 	 */
 	public void interrupt() {
-		if (isLoading())
-			loaderThread.interrupt();
+		if (isLoading()) {
+			task.cancel();
+			future.cancel(false);
+		}
 	}
 
 	/**
@@ -165,7 +188,8 @@ public class ImageLoader {
 	 */
 	public void destroy() {
 		interrupt();
-		loaderThread = null;
+		task = null;
+		future = null;
 		if (image != null && !image.isDestroyed()) {
 			try {
 				image.destroy();
@@ -175,5 +199,29 @@ public class ImageLoader {
 			image = null;
 		}
 		data = null;
+		byteSize = 0;
+	}
+
+	/**
+	 * Returns the shared decoder pool, creating it if needed.
+	 */
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() / 2, 2));
+			executor = new ThreadPoolExecutor(
+				threads, threads, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ImageLoader");
+						t.setDaemon(true);
+						return t;
+					}
+				}
+			);
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
 	}
 }
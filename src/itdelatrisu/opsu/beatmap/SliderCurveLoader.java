@@ -0,0 +1,176 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.beatmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.newdawn.slick.util.Log;
+
+/**
+ * Builds the (cached) unscaled slider curves of a beatmap on a worker pool.
+ * <p>
+ * Loading is started when a beatmap is selected for play, so that most curves
+ * are already built by the time the game state constructs its objects.
+ * {@link #finish()} builds any remaining curves on the calling thread and waits
+ * for the workers, after which all curves are cached in their hit objects.
+ * Curves that fail to build are skipped here (and reported when the game
+ * state constructs the slider).
+ */
+public class SliderCurveLoader {
+	/** A curve loading job for one beatmap. */
+	private static class Job implements Runnable {
+		/** The beatmap. */
+		private final Beatmap beatmap;
+
+		/** The index of the next hit object to process. */
+		private final AtomicInteger nextIndex = new AtomicInteger();
+
+		/** The number of processed hit objects. */
+		private final AtomicInteger finished = new AtomicInteger();
+
+		/** Constructor. */
+		public Job(Beatmap beatmap) {
+			this.beatmap = beatmap;
+		}
+
+		@Override
+		public void run() {
+			HitObject[] objects = beatmap.objects;
+			int i;
+			while ((i = nextIndex.getAndIncrement()) < objects.length) {
+				HitObject hitObject = objects[i];
+				if (hitObject != null && hitObject.isSlider()) {
+					try {
+						hitObject.getSliderCurve(false);
+					} catch (Exception e) {}  // reported on construction
+				}
+				finished.incrementAndGet();
+			}
+		}
+	}
+
+	/** The worker pool (created on first use). */
+	private static ThreadPoolExecutor executor;
+
+	/** The current job (null if none). */
+	private static volatile Job job;
+
+	/** The worker tasks of the current job. */
+	private static final List<Future<?>> tasks = new ArrayList<Future<?>>();
+
+	// This class should not be instantiated.
+	private SliderCurveLoader() {}
+
+	/**
+	 * Starts building the slider curves of a beatmap in the background.
+	 * The beatmap's hit objects must already be parsed.
+	 * @param beatmap the beatmap
+	 */
+	public static void start(Beatmap beatmap) {
+		finish();
+		if (beatmap.objects == null || beatmap.hitObjectSlider == 0)
+			return;
+
+		if (executor == null)
+			executor = createExecutor();
+		Job newJob = new Job(beatmap);
+		job = newJob;
+		for (int i = 0, n = executor.getMaximumPoolSize(); i < n; i++)
+			tasks.add(executor.submit(newJob));
+	}
+
+	/**
+	 * Builds all remaining slider curves of the current job on the calling thread,
+	 * and waits for the workers to finish.
+	 */
+	public static void finish() {
+		Job currentJob = job;
+		if (currentJob == null)
+			return;
+
+		currentJob.run();
+		for (Future<?> task : tasks) {
+			if (task.cancel(false))
+				continue;  // never started
+			try {
+				task.get();
+			} catch (InterruptedException | CancellationException e) {
+				// ignore
+			} catch (ExecutionException e) {
+				Log.warn("Failed to build slider curves.", e.getCause());
+			}
+		}
+		tasks.clear();
+		job = null;
+	}
+
+	/**
+	 * Returns the name of the beatmap being loaded, or null if none.
+	 */
+	public static String getCurrentFileName() {
+		Job currentJob = job;
+		if (currentJob == null || currentJob.finished.get() >= currentJob.beatmap.objects.length)
+			return null;
+
+		return currentJob.beatmap.getFile().getName();
+	}
+
+	/**
+	 * Returns the progress of slider curve loading, or -1 if not loading.
+	 * @return the completion percent [0, 100] or -1
+	 */
+	public static int getLoadingProgress() {
+		Job currentJob = job;
+		if (currentJob == null)
+			return -1;
+
+		return currentJob.finished.get() * 100 / currentJob.beatmap.objects.length;
+	}
+
+	/**
+	 * Creates the worker pool (leaving one processor for the main thread).
+	 */
+	private static ThreadPoolExecutor createExecutor() {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+			threads, threads, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, String.format("SliderCurveLoader-%d", threadCount.incrementAndGet()));
+					t.setDaemon(true);
+					return t;
+				}
+			}
+		);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+}
@@ -19,6 +19,9 @@
 package itdelatrisu.opsu.beatmap;
 
 import itdelatrisu.opsu.Utils;
+import itdelatrisu.opsu.io.OsuTokenizer;
+
+import java.nio.ByteBuffer;
 
 import org.newdawn.slick.util.Log;
 
@@ -26,6 +29,12 @@ import org.newdawn.slick.util.Log;
  * Data type representing a timing point.
  */
 public class TimingPoint {
+	/** Maximum size of the fields written by {@link #writeFields(ByteBuffer)}, in bytes. */
+	public static final int FIELDS_SIZE = 15;
+
+	/** Flags for {@link #writeFields(ByteBuffer)}. */
+	private static final byte FLAG_INHERITED = 1, FLAG_KIAI = 2;
+
 	/** Timing point start time/offset (in ms). */
 	private int time = 0;
 
@@ -91,6 +100,80 @@ public class TimingPoint {
 		}
 	}
 
+	/**
+	 * Constructor.
+	 * Parses the current line of the tokenizer, in the same format as {@link #TimingPoint(String)}.
+	 * @param t the tokenizer
+	 */
+	public TimingPoint(OsuTokenizer t) {
+		t.resetFields();
+		t.expectField(0, ',');
+		this.time = (int) t.getFieldFloat(0);  // rare float
+		t.expectField(0, ',');
+
+		// field 1 is either beatLength (positive) or velocity (negative)
+		float beatLength = t.getFieldFloat(0);
+		if (beatLength > 0)
+			this.beatLength = beatLength;
+		else {
+			this.velocity = (int) beatLength;
+			this.inherited = true;
+		}
+
+		try {
+			t.expectField(0, ',');
+			this.meter = t.getFieldInt(0);
+			t.expectField(0, ',');
+			this.sampleType = t.getFieldByte(0);
+			t.expectField(0, ',');
+			this.sampleTypeCustom = t.getFieldByte(0);
+			t.expectField(0, ',');
+			this.sampleVolume = t.getFieldInt(0);
+			if (t.skipFields(0, ',', 2))
+				this.kiai = t.getFieldBoolean(0);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			Log.debug(String.format("Error parsing timing point: '%s'", t.getLine()));
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * Reads the fields written by {@link #writeFields(ByteBuffer)}.
+	 * @param time the start time/offset (in ms)
+	 * @param buf the buffer (little-endian)
+	 */
+	public TimingPoint(int time, ByteBuffer buf) {
+		this.time = time;
+		byte flags = buf.get();
+		this.inherited = (flags & FLAG_INHERITED) != 0;
+		this.kiai = (flags & FLAG_KIAI) != 0;
+		if (inherited)
+			this.velocity = buf.getInt();
+		else
+			this.beatLength = buf.getFloat();
+		this.meter = buf.getInt();
+		this.sampleType = buf.get();
+		this.sampleTypeCustom = buf.get();
+		this.sampleVolume = buf.getInt();
+	}
+
+	/**
+	 * Writes all fields except the time into a buffer, in binary form.
+	 * At most {@link #FIELDS_SIZE} bytes will be written.
+	 * @param buf the buffer (little-endian)
+	 */
+	public void writeFields(ByteBuffer buf) {
+		buf.put((byte) ((inherited ? FLAG_INHERITED : 0) | (kiai ? FLAG_KIAI : 0)));
+		if (inherited)
+			buf.putInt(velocity);
+		else
+			buf.putFloat(beatLength);
+		buf.putInt(meter);
+		buf.put(sampleType);
+		buf.put(sampleTypeCustom);
+		buf.putInt(sampleVolume);
+	}
+
 	/**
 	 * Returns the timing point start time/offset.
 	 * @return the start time (in ms)
@@ -0,0 +1,102 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.beatmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache bounded by the total weight of its values
+ * (e.g. their size in bytes) rather than by the number of entries.
+ * <p>
+ * Weights may change after insertion (e.g. once an image finishes loading),
+ * so they are re-evaluated on every {@link #trim()}. Entries that weigh
+ * nothing (e.g. still loading) are skipped, since evicting them would not free
+ * anything. The most recently used entry is never evicted, even if it exceeds
+ * the capacity on its own.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+@SuppressWarnings("serial")
+public abstract class WeightedLRUCache<K, V> extends LinkedHashMap<K, V> {
+	/** The maximum total weight. */
+	private final long capacity;
+
+	/**
+	 * Creates a least recently used cache with the given total weight capacity.
+	 * @param capacity the maximum total weight
+	 */
+	public WeightedLRUCache(long capacity) {
+		super(16, 0.75f, true);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the weight of a value.
+	 * @param value the value
+	 * @return the weight (non-negative)
+	 */
+	protected abstract long weigh(V value);
+
+	/**
+	 * Returns the current total weight of all values.
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (V value : values())
+			weight += weigh(value);
+		return weight;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		V old = super.put(key, value);
+		trim();
+		return old;
+	}
+
+	/**
+	 * Evicts least recently used entries with a non-zero weight until the
+	 * total weight is within capacity.
+	 */
+	public void trim() {
+		long weight = getWeight();
+		int unvisited = size();
+		Iterator<Map.Entry<K, V>> iter = entrySet().iterator();
+		while (weight > capacity && unvisited > 1 && iter.hasNext()) {
+			Map.Entry<K, V> eldest = iter.next();
+			unvisited--;
+			long w = weigh(eldest.getValue());
+			if (w == 0)
+				continue;
+			weight -= w;
+			eldestRemoved(eldest);
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Notification that the eldest entry was removed.
+	 * Can be used to clean up any resources when this happens (via override).
+	 * @param eldest the removed entry
+	 */
+	public void eldestRemoved(Map.Entry<K, V> eldest) {}
+}
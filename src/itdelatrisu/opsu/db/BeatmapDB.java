@@ -45,7 +45,7 @@ public class BeatmapDB {
 	 * This value should be changed whenever the database format changes.
 	 * Add any update queries to the {@link #getUpdateQueries(int)} method.
 	 */
-	private static final int DATABASE_VERSION = 20170221;
+	private static final int DATABASE_VERSION = 20261018;
 
 	/**
 	 * Returns a list of SQL queries to apply, in order, to update from
@@ -74,6 +74,16 @@ public class BeatmapDB {
 		if (version < 20170221) {
 			list.add("UPDATE beatmaps SET stars = -1");
 		}
+		if (version < 20261017) {
+			list.add("ALTER TABLE beatmaps ADD COLUMN hitObjectsOffset INTEGER");
+			list.add("UPDATE beatmaps SET hitObjectsOffset = -1");
+		}
+		if (version < 20261018) {
+			// normalize empty array fields; they are then re-encoded as BLOBs in convertArrayFields()
+			list.add("UPDATE beatmaps SET timingPoints = NULL WHERE timingPoints = ''");
+			list.add("UPDATE beatmaps SET breaks = NULL WHERE breaks = ''");
+			list.add("UPDATE beatmaps SET combo = NULL WHERE combo = ''");
+		}
 
 		/* add future updates here */
 
@@ -152,7 +162,7 @@ public class BeatmapDB {
 			"INSERT INTO beatmaps VALUES (" +
 				"?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?," +
 				"?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?," +
-				"?, ?, ?, ?, ?, ?, ?, ?, ?" +
+				"?, ?, ?, ?, ?, ?, ?, ?, ?, ?" +
 			")"
 		);
 		selectStmt = connection.prepareStatement("SELECT * FROM beatmaps WHERE dir = ? AND file = ?");
@@ -180,10 +190,10 @@ public class BeatmapDB {
 					"bpmMin INTEGER, bpmMax INTEGER, endTime INTEGER, " +
 					"audioFile TEXT, audioLeadIn INTEGER, previewTime INTEGER, countdown INTEGER, sampleSet TEXT, stackLeniency REAL, " +
 					"mode INTEGER, letterboxInBreaks BOOLEAN, widescreenStoryboard BOOLEAN, epilepsyWarning BOOLEAN, " +
-					"bg TEXT, sliderBorder TEXT, timingPoints TEXT, breaks TEXT, combo TEXT, " +
+					"bg TEXT, sliderBorder TEXT, timingPoints BLOB, breaks BLOB, combo BLOB, " +
 					"md5hash TEXT, stars REAL, " +
 					"dateAdded INTEGER, favorite BOOLEAN, playCount INTEGER, lastPlayed INTEGER, localOffset INTEGER, " +
-					"video TEXT, videoOffset INTEGER" +
+					"video TEXT, videoOffset INTEGER, hitObjectsOffset INTEGER" +
 				"); " +
 				"CREATE TABLE IF NOT EXISTS info (" +
 					"key TEXT NOT NULL UNIQUE, value TEXT" +
@@ -241,6 +251,10 @@ public class BeatmapDB {
 			for (String query : getUpdateQueries(version))
 				stmt.executeUpdate(query);
 
+			// re-encode array fields (can't be done in SQL)
+			if (version < 20261018)
+				convertArrayFields(stmt);
+
 			// update version
 			if (infoExists) {
 				PreparedStatement ps = connection.prepareStatement("REPLACE INTO info (key, value) VALUES ('version', ?)");
@@ -251,6 +265,41 @@ public class BeatmapDB {
 		}
 	}
 
+	/**
+	 * Converts all array fields (timing points, breaks, combo colors) stored
+	 * as strings in the beatmap table to binary form.
+	 * @param stmt the statement to use
+	 */
+	private static void convertArrayFields(Statement stmt) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try (PreparedStatement ps = connection.prepareStatement(
+			"UPDATE beatmaps SET timingPoints = ?, breaks = ?, combo = ? WHERE rowid = ?"
+		)) {
+			String sql = "SELECT rowid, timingPoints, breaks, combo FROM beatmaps";
+			ResultSet rs = stmt.executeQuery(sql);
+			while (rs.next()) {
+				Beatmap beatmap = new Beatmap(null);
+				try {
+					setBeatmapArrayFields(rs, beatmap, 2);
+				} catch (SQLException e) {
+					Log.warn(String.format("Failed to convert array fields for beatmap row %d.", rs.getLong(1)), e);
+					continue;
+				}
+				ps.setBytes(1, beatmap.timingPointsToBytes());
+				ps.setBytes(2, beatmap.breaksToBytes());
+				ps.setBytes(3, beatmap.comboToBytes());
+				ps.setLong(4, rs.getLong(1));
+				ps.addBatch();
+			}
+			rs.close();
+			ps.executeBatch();
+			connection.commit();
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
 	/**
 	 * Retrieves the size of the beatmap cache from the 'info' table.
 	 */
@@ -425,9 +474,9 @@ public class BeatmapDB {
 			stmt.setBoolean(35, beatmap.epilepsyWarning);
 			stmt.setString(36, (beatmap.bg == null) ? null : beatmap.bg.getName());
 			stmt.setString(37, beatmap.sliderBorderToString());
-			stmt.setString(38, beatmap.timingPointsToString());
-			stmt.setString(39, beatmap.breaksToString());
-			stmt.setString(40, beatmap.comboToString());
+			stmt.setBytes(38, beatmap.timingPointsToBytes());
+			stmt.setBytes(39, beatmap.breaksToBytes());
+			stmt.setBytes(40, beatmap.comboToBytes());
 			stmt.setString(41, beatmap.md5Hash);
 			stmt.setDouble(42, beatmap.starRating);
 			stmt.setLong(43, beatmap.dateAdded);
@@ -437,6 +486,7 @@ public class BeatmapDB {
 			stmt.setInt(47, beatmap.localMusicOffset);
 			stmt.setString(48, (beatmap.video == null) ? null : beatmap.video.getName());
 			stmt.setInt(49, beatmap.videoOffset);
+			stmt.setLong(50, beatmap.hitObjectsOffset);
 		} catch (SQLException e) {
 			throw e;
 		} catch (Exception e) {
@@ -589,6 +639,7 @@ public class BeatmapDB {
 			if (video != null)
 				beatmap.video = new File(dir, BeatmapParser.getDBString(video));
 			beatmap.videoOffset = rs.getInt(49);
+			beatmap.hitObjectsOffset = rs.getLong(50);
 		} catch (SQLException e) {
 			throw e;
 		} catch (Exception e) {
@@ -603,10 +654,34 @@ public class BeatmapDB {
 	 * @throws SQLException
 	 */
 	private static void setBeatmapArrayFields(ResultSet rs, Beatmap beatmap) throws SQLException {
+		setBeatmapArrayFields(rs, beatmap, 38);
+	}
+
+	/**
+	 * Sets all Beatmap array fields using a given result set.
+	 * Fields stored as strings (from older database versions) are also accepted.
+	 * @param rs the result set containing the fields
+	 * @param beatmap the beatmap
+	 * @param index the column index of the timing points field (followed by breaks and combo)
+	 * @throws SQLException
+	 */
+	private static void setBeatmapArrayFields(ResultSet rs, Beatmap beatmap, int index) throws SQLException {
 		try {
-			beatmap.timingPointsFromString(rs.getString(38));
-			beatmap.breaksFromString(rs.getString(39));
-			beatmap.comboFromString(rs.getString(40));
+			Object timingPoints = rs.getObject(index);
+			if (timingPoints instanceof String)
+				beatmap.timingPointsFromString((String) timingPoints);
+			else
+				beatmap.timingPointsFromBytes((byte[]) timingPoints);
+			Object breaks = rs.getObject(index + 1);
+			if (breaks instanceof String)
+				beatmap.breaksFromString((String) breaks);
+			else
+				beatmap.breaksFromBytes((byte[]) breaks);
+			Object combo = rs.getObject(index + 2);
+			if (combo instanceof String)
+				beatmap.comboFromString((String) combo);
+			else
+				beatmap.comboFromBytes((byte[]) combo);
 		} catch (SQLException e) {
 			throw e;
 		} catch (Exception e) {
@@ -696,6 +771,38 @@ public class BeatmapDB {
 		}
 	}
 
+	/**
+	 * Sets the star rating fields of a batch of beatmaps in the database
+	 * in a single transaction.
+	 * @param batch the list of beatmaps
+	 */
+	public static void setStars(List<Beatmap> batch) {
+		if (connection == null || batch.isEmpty())
+			return;
+
+		try {
+			// turn off auto-commit mode
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+
+			// batch update
+			for (Beatmap beatmap : batch) {
+				setStarsStmt.setDouble(1, beatmap.starRating);
+				setStarsStmt.setString(2, beatmap.getFile().getParentFile().getName());
+				setStarsStmt.setString(3, beatmap.getFile().getName());
+				setStarsStmt.addBatch();
+			}
+			setStarsStmt.executeBatch();
+
+			// restore previous auto-commit mode
+			connection.commit();
+			connection.setAutoCommit(autoCommit);
+		} catch (SQLException e) {
+			ErrorHandler.error(String.format("Failed to save star ratings for %d beatmaps in database.",
+					batch.size()), e, true);
+		}
+	}
+
 	/**
 	 * Updates the play statistics for a beatmap in the database.
 	 * @param beatmap the beatmap
@@ -21,7 +21,9 @@ package itdelatrisu.opsu.db;
 import itdelatrisu.opsu.ErrorHandler;
 import itdelatrisu.opsu.ScoreData;
 import itdelatrisu.opsu.beatmap.Beatmap;
+import itdelatrisu.opsu.beatmap.LRUCache;
 import itdelatrisu.opsu.options.Options;
+import itdelatrisu.opsu.replay.ReplayAnalysis;
 import itdelatrisu.opsu.user.User;
 import itdelatrisu.opsu.user.UserList;
 
@@ -30,9 +32,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,6 +41,9 @@ import java.util.Map;
 
 /**
  * Handles connections and queries with the scores database.
+ * <p>
+ * This class is not thread-safe: all methods share one connection and the
+ * leaderboard caches, so callers must not use it from several threads at once.
  */
 public class ScoreDB {
 	/**
@@ -69,6 +73,12 @@ public class ScoreDB {
 		return list;
 	}
 
+	/** Maximum number of scores returned per beatmap (leaderboard size). */
+	public static final int LEADERBOARD_SIZE = 50;
+
+	/** Number of beatmaps (and beatmap sets) in the leaderboard caches. */
+	private static final int LEADERBOARD_CACHE_SIZE = 32;
+
 	/** Database connection. */
 	private static Connection connection;
 
@@ -84,6 +94,17 @@ public class ScoreDB {
 	/** User-related statements. */
 	private static PreparedStatement setCurrentUserStmt, insertUserStmt, deleteUserStmt;
 
+	/** Cached leaderboards, keyed by {@link #getMapKey(int, String, String, String, String)}. */
+	private static final Map<String, ScoreData[]> mapScoresCache =
+		new LRUCache<String, ScoreData[]>(LEADERBOARD_CACHE_SIZE);
+
+	/** Cached beatmap set leaderboards, keyed by {@link #getMapSetKey(int, String, String, String)}. */
+	private static final Map<String, Map<String, ScoreData[]>> mapSetScoresCache =
+		new LRUCache<String, Map<String, ScoreData[]>>(LEADERBOARD_CACHE_SIZE);
+
+	/** Replay analysis statements. */
+	private static PreparedStatement insertAnalysisStmt, selectAnalysisStmt, selectAnalysisHistoryStmt, selectUnanalyzedStmt;
+
 	// This class should not be instantiated.
 	private ScoreDB() {}
 
@@ -91,8 +112,16 @@ public class ScoreDB {
 	 * Initializes the database connection.
 	 */
 	public static void init() throws SQLException {
+		init(Options.SCORE_DB.getPath());
+	}
+
+	/**
+	 * Initializes the database connection to the given database file.
+	 * @param path the database path
+	 */
+	static void init(String path) throws SQLException {
 		// create a database connection
-		connection = DBController.createConnection(Options.SCORE_DB.getPath());
+		connection = DBController.createConnection(path);
 
 		// run any database updates
 		updateDatabase();
@@ -106,13 +135,16 @@ public class ScoreDB {
 			// timestamp (e.g. when imported) due to timestamp being the primary key.
 			"INSERT OR IGNORE INTO scores VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
 		);
+		// ordering matches ScoreData.compareTo() (reversed), served by the leaderboard indexes
 		selectMapStmt = connection.prepareStatement(
 			"SELECT * FROM scores WHERE " +
-			"MID = ? AND title = ? AND artist = ? AND creator = ? AND version = ?"
+			"MID = ? AND title = ? AND artist = ? AND creator = ? AND version = ? " +
+			"ORDER BY score DESC, timestamp DESC LIMIT ?"
 		);
 		selectMapSetStmt = connection.prepareStatement(
 			"SELECT * FROM scores WHERE " +
-			"MSID = ? AND title = ? AND artist = ? AND creator = ? ORDER BY version DESC"
+			"MSID = ? AND title = ? AND artist = ? AND creator = ? " +
+			"ORDER BY version DESC, score DESC, timestamp DESC"
 		);
 		deleteSongStmt = connection.prepareStatement(
 			"DELETE FROM scores WHERE " +
@@ -130,6 +162,21 @@ public class ScoreDB {
 		setCurrentUserStmt = connection.prepareStatement("INSERT OR REPLACE INTO info VALUES ('user', ?)");
 		insertUserStmt = connection.prepareStatement("INSERT OR REPLACE INTO users VALUES (?, ?, ?, ?, ?, ?)");
 		deleteUserStmt = connection.prepareStatement("DELETE FROM users WHERE name = ?");
+		insertAnalysisStmt = connection.prepareStatement("INSERT OR REPLACE INTO analysis VALUES (?, ?, ?)");
+		selectAnalysisStmt = connection.prepareStatement(
+			"SELECT data FROM analysis WHERE timestamp = ? AND version = ? AND data IS NOT NULL"
+		);
+		selectAnalysisHistoryStmt = connection.prepareStatement(
+			"SELECT analysis.timestamp, analysis.data FROM analysis " +
+			"JOIN scores ON scores.timestamp = analysis.timestamp " +
+			"WHERE scores.playerName = ? AND analysis.version = ? AND analysis.data IS NOT NULL " +
+			"ORDER BY analysis.timestamp"
+		);
+		selectUnanalyzedStmt = connection.prepareStatement(
+			"SELECT * FROM scores WHERE replay IS NOT NULL AND " +
+			"timestamp NOT IN (SELECT timestamp FROM analysis WHERE version = ?) " +
+			"ORDER BY timestamp DESC"
+		);
 	}
 
 	/**
@@ -160,7 +207,17 @@ public class ScoreDB {
 				"CREATE TABLE IF NOT EXISTS info (" +
 					"key TEXT NOT NULL UNIQUE, value TEXT" +
 				"); " +
-				"CREATE INDEX IF NOT EXISTS idx ON scores (MID, MSID, title, artist, creator, version);";
+				"CREATE TABLE IF NOT EXISTS analysis (" +
+					"timestamp INTEGER PRIMARY KEY, version INTEGER, data BLOB" +
+				"); " +
+				"CREATE INDEX IF NOT EXISTS idx ON scores (MID, MSID, title, artist, creator, version); " +
+				"CREATE INDEX IF NOT EXISTS idx_map_leaderboard ON scores " +
+					"(MID, title, artist, creator, version, score DESC, timestamp DESC); " +
+				"CREATE INDEX IF NOT EXISTS idx_mapset_leaderboard ON scores " +
+					"(MSID, title, artist, creator, version DESC, score DESC, timestamp DESC); " +
+				"CREATE TRIGGER IF NOT EXISTS analysis_delete AFTER DELETE ON scores BEGIN " +
+					"DELETE FROM analysis WHERE timestamp = OLD.timestamp; " +
+				"END;";
 			stmt.executeUpdate(sql);
 
 			// set the version key, if empty
@@ -232,11 +289,167 @@ public class ScoreDB {
 			insertStmt.setString(18, data.replayString);
 			insertStmt.setString(19, data.playerName);
 			insertStmt.executeUpdate();
+			invalidateLeaderboards(data);
 		} catch (SQLException e) {
 			ErrorHandler.error("Failed to save score to database.", e, true);
 		}
 	}
 
+	/**
+	 * Adds a list of scores to the database in a single transaction.
+	 * @param scores the scores to add
+	 * @return true if all scores were added, false if the transaction failed
+	 */
+	public static boolean addScores(List<ScoreData> scores) {
+		if (connection == null)
+			return false;
+		if (scores.isEmpty())
+			return true;
+
+		try {
+			// turn off auto-commit mode
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				// batch insert
+				for (ScoreData data : scores) {
+					setStatementFields(insertStmt, data);
+					insertStmt.setString(18, data.replayString);
+					insertStmt.setString(19, data.playerName);
+					insertStmt.addBatch();
+				}
+				insertStmt.executeBatch();
+				connection.commit();
+				clearLeaderboardCache();
+			} catch (SQLException e) {
+				insertStmt.clearBatch();
+				connection.rollback();
+				throw e;
+			} finally {
+				// restore previous auto-commit mode
+				connection.setAutoCommit(autoCommit);
+			}
+			return true;
+		} catch (SQLException e) {
+			ErrorHandler.error(String.format("Failed to save %d scores to database.", scores.size()), e, true);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns all scores with a replay that have not been analyzed with the
+	 * current {@link ReplayAnalysis#VERSION}, newest first.
+	 * @return the scores, or null if any error occurred
+	 */
+	public static List<ScoreData> getUnanalyzedScores() {
+		if (connection == null)
+			return null;
+
+		try {
+			selectUnanalyzedStmt.setInt(1, ReplayAnalysis.VERSION);
+			ResultSet rs = selectUnanalyzedStmt.executeQuery();
+			List<ScoreData> list = new ArrayList<ScoreData>();
+			while (rs.next())
+				list.add(new ScoreData(rs));
+			rs.close();
+			return list;
+		} catch (SQLException e) {
+			ErrorHandler.error("Failed to read unanalyzed scores from database.", e, true);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores replay analyses in a single transaction.
+	 * Scores that could not be analyzed are stored without data, so that
+	 * they are not retried until the analysis version changes.
+	 * @param analyses the analyses to add
+	 * @param failed the timestamps of scores that could not be analyzed
+	 */
+	public static void addAnalyses(List<ReplayAnalysis> analyses, List<Long> failed) {
+		if (connection == null || (analyses.isEmpty() && failed.isEmpty()))
+			return;
+
+		try {
+			// turn off auto-commit mode
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				// batch insert
+				for (ReplayAnalysis analysis : analyses) {
+					insertAnalysisStmt.setLong(1, analysis.getTimestamp());
+					insertAnalysisStmt.setInt(2, ReplayAnalysis.VERSION);
+					insertAnalysisStmt.setBytes(3, analysis.toBytes());
+					insertAnalysisStmt.addBatch();
+				}
+				for (long timestamp : failed) {
+					insertAnalysisStmt.setLong(1, timestamp);
+					insertAnalysisStmt.setInt(2, ReplayAnalysis.VERSION);
+					insertAnalysisStmt.setNull(3, Types.BLOB);
+					insertAnalysisStmt.addBatch();
+				}
+				insertAnalysisStmt.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				insertAnalysisStmt.clearBatch();
+				connection.rollback();
+				throw e;
+			} finally {
+				// restore previous auto-commit mode
+				connection.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException e) {
+			ErrorHandler.error(String.format("Failed to save %d replay analyses to database.",
+					analyses.size() + failed.size()), e, true);
+		}
+	}
+
+	/**
+	 * Retrieves the replay analysis for a score.
+	 * @param data the score
+	 * @return the analysis, or null if none exists or any error occurred
+	 */
+	public static ReplayAnalysis getAnalysis(ScoreData data) {
+		if (connection == null)
+			return null;
+
+		try {
+			selectAnalysisStmt.setLong(1, data.timestamp);
+			selectAnalysisStmt.setInt(2, ReplayAnalysis.VERSION);
+			ResultSet rs = selectAnalysisStmt.executeQuery();
+			ReplayAnalysis analysis = (rs.next()) ? ReplayAnalysis.fromBytes(data.timestamp, rs.getBytes(1)) : null;
+			rs.close();
+			return analysis;
+		} catch (SQLException | IllegalArgumentException e) {
+			ErrorHandler.error("Failed to read replay analysis from database.", e, true);
+			return null;
+		}
+	}
+
+	/**
+	 * Retrieves all replay analyses for a player, oldest first.
+	 * @param playerName the player name
+	 * @return the analyses, or null if any error occurred
+	 */
+	public static List<ReplayAnalysis> getAnalysisHistory(String playerName) {
+		if (connection == null)
+			return null;
+
+		try {
+			selectAnalysisHistoryStmt.setString(1, playerName);
+			selectAnalysisHistoryStmt.setInt(2, ReplayAnalysis.VERSION);
+			ResultSet rs = selectAnalysisHistoryStmt.executeQuery();
+			List<ReplayAnalysis> list = new ArrayList<ReplayAnalysis>();
+			while (rs.next())
+				list.add(ReplayAnalysis.fromBytes(rs.getLong(1), rs.getBytes(2)));
+			rs.close();
+			return list;
+		} catch (SQLException | IllegalArgumentException e) {
+			ErrorHandler.error("Failed to read replay analyses from database.", e, true);
+			return null;
+		}
+	}
+
 	/**
 	 * Deletes the given score from the database.
 	 * @param data the score to delete
@@ -252,6 +465,7 @@ public class ScoreDB {
 			deleteScoreStmt.setString(20, data.playerName);
 			deleteScoreStmt.setString(21, data.playerName);
 			deleteScoreStmt.executeUpdate();
+			invalidateLeaderboards(data);
 		} catch (SQLException e) {
 			ErrorHandler.error("Failed to delete score from database.", e, true);
 		}
@@ -272,6 +486,8 @@ public class ScoreDB {
 			deleteSongStmt.setString(4, beatmap.creator);
 			deleteSongStmt.setString(5, beatmap.version);
 			deleteSongStmt.executeUpdate();
+			mapScoresCache.remove(getMapKey(beatmap.beatmapID, beatmap.title, beatmap.artist, beatmap.creator, beatmap.version));
+			mapSetScoresCache.remove(getMapSetKey(beatmap.beatmapSetID, beatmap.title, beatmap.artist, beatmap.creator));
 		} catch (SQLException e) {
 			ErrorHandler.error("Failed to delete scores from database.", e, true);
 		}
@@ -314,49 +530,69 @@ public class ScoreDB {
 	}
 
 	/**
-	 * Retrieves the game scores for a beatmap while excluding a score.
+	 * Retrieves the top game scores for a beatmap while excluding a score.
 	 * @param beatmap the beatmap
 	 * @param exclude the filename (replay string) of the score to exclude
-	 * @return all scores for the beatmap except for exclude, or null if any error occurred
+	 * @return the top {@link #LEADERBOARD_SIZE} scores for the beatmap except for exclude
+	 *         (highest first), or null if any error occurred
 	 */
 	public static ScoreData[] getMapScoresExcluding(Beatmap beatmap, String exclude) {
 		if (connection == null)
 			return null;
 
-		List<ScoreData> list = new ArrayList<ScoreData>();
-		try {
-			selectMapStmt.setInt(1, beatmap.beatmapID);
-			selectMapStmt.setString(2, beatmap.title);
-			selectMapStmt.setString(3, beatmap.artist);
-			selectMapStmt.setString(4, beatmap.creator);
-			selectMapStmt.setString(5, beatmap.version);
-			ResultSet rs = selectMapStmt.executeQuery();
-			while (rs.next()) {
-				ScoreData s = new ScoreData(rs);
-				if (s.replayString != null && s.replayString.equals(exclude)) {
-					// don't return this score
-				} else {
-					list.add(s);
-				}
+		// cached leaderboards hold one extra score to fill the place of an excluded one
+		String key = getMapKey(beatmap.beatmapID, beatmap.title, beatmap.artist, beatmap.creator, beatmap.version);
+		ScoreData[] cached = mapScoresCache.get(key);
+		if (cached == null) {
+			List<ScoreData> list = new ArrayList<ScoreData>();
+			try {
+				selectMapStmt.setInt(1, beatmap.beatmapID);
+				selectMapStmt.setString(2, beatmap.title);
+				selectMapStmt.setString(3, beatmap.artist);
+				selectMapStmt.setString(4, beatmap.creator);
+				selectMapStmt.setString(5, beatmap.version);
+				selectMapStmt.setInt(6, LEADERBOARD_SIZE + 1);
+				ResultSet rs = selectMapStmt.executeQuery();
+				while (rs.next())
+					list.add(new ScoreData(rs));
+				rs.close();
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to read scores from database.", e, true);
+				return null;
+			}
+			cached = list.toArray(new ScoreData[list.size()]);
+			mapScoresCache.put(key, cached);
+		}
+
+		// return copies: display values (e.g. the time since the score) are computed once per object
+		List<ScoreData> list = new ArrayList<ScoreData>(Math.min(cached.length, LEADERBOARD_SIZE));
+		for (ScoreData s : cached) {
+			if (list.size() >= LEADERBOARD_SIZE)
+				break;
+			if (s.replayString != null && s.replayString.equals(exclude)) {
+				// don't return this score
+			} else {
+				list.add(new ScoreData(s));
 			}
-			rs.close();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to read scores from database.", e, true);
-			return null;
 		}
-		return getSortedArray(list);
+		return list.toArray(new ScoreData[list.size()]);
 	}
 
 	/**
-	 * Retrieves the game scores for a beatmap set.
+	 * Retrieves the top game scores for each beatmap in a beatmap set.
 	 * @param beatmap the beatmap
-	 * @return all scores for the beatmap set (Version, ScoreData[]),
-	 *         or null if any error occurred
+	 * @return the top {@link #LEADERBOARD_SIZE} scores for each beatmap in the set
+	 *         (Version, ScoreData[] highest first), or null if any error occurred
 	 */
 	public static Map<String, ScoreData[]> getMapSetScores(Beatmap beatmap) {
 		if (connection == null)
 			return null;
 
+		String key = getMapSetKey(beatmap.beatmapSetID, beatmap.title, beatmap.artist, beatmap.creator);
+		Map<String, ScoreData[]> cached = mapSetScoresCache.get(key);
+		if (cached != null)
+			return copyScores(cached);
+
 		Map<String, ScoreData[]> map = new HashMap<String, ScoreData[]>();
 		try {
 			selectMapSetStmt.setInt(1, beatmap.beatmapSetID);
@@ -368,32 +604,74 @@ public class ScoreDB {
 			List<ScoreData> list = null;
 			String version = null;  // sorted by version, so pass through and check for differences
 			while (rs.next()) {
-				ScoreData s = new ScoreData(rs);
-				if (!s.version.equals(version)) {
+				String v = rs.getString("version");
+				if (!v.equals(version)) {
 					if (list != null)
-						map.put(version, getSortedArray(list));
-					version = s.version;
+						map.put(version, list.toArray(new ScoreData[list.size()]));
+					version = v;
 					list = new ArrayList<ScoreData>();
 				}
-				list.add(s);
+				if (list.size() < LEADERBOARD_SIZE)  // sorted by score, so skip the rest
+					list.add(new ScoreData(rs));
 			}
 			if (list != null)
-				map.put(version, getSortedArray(list));
+				map.put(version, list.toArray(new ScoreData[list.size()]));
 			rs.close();
 		} catch (SQLException e) {
 			ErrorHandler.error("Failed to read scores from database.", e, true);
 			return null;
 		}
-		return map;
+		mapSetScoresCache.put(key, map);
+		return copyScores(map);
+	}
+
+	/**
+	 * Returns a copy of cached beatmap set leaderboards.
+	 * The scores are copied too, since their display values (e.g. the time since
+	 * achieving the score) are only computed once per object.
+	 * @param map the cached leaderboards
+	 */
+	private static Map<String, ScoreData[]> copyScores(Map<String, ScoreData[]> map) {
+		Map<String, ScoreData[]> copy = new HashMap<String, ScoreData[]>();
+		for (Map.Entry<String, ScoreData[]> entry : map.entrySet()) {
+			ScoreData[] scores = entry.getValue();
+			ScoreData[] scoresCopy = new ScoreData[scores.length];
+			for (int i = 0; i < scores.length; i++)
+				scoresCopy[i] = new ScoreData(scores[i]);
+			copy.put(entry.getKey(), scoresCopy);
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the leaderboard cache key for a beatmap.
+	 */
+	private static String getMapKey(int MID, String title, String artist, String creator, String version) {
+		return String.format("%d\0%s\0%s\0%s\0%s", MID, title, artist, creator, version);
+	}
+
+	/**
+	 * Returns the leaderboard cache key for a beatmap set.
+	 */
+	private static String getMapSetKey(int MSID, String title, String artist, String creator) {
+		return String.format("%d\0%s\0%s\0%s", MSID, title, artist, creator);
+	}
+
+	/**
+	 * Removes the cached leaderboards containing a score's beatmap.
+	 * @param data the score
+	 */
+	private static void invalidateLeaderboards(ScoreData data) {
+		mapScoresCache.remove(getMapKey(data.MID, data.title, data.artist, data.creator, data.version));
+		mapSetScoresCache.remove(getMapSetKey(data.MSID, data.title, data.artist, data.creator));
 	}
 
 	/**
-	 * Returns a sorted ScoreData array (in reverse order) from a List.
+	 * Clears all cached leaderboards.
 	 */
-	private static ScoreData[] getSortedArray(List<ScoreData> list) {
-		ScoreData[] scores = list.toArray(new ScoreData[list.size()]);
-		Arrays.sort(scores, Collections.reverseOrder());
-		return scores;
+	public static void clearLeaderboardCache() {
+		mapScoresCache.clear();
+		mapSetScoresCache.clear();
 	}
 
 	/**
@@ -511,8 +789,13 @@ public class ScoreDB {
 			setCurrentUserStmt.close();
 			insertUserStmt.close();
 			deleteUserStmt.close();
+			insertAnalysisStmt.close();
+			selectAnalysisStmt.close();
+			selectAnalysisHistoryStmt.close();
+			selectUnanalyzedStmt.close();
 			connection.close();
 			connection = null;
+			clearLeaderboardCache();
 		} catch (SQLException e) {
 			ErrorHandler.error("Failed to close score database.", e, true);
 		}
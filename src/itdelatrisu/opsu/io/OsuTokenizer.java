@@ -0,0 +1,621 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Byte-level tokenizer for OSU (text) files.
+ * <p>
+ * The whole file is read into a pooled per-thread buffer, and lines and
+ * fields are exposed as ranges in that buffer.  Numbers are parsed directly
+ * from the bytes, so no strings are created unless explicitly requested.
+ * <p>
+ * Fields are iterated with a cursor at one of {@link #MAX_LEVELS} nesting
+ * levels: level 0 iterates over the current line, and each deeper level
+ * iterates over the current field of the level above it.  Field splitting
+ * follows the semantics of {@link String#split(String)}, i.e. trailing empty
+ * fields are ignored.
+ * <p>
+ * Instances are not thread-safe, and the buffer is reused by the next
+ * tokenizer created on the same thread.
+ */
+public class OsuTokenizer {
+	/** Maximum number of field nesting levels. */
+	public static final int MAX_LEVELS = 3;
+
+	/** Initial size of pooled buffers. */
+	private static final int INITIAL_BUFFER_SIZE = 0x10000;
+
+	/** Pooled per-thread file buffers. */
+	private static final ThreadLocal<byte[]> bufferPool = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() { return new byte[INITIAL_BUFFER_SIZE]; }
+	};
+
+	/** Largest mantissa that is exactly representable as a float (2^24). */
+	private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+
+	/** Largest power of 10 that is exactly representable as a float. */
+	private static final int MAX_EXACT_FLOAT_POW10 = 10;
+
+	/** Powers of 10 that are exactly representable as doubles. */
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/** The file data. */
+	private byte[] buf;
+
+	/** The number of valid bytes in {@link #buf}. */
+	private int length;
+
+	/** The offset of the data in the file. */
+	private long fileOffset = 0;
+
+	/** The computed MD5 hash, or null if not computed. */
+	private String md5;
+
+	/** The read position of the next line. */
+	private int pos = 0;
+
+	/** The raw start offset of the current line. */
+	private int lineOffset = -1;
+
+	/** The current (trimmed) line range. */
+	private int lineStart = 0, lineEnd = 0;
+
+	/** The key-value ranges of the current line (see {@link #splitKeyValue()}). */
+	private int keyStart, keyEnd, valueStart, valueEnd;
+
+	/** Current field ranges for each level. */
+	private final int[] fieldStart = new int[MAX_LEVELS], fieldEnd = new int[MAX_LEVELS];
+
+	/** Field cursors for each level. */
+	private final int[] cursor = new int[MAX_LEVELS], cursorEnd = new int[MAX_LEVELS];
+
+	/**
+	 * Reads an entire file.
+	 * @param file the file to read
+	 * @param computeMD5 whether to compute the MD5 hash of the file
+	 * @throws IOException if an I/O error occurs
+	 * @throws NoSuchAlgorithmException if MD5 was requested and no Provider supports a MessageDigestSpi implementation for it
+	 */
+	public OsuTokenizer(File file, boolean computeMD5) throws IOException, NoSuchAlgorithmException {
+		MessageDigest md = (computeMD5) ? MessageDigest.getInstance("MD5") : null;
+		try (InputStream in = new FileInputStream(file)) {
+			read(in, file.length(), md);
+		}
+		if (md != null)
+			this.md5 = toHexString(md.digest());
+	}
+
+	/**
+	 * Reads a file starting from the given offset, using positioned reads.
+	 * @param file the file to read
+	 * @param offset the byte offset to start reading from
+	 * @throws IOException if an I/O error occurs
+	 */
+	public OsuTokenizer(File file, long offset) throws IOException {
+		this.fileOffset = offset;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = Math.max(channel.size() - offset, 0);
+			if (size >= Integer.MAX_VALUE)
+				throw new IOException(String.format("File '%s' is too large.", file.getName()));
+			byte[] b = getBuffer(size);
+			ByteBuffer bb = ByteBuffer.wrap(b, 0, (int) size);
+			long position = offset;
+			while (bb.hasRemaining()) {
+				int n = channel.read(bb, position);
+				if (n == -1)
+					break;
+				position += n;
+			}
+			this.buf = b;
+			this.length = bb.position();
+		}
+	}
+
+	/**
+	 * Returns the pooled buffer for the current thread, with a capacity of at least {@code size + 1}.
+	 * @param size the expected number of bytes
+	 */
+	private static byte[] getBuffer(long size) {
+		byte[] b = bufferPool.get();
+		if (size >= b.length && size < Integer.MAX_VALUE - 1) {
+			b = new byte[(int) size + 1];
+			bufferPool.set(b);
+		}
+		return b;
+	}
+
+	/**
+	 * Reads all bytes from the stream into the pooled buffer.
+	 * @param in the input stream
+	 * @param sizeHint the expected number of bytes, or -1 if unknown
+	 * @param md the MessageDigest to update, or null
+	 */
+	private void read(InputStream in, long sizeHint, MessageDigest md) throws IOException {
+		byte[] b = getBuffer(sizeHint);
+		int len = 0, n;
+		while ((n = in.read(b, len, b.length - len)) != -1) {
+			if (md != null)
+				md.update(b, len, n);
+			len += n;
+			if (len == b.length) {
+				byte[] newBuf = new byte[b.length * 2];
+				System.arraycopy(b, 0, newBuf, 0, len);
+				b = newBuf;
+			}
+		}
+		bufferPool.set(b);
+		this.buf = b;
+		this.length = len;
+	}
+
+	/**
+	 * Returns the MD5 hash of the file, or null if not computed.
+	 */
+	public String getMD5() { return md5; }
+
+	/**
+	 * Converts bytes to a lowercase hexadecimal string.
+	 * @param bytes the bytes
+	 */
+	private static String toHexString(byte[] bytes) {
+		final char[] hex = "0123456789abcdef".toCharArray();
+		char[] c = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			c[i * 2] = hex[(bytes[i] >> 4) & 0xF];
+			c[i * 2 + 1] = hex[bytes[i] & 0xF];
+		}
+		return new String(c);
+	}
+
+	/**
+	 * Returns whether the byte is whitespace (as defined by {@link String#trim()}).
+	 */
+	private static boolean isWhitespace(byte b) { return (b & 0xFF) <= ' '; }
+
+	/**
+	 * Advances to the next line, trimming whitespace.
+	 * @return true if a line was read, false if the end of the file was reached
+	 */
+	public boolean nextLine() {
+		if (pos >= length)
+			return false;
+
+		int start = pos, end = pos;
+		while (end < length && buf[end] != '\n' && buf[end] != '\r')
+			end++;
+		this.lineOffset = start;
+		this.pos = (end < length && buf[end] == '\r' && end + 1 < length && buf[end + 1] == '\n') ? end + 2 : end + 1;
+		while (start < end && isWhitespace(buf[start]))
+			start++;
+		while (end > start && isWhitespace(buf[end - 1]))
+			end--;
+		this.lineStart = start;
+		this.lineEnd = end;
+		return true;
+	}
+
+	/**
+	 * Returns the byte offset of the start of the current (untrimmed) line in the file.
+	 */
+	public long getLineOffset() { return fileOffset + lineOffset; }
+
+	/**
+	 * Returns false if the current line is too short or commented.
+	 */
+	public boolean isValidLine() {
+		return (lineEnd - lineStart > 1 && !(buf[lineStart] == '/' && buf[lineStart + 1] == '/'));
+	}
+
+	/**
+	 * Returns whether the current line is a section header (i.e. starts with '[').
+	 * The line must be non-empty.
+	 */
+	public boolean isSectionHeader() { return buf[lineStart] == '['; }
+
+	/**
+	 * Returns whether the current line equals the given ASCII string.
+	 * @param s the string
+	 */
+	public boolean lineEquals(String s) { return rangeEquals(lineStart, lineEnd, s); }
+
+	/**
+	 * Returns the current line as a string.
+	 */
+	public String getLine() { return getString(lineStart, lineEnd); }
+
+	/**
+	 * Counts the occurrences of a character in the current line.
+	 * @param c the character
+	 */
+	public int countInLine(char c) {
+		int count = 0;
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (buf[i] == c)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Splits the current line into a key and value, both trimmed, at the first ':' character.
+	 * @return true if successful, false if no ':' character is present
+	 */
+	public boolean splitKeyValue() {
+		int index = indexOf(lineStart, lineEnd, (byte) ':');
+		if (index == -1)
+			return false;
+
+		int start = lineStart, end = index;
+		while (end > start && isWhitespace(buf[end - 1]))
+			end--;
+		this.keyStart = start;
+		this.keyEnd = end;
+		start = index + 1;
+		end = lineEnd;
+		while (start < end && isWhitespace(buf[start]))
+			start++;
+		this.valueStart = start;
+		this.valueEnd = end;
+		return true;
+	}
+
+	/**
+	 * Returns whether the key equals the given ASCII string.
+	 * @param s the string
+	 */
+	public boolean keyEquals(String s) { return rangeEquals(keyStart, keyEnd, s); }
+
+	/**
+	 * Returns the value as a string.
+	 */
+	public String getValueString() { return getString(valueStart, valueEnd); }
+
+	/**
+	 * Parses the value as an integer.
+	 * @throws NumberFormatException if the value is not a valid integer
+	 */
+	public int getValueInt() { return parseInt(valueStart, valueEnd); }
+
+	/**
+	 * Parses the value as a byte.
+	 * @throws NumberFormatException if the value is not a valid byte
+	 */
+	public byte getValueByte() { return parseByte(valueStart, valueEnd); }
+
+	/**
+	 * Parses the value as a float.
+	 * @throws NumberFormatException if the value is not a valid float
+	 */
+	public float getValueFloat() { return parseFloat(valueStart, valueEnd); }
+
+	/**
+	 * Parses the value as a boolean (see {@link itdelatrisu.opsu.Utils#parseBoolean(String)}).
+	 * @throws NumberFormatException if the value is not a valid integer
+	 */
+	public boolean getValueBoolean() { return parseInt(valueStart, valueEnd) == 1; }
+
+	/**
+	 * Starts iterating over the fields of the current line (level 0).
+	 */
+	public void resetFields() { resetFields(lineStart, lineEnd); }
+
+	/**
+	 * Starts iterating over the fields of the value (level 0).
+	 * Must be called after {@link #splitKeyValue()}.
+	 */
+	public void resetValueFields() { resetFields(valueStart, valueEnd); }
+
+	/**
+	 * Starts iterating over the given range at level 0.
+	 */
+	private void resetFields(int start, int end) {
+		cursor[0] = start;
+		cursorEnd[0] = end;
+	}
+
+	/**
+	 * Advances to the next field at the given level, and starts iterating over
+	 * this field at the next level.
+	 * @param level the field level
+	 * @param sep the field separator
+	 * @return true if a field was found, false if there are no more fields
+	 */
+	public boolean nextField(int level, char sep) {
+		int start = cursor[level], end = cursorEnd[level];
+		if (start > end)
+			return false;
+
+		int index = indexOf(start, end, (byte) sep);
+		int fieldEnd = (index == -1) ? end : index;
+		if (fieldEnd == start) {
+			// ignore trailing empty fields
+			boolean trailing = true;
+			for (int i = start; i < end; i++) {
+				if (buf[i] != sep) {
+					trailing = false;
+					break;
+				}
+			}
+			if (trailing) {
+				cursor[level] = end + 1;
+				return false;
+			}
+		}
+		this.fieldStart[level] = start;
+		this.fieldEnd[level] = fieldEnd;
+		cursor[level] = fieldEnd + 1;
+		if (level + 1 < MAX_LEVELS) {
+			cursor[level + 1] = start;
+			cursorEnd[level + 1] = fieldEnd;
+		}
+		return true;
+	}
+
+	/**
+	 * Advances to the next field at the given level, which must exist.
+	 * @param level the field level
+	 * @param sep the field separator
+	 * @throws ArrayIndexOutOfBoundsException if there are no more fields
+	 * @see #nextField(int, char)
+	 */
+	public void expectField(int level, char sep) {
+		if (!nextField(level, sep))
+			throw new ArrayIndexOutOfBoundsException(String.format("Missing field in line '%s'.", getLine()));
+	}
+
+	/**
+	 * Skips fields at the given level.
+	 * @param level the field level
+	 * @param sep the field separator
+	 * @param n the number of fields to skip
+	 * @return true if all fields were skipped, false if there were not enough fields
+	 */
+	public boolean skipFields(int level, char sep, int n) {
+		for (int i = 0; i < n; i++) {
+			if (!nextField(level, sep))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of fields in the current field at the given level,
+	 * when split by the given separator (i.e. the number of fields that
+	 * {@link #nextField(int, char)} would return at the next level).
+	 * @param level the field level
+	 * @param sep the field separator
+	 */
+	public int countSubfields(int level, char sep) {
+		int start = fieldStart[level], end = fieldEnd[level];
+		while (end > start && buf[end - 1] == sep)
+			end--;
+		if (end == start)
+			return (fieldEnd[level] == start) ? 1 : 0;
+		int count = 1;
+		for (int i = start; i < end; i++) {
+			if (buf[i] == sep)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns whether the current field at the given level equals the given ASCII string.
+	 * @param level the field level
+	 * @param s the string
+	 */
+	public boolean fieldEquals(int level, String s) { return rangeEquals(fieldStart[level], fieldEnd[level], s); }
+
+	/**
+	 * Returns the index of the first occurrence of a character in the current
+	 * field at the given level, relative to the field start, or -1 if none.
+	 * @param level the field level
+	 * @param c the character
+	 */
+	public int fieldIndexOf(int level, char c) {
+		int index = indexOf(fieldStart[level], fieldEnd[level], (byte) c);
+		return (index == -1) ? -1 : index - fieldStart[level];
+	}
+
+	/**
+	 * Truncates the current field at the given level.
+	 * @param level the field level
+	 * @param len the new field length
+	 */
+	public void truncateField(int level, int len) {
+		fieldEnd[level] = Math.min(fieldEnd[level], fieldStart[level] + len);
+	}
+
+	/**
+	 * Returns the first character of the current field at the given level.
+	 * @throws StringIndexOutOfBoundsException if the field is empty
+	 */
+	public char getFieldChar(int level) {
+		if (fieldStart[level] >= fieldEnd[level])
+			throw new StringIndexOutOfBoundsException(0);
+		return (char) (buf[fieldStart[level]] & 0xFF);
+	}
+
+	/**
+	 * Returns the current field at the given level as a string.
+	 * @param level the field level
+	 */
+	public String getFieldString(int level) { return getString(fieldStart[level], fieldEnd[level]); }
+
+	/**
+	 * Parses the current field at the given level as an integer.
+	 * @param level the field level
+	 * @throws NumberFormatException if the field is not a valid integer
+	 */
+	public int getFieldInt(int level) { return parseInt(fieldStart[level], fieldEnd[level]); }
+
+	/**
+	 * Parses the current field at the given level as a short.
+	 * @param level the field level
+	 * @throws NumberFormatException if the field is not a valid short
+	 */
+	public short getFieldShort(int level) {
+		int i = parseInt(fieldStart[level], fieldEnd[level]);
+		if (i < Short.MIN_VALUE || i > Short.MAX_VALUE)
+			throw new NumberFormatException(String.format("Value out of range. Value:\"%s\"", getFieldString(level)));
+		return (short) i;
+	}
+
+	/**
+	 * Parses the current field at the given level as a byte.
+	 * @param level the field level
+	 * @throws NumberFormatException if the field is not a valid byte
+	 */
+	public byte getFieldByte(int level) { return parseByte(fieldStart[level], fieldEnd[level]); }
+
+	/**
+	 * Parses the current field at the given level as a float.
+	 * @param level the field level
+	 * @throws NumberFormatException if the field is not a valid float
+	 */
+	public float getFieldFloat(int level) { return parseFloat(fieldStart[level], fieldEnd[level]); }
+
+	/**
+	 * Parses the current field at the given level as a boolean (see {@link itdelatrisu.opsu.Utils#parseBoolean(String)}).
+	 * @param level the field level
+	 * @throws NumberFormatException if the field is not a valid integer
+	 */
+	public boolean getFieldBoolean(int level) { return getFieldInt(level) == 1; }
+
+	/**
+	 * Returns the index of the first occurrence of a byte in a range, or -1 if none.
+	 */
+	private int indexOf(int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (buf[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether a range equals the given ASCII string.
+	 */
+	private boolean rangeEquals(int start, int end, String s) {
+		if (end - start != s.length())
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (buf[start + i] != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a range as a UTF-8 string.
+	 */
+	private String getString(int start, int end) {
+		return new String(buf, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a range as a byte, as in {@link Byte#parseByte(String)}.
+	 */
+	private byte parseByte(int start, int end) {
+		int i = parseInt(start, end);
+		if (i < Byte.MIN_VALUE || i > Byte.MAX_VALUE)
+			throw new NumberFormatException(String.format("Value out of range. Value:\"%s\"", getString(start, end)));
+		return (byte) i;
+	}
+
+	/**
+	 * Parses a range as an integer, as in {@link Integer#parseInt(String)}.
+	 */
+	private int parseInt(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		if (i == end || end - i > 9)  // empty, or might overflow
+			return Integer.parseInt(getString(start, end));
+
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException(String.format("For input string: \"%s\"", getString(start, end)));
+			value = value * 10 + digit;
+		}
+		return (negative) ? -value : value;
+	}
+
+	/**
+	 * Parses a range as a float, as in {@link Float#parseFloat(String)}.
+	 * <p>
+	 * Plain decimal numbers whose mantissa and scale are exact floats are
+	 * parsed directly; anything else (exponents, whitespace, more than 24
+	 * mantissa bits, etc.) falls back to {@link Float#parseFloat(String)}.
+	 */
+	private float parseFloat(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		int signLength = i - start;
+
+		long mantissa = 0;
+		int digits = 0, fractionDigits = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			byte b = buf[i];
+			if (b >= '0' && b <= '9') {
+				if (mantissa != 0 || b != '0')
+					digits++;
+				mantissa = mantissa * 10 + (b - '0');
+				if (point)
+					fractionDigits++;
+			} else if (b == '.' && !point)
+				point = true;
+			else
+				break;
+		}
+		if (i != end || digits > 15 || mantissa > MAX_EXACT_FLOAT_MANTISSA ||
+		    fractionDigits > MAX_EXACT_FLOAT_POW10 ||
+		    end - start == signLength + ((point) ? 1 : 0))  // no digits
+			return Float.parseFloat(getString(start, end));
+
+		// both operands are exact floats, so the double quotient rounds to the correctly rounded float
+		double value = mantissa / POW10[fractionDigits];
+		return (float) ((negative) ? -value : value);
+	}
+}
@@ -36,16 +36,7 @@ import org.newdawn.slick.Graphics;
 /**
  * Data type representing a circle object.
  */
-public class Circle implements GameObject {
-	/** The diameter of hit circles. */
-	private static float diameter;
-
-	/** The associated HitObject. */
-	private HitObject hitObject;
-
-	/** The scaled starting x, y coordinates. */
-	private float x, y;
-
+public class Circle extends CircleLogic implements GameObject {
 	/** The associated Game object. */
 	private Game game;
 
@@ -55,16 +46,13 @@ public class Circle implements GameObject {
 	/** The color of this circle. */
 	private Color color;
 
-	/** Whether or not the circle result ends the combo streak. */
-	private boolean comboEnd;
-
 	/**
 	 * Initializes the Circle data type with map modifiers, images, and dimensions.
 	 * @param container the game container
 	 * @param circleDiameter the circle diameter
 	 */
 	public static void init(GameContainer container, float circleDiameter) {
-		diameter = circleDiameter * HitObject.getXMultiplier();  // convert from Osupixels (640x480)
+		float diameter = circleDiameter * HitObject.getXMultiplier();  // convert from Osupixels (640x480)
 		int diameterInt = (int) diameter;
 		GameImage.HITCIRCLE.setImage(GameImage.HITCIRCLE.getImage().getScaledCopy(diameterInt, diameterInt));
 		GameImage.HITCIRCLE_OVERLAY.setImage(GameImage.HITCIRCLE_OVERLAY.getImage().getScaledCopy(diameterInt, diameterInt));
@@ -80,11 +68,10 @@ public class Circle implements GameObject {
 	 * @param comboEnd true if this is the last hit object in the combo
 	 */
 	public Circle(HitObject hitObject, Game game, GameData data, Color color, boolean comboEnd) {
-		this.hitObject = hitObject;
+		super(hitObject, game.getHitRules(), comboEnd);
 		this.game = game;
 		this.data = data;
 		this.color = color;
-		this.comboEnd = comboEnd;
 		updatePosition();
 	}
 
@@ -124,82 +111,21 @@ public class Circle implements GameObject {
 		Colors.WHITE_FADE.a = oldAlpha;
 	}
 
-	/**
-	 * Calculates the circle hit result.
-	 * @param time the hit object time (difference between track time)
-	 * @return the hit result (GameData.HIT_* constants)
-	 */
-	private int hitResult(int time) {
-		int timeDiff = Math.abs(time);
-
-		int[] hitResultOffset = game.getHitResultOffsets();
-		int result = -1;
-		if (timeDiff <= hitResultOffset[GameData.HIT_300])
-			result = GameData.HIT_300;
-		else if (timeDiff <= hitResultOffset[GameData.HIT_100])
-			result = GameData.HIT_100;
-		else if (timeDiff <= hitResultOffset[GameData.HIT_50])
-			result = GameData.HIT_50;
-		else if (timeDiff <= hitResultOffset[GameData.HIT_MISS])
-			result = GameData.HIT_MISS;
-		//else not a hit
-
-		return result;
-	}
-
 	@Override
-	public boolean mousePressed(int x, int y, int trackPosition) {
-		double distance = Math.hypot(this.x - x, this.y - y);
-		if (distance < diameter / 2) {
-			int timeDiff = trackPosition - hitObject.getTime();
-			int result = hitResult(timeDiff);
-
-			if (result > -1) {
-				data.addHitError(hitObject.getTime(), x, y, timeDiff);
-				data.sendHitResult(trackPosition, result, this.x, this.y, color, comboEnd, hitObject, HitObjectType.CIRCLE, true, 0, null, false);
-				return true;
-			}
-		}
-		return false;
+	protected void sendClickResult(int trackPosition, int result, float mouseX, float mouseY, int timeDiff) {
+		data.addHitError(hitObject.getTime(), (int) mouseX, (int) mouseY, timeDiff);
+		data.sendHitResult(trackPosition, result, x, y, color, comboEnd, hitObject, HitObjectType.CIRCLE, true, 0, null, false);
 	}
 
 	@Override
-	public boolean update(int delta, int mouseX, int mouseY, boolean keyPressed, int trackPosition) {
-		int time = hitObject.getTime();
-
-		int[] hitResultOffset = game.getHitResultOffsets();
-		boolean isAutoMod = GameMod.AUTO.isActive();
-
-		if (trackPosition > time + hitResultOffset[GameData.HIT_50]) {
-			if (isAutoMod)  // "auto" mod: catch any missed notes due to lag
-				data.sendHitResult(time, GameData.HIT_300, x, y, color, comboEnd, hitObject, HitObjectType.CIRCLE, true, 0, null, false);
-
-			else  // no more points can be scored, so send a miss
-				data.sendHitResult(trackPosition, GameData.HIT_MISS, x, y, null, comboEnd, hitObject, HitObjectType.CIRCLE, true, 0, null, false);
-			return true;
-		}
-
-		// "auto" mod: send a perfect hit result
-		else if (isAutoMod) {
-			if (Math.abs(trackPosition - time) < hitResultOffset[GameData.HIT_300]) {
-				data.sendHitResult(time, GameData.HIT_300, x, y, color, comboEnd, hitObject, HitObjectType.CIRCLE, true, 0, null, false);
-				return true;
-			}
-		}
-
-		// "relax" mod: click automatically
-		else if (GameMod.RELAX.isActive() && trackPosition >= time)
-			return mousePressed(mouseX, mouseY, trackPosition);
-
-		return false;
+	protected void sendResult(int time, int result) {
+		Color c = (result == GameData.HIT_MISS) ? null : color;
+		data.sendHitResult(time, result, x, y, c, comboEnd, hitObject, HitObjectType.CIRCLE, true, 0, null, false);
 	}
 
 	@Override
 	public Vec2f getPointAt(int trackPosition) { return new Vec2f(x, y); }
 
-	@Override
-	public int getEndTime() { return hitObject.getTime(); }
-
 	@Override
 	public void updatePosition() {
 		this.x = hitObject.getScaledX();
@@ -208,4 +134,10 @@ public class Circle implements GameObject {
 
 	@Override
 	public void reset() {}
+
+	@Override
+	public Object saveState() { return null; }
+
+	@Override
+	public void restoreState(Object state) {}
 }
@@ -0,0 +1,143 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.GameData;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.beatmap.HitObject;
+
+/**
+ * Hit rules of a circle object.
+ * <p>
+ * Subclasses set the circle position and handle the hit results.
+ */
+public abstract class CircleLogic implements PlayableObject {
+	/** The associated HitObject. */
+	protected final HitObject hitObject;
+
+	/** The hit rules. */
+	protected final HitRules rules;
+
+	/** Whether or not the circle result ends the combo streak. */
+	protected final boolean comboEnd;
+
+	/** The starting x, y coordinates. */
+	protected float x, y;
+
+	/**
+	 * Constructor.
+	 * @param hitObject the associated HitObject
+	 * @param rules the hit rules
+	 * @param comboEnd true if this is the last hit object in the combo
+	 */
+	protected CircleLogic(HitObject hitObject, HitRules rules, boolean comboEnd) {
+		this.hitObject = hitObject;
+		this.rules = rules;
+		this.comboEnd = comboEnd;
+	}
+
+	/**
+	 * Handles a hit result from a click.
+	 * @param trackPosition the track position
+	 * @param result the hit result (GameData.HIT_* constants)
+	 * @param mouseX the x coordinate of the mouse
+	 * @param mouseY the y coordinate of the mouse
+	 * @param timeDiff the hit error (in ms)
+	 */
+	protected abstract void sendClickResult(int trackPosition, int result, float mouseX, float mouseY, int timeDiff);
+
+	/**
+	 * Handles a hit result that was not from a click (a miss, or an "auto" mod hit).
+	 * @param time the result time
+	 * @param result the hit result (GameData.HIT_* constants)
+	 */
+	protected abstract void sendResult(int time, int result);
+
+	/**
+	 * Calculates the circle hit result.
+	 * @param time the hit object time (difference between track time)
+	 * @return the hit result (GameData.HIT_* constants)
+	 */
+	private int hitResult(int time) {
+		int timeDiff = Math.abs(time);
+
+		int[] hitResultOffset = rules.getHitResultOffsets();
+		int result = -1;
+		if (timeDiff <= hitResultOffset[GameData.HIT_300])
+			result = GameData.HIT_300;
+		else if (timeDiff <= hitResultOffset[GameData.HIT_100])
+			result = GameData.HIT_100;
+		else if (timeDiff <= hitResultOffset[GameData.HIT_50])
+			result = GameData.HIT_50;
+		else if (timeDiff <= hitResultOffset[GameData.HIT_MISS])
+			result = GameData.HIT_MISS;
+		//else not a hit
+
+		return result;
+	}
+
+	@Override
+	public boolean mousePressed(float x, float y, int trackPosition) {
+		double distance = Math.hypot(this.x - x, this.y - y);
+		if (distance < rules.getCircleDiameter() / 2) {
+			int timeDiff = trackPosition - hitObject.getTime();
+			int result = hitResult(timeDiff);
+
+			if (result > -1) {
+				sendClickResult(trackPosition, result, x, y, timeDiff);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean update(int delta, float mouseX, float mouseY, boolean keyPressed, int trackPosition) {
+		int time = hitObject.getTime();
+
+		int[] hitResultOffset = rules.getHitResultOffsets();
+		boolean isAutoMod = rules.isActive(GameMod.AUTO);
+
+		if (trackPosition > time + hitResultOffset[GameData.HIT_50]) {
+			if (isAutoMod)  // "auto" mod: catch any missed notes due to lag
+				sendResult(time, GameData.HIT_300);
+
+			else  // no more points can be scored, so send a miss
+				sendResult(trackPosition, GameData.HIT_MISS);
+			return true;
+		}
+
+		// "auto" mod: send a perfect hit result
+		else if (isAutoMod) {
+			if (Math.abs(trackPosition - time) < hitResultOffset[GameData.HIT_300]) {
+				sendResult(time, GameData.HIT_300);
+				return true;
+			}
+		}
+
+		// "relax" mod: click automatically
+		else if (rules.isActive(GameMod.RELAX) && trackPosition >= time)
+			return mousePressed(mouseX, mouseY, trackPosition);
+
+		return false;
+	}
+
+	@Override
+	public int getEndTime() { return hitObject.getTime(); }
+}
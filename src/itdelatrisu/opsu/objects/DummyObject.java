@@ -46,12 +46,12 @@ public class DummyObject implements GameObject {
 	public void draw(Graphics g, int trackPosition) {}
 
 	@Override
-	public boolean update(int delta, int mouseX, int mouseY, boolean keyPressed, int trackPosition) {
+	public boolean update(int delta, float mouseX, float mouseY, boolean keyPressed, int trackPosition) {
 		return (trackPosition > hitObject.getTime());
 	}
 
 	@Override
-	public boolean mousePressed(int x, int y, int trackPosition) { return false; }
+	public boolean mousePressed(float x, float y, int trackPosition) { return false; }
 
 	@Override
 	public Vec2f getPointAt(int trackPosition) { return new Vec2f(x, y); }
@@ -67,4 +67,10 @@ public class DummyObject implements GameObject {
 
 	@Override
 	public void reset() {}
+
+	@Override
+	public Object saveState() { return null; }
+
+	@Override
+	public void restoreState(Object state) {}
 }
@@ -25,7 +25,7 @@ import org.newdawn.slick.Graphics;
 /**
  * Interface for hit object types used during gameplay.
  */
-public interface GameObject {
+public interface GameObject extends PlayableObject {
 	/**
 	 * Draws the hit object to the graphics context.
 	 * @param g the graphics context
@@ -33,26 +33,6 @@ public interface GameObject {
 	 */
 	public void draw(Graphics g, int trackPosition);
 
-	/**
-	 * Updates the hit object.
-	 * @param delta the delta interval since the last call
-	 * @param mouseX the x coordinate of the mouse
-	 * @param mouseY the y coordinate of the mouse
-	 * @param keyPressed whether or not a game key is currently pressed
-	 * @param trackPosition the track position
-	 * @return true if object ended
-	 */
-	public boolean update(int delta, int mouseX, int mouseY, boolean keyPressed, int trackPosition);
-
-	/**
-	 * Processes a mouse click.
-	 * @param x the x coordinate of the mouse
-	 * @param y the y coordinate of the mouse
-	 * @param trackPosition the track position
-	 * @return true if a hit result was processed
-	 */
-	public boolean mousePressed(int x, int y, int trackPosition);
-
 	/**
 	 * Returns the coordinates of the hit object at a given track position.
 	 * @param trackPosition the track position
@@ -60,12 +40,6 @@ public interface GameObject {
 	 */
 	public Vec2f getPointAt(int trackPosition);
 
-	/**
-	 * Returns the end time of the hit object.
-	 * @return the end time, in milliseconds
-	 */
-	public int getEndTime();
-
 	/**
 	 * Updates the position of the hit object.
 	 */
@@ -75,4 +49,17 @@ public interface GameObject {
 	 * Resets all internal state so that the hit object can be reused.
 	 */
 	public void reset();
+
+	/**
+	 * Returns a snapshot of the internal state (used for seeking in replays).
+	 * @return the snapshot, or null if the hit object has no internal state
+	 * @see #restoreState(Object)
+	 */
+	public Object saveState();
+
+	/**
+	 * Restores a snapshot of the internal state.
+	 * @param state the snapshot returned by {@link #saveState()}
+	 */
+	public void restoreState(Object state);
 }
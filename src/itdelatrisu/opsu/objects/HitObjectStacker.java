@@ -0,0 +1,120 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.Utils;
+import itdelatrisu.opsu.beatmap.Beatmap;
+import itdelatrisu.opsu.beatmap.HitObject;
+import itdelatrisu.opsu.objects.curves.Vec2f;
+
+/**
+ * Hit object stacking calculations.
+ */
+public class HitObjectStacker {
+	/** Tolerance in case if hit object is not snapped to the grid (in osu!pixels). */
+	private static final float STACK_LENIENCE = 3f;
+
+	/** Stack position offset modifier (as a fraction of the circle diameter). */
+	public static final float STACK_OFFSET_MODIFIER = 0.05f;
+
+	// This class should not be instantiated.
+	private HitObjectStacker() {}
+
+	/**
+	 * Calculates the stack heights of all hit objects.
+	 * The beatmap's hit objects are not modified.
+	 * @param beatmap the beatmap
+	 * @param objects the playable objects (for the end times)
+	 * @param approachTime the hit object approach time (in ms)
+	 * @return the stack heights (indexed by hit object)
+	 * @author peppy (https://gist.github.com/peppy/1167470)
+	 */
+	public static int[] calculateStacks(Beatmap beatmap, PlayableObject[] objects, int approachTime) {
+		HitObject[] hitObjects = beatmap.objects;
+		int[] stacks = new int[hitObjects.length];
+
+		// reverse pass for stack calculation
+		for (int i = hitObjects.length - 1; i > 0; i--) {
+			int indexI = i;
+			HitObject hitObjectI = hitObjects[i];
+
+			// already calculated
+			if (stacks[indexI] != 0 || hitObjectI.isSpinner())
+				continue;
+
+			// search for hit objects in stack
+			for (int n = i - 1; n >= 0; n--) {
+				HitObject hitObjectN = hitObjects[n];
+				if (hitObjectN.isSpinner())
+					continue;
+
+				// check if in range stack calculation
+				float timeI = hitObjectI.getTime() - (approachTime * beatmap.stackLeniency);
+				float timeN = hitObjectN.isSlider() ? objects[n].getEndTime() : hitObjectN.getTime();
+				if (timeI > timeN)
+					break;
+
+				// possible special case: if slider end in the stack,
+				// all next hit objects in stack move right down
+				if (hitObjectN.isSlider()) {
+					Vec2f p2 = getSliderEnd(hitObjectN);
+					float distance = Utils.distance(hitObjects[i].getX(), hitObjects[i].getY(), p2.x, p2.y);
+
+					// check if hit object part of this stack
+					if (distance < STACK_LENIENCE) {
+						int offset = stacks[indexI] - stacks[n] + 1;
+						for (int j = n + 1; j <= i; j++) {
+							HitObject hitObjectJ = hitObjects[j];
+							distance = Utils.distance(hitObjectJ.getX(), hitObjectJ.getY(), p2.x, p2.y);
+
+							// hit object below slider end
+							if (distance < STACK_LENIENCE)
+								stacks[j] -= offset;
+						}
+						break;  // slider end always start of the stack: reset calculation
+					}
+				}
+
+				// not a special case: stack moves up left
+				float distance = Utils.distance(
+						hitObjectI.getX(), hitObjectI.getY(),
+						hitObjectN.getX(), hitObjectN.getY()
+				);
+				if (distance < STACK_LENIENCE) {
+					stacks[n] = stacks[indexI] + 1;
+					hitObjectI = hitObjectN;
+					indexI = n;
+				}
+			}
+		}
+
+		return stacks;
+	}
+
+	/**
+	 * Returns the unstacked end position of a slider (in osu!pixels).
+	 * @param hitObject the slider
+	 */
+	private static Vec2f getSliderEnd(HitObject hitObject) {
+		if (hitObject.getRepeatCount() % 2 == 0)
+			return new Vec2f(hitObject.getX(), hitObject.getY());
+		else
+			return hitObject.getSliderCurve(false).pointAt(1);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.GameData;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.Utils;
+
+/**
+ * Hit judgement parameters of a play: active mods, hit windows, and object sizes.
+ * <p>
+ * Sizes and positions are in the coordinate space of the objects using them,
+ * i.e. screen pixels during gameplay, and osu!pixels in the replay simulator.
+ */
+public class HitRules {
+	/** The map's overall difficulty value. */
+	private final float overallDifficulty;
+
+	/** Hit object approach time, in milliseconds. */
+	private final int approachTime;
+
+	/** Time offsets for obtaining each hit result (indexed by GameData.HIT_* constants to HIT_MAX). */
+	private final int[] hitResultOffset;
+
+	/** The diameter of hit circles, and the slider follow circle radius. */
+	private final float diameter, followRadius;
+
+	/** The spinner center coordinates. */
+	private final float spinnerX, spinnerY;
+
+	/** Active mods (bitwise OR of mod bits). */
+	private int mods;
+
+	/**
+	 * Returns the hit circle diameter (in osu!pixels) for a circle size value.
+	 * @param circleSize the circle size value
+	 */
+	public static float getCircleDiameter(float circleSize) {
+		//return 104 - (circleSize * 8);
+		return 108.848f - (circleSize * 8.9646f);
+	}
+
+	/**
+	 * Constructor.
+	 * @param circleSize the circle size value (after mod multipliers)
+	 * @param approachRate the approach rate value (after mod multipliers)
+	 * @param overallDifficulty the overall difficulty value (after mod multipliers)
+	 * @param scale the multiplier from osu!pixels to object coordinates
+	 * @param spinnerX the spinner center x coordinate
+	 * @param spinnerY the spinner center y coordinate
+	 */
+	public HitRules(float circleSize, float approachRate, float overallDifficulty, float scale, float spinnerX, float spinnerY) {
+		this.overallDifficulty = overallDifficulty;
+		this.diameter = getCircleDiameter(circleSize) * scale;
+		this.followRadius = diameter / 2 * 3f;
+		this.spinnerX = spinnerX;
+		this.spinnerY = spinnerY;
+
+		// approachRate (hit object approach time)
+		this.approachTime = (int) Utils.mapDifficultyRange(approachRate, 1800, 1200, 450);
+
+		// overallDifficulty (hit result time offsets)
+		hitResultOffset = new int[GameData.HIT_MAX];
+		hitResultOffset[GameData.HIT_300]  = (int) Utils.mapDifficultyRange(overallDifficulty, 80, 50, 20);
+		hitResultOffset[GameData.HIT_100]  = (int) Utils.mapDifficultyRange(overallDifficulty, 140, 100, 60);
+		hitResultOffset[GameData.HIT_50]   = (int) Utils.mapDifficultyRange(overallDifficulty, 200, 150, 100);
+		hitResultOffset[GameData.HIT_MISS] = (int) (500 - (overallDifficulty * 10));
+	}
+
+	/**
+	 * Sets the active mods.
+	 * @param mods the mod state (bitwise OR of active mods)
+	 */
+	public void setMods(int mods) { this.mods = mods; }
+
+	/**
+	 * Returns whether or not a mod is active.
+	 * @param mod the mod
+	 */
+	public boolean isActive(GameMod mod) { return mod.isActive(mods); }
+
+	/** Returns the overall difficulty value. */
+	public float getOverallDifficulty() { return overallDifficulty; }
+
+	/** Returns the hit object approach time, in milliseconds. */
+	public int getApproachTime() { return approachTime; }
+
+	/** Returns the hit result offset times, in milliseconds (indexed by GameData.HIT_* constants). */
+	public int[] getHitResultOffsets() { return hitResultOffset; }
+
+	/** Returns the hit circle diameter. */
+	public float getCircleDiameter() { return diameter; }
+
+	/** Returns the slider follow circle radius. */
+	public float getFollowRadius() { return followRadius; }
+
+	/** Returns the spinner center x coordinate. */
+	public float getSpinnerX() { return spinnerX; }
+
+	/** Returns the spinner center y coordinate. */
+	public float getSpinnerY() { return spinnerY; }
+}
@@ -0,0 +1,52 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+/**
+ * Input handling and hit results of a hit object, without any rendering.
+ * <p>
+ * Coordinates are in the space of the object's {@link HitRules}.
+ */
+public interface PlayableObject {
+	/**
+	 * Updates the hit object.
+	 * @param delta the delta interval since the last call
+	 * @param mouseX the x coordinate of the mouse
+	 * @param mouseY the y coordinate of the mouse
+	 * @param keyPressed whether or not a game key is currently pressed
+	 * @param trackPosition the track position
+	 * @return true if object ended
+	 */
+	public boolean update(int delta, float mouseX, float mouseY, boolean keyPressed, int trackPosition);
+
+	/**
+	 * Processes a mouse click.
+	 * @param x the x coordinate of the mouse
+	 * @param y the y coordinate of the mouse
+	 * @param trackPosition the track position
+	 * @return true if a hit result was processed
+	 */
+	public boolean mousePressed(float x, float y, int trackPosition);
+
+	/**
+	 * Returns the end time of the hit object.
+	 * @return the end time, in milliseconds
+	 */
+	public int getEndTime();
+}
@@ -41,7 +41,7 @@ import org.newdawn.slick.Image;
 /**
  * Data type representing a slider object.
  */
-public class Slider implements GameObject {
+public class Slider extends SliderLogic implements GameObject {
 	/** Slider ball frames. */
 	private static Image[] sliderBallImages;
 
@@ -51,18 +51,6 @@ public class Slider implements GameObject {
 	/** Rate at which slider ticks are placed. */
 	private static float sliderTickRate = 1.0f;
 
-	/** Follow circle radius. */
-	private static float followRadius;
-
-	/** The diameter of hit circles. */
-	private static float diameter;
-
-	/** The associated HitObject. */
-	private HitObject hitObject;
-
-	/** The scaled starting x, y coordinates. */
-	protected float x, y;
-
 	/** The associated Game object. */
 	private Game game;
 
@@ -75,36 +63,9 @@ public class Slider implements GameObject {
 	/** The underlying Curve. */
 	private Curve curve;
 
-	/** The time duration of the slider, in milliseconds. */
-	private float sliderTime = 0f;
-
-	/** The time duration of the slider including repeats, in milliseconds. */
-	private float sliderTimeTotal = 0f;
-
-	/** Whether or not the result of the initial hit circle has been processed. */
-	private boolean sliderClickedInitial = false;
-
-	/** Whether or not the slider was held to the end. */
-	private boolean sliderHeldToEnd = false;
-
 	/** Whether or not to show the follow circle. */
 	private boolean followCircleActive = false;
 
-	/** Whether or not the slider result ends the combo streak. */
-	private boolean comboEnd;
-
-	/** The number of repeats that have passed so far. */
-	private int currentRepeats = 0;
-
-	/** The t values of the slider ticks. */
-	private float[] ticksT;
-
-	/** The tick index in the ticksT[] array. */
-	private int tickIndex = 0;
-
-	/** Number of ticks hit and tick intervals so far. */
-	private int ticksHit = 0, tickIntervals = 1;
-
 	/** The animation progress for ticks expanding the follow circle. */
 	private AnimatedValue tickExpand = new AnimatedValue(200, 0.1f, 0f, AnimationEquation.LINEAR);
 
@@ -130,11 +91,9 @@ public class Slider implements GameObject {
 		containerWidth = container.getWidth();
 		containerHeight = container.getHeight();
 
-		diameter = circleDiameter * HitObject.getXMultiplier();  // convert from Osupixels (640x480)
+		float diameter = circleDiameter * HitObject.getXMultiplier();  // convert from Osupixels (640x480)
 		int diameterInt = (int) diameter;
 
-		followRadius = diameter / 2 * 3f;
-
 		// slider ball
 		if (GameImage.SLIDER_BALL.hasBeatmapSkinImages() ||
 		    (!GameImage.SLIDER_BALL.hasBeatmapSkinImage() && GameImage.SLIDER_BALL.getImages() != null))
@@ -161,28 +120,13 @@ public class Slider implements GameObject {
 	 * @param comboEnd true if this is the last hit object in the combo
 	 */
 	public Slider(HitObject hitObject, Game game, GameData data, Color color, boolean comboEnd) {
-		this.hitObject = hitObject;
+		super(hitObject, game.getHitRules(), comboEnd,
+				sliderMultiplier, sliderTickRate, game.getBeatLength(), game.getTimingPointMultiplier());
 		this.game = game;
 		this.data = data;
 		this.color = color;
-		this.comboEnd = comboEnd;
 		updatePosition();
 
-		// slider time calculations
-		this.sliderTime = hitObject.getSliderTime(sliderMultiplier, game.getBeatLength());
-		this.sliderTimeTotal = sliderTime * hitObject.getRepeatCount();
-
-		// ticks
-		float tickLengthDiv = 100f * sliderMultiplier / sliderTickRate / game.getTimingPointMultiplier();
-		int tickCount = (int) Math.ceil(hitObject.getPixelLength() / tickLengthDiv) - 1;
-		if (tickCount > 0) {
-			this.ticksT = new float[tickCount];
-			float tickTOffset = 1f / (tickCount + 1);
-			float t = tickTOffset;
-			for (int i = 0; i < tickCount; i++, t += tickTOffset)
-				ticksT[i] = t;
-		}
-
 		// follow circle animations
 		tickExpand.setTime(tickExpand.getDuration());
 		initialExpand.setTime(initialExpand.getDuration());
@@ -494,11 +438,68 @@ public class Slider implements GameObject {
 		return Utils.clamp(t * (ticksN + 1), 0f, 1f);
 	}
 
-	/**
-	 * Calculates the slider hit result.
-	 * @return the hit result (GameData.HIT_* constants)
-	 */
-	private int hitResult() {
+	@Override
+	protected Vec2f curvePointAt(float t) { return curve.pointAt(t); }
+
+	@Override
+	protected void sendInitialClickResult(int trackPosition, int result, float mouseX, float mouseY) {
+		data.sendSliderStartResult(trackPosition, x, y, color, result != GameData.HIT_MISS);
+		data.addHitError(hitObject.getTime(), (int) mouseX, (int) mouseY, trackPosition - hitObject.getTime());
+		data.sendSliderTickResult(hitObject.getTime(), result, x, y, hitObject, currentRepeats);
+	}
+
+	@Override
+	protected void sendInitialResult(int trackPosition, int result) {
+		int time = hitObject.getTime();
+		data.sendSliderTickResult(time, result, x, y, hitObject, currentRepeats);
+		if (result == GameData.HIT_MISS)
+			data.sendSliderStartResult(trackPosition, x, y, color, false);
+		else
+			data.sendSliderStartResult(time, x, y, color, true);
+	}
+
+	@Override
+	protected void sendRepeatResult(int trackPosition, int repeat, boolean hit) {
+		if (!hit) {
+			data.sendSliderTickResult(trackPosition, GameData.HIT_MISS, 0, 0, hitObject, currentRepeats);
+			return;
+		}
+
+		HitObjectType type;
+		float posX, posY;
+		if ((currentRepeats + repeat) % 2 > 0) {
+			// last circle
+			type = HitObjectType.SLIDER_LAST;
+			Vec2f endPos = curve.pointAt(1f);
+			posX = endPos.x;
+			posY = endPos.y;
+		} else {
+			// first circle
+			type = HitObjectType.SLIDER_FIRST;
+			posX = this.x;
+			posY = this.y;
+		}
+		data.sendSliderTickResult(trackPosition, GameData.HIT_SLIDER30,
+			posX, posY, hitObject, currentRepeats);
+
+		// fade out reverse arrow
+		float colorLuminance = Utils.getLuminance(color);
+		Color arrowColor = colorLuminance < 0.8f ? Color.white : Color.black;
+		data.sendSliderRepeatResult(trackPosition, posX, posY, arrowColor, curve, type);
+	}
+
+	@Override
+	protected void sendTickResult(int trackPosition, int tick, boolean hit) {
+		if (hit) {
+			Vec2f tickPos = curve.pointAt(ticksT[tick]);
+			data.sendSliderTickResult(trackPosition, GameData.HIT_SLIDER10,
+				tickPos.x, tickPos.y, hitObject, currentRepeats);
+		} else
+			data.sendSliderTickResult(trackPosition, GameData.HIT_MISS, 0, 0, hitObject, currentRepeats);
+	}
+
+	@Override
+	protected void sendSliderResult(int time, int result) {
 		/*
 			time     scoredelta score-hit-initial-tick= unaccounted
 			(1/4   - 1)		396 - 300 - 30	 		46
@@ -546,18 +547,6 @@ public class Slider implements GameObject {
 			70  - 10*2 - 50   - 0                    (2 tick only)(0x)
 			60  - 10   - 50   - 0                    (1 tick only)(0x)
 		*/
-		float tickRatio = (float) ticksHit / tickIntervals;
-
-		int result;
-		if (tickRatio >= 1.0f)
-			result = GameData.HIT_300;
-		else if (tickRatio >= 0.5f)
-			result = GameData.HIT_100;
-		else if (tickRatio > 0f)
-			result = GameData.HIT_50;
-		else
-			result = GameData.HIT_MISS;
-
 		float cx, cy;
 		HitObjectType type;
 		if (currentRepeats % 2 == 0) {
@@ -572,216 +561,40 @@ public class Slider implements GameObject {
 			cy = y;
 			type = HitObjectType.SLIDER_FIRST;
 		}
-		data.sendHitResult(hitObject.getTime() + (int) sliderTimeTotal, result,
+		data.sendHitResult(time, result,
 				cx, cy, color, comboEnd, hitObject, type, sliderHeldToEnd,
 				currentRepeats + 1, curve, sliderHeldToEnd);
-
-		return result;
 	}
 
 	@Override
-	public boolean mousePressed(int x, int y, int trackPosition) {
-		if (sliderClickedInitial)  // first circle already processed
-			return false;
-
-		double distance = Math.hypot(this.x - x, this.y - y);
-		if (distance < diameter / 2) {
-			int timeDiff = Math.abs(trackPosition - hitObject.getTime());
-			int[] hitResultOffset = game.getHitResultOffsets();
-
-			int result = -1;
-			if (timeDiff < hitResultOffset[GameData.HIT_50]) {
-				result = GameData.HIT_SLIDER30;
-				ticksHit++;
-				data.sendSliderStartResult(trackPosition, this.x, this.y, color, true);
-			} else if (timeDiff < hitResultOffset[GameData.HIT_MISS]) {
-				result = GameData.HIT_MISS;
-				data.sendSliderStartResult(trackPosition, this.x, this.y, color, false);
-			}
-			//else not a hit
-
-			if (result > -1) {
-				data.addHitError(hitObject.getTime(), x,y,trackPosition - hitObject.getTime());
-				sliderClickedInitial = true;
-				data.sendSliderTickResult(hitObject.getTime(), result, this.x, this.y, hitObject, currentRepeats);
-				return true;
-			}
-		}
-		return false;
+	protected void tickPassed() {
+		if (initialExpand.isFinished())
+			tickExpand.setTime(0);
 	}
 
 	@Override
-	public boolean update(int delta, int mouseX, int mouseY, boolean keyPressed, int trackPosition) {
-		int repeatCount = hitObject.getRepeatCount();
-		int[] hitResultOffset = game.getHitResultOffsets();
-		boolean isAutoMod = GameMod.AUTO.isActive();
-
-		if (!sliderClickedInitial) {
-			int time = hitObject.getTime();
-
-			// start circle time passed
-			if (trackPosition > time + hitResultOffset[GameData.HIT_50]) {
-				sliderClickedInitial = true;
-				if (isAutoMod) {  // "auto" mod: catch any missed notes due to lag
-					ticksHit++;
-					data.sendSliderTickResult(time, GameData.HIT_SLIDER30, x, y, hitObject, currentRepeats);
-					data.sendSliderStartResult(time, x, y, color, true);
-				} else {
-					data.sendSliderTickResult(time, GameData.HIT_MISS, x, y, hitObject, currentRepeats);
-					data.sendSliderStartResult(trackPosition, x, y, color, false);
-				}
-			}
-
-			// "auto" mod: send a perfect hit result
-			else if (isAutoMod) {
-				if (Math.abs(trackPosition - time) < hitResultOffset[GameData.HIT_300]) {
-					ticksHit++;
-					sliderClickedInitial = true;
-					data.sendSliderTickResult(time, GameData.HIT_SLIDER30, x, y, hitObject, currentRepeats);
-					data.sendSliderStartResult(time, x, y, color, true);
-				}
-			}
-
-			// "relax" mod: click automatically
-			else if (GameMod.RELAX.isActive() && trackPosition >= time)
-				mousePressed(mouseX, mouseY, trackPosition);
+	protected void setFollowing(boolean active) {
+		if (active == followCircleActive)
+			return;
+		followCircleActive = active;
+		if (active) {
+			initialExpand.setTime(0);
+			releaseExpand.setTime(releaseExpand.getDuration());
+			tickExpand.setTime(tickExpand.getDuration());
+		} else {
+			releaseExpand.setTime(0);
+			initialExpand.setTime(initialExpand.getDuration());
 		}
+	}
 
+	@Override
+	public boolean update(int delta, float mouseX, float mouseY, boolean keyPressed, int trackPosition) {
 		// update tick expand time
 		tickExpand.update(delta);
 		initialExpand.update(delta);
 		releaseExpand.update(delta);
 
-		// NOTE:
-		// The loops below are used to catch any missed ticks/repeats if slower
-		// delta updates skip past them.
-
-		// repeats
-		int newRepeats = 0;
-		while (repeatCount - 1 > currentRepeats) {
-			float t = getT(trackPosition, true);
-			if (Math.floor(t) > currentRepeats) {
-				currentRepeats++;
-				tickIndex = 0;
-				newRepeats++;
-				if (initialExpand.isFinished())
-					tickExpand.setTime(0);
-			} else
-				break;
-		}
-
-		// ticks
-		int newTicks = 0;
-		while (ticksT != null &&
-		       tickIntervals < (ticksT.length * (currentRepeats + 1)) + 1 &&
-		       tickIntervals < (ticksT.length * repeatCount) + repeatCount) {
-			float t = getT(trackPosition, true);
-			if (t - Math.floor(t) >= ticksT[tickIndex] || tickIntervals < (ticksT.length * currentRepeats) + 1) {
-				tickIntervals++;
-				tickIndex = (tickIndex + 1) % ticksT.length;
-				newTicks++;
-				if (initialExpand.isFinished())
-					tickExpand.setTime(0);
-			} else
-				break;
-		}
-
-		// holding slider...
-		Vec2f c = curve.pointAt(getT(trackPosition, false));
-		double distance = Math.hypot(c.x - mouseX, c.y - mouseY);
-		if (((keyPressed || GameMod.RELAX.isActive()) && distance < followRadius) || isAutoMod) {
-			// mouse pressed and within follow circle
-			if (!followCircleActive) {
-				followCircleActive = true;
-				initialExpand.setTime(0);
-				releaseExpand.setTime(releaseExpand.getDuration());
-				tickExpand.setTime(tickExpand.getDuration());
-			}
-
-			// held during new repeat
-			int newRepeatCount = 0;
-			while (newRepeats-- > 0) {
-				ticksHit++;
-
-				HitObjectType type;
-				float posX, posY;
-				if ((currentRepeats + newRepeatCount) % 2 > 0) {
-					// last circle
-					type = HitObjectType.SLIDER_LAST;
-					Vec2f endPos = curve.pointAt(1f);
-					posX = endPos.x;
-					posY = endPos.y;
-				} else {
-					// first circle
-					type = HitObjectType.SLIDER_FIRST;
-					posX = this.x;
-					posY = this.y;
-				}
-				data.sendSliderTickResult(trackPosition, GameData.HIT_SLIDER30,
-					posX, posY, hitObject, currentRepeats);
-
-				// fade out reverse arrow
-				float colorLuminance = Utils.getLuminance(color);
-				Color arrowColor = colorLuminance < 0.8f ? Color.white : Color.black;
-				data.sendSliderRepeatResult(trackPosition, posX, posY, arrowColor, curve, type);
-
-				newRepeatCount++;
-			}
-
-			// held during new tick
-			int tickIdx = tickIndex;
-			while (newTicks-- > 0) {
-				ticksHit++;
-
-				tickIdx = (tickIdx + (ticksT.length - 1)) % ticksT.length;
-				Vec2f tickPos = curve.pointAt(ticksT[tickIdx]);
-				data.sendSliderTickResult(trackPosition, GameData.HIT_SLIDER10,
-					tickPos.x, tickPos.y, hitObject, currentRepeats);
-			}
-
-			// held near end of slider
-			if (!sliderHeldToEnd && trackPosition > hitObject.getTime() + sliderTimeTotal - hitResultOffset[GameData.HIT_300])
-				sliderHeldToEnd = true;
-		} else {
-			if (followCircleActive) {
-				followCircleActive = false;
-				releaseExpand.setTime(0);
-				initialExpand.setTime(initialExpand.getDuration());
-			}
-
-			while (newRepeats-- > 0)
-				data.sendSliderTickResult(trackPosition, GameData.HIT_MISS, 0, 0, hitObject, currentRepeats);
-			while (newTicks-- > 0)
-				data.sendSliderTickResult(trackPosition, GameData.HIT_MISS, 0, 0, hitObject, currentRepeats);
-		}
-
-		// end of slider
-		if (trackPosition > hitObject.getTime() + sliderTimeTotal) {
-			tickIntervals++;
-
-			// check if cursor pressed and within end circle
-			if (keyPressed || GameMod.RELAX.isActive()) {
-				Vec2f pos = curve.pointAt(getT(trackPosition, false));
-				double dist = Math.hypot(pos.x - mouseX, pos.y - mouseY);
-				if (dist < followRadius)
-					sliderHeldToEnd = true;
-			}
-
-			// final circle hit
-			if (sliderHeldToEnd)
-				ticksHit++;
-
-			// "auto" mod: always send a perfect hit result
-			if (isAutoMod)
-				ticksHit = tickIntervals;
-
-			// calculate and send slider result
-			hitResult();
-
-			return true;
-		}
-
-		return false;
+		return super.update(delta, mouseX, mouseY, keyPressed, trackPosition);
 	}
 
 	@Override
@@ -804,29 +617,18 @@ public class Slider implements GameObject {
 			return curve.pointAt(getT(trackPosition, false));
 	}
 
-	@Override
-	public int getEndTime() { return hitObject.getTime() + (int) sliderTimeTotal; }
-
 	/**
-	 * Returns the t value based on the given track position.
-	 * @param trackPosition the current track position
-	 * @param raw if false, ensures that the value lies within [0, 1] by looping repeats
-	 * @return the t value: raw [0, repeats] or looped [0, 1]
+	 * Returns the underlying curve.
 	 */
-	private float getT(int trackPosition, boolean raw) {
-		float t = (trackPosition - hitObject.getTime()) / sliderTime;
-		if (raw)
-			return t;
-		else {
-			float floor = (float) Math.floor(t);
-			return (floor % 2 == 0) ? t - floor : floor + 1 - t;
-		}
-	}
+	public Curve getCurve() { return curve; }
 
 	/**
-	 * Returns the underlying curve.
+	 * Starts building the curve geometry in the background, before the slider is first drawn.
 	 */
-	public Curve getCurve() { return curve; }
+	public void prepareGeometry() {
+		if (!Options.isExperimentalSliderStyle())
+			curve.prepareGeometry();
+	}
 
 	@Override
 	public void reset() {
@@ -841,4 +643,42 @@ public class Slider implements GameObject {
 		initialExpand.setTime(initialExpand.getDuration());
 		releaseExpand.setTime(releaseExpand.getDuration());
 	}
+
+	/** Snapshot of the slider state. */
+	private static class State {
+		private boolean sliderClickedInitial, sliderHeldToEnd, followCircleActive;
+		private int currentRepeats, tickIndex, ticksHit, tickIntervals;
+		private int tickExpandTime, initialExpandTime, releaseExpandTime;
+	}
+
+	@Override
+	public Object saveState() {
+		State state = new State();
+		state.sliderClickedInitial = sliderClickedInitial;
+		state.sliderHeldToEnd = sliderHeldToEnd;
+		state.followCircleActive = followCircleActive;
+		state.currentRepeats = currentRepeats;
+		state.tickIndex = tickIndex;
+		state.ticksHit = ticksHit;
+		state.tickIntervals = tickIntervals;
+		state.tickExpandTime = tickExpand.getTime();
+		state.initialExpandTime = initialExpand.getTime();
+		state.releaseExpandTime = releaseExpand.getTime();
+		return state;
+	}
+
+	@Override
+	public void restoreState(Object o) {
+		State state = (State) o;
+		sliderClickedInitial = state.sliderClickedInitial;
+		sliderHeldToEnd = state.sliderHeldToEnd;
+		followCircleActive = state.followCircleActive;
+		currentRepeats = state.currentRepeats;
+		tickIndex = state.tickIndex;
+		ticksHit = state.ticksHit;
+		tickIntervals = state.tickIntervals;
+		tickExpand.setTime(state.tickExpandTime);
+		initialExpand.setTime(state.initialExpandTime);
+		releaseExpand.setTime(state.releaseExpandTime);
+	}
 }
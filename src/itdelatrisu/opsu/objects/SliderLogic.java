@@ -0,0 +1,353 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.GameData;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.beatmap.HitObject;
+import itdelatrisu.opsu.objects.curves.Vec2f;
+
+/**
+ * Hit rules of a slider object: the initial circle, repeats, ticks, and the
+ * final result.
+ * <p>
+ * Subclasses set the slider position, provide the curve points, and handle
+ * the hit results.
+ */
+public abstract class SliderLogic implements PlayableObject {
+	/** The associated HitObject. */
+	protected final HitObject hitObject;
+
+	/** The hit rules. */
+	protected final HitRules rules;
+
+	/** Whether or not the slider result ends the combo streak. */
+	protected final boolean comboEnd;
+
+	/** The starting x, y coordinates. */
+	protected float x, y;
+
+	/** The time duration of the slider, in milliseconds. */
+	protected final float sliderTime;
+
+	/** The time duration of the slider including repeats, in milliseconds. */
+	protected final float sliderTimeTotal;
+
+	/** Whether or not the result of the initial hit circle has been processed. */
+	protected boolean sliderClickedInitial = false;
+
+	/** Whether or not the slider was held to the end. */
+	protected boolean sliderHeldToEnd = false;
+
+	/** The number of repeats that have passed so far. */
+	protected int currentRepeats = 0;
+
+	/** The t values of the slider ticks. */
+	protected float[] ticksT;
+
+	/** The tick index in the ticksT[] array. */
+	protected int tickIndex = 0;
+
+	/** Number of ticks hit and tick intervals so far. */
+	protected int ticksHit = 0, tickIntervals = 1;
+
+	/**
+	 * Constructor.
+	 * @param hitObject the associated HitObject
+	 * @param rules the hit rules
+	 * @param comboEnd true if this is the last hit object in the combo
+	 * @param sliderMultiplier the beatmap slider multiplier
+	 * @param sliderTickRate the beatmap slider tick rate
+	 * @param beatLength the beat length at the slider start time
+	 * @param timingPointMultiplier the slider multiplier given by the timing point at the slider start time
+	 */
+	protected SliderLogic(HitObject hitObject, HitRules rules, boolean comboEnd,
+			float sliderMultiplier, float sliderTickRate, float beatLength, float timingPointMultiplier) {
+		this.hitObject = hitObject;
+		this.rules = rules;
+		this.comboEnd = comboEnd;
+
+		// slider time calculations
+		this.sliderTime = hitObject.getSliderTime(sliderMultiplier, beatLength);
+		this.sliderTimeTotal = sliderTime * hitObject.getRepeatCount();
+
+		// ticks
+		float tickLengthDiv = 100f * sliderMultiplier / sliderTickRate / timingPointMultiplier;
+		int tickCount = (int) Math.ceil(hitObject.getPixelLength() / tickLengthDiv) - 1;
+		if (tickCount > 0) {
+			this.ticksT = new float[tickCount];
+			float tickTOffset = 1f / (tickCount + 1);
+			float t = tickTOffset;
+			for (int i = 0; i < tickCount; i++, t += tickTOffset)
+				ticksT[i] = t;
+		}
+	}
+
+	/**
+	 * Returns the point on the slider curve at a t value.
+	 * @param t the t value [0, 1]
+	 */
+	protected abstract Vec2f curvePointAt(float t);
+
+	/**
+	 * Handles the initial circle result from a click.
+	 * @param trackPosition the track position
+	 * @param result the hit result (GameData.HIT_SLIDER30 or GameData.HIT_MISS)
+	 * @param mouseX the x coordinate of the mouse
+	 * @param mouseY the y coordinate of the mouse
+	 */
+	protected abstract void sendInitialClickResult(int trackPosition, int result, float mouseX, float mouseY);
+
+	/**
+	 * Handles the initial circle result if it was not clicked (a miss, or an "auto" mod hit).
+	 * @param trackPosition the track position
+	 * @param result the hit result (GameData.HIT_SLIDER30 or GameData.HIT_MISS)
+	 */
+	protected abstract void sendInitialResult(int trackPosition, int result);
+
+	/**
+	 * Handles a repeat result.
+	 * @param trackPosition the track position
+	 * @param repeat the index of the repeat among those passed in this update
+	 * @param hit whether or not the repeat was held
+	 */
+	protected abstract void sendRepeatResult(int trackPosition, int repeat, boolean hit);
+
+	/**
+	 * Handles a tick result.
+	 * @param trackPosition the track position
+	 * @param tick the tick index in the ticksT[] array
+	 * @param hit whether or not the tick was held
+	 */
+	protected abstract void sendTickResult(int trackPosition, int tick, boolean hit);
+
+	/**
+	 * Handles the final slider result.
+	 * @param time the result time
+	 * @param result the hit result (GameData.HIT_* constants)
+	 */
+	protected abstract void sendSliderResult(int time, int result);
+
+	/**
+	 * Called when a repeat or tick is passed, before its result is sent.
+	 */
+	protected void tickPassed() {}
+
+	/**
+	 * Called on each update with whether or not the slider is being followed.
+	 * @param active true if the cursor is held within the follow circle
+	 */
+	protected void setFollowing(boolean active) {}
+
+	/**
+	 * Calculates and sends the slider hit result.
+	 */
+	private void hitResult() {
+		float tickRatio = (float) ticksHit / tickIntervals;
+
+		int result;
+		if (tickRatio >= 1.0f)
+			result = GameData.HIT_300;
+		else if (tickRatio >= 0.5f)
+			result = GameData.HIT_100;
+		else if (tickRatio > 0f)
+			result = GameData.HIT_50;
+		else
+			result = GameData.HIT_MISS;
+
+		sendSliderResult(hitObject.getTime() + (int) sliderTimeTotal, result);
+	}
+
+	@Override
+	public boolean mousePressed(float x, float y, int trackPosition) {
+		if (sliderClickedInitial)  // first circle already processed
+			return false;
+
+		double distance = Math.hypot(this.x - x, this.y - y);
+		if (distance < rules.getCircleDiameter() / 2) {
+			int timeDiff = Math.abs(trackPosition - hitObject.getTime());
+			int[] hitResultOffset = rules.getHitResultOffsets();
+
+			int result = -1;
+			if (timeDiff < hitResultOffset[GameData.HIT_50]) {
+				result = GameData.HIT_SLIDER30;
+				ticksHit++;
+			} else if (timeDiff < hitResultOffset[GameData.HIT_MISS])
+				result = GameData.HIT_MISS;
+			//else not a hit
+
+			if (result > -1) {
+				sliderClickedInitial = true;
+				sendInitialClickResult(trackPosition, result, x, y);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean update(int delta, float mouseX, float mouseY, boolean keyPressed, int trackPosition) {
+		int repeatCount = hitObject.getRepeatCount();
+		int[] hitResultOffset = rules.getHitResultOffsets();
+		boolean isAutoMod = rules.isActive(GameMod.AUTO);
+		boolean isRelaxMod = rules.isActive(GameMod.RELAX);
+
+		if (!sliderClickedInitial) {
+			int time = hitObject.getTime();
+
+			// start circle time passed
+			if (trackPosition > time + hitResultOffset[GameData.HIT_50]) {
+				sliderClickedInitial = true;
+				if (isAutoMod) {  // "auto" mod: catch any missed notes due to lag
+					ticksHit++;
+					sendInitialResult(trackPosition, GameData.HIT_SLIDER30);
+				} else
+					sendInitialResult(trackPosition, GameData.HIT_MISS);
+			}
+
+			// "auto" mod: send a perfect hit result
+			else if (isAutoMod) {
+				if (Math.abs(trackPosition - time) < hitResultOffset[GameData.HIT_300]) {
+					ticksHit++;
+					sliderClickedInitial = true;
+					sendInitialResult(trackPosition, GameData.HIT_SLIDER30);
+				}
+			}
+
+			// "relax" mod: click automatically
+			else if (isRelaxMod && trackPosition >= time)
+				mousePressed(mouseX, mouseY, trackPosition);
+		}
+
+		// NOTE:
+		// The loops below are used to catch any missed ticks/repeats if slower
+		// delta updates skip past them.
+
+		// repeats
+		int newRepeats = 0;
+		while (repeatCount - 1 > currentRepeats) {
+			float t = getT(trackPosition, true);
+			if (Math.floor(t) > currentRepeats) {
+				currentRepeats++;
+				tickIndex = 0;
+				newRepeats++;
+				tickPassed();
+			} else
+				break;
+		}
+
+		// ticks
+		int newTicks = 0;
+		while (ticksT != null &&
+		       tickIntervals < (ticksT.length * (currentRepeats + 1)) + 1 &&
+		       tickIntervals < (ticksT.length * repeatCount) + repeatCount) {
+			float t = getT(trackPosition, true);
+			if (t - Math.floor(t) >= ticksT[tickIndex] || tickIntervals < (ticksT.length * currentRepeats) + 1) {
+				tickIntervals++;
+				tickIndex = (tickIndex + 1) % ticksT.length;
+				newTicks++;
+				tickPassed();
+			} else
+				break;
+		}
+
+		// holding slider...
+		Vec2f c = curvePointAt(getT(trackPosition, false));
+		double distance = Math.hypot(c.x - mouseX, c.y - mouseY);
+		if (((keyPressed || isRelaxMod) && distance < rules.getFollowRadius()) || isAutoMod) {
+			// mouse pressed and within follow circle
+			setFollowing(true);
+
+			// held during new repeat
+			for (int i = 0; i < newRepeats; i++) {
+				ticksHit++;
+				sendRepeatResult(trackPosition, i, true);
+			}
+
+			// held during new tick
+			int tickIdx = tickIndex;
+			while (newTicks-- > 0) {
+				ticksHit++;
+				tickIdx = (tickIdx + (ticksT.length - 1)) % ticksT.length;
+				sendTickResult(trackPosition, tickIdx, true);
+			}
+
+			// held near end of slider
+			if (!sliderHeldToEnd && trackPosition > hitObject.getTime() + sliderTimeTotal - hitResultOffset[GameData.HIT_300])
+				sliderHeldToEnd = true;
+		} else {
+			setFollowing(false);
+
+			for (int i = 0; i < newRepeats; i++)
+				sendRepeatResult(trackPosition, i, false);
+			int tickIdx = tickIndex;
+			while (newTicks-- > 0) {
+				tickIdx = (tickIdx + (ticksT.length - 1)) % ticksT.length;
+				sendTickResult(trackPosition, tickIdx, false);
+			}
+		}
+
+		// end of slider
+		if (trackPosition > hitObject.getTime() + sliderTimeTotal) {
+			tickIntervals++;
+
+			// check if cursor pressed and within end circle
+			if (keyPressed || isRelaxMod) {
+				Vec2f pos = curvePointAt(getT(trackPosition, false));
+				double dist = Math.hypot(pos.x - mouseX, pos.y - mouseY);
+				if (dist < rules.getFollowRadius())
+					sliderHeldToEnd = true;
+			}
+
+			// final circle hit
+			if (sliderHeldToEnd)
+				ticksHit++;
+
+			// "auto" mod: always send a perfect hit result
+			if (isAutoMod)
+				ticksHit = tickIntervals;
+
+			// calculate and send slider result
+			hitResult();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public int getEndTime() { return hitObject.getTime() + (int) sliderTimeTotal; }
+
+	/**
+	 * Returns the t value based on the given track position.
+	 * @param trackPosition the current track position
+	 * @param raw if false, ensures that the value lies within [0, 1] by looping repeats
+	 * @return the t value: raw [0, repeats] or looped [0, 1]
+	 */
+	protected float getT(int trackPosition, boolean raw) {
+		float t = (trackPosition - hitObject.getTime()) / sliderTime;
+		if (raw)
+			return t;
+		else {
+			float floor = (float) Math.floor(t);
+			return (floor % 2 == 0) ? t - floor : floor + 1 - t;
+		}
+	}
+}
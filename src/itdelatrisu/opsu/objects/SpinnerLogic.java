@@ -0,0 +1,275 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.GameData;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.Utils;
+import itdelatrisu.opsu.beatmap.HitObject;
+
+/**
+ * Hit rules of a spinner object: rotation tracking and the final result.
+ * <p>
+ * Subclasses handle the spin and hit results.
+ */
+public abstract class SpinnerLogic implements PlayableObject {
+	/** The amount of time, in milliseconds, before another velocity is stored. */
+	protected static final float DELTA_UPDATE_TIME = 1000 / 60f;
+
+	/** Angle mod multipliers: "auto" (477rpm), "spun out" (287rpm) */
+	protected static final float
+		AUTO_MULTIPLIER = 1 / 20f,         // angle = 477/60f * delta/1000f * TWO_PI;
+		SPUN_OUT_MULTIPLIER = 1 / 33.25f;  // angle = 287/60f * delta/1000f * TWO_PI;
+
+	/** Maximum angle difference. */
+	private static final float MAX_ANG_DIFF = DELTA_UPDATE_TIME * AUTO_MULTIPLIER; // ~95.3
+
+	/** PI constants. */
+	protected static final float TWO_PI = (float) (Math.PI * 2);
+
+	/** The associated HitObject. */
+	protected final HitObject hitObject;
+
+	/** The hit rules. */
+	protected final HitRules rules;
+
+	/** The last rotation angle. */
+	protected float lastAngle = 0f;
+
+	/** The current number of rotations. */
+	protected float rotations = 0f;
+
+	/** The total number of rotations needed to clear the spinner. */
+	protected final float rotationsNeeded;
+
+	/** The remaining amount of time that was not used. */
+	protected float deltaOverflow;
+
+	/** The sum of all the velocities in storedVelocities. */
+	protected float sumDeltaAngle = 0f;
+
+	/** Array holding the most recent rotation velocities. */
+	protected final float[] storedDeltaAngle;
+
+	/** True if the mouse cursor is pressed. */
+	protected boolean isSpinning;
+
+	/** Current index of the stored velocities in rotations/second. */
+	protected int deltaAngleIndex = 0;
+
+	/** The remaining amount of the angle that was not used. */
+	protected float deltaAngleOverflow = 0;
+
+	/**
+	 * Constructor.
+	 * @param hitObject the associated HitObject
+	 * @param rules the hit rules
+	 */
+	protected SpinnerLogic(HitObject hitObject, HitRules rules) {
+		this.hitObject = hitObject;
+		this.rules = rules;
+
+/*
+		1 beat = 731.707317073171ms
+			RPM at frame X with spinner Y beats long
+				10	20	30	40	50	60 <frame#
+		1.00	306	418	457	470
+		1.25	323	424	459	471	475
+		1.5		305	417	456	470	475	477
+		1.75	322	417	456	471	475
+		2.00	304	410	454	469	474	476
+		2.25	303	410	451	467	474	476
+		2.50	303	417	456	470	475	476
+		2.75	302	416	456	470	475	476
+		3.00	301	416	456	470	475		<-- ~2sec
+		4.00	274	414	453	470	475
+		5.00	281	409	454	469	475
+		6.00	232	392	451	467	472	476
+		6.25	193	378	443	465
+		6.50	133	344	431	461
+		6.75	85	228	378	435	463	472	<-- ~5sec
+		7.00	53	154	272	391	447
+		8.00	53	154	272	391	447
+		9.00	53	154	272	400	450
+		10.00	53	154	272	400	450
+		15.00	53	154	272	391	444	466
+		20.00	61	154	272	400	447
+		25.00	53	154	272	391	447	466
+		^beats
+*/
+		// TODO not correct at all, but close enough?
+		// <2sec ~ 12 ~ 200ms
+		// >5sec ~ 48 ~ 800ms
+
+		final int minVel = 12;
+		final int maxVel = 48;
+		final int minTime = 2000;
+		final int maxTime = 5000;
+		int maxStoredDeltaAngles = Utils.clamp((hitObject.getEndTime() - hitObject.getTime() - minTime)
+				* (maxVel - minVel) / (maxTime - minTime) + minVel, minVel, maxVel);
+		storedDeltaAngle = new float[maxStoredDeltaAngles];
+
+		// calculate rotations needed
+		float spinsPerMinute = 100 + (rules.getOverallDifficulty() * 15);
+		rotationsNeeded = spinsPerMinute * (hitObject.getEndTime() - hitObject.getTime()) / 60000f;
+	}
+
+	/**
+	 * Handles a spin result.
+	 * @param result the hit result (GameData.HIT_SPINNERSPIN or GameData.HIT_SPINNERBONUS)
+	 */
+	protected abstract void sendSpinResult(int result);
+
+	/**
+	 * Handles the final spinner result.
+	 * @param result the hit result (GameData.HIT_* constants)
+	 */
+	protected abstract void sendSpinnerResult(int result);
+
+	/**
+	 * Called after each stored velocity update with the rotation angle applied.
+	 * @param angle the rotation angle (in radians)
+	 */
+	protected void rotated(float angle) {}
+
+	/**
+	 * Calculates and sends the spinner hit result.
+	 */
+	private void hitResult() {
+		// TODO: verify ratios
+		int result;
+		float ratio = rotations / rotationsNeeded;
+		if (ratio >= 1.0f || rules.isActive(GameMod.AUTO) || rules.isActive(GameMod.AUTOPILOT) || rules.isActive(GameMod.SPUN_OUT))
+			result = GameData.HIT_300;
+		else if (ratio >= 0.9f)
+			result = GameData.HIT_100;
+		else if (ratio >= 0.75f)
+			result = GameData.HIT_50;
+		else
+			result = GameData.HIT_MISS;
+
+		sendSpinnerResult(result);
+	}
+
+	@Override
+	public boolean mousePressed(float x, float y, int trackPosition) {
+		lastAngle = (float) Math.atan2(x - rules.getSpinnerY(), y - rules.getSpinnerX());
+		return false;
+	}
+
+	@Override
+	public boolean update(int delta, float mouseX, float mouseY, boolean keyPressed, int trackPosition) {
+		// end of spinner
+		if (trackPosition > hitObject.getEndTime()) {
+			hitResult();
+			return true;
+		}
+
+		boolean isRelaxMod = rules.isActive(GameMod.RELAX);
+
+		// game button is released
+		if (isSpinning && !(keyPressed || isRelaxMod))
+			isSpinning = false;
+
+		// spin automatically
+		// http://osu.ppy.sh/wiki/FAQ#Spinners
+
+		deltaOverflow += delta;
+
+		float angleDiff = 0;
+		if (rules.isActive(GameMod.AUTO)) {
+			angleDiff = delta * AUTO_MULTIPLIER;
+			isSpinning = true;
+		} else if (rules.isActive(GameMod.SPUN_OUT) || rules.isActive(GameMod.AUTOPILOT)) {
+			angleDiff = delta * SPUN_OUT_MULTIPLIER;
+			isSpinning = true;
+		} else {
+			float angle = (float) Math.atan2(mouseY - rules.getSpinnerY(), mouseX - rules.getSpinnerX());
+
+			// set initial angle to current mouse position to skip first click
+			if (!isSpinning && (keyPressed || isRelaxMod)) {
+				lastAngle = angle;
+				isSpinning = true;
+				return false;
+			}
+
+			angleDiff = angle - lastAngle;
+			if (Math.abs(angleDiff) > 0.01f)
+				lastAngle = angle;
+			else
+				angleDiff = 0;
+		}
+
+		// make angleDiff the smallest angle change possible
+		// (i.e. 1/4 rotation instead of 3/4 rotation)
+		if (angleDiff < -Math.PI)
+			angleDiff += TWO_PI;
+		else if (angleDiff > Math.PI)
+			angleDiff -= TWO_PI;
+
+		// may be a problem at higher frame rate due to floating point round off
+		if (isSpinning)
+			deltaAngleOverflow += angleDiff;
+
+		while (deltaOverflow >= DELTA_UPDATE_TIME) {
+			// spin caused by the cursor
+			float deltaAngle = 0;
+			if (isSpinning) {
+				deltaAngle = deltaAngleOverflow * DELTA_UPDATE_TIME / deltaOverflow;
+				deltaAngleOverflow -= deltaAngle;
+				deltaAngle = Utils.clamp(deltaAngle, -MAX_ANG_DIFF, MAX_ANG_DIFF);
+			}
+			sumDeltaAngle -= storedDeltaAngle[deltaAngleIndex];
+			sumDeltaAngle += deltaAngle;
+			storedDeltaAngle[deltaAngleIndex++] = deltaAngle;
+			deltaAngleIndex %= storedDeltaAngle.length;
+			deltaOverflow -= DELTA_UPDATE_TIME;
+
+			float rotationAngle = sumDeltaAngle / storedDeltaAngle.length;
+			rotationAngle = Utils.clamp(rotationAngle, -MAX_ANG_DIFF, MAX_ANG_DIFF);
+			rotated(rotationAngle);
+			rotate(rotationAngle);
+		}
+
+		//TODO may need to update 1 more time when the spinner ends?
+		return false;
+	}
+
+	@Override
+	public int getEndTime() { return hitObject.getEndTime(); }
+
+	/**
+	 * Rotates the spinner by an angle.
+	 * @param angle the angle to rotate (in radians)
+	 */
+	private void rotate(float angle) {
+		angle = Math.abs(angle);
+		float newRotations = rotations + (angle / TWO_PI);
+
+		// added one whole rotation...
+		if (Math.floor(newRotations) > rotations) {
+			if (newRotations > rotationsNeeded)  // extra rotations
+				sendSpinResult(GameData.HIT_SPINNERBONUS);
+			else
+				sendSpinResult(GameData.HIT_SPINNERSPIN);
+		}
+
+		rotations = newRotations;
+	}
+}
@@ -20,8 +20,6 @@ package itdelatrisu.opsu.objects.curves;
 
 import itdelatrisu.opsu.beatmap.HitObject;
 
-import java.util.LinkedList;
-
 /**
  * Representation of Catmull Curve with equidistant points.
  *
@@ -43,30 +41,15 @@ public class CatmullCurve extends EqualDistanceMultiCurve {
 	 */
 	public CatmullCurve(HitObject hitObject, boolean scaled) {
 		super(hitObject, scaled);
-		LinkedList<CurveType> catmulls = new LinkedList<CurveType>();
-		int ncontrolPoints = hitObject.getSliderX().length + 1;
-		LinkedList<Vec2f> points = new LinkedList<Vec2f>();  // temporary list of points to separate different curves
 
 		// repeat the first and last points as controls points
 		// only if the first/last two points are different
 		// aabb
 		// aabc abcc
 		// aabc abcd bcdd
-		if (getX(0) != getX(1) || getY(0) != getY(1))
-			points.addLast(new Vec2f(getX(0), getY(0)));
-		for (int i = 0; i < ncontrolPoints; i++) {
-			points.addLast(new Vec2f(getX(i), getY(i)));
-			if (points.size() >= 4) {
-				catmulls.add(new CentripetalCatmullRom(points.toArray(new Vec2f[0])));
-				points.removeFirst();
-			}
-		}
-		if (getX(ncontrolPoints - 1) != getX(ncontrolPoints - 2) ||
-		    getY(ncontrolPoints - 1) != getY(ncontrolPoints - 2))
-			points.addLast(new Vec2f(getX(ncontrolPoints - 1), getY(ncontrolPoints - 1)));
-		if (points.size() >= 4)
-			catmulls.add(new CentripetalCatmullRom(points.toArray(new Vec2f[0])));
-
-		init(catmulls);
+		CurveFlattener flattener = CurveFlattener.get();
+		flattener.setControlPoints(x, y, sliderX, sliderY);
+		flattener.flattenCatmull(ncurve, getPixelLength());
+		init(flattener);
 	}
 }
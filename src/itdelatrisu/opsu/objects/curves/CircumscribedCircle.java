@@ -102,7 +102,7 @@ public class CircumscribedCircle extends Curve {
 
 		// find an angle with an arc length of pixelLength along this circle
 		this.radius = startAngPoint.len();
-		float pixelLength = hitObject.getPixelLength() * HitObject.getXMultiplier();
+		float pixelLength = getPixelLength();
 		float arcAng = pixelLength / radius;  // len = theta * r / theta = len / r
 
 		// now use it for our new end angle
@@ -114,9 +114,12 @@ public class CircumscribedCircle extends Curve {
 
 		// calculate points
 		float step = hitObject.getPixelLength() / CURVE_POINTS_SEPERATION;
-		curve = new Vec2f[(int) step + 1];
+		CurveFlattener flattener = CurveFlattener.get();
+		flattener.flattenArc(circleCenter.x, circleCenter.y, radius, startAng, (endAng - startAng) / step, (int) step + 1);
+		float[] px = flattener.getX(), py = flattener.getY();
+		curve = new Vec2f[flattener.getCount()];
 		for (int i = 0; i < curve.length; i++)
-			curve[i] = pointAt(i / step);
+			curve[i] = new Vec2f(px[i], py[i]);
 	}
 
 	/**
@@ -57,6 +57,9 @@ public abstract class Curve {
 	/** The scaled slider x, y coordinate lists. */
 	protected float[] sliderX, sliderY;
 
+	/** Whether the curve uses scaled coordinates. */
+	private final boolean scaled;
+
 	/** Per-curve render-state used for the new style curve renders. */
 	private CurveRenderState renderState;
 
@@ -73,6 +76,7 @@ public abstract class Curve {
 	 */
 	protected Curve(HitObject hitObject, boolean scaled) {
 		this.hitObject = hitObject;
+		this.scaled = scaled;
 		if (scaled) {
 			this.x = hitObject.getScaledX();
 			this.y = hitObject.getScaledY();
@@ -87,6 +91,21 @@ public abstract class Curve {
 		this.renderState = null;
 	}
 
+	/**
+	 * Constructor for scaled curves derived from another curve.
+	 * Subclasses must override {@link #getX(int)} and {@link #getY(int)}.
+	 * @param hitObject the associated HitObject
+	 * @param x the scaled starting x coordinate
+	 * @param y the scaled starting y coordinate
+	 */
+	protected Curve(HitObject hitObject, float x, float y) {
+		this.hitObject = hitObject;
+		this.scaled = true;
+		this.x = x;
+		this.y = y;
+		this.renderState = null;
+	}
+
 	/**
 	 * Set the width and height of the container that Curves get drawn into.
 	 * Should be called before any curves are drawn.
@@ -109,6 +128,14 @@ public abstract class Curve {
 		}
 	}
 
+	/**
+	 * Returns the slider's pixel length in the coordinate space of this curve
+	 * (i.e. multiplied by the x multiplier only if scaled).
+	 */
+	protected float getPixelLength() {
+		return scaled ? hitObject.getPixelLength() * HitObject.getXMultiplier() : hitObject.getPixelLength();
+	}
+
 	/**
 	 * Returns the points along the curve.
 	 */
@@ -157,6 +184,18 @@ public abstract class Curve {
 		}
 	}
 
+	/**
+	 * Starts building the geometry for {@link #draw(Color, float)} in the background
+	 * (only used for mmsliders).
+	 */
+	public void prepareGeometry() {
+		if (curve == null || Options.getSkin().getSliderStyle() == Skin.STYLE_PEPPYSLIDER || !mmsliderSupported)
+			return;
+		if (renderState == null)
+			renderState = new CurveRenderState(hitObject, curve);
+		renderState.prepareGeometry();
+	}
+
 	/**
 	 * Draws a section of the curve to the graphics context.
 	 * @param color the color filter
@@ -0,0 +1,371 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects.curves;
+
+import itdelatrisu.opsu.Utils;
+
+/**
+ * Flattens slider curves into polylines and resamples them into equidistant points.
+ * <p>
+ * Bezier and Catmull segments are flattened with adaptive de Casteljau subdivision,
+ * so straight or gently curved sections produce very few points. Each flattened
+ * point is immediately fed to the resampler, which places the output points
+ * {@code pixelLength / ncurve} apart along the polyline (see {@link EqualDistanceMultiCurve}).
+ * Circular arcs are sampled directly at equal angles.
+ * <p>
+ * All points are kept in reusable primitive arrays. Instances are not thread-safe;
+ * {@link #get()} returns an instance for the current thread.
+ */
+public class CurveFlattener {
+	/**
+	 * Maximum squared second difference of a flat piece's control points
+	 * (tight enough that the flattened length matches the exact arc length).
+	 */
+	private static final float BEZIER_TOLERANCE_SQ = 0.1f * 0.1f;
+
+	/** Maximum subdivision depth (guards against degenerate control points). */
+	private static final int MAX_DEPTH = 16;
+
+	/** Per-thread instances. */
+	private static final ThreadLocal<CurveFlattener> instances = new ThreadLocal<CurveFlattener>() {
+		@Override
+		protected CurveFlattener initialValue() { return new CurveFlattener(); }
+	};
+
+	/** Control point coordinates. */
+	private float[] controlX = new float[16], controlY = new float[16];
+
+	/** Number of control points. */
+	private int controlCount;
+
+	/** Subdivision stack: the control points of each pending Bezier piece. */
+	private float[] pieceX = new float[64], pieceY = new float[64];
+
+	/** Subdivision stack: the depth of each pending Bezier piece. */
+	private int[] pieceDepth = new int[MAX_DEPTH + 2];
+
+	/** De Casteljau scratch space. */
+	private float[] scratchX = new float[4], scratchY = new float[4];
+
+	/** Control points of the current Catmull segment (as a cubic Bezier). */
+	private final float[] cubicX = new float[4], cubicY = new float[4];
+
+	/** The resampled points. */
+	private float[] outX = new float[64], outY = new float[64];
+
+	/** Number of resampled points (ncurve + 1). */
+	private int outCount;
+
+	/** Number of resampled points written so far. */
+	private int outIndex;
+
+	/** Resampling parameters. */
+	private int ncurve;
+	private float pixelLength;
+
+	/** Resampling state: the current and previous polyline points, and their distances along the polyline. */
+	private float curX, curY, lastX, lastY, distanceAt, lastDistanceAt;
+
+	/** Whether any polyline points have been added. */
+	private boolean started;
+
+	/**
+	 * Returns the instance for the current thread.
+	 */
+	public static CurveFlattener get() { return instances.get(); }
+
+	/**
+	 * Sets the control points.
+	 * @param x the starting x coordinate
+	 * @param y the starting y coordinate
+	 * @param sliderX the remaining x coordinates
+	 * @param sliderY the remaining y coordinates
+	 */
+	public void setControlPoints(float x, float y, float[] sliderX, float[] sliderY) {
+		controlCount = sliderX.length + 1;
+		if (controlX.length < controlCount) {
+			controlX = new float[controlCount];
+			controlY = new float[controlCount];
+		}
+		controlX[0] = x;
+		controlY[0] = y;
+		System.arraycopy(sliderX, 0, controlX, 1, sliderX.length);
+		System.arraycopy(sliderY, 0, controlY, 1, sliderY.length);
+	}
+
+	/**
+	 * Flattens and resamples a Bezier curve (see {@link LinearBezier}).
+	 * The control points are split into separate Bezier segments at repeated
+	 * points, or into one segment per sequential pair if {@code line} is true.
+	 * @param line whether a new segment should be generated for each sequential pair
+	 * @param ncurve the number of resampled intervals
+	 * @param pixelLength the curve length
+	 */
+	public void flattenBezier(boolean line, int ncurve, float pixelLength) {
+		beginResample(ncurve, pixelLength);
+		if (line) {
+			for (int i = 1; i < controlCount; i++)
+				addBezierSegment(controlX, controlY, i - 1, 2);
+		} else {
+			int start = 0;
+			for (int i = 1; i <= controlCount; i++) {
+				if (i == controlCount || (controlX[i] == controlX[i - 1] && controlY[i] == controlY[i - 1])) {
+					if (i - start >= 2)
+						addBezierSegment(controlX, controlY, start, i - start);
+					start = i;
+				}
+			}
+		}
+		endResample();
+	}
+
+	/**
+	 * Flattens and resamples a Catmull curve (see {@link CatmullCurve}).
+	 * The first and last control points are repeated if they differ from their
+	 * neighbors, and each window of four consecutive points forms a segment.
+	 * @param ncurve the number of resampled intervals
+	 * @param pixelLength the curve length
+	 */
+	public void flattenCatmull(int ncurve, float pixelLength) {
+		int n = controlCount;
+		if (n < 2)
+			throw new ArrayIndexOutOfBoundsException(n - 1);
+		int lead = (controlX[0] != controlX[1] || controlY[0] != controlY[1]) ? 1 : 0;
+		int trail = (controlX[n - 1] != controlX[n - 2] || controlY[n - 1] != controlY[n - 2]) ? 1 : 0;
+		int segments = lead + n + trail - 3;
+
+		beginResample(ncurve, pixelLength);
+		float[] bx = cubicX, by = cubicY;
+		for (int i = 0; i < segments; i++) {
+			int p0 = catmullPoint(i, lead), p1 = catmullPoint(i + 1, lead);
+			int p2 = catmullPoint(i + 2, lead), p3 = catmullPoint(i + 3, lead);
+
+			// uniform Catmull-Rom segment between p1 and p2 as a cubic Bezier
+			float x1 = controlX[p1], y1 = controlY[p1], x2 = controlX[p2], y2 = controlY[p2];
+			float c1x = x1 + (x2 - controlX[p0]) / 6f, c1y = y1 + (y2 - controlY[p0]) / 6f;
+			float c2x = x2 - (controlX[p3] - x1) / 6f, c2y = y2 - (controlY[p3] - y1) / 6f;
+			bx[0] = x1;  by[0] = y1;
+			bx[1] = c1x; by[1] = c1y;
+			bx[2] = c2x; by[2] = c2y;
+			bx[3] = x2;  by[3] = y2;
+			addBezierSegment(bx, by, 0, 4);
+		}
+		endResample();
+	}
+
+	/**
+	 * Samples a circular arc at equal angles (see {@link CircumscribedCircle}).
+	 * @param centerX the circle center x coordinate
+	 * @param centerY the circle center y coordinate
+	 * @param radius the circle radius
+	 * @param startAng the angle of the first point
+	 * @param angleStep the angle between consecutive points
+	 * @param count the number of points
+	 */
+	public void flattenArc(float centerX, float centerY, float radius, float startAng, float angleStep, int count) {
+		ensureOutCapacity(count);
+		outCount = outIndex = count;
+
+		// rotate a unit vector instead of evaluating sin/cos at every point
+		double cosStep = Math.cos(angleStep), sinStep = Math.sin(angleStep);
+		double dx = Math.cos(startAng), dy = Math.sin(startAng);
+		for (int i = 0; i < count; i++) {
+			outX[i] = (float) (dx * radius + centerX);
+			outY[i] = (float) (dy * radius + centerY);
+			double ndx = dx * cosStep - dy * sinStep;
+			dy = dx * sinStep + dy * cosStep;
+			dx = ndx;
+		}
+	}
+
+	/** Returns the x coordinates of the output points. */
+	public float[] getX() { return outX; }
+
+	/** Returns the y coordinates of the output points. */
+	public float[] getY() { return outY; }
+
+	/** Returns the number of output points. */
+	public int getCount() { return outCount; }
+
+	/**
+	 * Returns the index of a control point in the Catmull control point sequence.
+	 * @param i the sequence index
+	 * @param lead the number of repeated leading points
+	 */
+	private int catmullPoint(int i, int lead) {
+		return Math.min(Math.max(i - lead, 0), controlCount - 1);
+	}
+
+	/**
+	 * Flattens a Bezier segment with adaptive subdivision and feeds the points to the resampler.
+	 * @param x the x coordinate array
+	 * @param y the y coordinate array
+	 * @param from the index of the first control point
+	 * @param n the number of control points
+	 */
+	private void addBezierSegment(float[] x, float[] y, int from, int n) {
+		if (!started)
+			addPoint(x[from], y[from]);
+		if (n == 2) {  // line
+			addPoint(x[from + 1], y[from + 1]);
+			return;
+		}
+
+		int size = (MAX_DEPTH + 2) * n;
+		if (pieceX.length < size) {
+			pieceX = new float[size];
+			pieceY = new float[size];
+		}
+		if (scratchX.length < n) {
+			scratchX = new float[n];
+			scratchY = new float[n];
+		}
+
+		// depth-first subdivision: the left half of a piece is pushed on top of the right half
+		System.arraycopy(x, from, pieceX, 0, n);
+		System.arraycopy(y, from, pieceY, 0, n);
+		pieceDepth[0] = 0;
+		int top = 0;
+		while (top >= 0) {
+			int base = top * n;
+			if (pieceDepth[top] >= MAX_DEPTH || isFlat(base, n)) {
+				addPoint(pieceX[base + n - 1], pieceY[base + n - 1]);
+				top--;
+				continue;
+			}
+			subdivide(base, base + n, n);
+			pieceDepth[top + 1] = ++pieceDepth[top];
+			top++;
+		}
+	}
+
+	/**
+	 * Returns whether a Bezier piece is flat enough to be approximated by its chord.
+	 * @param base the index of the piece's first control point
+	 * @param n the number of control points
+	 */
+	private boolean isFlat(int base, int n) {
+		for (int i = base + 1; i < base + n - 1; i++) {
+			float dx = pieceX[i - 1] - 2 * pieceX[i] + pieceX[i + 1];
+			float dy = pieceY[i - 1] - 2 * pieceY[i] + pieceY[i + 1];
+			if (dx * dx + dy * dy > BEZIER_TOLERANCE_SQ)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Splits a Bezier piece in half using de Casteljau's algorithm.
+	 * @param base the index of the piece (replaced by the right half)
+	 * @param leftBase the index at which to store the left half
+	 * @param n the number of control points
+	 */
+	private void subdivide(int base, int leftBase, int n) {
+		float[] mx = scratchX, my = scratchY;
+		System.arraycopy(pieceX, base, mx, 0, n);
+		System.arraycopy(pieceY, base, my, 0, n);
+		for (int k = 0; k < n; k++) {
+			pieceX[leftBase + k] = mx[0];
+			pieceY[leftBase + k] = my[0];
+			pieceX[base + n - 1 - k] = mx[n - 1 - k];
+			pieceY[base + n - 1 - k] = my[n - 1 - k];
+			for (int i = 0; i < n - 1 - k; i++) {
+				mx[i] = (mx[i] + mx[i + 1]) / 2;
+				my[i] = (my[i] + my[i + 1]) / 2;
+			}
+		}
+	}
+
+	/**
+	 * Prepares the resampler.
+	 * @param ncurve the number of resampled intervals
+	 * @param pixelLength the curve length
+	 */
+	private void beginResample(int ncurve, float pixelLength) {
+		this.ncurve = ncurve;
+		this.pixelLength = pixelLength;
+		this.outCount = ncurve + 1;
+		ensureOutCapacity(outCount);
+		this.outIndex = 0;
+		this.started = false;
+		this.distanceAt = lastDistanceAt = 0;
+	}
+
+	/**
+	 * Adds a polyline point, and writes all output points that lie before it.
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 */
+	private void addPoint(float x, float y) {
+		if (!started) {
+			curX = lastX = x;
+			curY = lastY = y;
+			started = true;
+		} else {
+			float dx = x - curX, dy = y - curY;
+			lastX = curX;
+			lastY = curY;
+			lastDistanceAt = distanceAt;
+			curX = x;
+			curY = y;
+			distanceAt += (float) Math.sqrt(dx * dx + dy * dy);
+		}
+
+		while (outIndex < outCount) {
+			float prefDistance = (outIndex == 0) ? 0 : outIndex * pixelLength / ncurve;
+			if (distanceAt < prefDistance)
+				break;
+
+			// interpolate the point between the two closest distances
+			if (distanceAt > lastDistanceAt) {
+				float t = (prefDistance - lastDistanceAt) / (distanceAt - lastDistanceAt);
+				outX[outIndex] = Utils.lerp(lastX, curX, t);
+				outY[outIndex] = Utils.lerp(lastY, curY, t);
+			} else {
+				outX[outIndex] = curX;
+				outY[outIndex] = curY;
+			}
+			outIndex++;
+		}
+	}
+
+	/**
+	 * Finishes resampling: output points past the end of the polyline are placed at its last point.
+	 */
+	private void endResample() {
+		if (!started)
+			throw new RuntimeException("Curve has no segments.");
+		for (; outIndex < outCount; outIndex++) {
+			outX[outIndex] = curX;
+			outY[outIndex] = curY;
+		}
+	}
+
+	/**
+	 * Ensures that the output arrays can hold the given number of points.
+	 * @param count the number of points
+	 */
+	private void ensureOutCapacity(int count) {
+		if (outX.length < count) {
+			int size = Math.max(count, outX.length * 2);
+			outX = new float[size];
+			outY = new float[size];
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects.curves;
+
+import itdelatrisu.opsu.Utils;
+import itdelatrisu.opsu.beatmap.HitObject;
+
+/**
+ * Computes the start and end points of an unscaled slider curve without
+ * building a {@link Curve} object.
+ * <p>
+ * The results match the unscaled {@link Curve} classes, except that the pixel
+ * length is multiplied by the current x multiplier (as star ratings have always
+ * been computed). All intermediate points are written into reusable primitive
+ * arrays instead of {@link Vec2f} arrays. Instances are not thread-safe.
+ */
+public class CurveSampler {
+	/** PI constants (same as in {@link CircumscribedCircle}). */
+	private static final float TWO_PI = (float) (Math.PI * 2);
+
+	/** Control point coordinates. */
+	private float[] controlX = new float[16], controlY = new float[16];
+
+	/** Number of control points. */
+	private int controlCount;
+
+	/** The curve flattener. */
+	private final CurveFlattener flattener = new CurveFlattener();
+
+	/** The start and end points. */
+	private float startX, startY, endX, endY;
+
+	/**
+	 * Computes the start and end points of a slider's unscaled curve.
+	 * Throws the same exceptions as constructing the curve would.
+	 * @param hitObject the slider
+	 */
+	public void sample(HitObject hitObject) {
+		float[] sliderX = hitObject.getSliderX(), sliderY = hitObject.getSliderY();
+		float x = hitObject.getX(), y = hitObject.getY();
+
+		// copy control points
+		controlCount = sliderX.length + 1;
+		if (controlX.length < controlCount) {
+			controlX = new float[controlCount];
+			controlY = new float[controlCount];
+		}
+		controlX[0] = x;
+		controlY[0] = y;
+		System.arraycopy(sliderX, 0, controlX, 1, sliderX.length);
+		System.arraycopy(sliderY, 0, controlY, 1, sliderY.length);
+
+		// same curve selection as HitObject.getSliderCurve()
+		char sliderType = hitObject.getSliderType();
+		if (sliderType == HitObject.SLIDER_PERFECT_CURVE && sliderX.length == 2) {
+			float noraX = -(sliderY[0] - y), noraY = sliderX[0] - x;
+			float norbX = -(sliderY[0] - sliderY[1]), norbY = sliderX[0] - sliderX[1];
+			if (Math.abs(norbX * noraY - norbY * noraX) < 0.00001f)
+				sampleEqualDistance(hitObject, false, false);
+			else
+				sampleCircle(hitObject);
+		} else if (sliderType == HitObject.SLIDER_CATMULL)
+			sampleEqualDistance(hitObject, true, false);
+		else
+			sampleEqualDistance(hitObject, false, sliderType == HitObject.SLIDER_LINEAR);
+	}
+
+	/** Returns the x coordinate at t = 0. */
+	public float getStartX() { return startX; }
+
+	/** Returns the y coordinate at t = 0. */
+	public float getStartY() { return startY; }
+
+	/** Returns the x coordinate at t = 1. */
+	public float getEndX() { return endX; }
+
+	/** Returns the y coordinate at t = 1. */
+	public float getEndY() { return endY; }
+
+	/**
+	 * Samples a {@link CircumscribedCircle}.
+	 * @param hitObject the slider
+	 */
+	private void sampleCircle(HitObject hitObject) {
+		float startX = controlX[0], startY = controlY[0];
+		float midX = controlX[1], midY = controlY[1];
+		float endX = controlX[2], endY = controlY[2];
+
+		// find the circle center
+		float midaX = (startX + midX) / 2, midaY = (startY + midY) / 2;
+		float midbX = (endX + midX) / 2, midbY = (endY + midY) / 2;
+		float noraX = -(midY - startY), noraY = midX - startX;
+		float norbX = -(midY - endY), norbY = midX - endX;
+		float des = norbX * noraY - norbY * noraX;
+		if (Math.abs(des) < 0.00001f)
+			throw new RuntimeException("Vectors are parallel.");
+		float u = ((midbY - midaY) * noraX + (midaX - midbX) * noraY) / des;
+		float centerX = midbX + norbX * u, centerY = midbY + norbY * u;
+
+		// find the angles relative to the circle center
+		float startAngX = startX - centerX, startAngY = startY - centerY;
+		float startAng = (float) Math.atan2(startAngY, startAngX);
+		float midAng   = (float) Math.atan2(midY - centerY, midX - centerX);
+		float endAng   = (float) Math.atan2(endY - centerY, endX - centerX);
+
+		// find the angles that pass through midAng
+		if (!isIn(startAng, midAng, endAng)) {
+			if (Math.abs(startAng + TWO_PI - endAng) < TWO_PI && isIn(startAng + (TWO_PI), midAng, endAng))
+				startAng += TWO_PI;
+			else if (Math.abs(startAng - (endAng + TWO_PI)) < TWO_PI && isIn(startAng, midAng, endAng + (TWO_PI)))
+				endAng += TWO_PI;
+			else if (Math.abs(startAng - TWO_PI - endAng) < TWO_PI && isIn(startAng - (TWO_PI), midAng, endAng))
+				startAng -= TWO_PI;
+			else if (Math.abs(startAng - (endAng - TWO_PI)) < TWO_PI && isIn(startAng, midAng, endAng - (TWO_PI)))
+				endAng -= TWO_PI;
+			else
+				throw new RuntimeException(String.format("Cannot find angles between midAng (%.3f %.3f %.3f).", startAng, midAng, endAng));
+		}
+
+		// find an angle with an arc length of pixelLength along this circle
+		float radius = (float) Math.sqrt(startAngX * startAngX + startAngY * startAngY);
+		float pixelLength = hitObject.getPixelLength() * HitObject.getXMultiplier();
+		float arcAng = pixelLength / radius;
+		endAng = (endAng > startAng) ? startAng + arcAng : startAng - arcAng;
+
+		float ang = Utils.lerp(startAng, endAng, 0f);
+		this.startX = (float) (Math.cos(ang) * radius + centerX);
+		this.startY = (float) (Math.sin(ang) * radius + centerY);
+		ang = Utils.lerp(startAng, endAng, 1f);
+		this.endX = (float) (Math.cos(ang) * radius + centerX);
+		this.endY = (float) (Math.sin(ang) * radius + centerY);
+	}
+
+	/**
+	 * Checks to see if "b" is between "a" and "c"
+	 * @return true if b is between a and c
+	 */
+	private static boolean isIn(float a, float b, float c) {
+		return (b > a && b < c) || (b < a && b > c);
+	}
+
+	/**
+	 * Samples an {@link EqualDistanceMultiCurve} ({@link LinearBezier} or {@link CatmullCurve}).
+	 * @param hitObject the slider
+	 * @param catmull whether the curve is a Catmull curve (otherwise a Bezier curve)
+	 * @param line whether a new Bezier curve is generated for each sequential pair
+	 */
+	private void sampleEqualDistance(HitObject hitObject, boolean catmull, boolean line) {
+		int ncurve = (int) (hitObject.getPixelLength() / Curve.CURVE_POINTS_SEPERATION);
+		if (ncurve < 0)
+			throw new ArrayIndexOutOfBoundsException(ncurve + 1);
+
+		// length of Curve should equal pixel length (in 640x480)
+		float pixelLength = hitObject.getPixelLength() * HitObject.getXMultiplier();
+
+		flattener.setControlPoints(controlX[0], controlY[0], hitObject.getSliderX(), hitObject.getSliderY());
+		if (catmull)
+			flattener.flattenCatmull(ncurve, pixelLength);
+		else
+			flattener.flattenBezier(line, ncurve, pixelLength);
+
+		// same as EqualDistanceMultiCurve.pointAt(0) and pointAt(1)
+		float[] px = flattener.getX(), py = flattener.getY();
+		startX = px[0];
+		startY = py[0];
+		endX = px[ncurve];
+		endY = py[ncurve];
+	}
+}
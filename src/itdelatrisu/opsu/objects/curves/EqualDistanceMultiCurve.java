@@ -21,9 +21,6 @@ package itdelatrisu.opsu.objects.curves;
 import itdelatrisu.opsu.Utils;
 import itdelatrisu.opsu.beatmap.HitObject;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-
 /**
  * Representation of multiple curve with equidistant points.
  * http://pomax.github.io/bezierinfo/#tracing
@@ -34,8 +31,8 @@ public abstract class EqualDistanceMultiCurve extends Curve {
 	/** The angles of the first and last control points for drawing. */
 	private float startAngle, endAngle;
 
-	/** The number of points along the curve. */
-	private int ncurve;
+	/** The number of intervals between the points along the curve. */
+	protected final int ncurve;
 
 	/**
 	 * Constructor.
@@ -52,59 +49,19 @@ public abstract class EqualDistanceMultiCurve extends Curve {
 	 */
 	public EqualDistanceMultiCurve(HitObject hitObject, boolean scaled) {
 		super(hitObject, scaled);
+		this.ncurve = (int) (hitObject.getPixelLength() / CURVE_POINTS_SEPERATION);
 	}
 
 	/**
 	 * Initialize the curve points with equal distance.
 	 * Must be called by inherited classes.
-	 * @param curvesList a list of curves to join
+	 * @param flattener the flattener holding the {@code ncurve + 1} resampled points
 	 */
-	public void init(LinkedList<CurveType> curvesList){
-		// now try to creates points the are equidistant to each other
-		this.ncurve = (int) (hitObject.getPixelLength() / CURVE_POINTS_SEPERATION);
+	protected void init(CurveFlattener flattener) {
+		float[] px = flattener.getX(), py = flattener.getY();
 		this.curve = new Vec2f[ncurve + 1];
-
-		float distanceAt = 0;
-		Iterator<CurveType> iter = curvesList.iterator();
-		int curPoint = 0;
-		CurveType curCurve = iter.next();
-		Vec2f lastCurve = curCurve.getCurvePoint()[0];
-		float lastDistanceAt = 0;
-
-		// length of Curve should equal pixel length (in 640x480)
-		float pixelLength = hitObject.getPixelLength() * HitObject.getXMultiplier();
-
-		// for each distance, try to get in between the two points that are between it
-		for (int i = 0; i < ncurve + 1; i++) {
-			int prefDistance = (int) (i * pixelLength / ncurve);
-			while (distanceAt < prefDistance) {
-				lastDistanceAt = distanceAt;
-				lastCurve = curCurve.getCurvePoint()[curPoint];
-				curPoint++;
-
-				if (curPoint >= curCurve.getCurvesCount()) {
-					if (iter.hasNext()) {
-						curCurve = iter.next();
-						curPoint = 0;
-					} else {
-						curPoint = curCurve.getCurvesCount() - 1;
-						if (lastDistanceAt == distanceAt) {
-							// out of points even though the preferred distance hasn't been reached
-							break;
-						}
-					}
-				}
-				distanceAt += curCurve.getCurveDistances()[curPoint];
-			}
-			Vec2f thisCurve = curCurve.getCurvePoint()[curPoint];
-
-			// interpolate the point between the two closest distances
-			if (distanceAt - lastDistanceAt > 1) {
-				float t = (prefDistance - lastDistanceAt) / (distanceAt - lastDistanceAt);
-				curve[i] = new Vec2f(Utils.lerp(lastCurve.x, thisCurve.x, t), Utils.lerp(lastCurve.y, thisCurve.y, t));
-			} else
-				curve[i] = thisCurve;
-		}
+		for (int i = 0; i < curve.length; i++)
+			curve[i] = new Vec2f(px[i], py[i]);
 
 //		if (hitObject.getRepeatCount() > 1) {
 			Vec2f c1 = curve[0];
@@ -115,14 +72,14 @@ public abstract class EqualDistanceMultiCurve extends Curve {
 			}
 
 			Vec2f c2 = curve[cnt++];
-			while (cnt <= ncurve && c2.cpy().sub(c1).len() < 1)
+			while (cnt <= ncurve && Utils.distance(c1.x, c1.y, c2.x, c2.y) < 1)
 				c2 = curve[cnt++];
 			this.startAngle = (float) (Math.atan2(c2.y - c1.y, c2.x - c1.x) * 180 / Math.PI);
 
 			c1 = curve[ncurve];
 			cnt = ncurve - 1;
 			c2 = curve[cnt--];
-			while (cnt >= 0 && c2.cpy().sub(c1).len() < 1)
+			while (cnt >= 0 && Utils.distance(c1.x, c1.y, c2.x, c2.y) < 1)
 				c2 = curve[cnt--];
 			this.endAngle = (float) (Math.atan2(c2.y - c1.y, c2.x - c1.x) * 180 / Math.PI);
 //		}
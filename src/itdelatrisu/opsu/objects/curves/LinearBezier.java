@@ -20,8 +20,6 @@ package itdelatrisu.opsu.objects.curves;
 
 import itdelatrisu.opsu.beatmap.HitObject;
 
-import java.util.LinkedList;
-
 /**
  * Representation of Bezier curve with equidistant points.
  * http://pomax.github.io/bezierinfo/#tracing
@@ -47,39 +45,13 @@ public class LinearBezier extends EqualDistanceMultiCurve {
 	public LinearBezier(HitObject hitObject, boolean line, boolean scaled) {
 		super(hitObject, scaled);
 
-		LinkedList<CurveType> beziers = new LinkedList<CurveType>();
-
 		// Beziers: splits points into different Beziers if has the same points (red points)
 		// a b c - c d - d e f g
 		// Lines: generate a new curve for each sequential pair
 		// ab  bc  cd  de  ef  fg
-		int controlPoints = hitObject.getSliderX().length + 1;
-		LinkedList<Vec2f> points = new LinkedList<Vec2f>();  // temporary list of points to separate different Bezier curves
-		Vec2f lastPoi = null;
-		for (int i = 0; i < controlPoints; i++) {
-			Vec2f tpoi = new Vec2f(getX(i), getY(i));
-			if (line) {
-				if (lastPoi != null) {
-					points.add(tpoi);
-					beziers.add(new Bezier2(points.toArray(new Vec2f[0])));
-					points.clear();
-				}
-			} else if (lastPoi != null && tpoi.equals(lastPoi)) {
-				if (points.size() >= 2)
-					beziers.add(new Bezier2(points.toArray(new Vec2f[0])));
-				points.clear();
-			}
-			points.add(tpoi);
-			lastPoi = tpoi;
-		}
-		if (line || points.size() < 2) {
-			// trying to continue Bezier with less than 2 points
-			// probably ending on a red point, just ignore it
-		} else {
-			beziers.add(new Bezier2(points.toArray(new Vec2f[0])));
-			points.clear();
-		}
-
-		init(beziers);
+		CurveFlattener flattener = CurveFlattener.get();
+		flattener.setControlPoints(x, y, sliderX, sliderY);
+		flattener.flattenBezier(line, ncurve, getPixelLength());
+		init(flattener);
 	}
 }
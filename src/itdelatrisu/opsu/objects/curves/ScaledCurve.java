@@ -0,0 +1,77 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects.curves;
+
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.beatmap.HitObject;
+
+/**
+ * Representation of a curve in scaled coordinates, derived from an unscaled curve.
+ * <p>
+ * Scaling, stacking and the Hard Rock flip are all affine transformations, so
+ * the points are obtained by transforming the unscaled curve's points instead
+ * of rebuilding the curve from its control points.
+ */
+public class ScaledCurve extends Curve {
+	/** The unscaled curve. */
+	private final Curve source;
+
+	/** The transformation ({@code x' = x * scaleX + offsetX}, and likewise for y). */
+	private final float scaleX, scaleY, offsetX, offsetY;
+
+	/**
+	 * Constructor.
+	 * @param hitObject the associated HitObject
+	 * @param source the unscaled curve of the hit object
+	 */
+	public ScaledCurve(HitObject hitObject, Curve source) {
+		super(hitObject, hitObject.getScaledX(), hitObject.getScaledY());
+		this.source = source;
+
+		// derive the offsets from the scaled start position (includes stacking)
+		this.scaleX = HitObject.getXMultiplier();
+		this.scaleY = GameMod.HARD_ROCK.isActive() ? -HitObject.getYMultiplier() : HitObject.getYMultiplier();
+		this.offsetX = x - hitObject.getX() * scaleX;
+		this.offsetY = y - hitObject.getY() * scaleY;
+
+		// transform the points
+		Vec2f[] points = source.getCurvePoints();
+		curve = new Vec2f[points.length];
+		for (int i = 0; i < points.length; i++)
+			curve[i] = new Vec2f(points[i].x * scaleX + offsetX, points[i].y * scaleY + offsetY);
+	}
+
+	@Override
+	public Vec2f pointAt(float t) {
+		Vec2f p = source.pointAt(t);
+		return p.set(p.x * scaleX + offsetX, p.y * scaleY + offsetY);
+	}
+
+	@Override
+	public float getEndAngle() { return (scaleY < 0) ? -source.getEndAngle() : source.getEndAngle(); }
+
+	@Override
+	public float getStartAngle() { return (scaleY < 0) ? -source.getStartAngle() : source.getStartAngle(); }
+
+	@Override
+	public float getX(int i) { return (i == 0) ? x : source.getX(i) * scaleX + offsetX; }
+
+	@Override
+	public float getY(int i) { return (i == 0) ? y : source.getY(i) * scaleY + offsetY; }
+}
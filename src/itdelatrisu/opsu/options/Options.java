@@ -19,6 +19,7 @@
 package itdelatrisu.opsu.options;
 
 import itdelatrisu.opsu.Container;
+import itdelatrisu.opsu.DirectoryIndex;
 import itdelatrisu.opsu.ErrorHandler;
 import itdelatrisu.opsu.GameImage;
 import itdelatrisu.opsu.OpsuConstants;
@@ -105,6 +106,9 @@ public class Options {
 	/** Directory where natives are unpacked. */
 	public static final File NATIVE_DIR = new File(CACHE_DIR, "Natives/");
 
+	/** Directory where downscaled background images are cached. */
+	public static final File THUMBNAIL_DIR = new File(CACHE_DIR, "Thumbnails/");
+
 	/** Directory where temporary files are stored (deleted on exit). */
 	public static final File TEMP_DIR = new File(CACHE_DIR, "Temp/");
 
@@ -664,7 +668,8 @@ public class Options {
 		ENABLE_WATCH_SERVICE ("Watch service", "WatchService", "Watch the beatmap directory for changes. Requires a restart.", false) {
 			@Override
 			public boolean isRestartRequired() { return true; }
-		};
+		},
+		PARALLEL_PARSING ("Parallel beatmap loading", "ParallelParsing", "Parse beatmap files on all available CPU cores.\nDisable this if loading causes issues on your system.", true);
 
 		/** Option name. */
 		private final String name;
@@ -1295,6 +1300,12 @@ public class Options {
 	 */
 	public static boolean isWatchServiceEnabled() { return GameOption.ENABLE_WATCH_SERVICE.getBooleanValue(); }
 
+	/**
+	 * Returns whether or not beatmaps should be parsed in parallel.
+	 * @return true if enabled
+	 */
+	public static boolean isParallelParsingEnabled() { return GameOption.PARALLEL_PARSING.getBooleanValue(); }
+
 	/**
 	 * Sets the track checkpoint time, if within bounds.
 	 * @param time the track position (in ms)
@@ -1524,6 +1535,9 @@ public class Options {
 		ResourceLoader.addResourceLocation(new ClasspathLocation());
 		ResourceLoader.addResourceLocation(new FileSystemLocation(new File(".")));
 		ResourceLoader.addResourceLocation(new FileSystemLocation(new File("./res/")));
+
+		// image lookups may now resolve differently
+		DirectoryIndex.clear();
 	}
 
 	/**
@@ -0,0 +1,288 @@
+/*
+ *  opsu! - an open-source osu! client
+ *  Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ *  opsu! is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  opsu! is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package itdelatrisu.opsu.render;
+
+import itdelatrisu.opsu.objects.curves.Vec2f;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the triangle mesh for new style curves, without any OpenGL calls.
+ * <p>
+ * Each vertex consists of 6 floats: texture coordinates (u, v) followed by
+ * the position (x, y, z, w), where z is 0 on the curve and 1 on its border.
+ * Joints and caps are triangle fans whose vertices are taken from a unit
+ * circle lookup table, so no trigonometric functions are evaluated per point.
+ * <p>
+ * Meshes are written into pooled direct buffers, which should be returned with
+ * {@link #release(Mesh)} once uploaded. Builder instances are not thread-safe;
+ * {@link #get()} returns an instance for the current thread.
+ *
+ * @author Bigpet {@literal <dravorek (at) gmail.com>} (original geometry)
+ */
+public class CurveMeshBuilder {
+	/** Vertices in a full circle. Must be even. */
+	public static final int DIVIDES = 30;
+
+	/** Floats per vertex. */
+	public static final int VERTEX_SIZE = 6;
+
+	/** Unit circle lookup table: the cosine and sine of {@code k * 2pi / DIVIDES}, for k in [0, DIVIDES]. */
+	private static final float[] COS = new float[DIVIDES + 1], SIN = new float[DIVIDES + 1];
+	static {
+		for (int k = 0; k <= DIVIDES; k++) {
+			double angle = 2 * Math.PI * k / DIVIDES;
+			COS[k] = (float) Math.cos(angle);
+			SIN[k] = (float) Math.sin(angle);
+		}
+	}
+
+	/** Maximum number of pooled buffers. */
+	private static final int MAX_POOLED_BUFFERS = 8;
+
+	/** Pooled buffers. */
+	private static final List<FloatBuffer> pool = new ArrayList<FloatBuffer>(MAX_POOLED_BUFFERS);
+
+	/** Per-thread instances. */
+	private static final ThreadLocal<CurveMeshBuilder> instances = new ThreadLocal<CurveMeshBuilder>() {
+		@Override
+		protected CurveMeshBuilder initialValue() { return new CurveMeshBuilder(); }
+	};
+
+	/** A curve mesh. */
+	public static class Mesh {
+		/** The vertex buffer (positioned at 0, limited to the vertex data). */
+		private final FloatBuffer buffer;
+
+		/** The number of vertices up to each curve point. */
+		private final int[] pointIndices;
+
+		/** Constructor. */
+		private Mesh(FloatBuffer buffer, int[] pointIndices) {
+			this.buffer = buffer;
+			this.pointIndices = pointIndices;
+		}
+
+		/** Returns the vertex buffer. */
+		public FloatBuffer getBuffer() { return buffer; }
+
+		/** Returns the number of vertices needed to draw the curve up to each point. */
+		public int[] getPointIndices() { return pointIndices; }
+	}
+
+	/** The vertex data being built. */
+	private float[] vertices = new float[0];
+
+	/** The number of floats written. */
+	private int size;
+
+	/**
+	 * Returns the builder instance for the current thread.
+	 */
+	public static CurveMeshBuilder get() { return instances.get(); }
+
+	/**
+	 * Returns a mesh's buffer to the pool.
+	 * @param mesh the mesh (must no longer be used)
+	 */
+	public static void release(Mesh mesh) {
+		synchronized (pool) {
+			if (pool.size() < MAX_POOLED_BUFFERS)
+				pool.add(mesh.buffer);
+		}
+	}
+
+	/**
+	 * Returns a cleared buffer with at least the given capacity, from the pool if possible.
+	 * @param capacity the minimum capacity (in floats)
+	 */
+	private static FloatBuffer acquire(int capacity) {
+		synchronized (pool) {
+			int best = -1;
+			for (int i = 0; i < pool.size(); i++) {
+				int c = pool.get(i).capacity();
+				if (c >= capacity && (best == -1 || c < pool.get(best).capacity()))
+					best = i;
+			}
+			if (best != -1) {
+				FloatBuffer buffer = pool.remove(best);
+				buffer.clear();
+				return buffer;
+			}
+		}
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		return ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Builds the mesh for a curve.
+	 * @param curve the points along the curve
+	 * @param radius the curve radius
+	 * @return the mesh (to be released after use)
+	 */
+	public Mesh build(Vec2f[] curve, float radius) {
+		// upper bound: caps for the first segment, a quad per segment, and a half circle per joint
+		int maxTriangles = DIVIDES + 4 * curve.length + (DIVIDES / 2) * curve.length;
+		if (vertices.length < maxTriangles * 3 * VERTEX_SIZE)
+			vertices = new float[maxTriangles * 3 * VERTEX_SIZE];
+		size = 0;
+
+		int[] pointIndices = new int[curve.length];
+		float cosStep = COS[1];
+		boolean first = true;
+		float lastDx = 0, lastDy = 0, lastLength = 0, lastOx = 0, lastOy = 0;
+		for (int i = 0; i < curve.length; i++) {
+			float x = curve[i].x, y = curve[i].y;
+			if (i > 0) {
+				/*
+				Render this shape:
+				 ___ ___
+				|A /|C /|
+				| /B| /D|
+				|/__|/__|
+
+				 */
+				float lastX = curve[i - 1].x, lastY = curve[i - 1].y;
+				float dx = x - lastX, dy = y - lastY;
+				float length = (float) Math.sqrt(dx * dx + dy * dy);
+				if (length == 0) {  // repeated point: nothing to draw
+					pointIndices[i] = size / VERTEX_SIZE;
+					continue;
+				}
+				float ox = radius * dy / length, oy = radius * -dx / length;
+
+				if (!first) {
+					// joint: the turning angle determines the number of fan triangles
+					float cross = lastDx * dy - lastDy * dx;
+					float cosTheta = (lastDx * dx + lastDy * dy) / (lastLength * length);
+					if (cosTheta > cosStep) {  // small angle, just render single triangle
+						if (cross > 0) {  // going counterclockwise
+							center(lastX, lastY);
+							edge(lastX + lastOx, lastY + lastOy);
+							edge(lastX + ox, lastY + oy);
+						} else if (cross < 0) {
+							center(lastX, lastY);
+							edge(lastX - ox, lastY - oy);
+							edge(lastX - lastOx, lastY - lastOy);
+						}
+					} else {
+						int divs = 1;  // smallest multiple of the angle step covering the angle
+						while (divs < DIVIDES / 2 && COS[divs] > cosTheta)
+							divs++;
+						if (cross < 0)
+							fan(lastX, lastY, -ox, -oy, -lastOx, -lastOy, divs);
+						else
+							fan(lastX, lastY, lastOx, lastOy, ox, oy, divs);
+					}
+				} else {
+					// end cap around the origin (moved to the drawn end point by the vertex shader),
+					// then the start cap
+					fan(0, 0, 0, -radius, 0, radius, DIVIDES / 2);
+					fan(lastX, lastY, -ox, -oy, ox, oy, DIVIDES / 2);
+					first = false;
+				}
+
+				edge(lastX - ox, lastY - oy);
+				center(x, y);
+				edge(x - ox, y - oy);
+
+				edge(lastX - ox, lastY - oy);
+				center(lastX, lastY);
+				center(x, y);
+
+				center(lastX, lastY);
+				edge(x + ox, y + oy);
+				center(x, y);
+
+				center(lastX, lastY);
+				edge(lastX + ox, lastY + oy);
+				edge(x + ox, y + oy);
+
+				lastDx = dx;
+				lastDy = dy;
+				lastLength = length;
+				lastOx = ox;
+				lastOy = oy;
+			}
+			pointIndices[i] = size / VERTEX_SIZE;
+		}
+
+		FloatBuffer buffer = acquire(size);
+		buffer.put(vertices, 0, size);
+		buffer.flip();
+		return new Mesh(buffer, pointIndices);
+	}
+
+	/**
+	 * Writes a triangle fan around a center point, rotating the start offset
+	 * counterclockwise in steps of {@code 2pi / DIVIDES} and ending at the end offset.
+	 * @param cx the center x coordinate
+	 * @param cy the center y coordinate
+	 * @param sx the start offset x component
+	 * @param sy the start offset y component
+	 * @param ex the end offset x component
+	 * @param ey the end offset y component
+	 * @param divs the number of triangles
+	 */
+	private void fan(float cx, float cy, float sx, float sy, float ex, float ey, int divs) {
+		float prevX = sx, prevY = sy;
+		for (int k = 1; k <= divs; k++) {
+			float ox, oy;
+			if (k == divs) {
+				ox = ex;
+				oy = ey;
+			} else {
+				ox = COS[k] * sx - SIN[k] * sy;
+				oy = SIN[k] * sx + COS[k] * sy;
+			}
+			center(cx, cy);
+			edge(cx + prevX, cy + prevY);
+			edge(cx + ox, cy + oy);
+			prevX = ox;
+			prevY = oy;
+		}
+	}
+
+	/**
+	 * Writes a vertex on the curve.
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 */
+	private void center(float x, float y) {
+		float[] v = vertices;
+		v[size++] = 1f; v[size++] = 0.5f;
+		v[size++] = x;  v[size++] = y;
+		v[size++] = 0f; v[size++] = 1f;
+	}
+
+	/**
+	 * Writes a vertex on the curve border.
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 */
+	private void edge(float x, float y) {
+		float[] v = vertices;
+		v[size++] = 0f; v[size++] = 0.5f;
+		v[size++] = x;  v[size++] = y;
+		v[size++] = 1f; v[size++] = 1f;
+	}
+}
@@ -23,7 +23,13 @@ import itdelatrisu.opsu.beatmap.HitObject;
 import itdelatrisu.opsu.objects.curves.Vec2f;
 
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.ContextCapabilities;
@@ -67,6 +73,12 @@ public class CurveRenderState {
 	/** The indices of the points. */
 	protected int[] pointIndices;
 
+	/** The mesh being built by {@link #prepareGeometry()} (null if none). */
+	private Future<CurveMeshBuilder.Mesh> pendingMesh;
+
+	/** The worker thread for building meshes (created on first use). */
+	private static ThreadPoolExecutor meshExecutor;
+
 	/**
 	 * Set the width and height of the container that Curves get drawn into.
 	 * Should be called before any curves are drawn.
@@ -100,7 +112,6 @@ public class CurveRenderState {
 	public CurveRenderState(HitObject hitObject, Vec2f[] curve) {
 		this.hitObject = hitObject;
 		this.curve = curve;
-		this.pointIndices = new int[curve.length];
 		this.vboID = -1;
 	}
 
@@ -125,14 +136,65 @@ public class CurveRenderState {
 		this.renderCurve(color, borderColor, drawUpTo);
 	}
 
+	/**
+	 * Starts building the curve geometry on a worker thread, if it hasn't been
+	 * created yet. Only the upload is left for the first call to
+	 * {@link #draw(Color, Color, float)}.
+	 */
+	public void prepareGeometry() {
+		if (vboID != -1 || pendingMesh != null)
+			return;
+
+		if (meshExecutor == null)
+			meshExecutor = createMeshExecutor();
+		final Vec2f[] points = curve;
+		final float radius = scale / 2;
+		pendingMesh = meshExecutor.submit(new Callable<CurveMeshBuilder.Mesh>() {
+			@Override
+			public CurveMeshBuilder.Mesh call() {
+				return CurveMeshBuilder.get().build(points, radius);
+			}
+		});
+	}
+
 	/**
 	 * Discard the geometry for this curve object.
 	 */
 	public void discardGeometry() {
+		if (pendingMesh != null) {
+			if (!pendingMesh.cancel(false)) {
+				try {
+					CurveMeshBuilder.release(pendingMesh.get());
+				} catch (InterruptedException | ExecutionException e) {
+					// ignore
+				}
+			}
+			pendingMesh = null;
+		}
 		GL15.glDeleteBuffers(vboID);
 		vboID = -1;
 	}
 
+	/**
+	 * Creates the worker thread for building curve meshes.
+	 */
+	private static ThreadPoolExecutor createMeshExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			1, 1, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "CurveMeshBuilder");
+					t.setDaemon(true);
+					return t;
+				}
+			}
+		);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	/**
 	 * A structure to hold all the important OpenGL state that needs to be
 	 * changed to draw the curve. This is used to backup and restore the state
@@ -204,236 +266,29 @@ public class CurveRenderState {
 
 	/**
 	 * Write the vertices and (with position and texture coordinates) for the full
-	 * curve into the OpenGL buffer with the ID specified by {@code bufferID}
+	 * curve into the OpenGL buffer with the ID specified by {@code bufferID}.
+	 * Uses the mesh built by {@link #prepareGeometry()} if there is one.
 	 * @param bufferID the buffer ID for the OpenGL buffer the vertices should be written into
 	 */
 	private void createVertexBuffer(int bufferID) {
-		float radius = scale / 2;
-		int triangle_count = NewCurveStyleState.DIVIDES; // for curve caps
-		float last_dx=0, last_dy=0;
-		float last_alpha = 0;
-		for (int i = 0; i < curve.length; ++i) { // compute number of triangles
-			float x = curve[i].x;
-			float y = curve[i].y;
-			if (i > 0) {
-				float last_x = curve[i - 1].x;
-				float last_y = curve[i - 1].y;
-				float diff_x = x - last_x;
-				float diff_y = y - last_y;
-
-				float alpha = (float)Math.atan2(diff_y, diff_x);
-
-				if (i > 1) {
-					float theta = alpha - last_alpha;
-					if (theta > Math.PI) theta -= 2*Math.PI;
-					if (theta < -Math.PI) theta += 2*Math.PI;
-
-					if (Math.abs(theta) < 2*Math.PI / NewCurveStyleState.DIVIDES) {
-						triangle_count++;
-					} else {
-						int divs = (int)(Math.ceil(NewCurveStyleState.DIVIDES * Math.abs(theta) / (2*Math.PI)));
-						triangle_count += divs;
-					}
-				}
-				triangle_count += 4;
-
-				last_dx = diff_x;
-				last_dy = diff_y;
-				last_alpha = alpha;
+		CurveMeshBuilder.Mesh mesh = null;
+		if (pendingMesh != null) {
+			try {
+				mesh = pendingMesh.get();
+			} catch (InterruptedException | ExecutionException e) {
+				Log.warn("Failed to build curve mesh.", e);
 			}
+			pendingMesh = null;
 		}
+		if (mesh == null)
+			mesh = CurveMeshBuilder.get().build(curve, scale / 2);
+		pointIndices = mesh.getPointIndices();
 
 		int arrayBufferBinding = GL11.glGetInteger(GL15.GL_ARRAY_BUFFER_BINDING);
-		FloatBuffer buff = BufferUtils.createByteBuffer(4 * (4 + 2) * 3 * (triangle_count)).asFloatBuffer();
-
-		last_dx=0; last_dy=0;
-		float last_ox=0, last_oy=0;
-		for (int i = 0; i < curve.length; ++i) {
-			float x = curve[i].x;
-			float y = curve[i].y;
-			if (i > 0) {
-				/*
-				Render this shape:
-				 ___ ___
-				|A /|C /|
-				| /B| /D|
-				|/__|/__|
-
-				 */
-				float last_x = curve[i - 1].x;
-				float last_y = curve[i - 1].y;
-				float diff_x = x - last_x;
-				float diff_y = y - last_y;
-				float length = (float)Math.hypot(diff_x, diff_y);
-				float offs_x = radius * diff_y / length;
-				float offs_y = radius * -diff_x / length;
-
-				float alpha = (float)Math.atan2(diff_y, diff_x);
-
-				if (i > 1) {
-					float cross = last_dx * diff_y - last_dy * diff_x;
-					float theta = alpha - last_alpha;
-					if (theta > Math.PI) theta -= 2*Math.PI;
-					if (theta < -Math.PI) theta += 2*Math.PI;
-
-					if (Math.abs(theta) < 2*Math.PI / NewCurveStyleState.DIVIDES) { // small angle, just render single triangle
-						if (cross > 0) { // going counterclockwise
-							buff.put(1.0f);            buff.put(0.5f);
-							buff.put(last_x);          buff.put(last_y);
-							buff.put(0.0f);            buff.put(1.0f);
-							buff.put(0.0f);            buff.put(0.5f);
-							buff.put(last_x + last_ox);buff.put(last_y + last_oy);
-							buff.put(1.0f);            buff.put(1.0f);
-							buff.put(0.0f);            buff.put(0.5f);
-							buff.put(last_x + offs_x); buff.put(last_y + offs_y);
-							buff.put(1.0f);            buff.put(1.0f);
-						} else if (cross < 0) {
-							buff.put(1.0f);            buff.put(0.5f);
-							buff.put(last_x);          buff.put(last_y);
-							buff.put(0.0f);            buff.put(1.0f);
-							buff.put(0.0f);            buff.put(0.5f);
-							buff.put(last_x - offs_x); buff.put(last_y - offs_y);
-							buff.put(1.0f);            buff.put(1.0f);
-							buff.put(0.0f);            buff.put(0.5f);
-							buff.put(last_x - last_ox);buff.put(last_y - last_oy);
-							buff.put(1.0f);            buff.put(1.0f);
-						} else {
-							// straight line, very unlikely
-						}
-					} else {
-						int divs = (int)(Math.ceil(NewCurveStyleState.DIVIDES * Math.abs(theta) / (2*Math.PI)));
-						float phi = Math.abs(theta) / divs;
-						float sinphi = (float)Math.sin(phi);
-						float cosphi = (float)Math.cos(phi);
-
-						float prev_ox = last_ox;
-						float prev_oy = last_oy;
-						if (cross < 0) {
-							prev_ox = -offs_x;
-							prev_oy = -offs_y;
-						}
-						for (int j = 0; j < divs; j++) {
-							/*
-							 * Ratation matrix:
-							 * [ cos -sin ]
-							 * [ sin  cos ]
-							 */
-							float ox = cosphi*prev_ox - sinphi*prev_oy;
-							float oy = sinphi*prev_ox + cosphi*prev_oy;
-
-							buff.put(1.0f);            buff.put(0.5f);
-							buff.put(last_x);          buff.put(last_y);
-							buff.put(0.0f);            buff.put(1.0f);
-							buff.put(0.0f);            buff.put(0.5f);
-							buff.put(last_x + prev_ox);buff.put(last_y + prev_oy);
-							buff.put(1.0f);            buff.put(1.0f);
-							buff.put(0.0f);            buff.put(0.5f);
-							buff.put(last_x + ox);     buff.put(last_y + oy);
-							buff.put(1.0f);            buff.put(1.0f);
-
-							prev_ox = ox; prev_oy = oy;
-						}
-					}
-				} else {
-					int divs = NewCurveStyleState.DIVIDES / 2;
-
-					float phi = (float)(Math.PI / divs);
-					float sinphi = (float)Math.sin(phi);
-					float cosphi = (float)Math.cos(phi);
-					float prev_ox = 0;
-					float prev_oy = -radius;
-
-					for (int j = 0; j < divs; j++) {
-						float ox = cosphi*prev_ox - sinphi*prev_oy;
-						float oy = sinphi*prev_ox + cosphi*prev_oy;
-
-						buff.put(1.0f);            buff.put(0.5f);
-						buff.put(0);               buff.put(0);
-						buff.put(0.0f);            buff.put(1.0f);
-						buff.put(0.0f);            buff.put(0.5f);
-						buff.put(0 + prev_ox);     buff.put(0 + prev_oy);
-						buff.put(1.0f);            buff.put(1.0f);
-						buff.put(0.0f);            buff.put(0.5f);
-						buff.put(0 + ox);          buff.put(0 + oy);
-						buff.put(1.0f);            buff.put(1.0f);
-
-						prev_ox = ox; prev_oy = oy;
-					}
-
-					prev_ox = -offs_x;
-					prev_oy = -offs_y;
-
-					for (int j = 0; j < divs; j++) {
-						float ox = cosphi*prev_ox - sinphi*prev_oy;
-						float oy = sinphi*prev_ox + cosphi*prev_oy;
-
-						buff.put(1.0f);            buff.put(0.5f);
-						buff.put(last_x);          buff.put(last_y);
-						buff.put(0.0f);            buff.put(1.0f);
-						buff.put(0.0f);            buff.put(0.5f);
-						buff.put(last_x + prev_ox);buff.put(last_y + prev_oy);
-						buff.put(1.0f);            buff.put(1.0f);
-						buff.put(0.0f);            buff.put(0.5f);
-						buff.put(last_x + ox);     buff.put(last_y + oy);
-						buff.put(1.0f);            buff.put(1.0f);
-
-						prev_ox = ox; prev_oy = oy;
-					}
-				}
-
-				buff.put(0.0f);            buff.put(0.5f);
-				buff.put(last_x - offs_x); buff.put(last_y - offs_y);
-				buff.put(1.0f);            buff.put(1.0f);
-				buff.put(1.0f);            buff.put(0.5f);
-				buff.put(x);               buff.put(y);
-				buff.put(0.0f);            buff.put(1.0f);
-				buff.put(0.0f);            buff.put(0.5f);
-				buff.put(x - offs_x);      buff.put(y - offs_y);
-				buff.put(1.0f);            buff.put(1.0f);
-
-				buff.put(0.0f);            buff.put(0.5f);
-				buff.put(last_x - offs_x); buff.put(last_y - offs_y);
-				buff.put(1.0f);            buff.put(1.0f);
-				buff.put(1.0f);            buff.put(0.5f);
-				buff.put(last_x);          buff.put(last_y);
-				buff.put(0.0f);            buff.put(1.0f);
-				buff.put(1.0f);            buff.put(0.5f);
-				buff.put(x);               buff.put(y);
-				buff.put(0.0f);            buff.put(1.0f);
-
-				buff.put(1.0f);            buff.put(0.5f);
-				buff.put(last_x);          buff.put(last_y);
-				buff.put(0.0f);            buff.put(1.0f);
-				buff.put(0.0f);            buff.put(0.5f);
-				buff.put(x + offs_x);      buff.put(y + offs_y);
-				buff.put(1.0f);            buff.put(1.0f);
-				buff.put(1.0f);            buff.put(0.5f);
-				buff.put(x);               buff.put(y);
-				buff.put(0.0f);            buff.put(1.0f);
-
-				buff.put(1.0f);            buff.put(0.5f);
-				buff.put(last_x);          buff.put(last_y);
-				buff.put(0.0f);            buff.put(1.0f);
-				buff.put(0.0f);            buff.put(0.5f);
-				buff.put(last_x + offs_x); buff.put(last_y + offs_y);
-				buff.put(1.0f);            buff.put(1.0f);
-				buff.put(0.0f);            buff.put(0.5f);
-				buff.put(x + offs_x);      buff.put(y + offs_y);
-				buff.put(1.0f);            buff.put(1.0f);
-
-				last_dx = diff_x;
-				last_dy = diff_y;
-				last_ox = offs_x;
-				last_oy = offs_y;
-				last_alpha = alpha;
-			}
-
-			pointIndices[i] = buff.position() / 6; // 6 elements per vertex
-		}
-		buff.flip();
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, bufferID);
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buff, GL15.GL_STATIC_DRAW);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, mesh.getBuffer(), GL15.GL_STATIC_DRAW);
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, arrayBufferBinding);
+		CurveMeshBuilder.release(mesh);
 	}
 
 	/**
@@ -487,7 +342,7 @@ public class CurveRenderState {
 		 * Used for new style Slider rendering, defines how many vertices there
 		 * are in a circle. Must be even.
 		 */
-		protected static final int DIVIDES = 30;
+		protected static final int DIVIDES = CurveMeshBuilder.DIVIDES;
 
 		/** OpenGL shader program ID used to draw and recolor the curve. */
 		protected int program = 0;
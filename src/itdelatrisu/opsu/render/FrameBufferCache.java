@@ -19,26 +19,32 @@ package itdelatrisu.opsu.render;
 
 import itdelatrisu.opsu.beatmap.HitObject;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import org.newdawn.slick.util.Log;
 
 /**
  * This is cache for OpenGL FrameBufferObjects. This is currently only used
  * to draw curve objects of the new slider style. Does currently not integrate
  * well and requires some manual OpenGL state manipulation to use it.
+ * <p>
+ * Framebuffers are pooled (see {@link RenderTargetPool}): when more than
+ * {@link #DEFAULT_CAPACITY} are needed, the least recently used mapping is
+ * reassigned, so users must check that their mapping still exists before
+ * drawing into it.
  *
  * @author Bigpet {@literal <dravorek (at) gmail.com>}
  */
 public class FrameBufferCache {
+	/** The default maximum number of framebuffers. */
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/** The default maximum number of unmapped framebuffers to keep. */
+	public static final int DEFAULT_MAX_IDLE = 4;
+
 	/** The single framebuffer cache instance. */
 	private static FrameBufferCache instance = null;
 
-	/** The mapping from hit objects to framebuffers. */
-	private Map<HitObject, Rendertarget> cacheMap;
-
-	/** */
-	private ArrayList<Rendertarget> cache;
+	/** The framebuffer pool, keyed by hit object. */
+	private final RenderTargetPool<Rendertarget> pool;
 
 	/** Container dimensions. */
 	public static int width, height;
@@ -46,10 +52,13 @@ public class FrameBufferCache {
 	/**
 	 * Set the width and height of the framebuffers in this cache.
 	 * Should be called before anything is inserted into the map.
+	 * Existing framebuffers are deleted if the dimensions changed.
 	 * @param width the container width
 	 * @param height the container height
 	 */
 	public static void init(int width, int height) {
+		if (instance != null && (width != FrameBufferCache.width || height != FrameBufferCache.height))
+			instance.pool.clear();
 		FrameBufferCache.width = width;
 		FrameBufferCache.height = height;
 	}
@@ -58,8 +67,22 @@ public class FrameBufferCache {
 	 * Constructor.
 	 */
 	private FrameBufferCache() {
-		cache = new ArrayList<Rendertarget>();
-		cacheMap = new HashMap<HitObject, Rendertarget>();
+		pool = new RenderTargetPool<Rendertarget>(new RenderTargetPool.Factory<Rendertarget>() {
+			@Override
+			public Rendertarget create() { return Rendertarget.createRTTFramebuffer(width, height); }
+
+			@Override
+			public void destroy(Rendertarget target) { target.destroyRTT(); }
+		}, DEFAULT_CAPACITY, DEFAULT_MAX_IDLE);
+	}
+
+	/**
+	 * Sets the framebuffer limits.
+	 * @param capacity the maximum number of framebuffers
+	 * @param maxIdle the maximum number of unmapped framebuffers to keep
+	 */
+	public void setCapacity(int capacity, int maxIdle) {
+		pool.setCapacity(capacity, maxIdle);
 	}
 
 	/**
@@ -68,7 +91,7 @@ public class FrameBufferCache {
 	 * @return true if there is a framebuffer mapped for this {@code HitObject}, else false
 	 */
 	public boolean contains(HitObject obj) {
-		return cacheMap.containsKey(obj);
+		return pool.contains(obj);
 	}
 
 	/**
@@ -77,7 +100,7 @@ public class FrameBufferCache {
 	 * @return the {@code Rendertarget} if there's one mapped to {@code obj}, otherwise null
 	 */
 	public Rendertarget get(HitObject obj) {
-		return cacheMap.get(obj);
+		return pool.get(obj);
 	}
 
 	/**
@@ -86,15 +109,15 @@ public class FrameBufferCache {
 	 * @return true if there was a mapping for {@code obj} and false if there was no mapping for it.
 	 */
 	public boolean freeMappingFor(HitObject obj) {
-		return cacheMap.remove(obj) != null;
+		return pool.release(obj);
 	}
 
 	/**
-	 * Clear the cache of all the mappings. This does not actually delete the
-	 * cached framebuffers, it merely frees them all up to get mapped anew.
+	 * Clear the cache of all the mappings. Most framebuffers are not actually
+	 * deleted, but freed up to get mapped anew.
 	 */
 	public void freeMap() {
-		cacheMap.clear();
+		pool.releaseAll();
 	}
 
 	/**
@@ -105,21 +128,7 @@ public class FrameBufferCache {
 	 * @return the {@code Rendertarget} newly mapped to {@code obj}
 	 */
 	public Rendertarget insert(HitObject obj) {
-		// find first RTTFramebuffer that's not mapped to anything and return it
-		Rendertarget buffer;
-		for (int i = 0; i < cache.size(); ++i) {
-			buffer = cache.get(i);
-			if (!cacheMap.containsValue(buffer)) {
-				cacheMap.put(obj, buffer);
-				return buffer;
-			}
-		}
-
-		// no unmapped RTTFramebuffer found, create a new one
-		buffer = Rendertarget.createRTTFramebuffer(width, height);
-		cache.add(buffer);
-		cacheMap.put(obj, buffer);
-		return buffer;
+		return pool.acquire(obj);
 	}
 
 	/**
@@ -131,11 +140,8 @@ public class FrameBufferCache {
 	 */
 	public static void shutdown() {
 		FrameBufferCache fbcInstance = FrameBufferCache.getInstance();
-		for (Rendertarget target : fbcInstance.cache) {
-			target.destroyRTT();
-		}
-		fbcInstance.cache.clear();
-		fbcInstance.freeMap();
+		Log.debug(String.format("Framebuffer cache: %s.", fbcInstance.pool));
+		fbcInstance.pool.clear();
 	}
 
 	/**
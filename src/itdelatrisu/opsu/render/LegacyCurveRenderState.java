@@ -171,8 +171,8 @@ public class LegacyCurveRenderState {
 	public void draw(Color color, Color borderColor, int from, int to) {
 		float alpha = color.a;
 
-		if (fbo == null)
-			initFBO();
+		if (fbo == null || FrameBufferCache.getInstance().get(hitObject) != fbo)
+			initFBO();  // not yet mapped, or the framebuffer was reassigned
 
 		if (lastPointDrawn != to || firstPointDrawn != from) {
 			int oldFb = GL11.glGetInteger(EXTFramebufferObject.GL_FRAMEBUFFER_BINDING_EXT);
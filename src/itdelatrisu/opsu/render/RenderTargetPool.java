@@ -0,0 +1,198 @@
+/*
+ *  opsu! - an open-source osu! client
+ *  Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ *  opsu! is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  opsu! is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package itdelatrisu.opsu.render;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A pool of render targets, each mapped to at most one key.
+ * <p>
+ * Unmapped targets are kept in a free list and reused before new ones are
+ * created. At most {@code capacity} targets exist at once: when the pool is
+ * full, the least recently used mapping is evicted and its target reassigned.
+ * At most {@code maxIdle} unmapped targets are kept; the least recently used
+ * ones beyond that are destroyed.
+ * <p>
+ * Targets are created and destroyed through a {@link Factory}, so the pool
+ * itself does not depend on an OpenGL context.
+ * @param <T> the render target type
+ */
+public class RenderTargetPool<T> {
+	/** Creates and destroys render targets. */
+	public interface Factory<T> {
+		/** Creates a new render target. */
+		public T create();
+
+		/**
+		 * Destroys a render target.
+		 * @param target the target
+		 */
+		public void destroy(T target);
+	}
+
+	/** The target factory. */
+	private final Factory<T> factory;
+
+	/** The maximum number of targets. */
+	private int capacity;
+
+	/** The maximum number of unmapped targets to keep. */
+	private int maxIdle;
+
+	/** The mapped targets, in access order (least recently used first). */
+	private final LinkedHashMap<Object, T> mapped = new LinkedHashMap<Object, T>(16, 0.75f, true);
+
+	/** The unmapped targets (most recently used first). */
+	private final ArrayDeque<T> free = new ArrayDeque<T>();
+
+	/** Statistics. */
+	private int hits = 0, misses = 0, evictions = 0, peak = 0;
+
+	/**
+	 * Constructor.
+	 * @param factory the target factory
+	 * @param capacity the maximum number of targets
+	 * @param maxIdle the maximum number of unmapped targets to keep
+	 */
+	public RenderTargetPool(Factory<T> factory, int capacity, int maxIdle) {
+		this.factory = factory;
+		setCapacity(capacity, maxIdle);
+	}
+
+	/**
+	 * Sets the pool limits, destroying any unmapped targets above them.
+	 * Mapped targets above the capacity are evicted the next time they are needed.
+	 * @param capacity the maximum number of targets
+	 * @param maxIdle the maximum number of unmapped targets to keep
+	 */
+	public void setCapacity(int capacity, int maxIdle) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive.");
+		this.capacity = capacity;
+		this.maxIdle = Math.max(0, Math.min(maxIdle, capacity));
+		trim();
+	}
+
+	/**
+	 * Returns the target mapped to a key (and marks it as recently used), or null if none.
+	 * @param key the key
+	 */
+	public T get(Object key) { return mapped.get(key); }
+
+	/**
+	 * Returns whether a target is mapped to a key.
+	 * @param key the key
+	 */
+	public boolean contains(Object key) { return mapped.containsKey(key); }
+
+	/**
+	 * Maps a target to a key. If the key was already mapped, its previous target is released first.
+	 * @param key the key
+	 * @return the target, either reused or newly created
+	 */
+	public T acquire(Object key) {
+		release(key);
+
+		T target;
+		if (!free.isEmpty()) {
+			target = free.poll();
+			hits++;
+		} else if (mapped.size() < capacity) {
+			target = factory.create();
+			misses++;
+		} else {
+			// evict the least recently used mapping
+			Iterator<Map.Entry<Object, T>> iter = mapped.entrySet().iterator();
+			target = iter.next().getValue();
+			iter.remove();
+			evictions++;
+		}
+		mapped.put(key, target);
+		peak = Math.max(peak, size());
+		return target;
+	}
+
+	/**
+	 * Unmaps the target mapped to a key, returning it to the free list.
+	 * @param key the key
+	 * @return true if there was a mapping for the key
+	 */
+	public boolean release(Object key) {
+		T target = mapped.remove(key);
+		if (target == null)
+			return false;
+
+		free.push(target);
+		trim();
+		return true;
+	}
+
+	/**
+	 * Unmaps all targets, returning them to the free list.
+	 */
+	public void releaseAll() {
+		for (T target : mapped.values())
+			free.push(target);
+		mapped.clear();
+		trim();
+	}
+
+	/**
+	 * Destroys all targets.
+	 */
+	public void clear() {
+		for (T target : mapped.values())
+			factory.destroy(target);
+		for (T target : free)
+			factory.destroy(target);
+		mapped.clear();
+		free.clear();
+	}
+
+	/**
+	 * Destroys the least recently used unmapped targets above the limits.
+	 */
+	private void trim() {
+		while (!free.isEmpty() && (free.size() > maxIdle || size() > capacity))
+			factory.destroy(free.removeLast());
+	}
+
+	/** Returns the number of existing targets. */
+	public int size() { return mapped.size() + free.size(); }
+
+	/** Returns the number of requests served from the free list. */
+	public int getHits() { return hits; }
+
+	/** Returns the number of requests that created a new target. */
+	public int getMisses() { return misses; }
+
+	/** Returns the number of mappings evicted to serve a request. */
+	public int getEvictions() { return evictions; }
+
+	/** Returns the largest number of targets that existed at once. */
+	public int getPeak() { return peak; }
+
+	@Override
+	public String toString() {
+		return String.format("%d targets (%d mapped, peak %d), %d hits, %d misses, %d evictions",
+				size(), mapped.size(), peak, hits, misses, evictions);
+	}
+}
@@ -20,31 +20,21 @@ package itdelatrisu.opsu.replay;
 
 import itdelatrisu.opsu.ErrorHandler;
 import itdelatrisu.opsu.ScoreData;
-import itdelatrisu.opsu.Utils;
 import itdelatrisu.opsu.beatmap.Beatmap;
 import itdelatrisu.opsu.io.OsuReader;
-import itdelatrisu.opsu.io.OsuWriter;
 import itdelatrisu.opsu.options.Options;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.CharBuffer;
-import java.nio.charset.CharsetEncoder;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 import org.newdawn.slick.util.Log;
-import org.tukaani.xz.LZMA2Options;
 import org.tukaani.xz.LZMAInputStream;
-import org.tukaani.xz.LZMAOutputStream;
 
 /**
  * Captures osu! replay data.
@@ -102,13 +92,30 @@ public class Replay {
 	public int replayLength;
 
 	/** Replay frames. */
-	public ReplayFrame[] frames;
+	public ReplayFrames frames;
 
 	/** Seed. (?) */
 	public int seed;
 
 	/** Seed string. */
-	private static final String SEED_STRING = "-12345";
+	static final String SEED_STRING = "-12345";
+
+	/** Seed frame marker value (time difference of the seed frame). */
+	private static final int SEED = -12345;
+
+	/** Maximum length of a replay frame token, in bytes. */
+	private static final int MAX_TOKEN_LENGTH = 64;
+
+	/** Largest mantissa that is exactly representable as a float (2^24). */
+	private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+
+	/** Largest power of ten that is exactly representable as a float. */
+	private static final int MAX_EXACT_FLOAT_POW10 = 10;
+
+	/** Powers of ten that are exactly representable as doubles. */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
 
 	/**
 	 * Empty constructor.
@@ -123,6 +130,11 @@ public class Replay {
 		this.file = file;
 	}
 
+	/**
+	 * Returns the replay file, or null if none.
+	 */
+	public File getFile() { return file; }
+
 	/**
 	 * Loads the replay data.
 	 * @throws IOException failure to load the data
@@ -201,34 +213,171 @@ public class Replay {
 		this.replayLength = reader.readInt();
 		if (replayLength > 0) {
 			LZMAInputStream lzma = new LZMAInputStream(reader.getInputStream());
-			String[] replayFrames = Utils.convertStreamToString(lzma).split(",");
+			this.frames = loadFrames(lzma);
 			lzma.close();
-			List<ReplayFrame> replayFrameList = new ArrayList<ReplayFrame>(replayFrames.length);
-			int lastTime = 0;
-			for (String frame : replayFrames) {
-				if (frame.isEmpty())
+		}
+	}
+
+	/**
+	 * Decodes the replay frames directly from the uncompressed byte stream.
+	 * <p>
+	 * Frames are separated by ',' and fields by '|' ("timeDiff|x|y|keys").
+	 * Tokens are parsed in place from a reusable buffer, so no strings are
+	 * created unless a frame is malformed.
+	 * @param in the uncompressed input stream
+	 * @return the frames
+	 * @throws IOException
+	 */
+	private ReplayFrames loadFrames(InputStream in) throws IOException {
+		ReplayFrames frames = new ReplayFrames();
+		byte[] buf = new byte[8192];
+		byte[] token = new byte[MAX_TOKEN_LENGTH];
+		int tokenLength = 0, field = 0, tokenCount = 0;
+		boolean tokenOverflow = false;
+		int timeDiff = 0, keys = 0;
+		float x = 0, y = 0;
+		boolean isSeed = false;
+		String[] errors = new String[4];
+		int lastTime = 0, frameIndex = 0;
+		boolean eof = false;
+		while (!eof) {
+			int n = in.read(buf);
+			if (n < 0) {
+				// treat the end of the stream as a final frame separator
+				eof = true;
+				buf[0] = ',';
+				n = 1;
+			}
+			for (int i = 0; i < n; i++) {
+				byte b = buf[i];
+				if (b != '|' && b != ',') {
+					if (tokenLength < token.length)
+						token[tokenLength++] = b;
+					else
+						tokenOverflow = true;
 					continue;
-				String[] tokens = frame.split("\\|");
-				if (tokens.length < 4)
+				}
+
+				// end of token (trailing empty tokens are dropped, as in String.split())
+				if (tokenLength > 0)
+					tokenCount = field + 1;
+				if (field < 4) {
+					try {
+						if (tokenOverflow)
+							throw new NumberFormatException("Token too long.");
+						switch (field) {
+						case 0:
+							timeDiff = parseInt(token, tokenLength);
+							isSeed = (timeDiff == SEED && tokenLength == SEED_STRING.length());
+							break;
+						case 1: x = parseFloat(token, tokenLength); break;
+						case 2: y = parseFloat(token, tokenLength); break;
+						case 3: keys = parseInt(token, tokenLength); break;
+						}
+					} catch (NumberFormatException e) {
+						errors[field] = tokenOverflow ? "(too long)" : new String(token, 0, tokenLength, StandardCharsets.US_ASCII);
+					}
+				}
+				field++;
+				tokenLength = 0;
+				tokenOverflow = false;
+				if (b == '|')
 					continue;
-				try {
-					if (tokens[0].equals(SEED_STRING)) {
-						seed = Integer.parseInt(tokens[3]);
-						continue;
+
+				// end of frame
+				if (tokenCount >= 4) {
+					if (isSeed) {
+						if (errors[3] == null)
+							seed = keys;
+						else
+							Log.warn(String.format("Failed to parse seed frame %d: '%s'", frameIndex, errors[3]));
+					} else {
+						String error = null;
+						for (int j = 0; j < errors.length && error == null; j++)
+							error = errors[j];
+						if (error == null) {
+							int time = timeDiff + lastTime;
+							frames.add(timeDiff, time, x, y, keys);
+							lastTime = time;
+						} else
+							Log.warn(String.format("Failed to parse frame %d: '%s'", frameIndex, error));
 					}
-					int timeDiff = Integer.parseInt(tokens[0]);
-					int time = timeDiff + lastTime;
-					float x = Float.parseFloat(tokens[1]);
-					float y = Float.parseFloat(tokens[2]);
-					int keys = Integer.parseInt(tokens[3]);
-					replayFrameList.add(new ReplayFrame(timeDiff, time, x, y, keys));
-					lastTime = time;
-				} catch (NumberFormatException e) {
-					Log.warn(String.format("Failed to parse frame: '%s'", frame), e);
 				}
+				frameIndex++;
+				field = tokenCount = 0;
+				isSeed = false;
+				Arrays.fill(errors, null);
 			}
-			this.frames = replayFrameList.toArray(new ReplayFrame[replayFrameList.size()]);
 		}
+		frames.trimToSize();
+		return frames;
+	}
+
+	/**
+	 * Parses a decimal integer from ASCII bytes.
+	 * Falls back to {@link Integer#parseInt(String)} for unusual input.
+	 * @param b the buffer
+	 * @param len the number of bytes
+	 * @return the parsed value
+	 * @throws NumberFormatException if the token is not a valid integer
+	 */
+	private static int parseInt(byte[] b, int len) {
+		int i = 0;
+		boolean negative = false;
+		if (len > 0 && (b[0] == '-' || b[0] == '+')) {
+			negative = (b[0] == '-');
+			i++;
+		}
+		if (i == len || len - i > 9)
+			return Integer.parseInt(new String(b, 0, len, StandardCharsets.US_ASCII));
+		int value = 0;
+		for (; i < len; i++) {
+			int d = b[i] - '0';
+			if (d < 0 || d > 9)
+				return Integer.parseInt(new String(b, 0, len, StandardCharsets.US_ASCII));
+			value = value * 10 + d;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a plain decimal number ("-123.456") from ASCII bytes.
+	 * Falls back to {@link Float#parseFloat(String)} for unusual input
+	 * (exponents, whitespace, mantissas or scales that are not exact floats).
+	 * @param b the buffer
+	 * @param len the number of bytes
+	 * @return the parsed value
+	 * @throws NumberFormatException if the token is not a valid number
+	 */
+	private static float parseFloat(byte[] b, int len) {
+		int i = 0;
+		boolean negative = false;
+		if (len > 0 && (b[0] == '-' || b[0] == '+')) {
+			negative = (b[0] == '-');
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0, fractionDigits = 0;
+		boolean point = false;
+		for (; i < len; i++) {
+			byte c = b[i];
+			if (c == '.' && !point)
+				point = true;
+			else if (c >= '0' && c <= '9' && digits < 15) {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (point)
+					fractionDigits++;
+			} else
+				return Float.parseFloat(new String(b, 0, len, StandardCharsets.US_ASCII));
+		}
+		if (digits == 0 || mantissa > MAX_EXACT_FLOAT_MANTISSA || fractionDigits > MAX_EXACT_FLOAT_POW10)
+			return Float.parseFloat(new String(b, 0, len, StandardCharsets.US_ASCII));
+
+		// both operands are exact floats, so rounding the (double) quotient to
+		// a float gives the correctly rounded float, same as Float.parseFloat()
+		double value = (fractionDigits == 0) ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+		return (float) (negative ? -value : value);
 	}
 
 	/**
@@ -278,92 +427,9 @@ public class Replay {
 			}
 		}
 
-		// write file in new thread
-		final File file = new File(dir, String.format("%s.osr", getReplayFilename()));
-		new Thread() {
-			@Override
-			public void run() {
-				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
-					OsuWriter writer = new OsuWriter(out);
-
-					// header
-					writer.write(mode);
-					writer.write(version);
-					writer.write(beatmapHash);
-					writer.write(playerName);
-					writer.write(replayHash);
-					writer.write(hit300);
-					writer.write(hit100);
-					writer.write(hit50);
-					writer.write(geki);
-					writer.write(katu);
-					writer.write(miss);
-					writer.write(score);
-					writer.write(combo);
-					writer.write(perfect);
-					writer.write(mods);
-
-					// life data
-					StringBuilder sb = new StringBuilder();
-					if (lifeFrames != null && lifeFrames.length > 0) {
-						NumberFormat nf = new DecimalFormat("##.##");
-						int lastFrameTime = 0;
-						for (int i = 0; i < lifeFrames.length; i++) {
-							LifeFrame frame = lifeFrames[i];
-							if (i > 0 && frame.getTime() - lastFrameTime < LifeFrame.SAMPLE_INTERVAL)
-								continue;
-
-							sb.append(String.format("%d|%s,", frame.getTime(), nf.format(frame.getHealth())));
-							lastFrameTime = frame.getTime();
-						}
-					}
-					writer.write(sb.toString());
-
-					// timestamp
-					writer.write(timestamp);
-
-					// LZMA-encoded replay data
-					if (frames != null && frames.length > 0) {
-						// build full frame string
-						NumberFormat nf = new DecimalFormat("###.#####");
-						sb = new StringBuilder();
-						for (int i = 0; i < frames.length; i++) {
-							ReplayFrame frame = frames[i];
-							sb.append(String.format("%d|%s|%s|%d,",
-									frame.getTimeDiff(), nf.format(frame.getX()),
-									nf.format(frame.getY()), frame.getKeys()));
-						}
-						sb.append(String.format("%s|0|0|%d", SEED_STRING, seed));
-
-						// get bytes from string
-						CharsetEncoder encoder = StandardCharsets.US_ASCII.newEncoder();
-						CharBuffer buffer = CharBuffer.wrap(sb);
-						byte[] bytes = encoder.encode(buffer).array();
-
-						// compress data
-						ByteArrayOutputStream bout = new ByteArrayOutputStream();
-						LZMAOutputStream lzma = new LZMAOutputStream(bout, new LZMA2Options(), bytes.length);
-						try {
-							lzma.write(bytes);
-						} catch (IOException e) {
-							ErrorHandler.error("LZMA encoding of the reply frames failed.", e, true);
-						}
-						lzma.close();
-						bout.close();
-
-						// write to file
-						byte[] compressed = bout.toByteArray();
-						writer.write(compressed.length);
-						writer.write(compressed);
-					} else
-						writer.write(0);
-
-					writer.close();
-				} catch (IOException e) {
-					ErrorHandler.error("Could not save replay data.", e, true);
-				}
-			}
-		}.start();
+		// write file on the replay writer thread
+		File file = new File(dir, String.format("%s.osr", getReplayFilename()));
+		ReplayWriter.save(this, file);
 	}
 
 	/**
@@ -412,11 +478,11 @@ public class Replay {
 		sb.append("Timestamp: "); sb.append(timestamp); sb.append('\n');
 		sb.append("Replay length: "); sb.append(replayLength); sb.append('\n');
 		if (frames != null) {
-			sb.append("Frames ("); sb.append(frames.length); sb.append(" total):\n");
-			for (int i = 0; i < frames.length && i < MAX_LINES; i++) {
+			sb.append("Frames ("); sb.append(frames.size()); sb.append(" total):\n");
+			for (int i = 0; i < frames.size() && i < MAX_LINES; i++) {
 				if (i % LINE_SPLIT == 0)
 					sb.append('\t');
-				sb.append(frames[i]);
+				sb.append(frames.get(i));
 				sb.append((i % LINE_SPLIT == LINE_SPLIT - 1) ? '\n' : ' ');
 			}
 			sb.append('\n');
@@ -0,0 +1,268 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.replay.ReplaySimulator.ObjectResult;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Aggregate statistics derived from a replay: hit error distribution,
+ * unstable rate, cursor position heatmap, and key press timing.
+ */
+public class ReplayAnalysis {
+	/** Analysis format version (increment to re-analyze all replays). */
+	public static final int VERSION = 1;
+
+	/** Hit error histogram range (in ms, on each side of zero) and bin width (in ms). */
+	public static final int HIT_ERROR_RANGE = 200, HIT_ERROR_BIN_SIZE = 4;
+
+	/** Number of hit error bins (out-of-range errors go into the outer bins). */
+	public static final int HIT_ERROR_BINS = HIT_ERROR_RANGE * 2 / HIT_ERROR_BIN_SIZE + 1;
+
+	/** Cursor heatmap dimensions (cells over the 512x384 playfield). */
+	public static final int HEATMAP_COLUMNS = 32, HEATMAP_ROWS = 24;
+
+	/** Key hold duration histogram bin width (in ms) and bin count (the last bin is open-ended). */
+	public static final int HOLD_BIN_SIZE = 10, HOLD_BINS = 30;
+
+	/** Key indices. */
+	public static final int KEY_K1 = 0, KEY_K2 = 1, KEY_M1 = 2, KEY_M2 = 3, KEY_COUNT = 4;
+
+	/** Playfield dimensions (in osu!pixels). */
+	private static final float PLAYFIELD_WIDTH = 512f, PLAYFIELD_HEIGHT = 384f;
+
+	/** The score timestamp (the score's database key). */
+	private long timestamp;
+
+	/** The number of hit errors. */
+	private int hitErrorCount;
+
+	/** The mean hit error (in ms). */
+	private float hitErrorMean;
+
+	/** The unstable rate (10 times the standard deviation of hit errors). */
+	private float unstableRate;
+
+	/** Hit error histogram. */
+	private int[] hitErrors = new int[HIT_ERROR_BINS];
+
+	/** Cursor position histogram (row-major). */
+	private int[] heatmap = new int[HEATMAP_COLUMNS * HEATMAP_ROWS];
+
+	/** Key press counts (indexed by KEY_* constants). */
+	private int[] keyPresses = new int[KEY_COUNT];
+
+	/** Key hold duration histogram. */
+	private int[] holdTimes = new int[HOLD_BINS];
+
+	/**
+	 * Analyzes a replay.
+	 * @param timestamp the score timestamp
+	 * @param frames the replay frames
+	 * @param timeline the hit timeline from {@link ReplaySimulator#getTimeline()}
+	 * @return the analysis
+	 */
+	public static ReplayAnalysis analyze(long timestamp, ReplayFrames frames, List<ObjectResult> timeline) {
+		ReplayAnalysis a = new ReplayAnalysis(timestamp);
+
+		// hit errors
+		long sum = 0, sumSquares = 0;
+		for (ObjectResult r : timeline) {
+			if (r.hitError == ReplaySimulator.NO_HIT_ERROR)
+				continue;
+			int error = r.hitError;
+			sum += error;
+			sumSquares += (long) error * error;
+			a.hitErrorCount++;
+			int bin = (Math.max(-HIT_ERROR_RANGE, Math.min(error, HIT_ERROR_RANGE)) + HIT_ERROR_RANGE) / HIT_ERROR_BIN_SIZE;
+			a.hitErrors[bin]++;
+		}
+		if (a.hitErrorCount > 0) {
+			double mean = (double) sum / a.hitErrorCount;
+			double variance = Math.max((double) sumSquares / a.hitErrorCount - mean * mean, 0);
+			a.hitErrorMean = (float) mean;
+			a.unstableRate = (float) (Math.sqrt(variance) * 10);
+		}
+
+		// cursor positions and key presses
+		int[] pressTime = new int[KEY_COUNT];
+		int lastKeys = 0;
+		for (int i = 0, n = frames.size(); i < n; i++) {
+			float x = frames.getX(i), y = frames.getY(i);
+			if (y < 0)  // start/skip frames
+				continue;
+			int col = (int) (x / PLAYFIELD_WIDTH * HEATMAP_COLUMNS);
+			int row = (int) (y / PLAYFIELD_HEIGHT * HEATMAP_ROWS);
+			col = Math.max(0, Math.min(col, HEATMAP_COLUMNS - 1));
+			row = Math.max(0, Math.min(row, HEATMAP_ROWS - 1));
+			a.heatmap[row * HEATMAP_COLUMNS + col]++;
+
+			int keys = splitKeys(frames.getKeys(i)), time = frames.getTime(i);
+			for (int k = 0; k < KEY_COUNT; k++) {
+				boolean down = (keys & (1 << k)) != 0, wasDown = (lastKeys & (1 << k)) != 0;
+				if (down && !wasDown) {
+					a.keyPresses[k]++;
+					pressTime[k] = time;
+				} else if (!down && wasDown)
+					a.holdTimes[Math.min((time - pressTime[k]) / HOLD_BIN_SIZE, HOLD_BINS - 1)]++;
+			}
+			lastKeys = keys;
+		}
+		return a;
+	}
+
+	/**
+	 * Converts a {@link ReplayFrame} key bitmask to a bitmask of KEY_* indices
+	 * (keyboard keys also set the mouse button bits, so they are separated here).
+	 */
+	private static int splitKeys(int keys) {
+		int bits = 0;
+		if ((keys & (1 << 2)) != 0)
+			bits |= 1 << KEY_K1;
+		if ((keys & (1 << 3)) != 0)
+			bits |= 1 << KEY_K2;
+		if ((keys & ReplayFrame.KEY_M1) != 0 && (keys & (1 << 2)) == 0)
+			bits |= 1 << KEY_M1;
+		if ((keys & ReplayFrame.KEY_M2) != 0 && (keys & (1 << 3)) == 0)
+			bits |= 1 << KEY_M2;
+		return bits;
+	}
+
+	/**
+	 * Constructor.
+	 * @param timestamp the score timestamp
+	 */
+	private ReplayAnalysis(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/** Returns the score timestamp. */
+	public long getTimestamp() { return timestamp; }
+
+	/** Returns the number of hit errors. */
+	public int getHitErrorCount() { return hitErrorCount; }
+
+	/** Returns the mean hit error (in ms). */
+	public float getHitErrorMean() { return hitErrorMean; }
+
+	/** Returns the unstable rate. */
+	public float getUnstableRate() { return unstableRate; }
+
+	/**
+	 * Returns the hit error histogram: bin {@code i} counts errors in
+	 * [{@code i * HIT_ERROR_BIN_SIZE - HIT_ERROR_RANGE}, +{@code HIT_ERROR_BIN_SIZE}).
+	 */
+	public int[] getHitErrors() { return hitErrors; }
+
+	/** Returns the cursor heatmap ({@code HEATMAP_ROWS} rows of {@code HEATMAP_COLUMNS} cells). */
+	public int[] getHeatmap() { return heatmap; }
+
+	/** Returns the key press counts (indexed by KEY_* constants). */
+	public int[] getKeyPresses() { return keyPresses; }
+
+	/** Returns the key hold duration histogram (in {@code HOLD_BIN_SIZE} ms bins). */
+	public int[] getHoldTimes() { return holdTimes; }
+
+	/**
+	 * Returns the analysis in binary form (see {@link #fromBytes(long, byte[])}).
+	 */
+	public byte[] toBytes() {
+		int size = 1 + 5 + 8 + (hitErrors.length + heatmap.length + keyPresses.length + holdTimes.length + 4) * 5;
+		ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte) VERSION);
+		writeVarInt(buf, hitErrorCount);
+		buf.putFloat(hitErrorMean);
+		buf.putFloat(unstableRate);
+		writeArray(buf, hitErrors);
+		writeArray(buf, heatmap);
+		writeArray(buf, keyPresses);
+		writeArray(buf, holdTimes);
+		byte[] b = new byte[buf.position()];
+		buf.flip();
+		buf.get(b);
+		return b;
+	}
+
+	/**
+	 * Reads an analysis from binary data (see {@link #toBytes()}).
+	 * @param timestamp the score timestamp
+	 * @param b the data
+	 * @throws IllegalArgumentException if the format version is unsupported
+	 */
+	public static ReplayAnalysis fromBytes(long timestamp, byte[] b) {
+		ByteBuffer buf = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+		byte version = buf.get();
+		if (version != VERSION)
+			throw new IllegalArgumentException(String.format("Unsupported analysis format version %d.", version));
+		ReplayAnalysis a = new ReplayAnalysis(timestamp);
+		a.hitErrorCount = readVarInt(buf);
+		a.hitErrorMean = buf.getFloat();
+		a.unstableRate = buf.getFloat();
+		a.hitErrors = readArray(buf);
+		a.heatmap = readArray(buf);
+		a.keyPresses = readArray(buf);
+		a.holdTimes = readArray(buf);
+		return a;
+	}
+
+	/** Writes an array as a length followed by variable-length values. */
+	private static void writeArray(ByteBuffer buf, int[] array) {
+		writeVarInt(buf, array.length);
+		for (int i : array)
+			writeVarInt(buf, i);
+	}
+
+	/** Reads an array written by {@link #writeArray(ByteBuffer, int[])}. */
+	private static int[] readArray(ByteBuffer buf) {
+		int[] array = new int[readVarInt(buf)];
+		for (int i = 0; i < array.length; i++)
+			array[i] = readVarInt(buf);
+		return array;
+	}
+
+	/** Writes an unsigned variable-length integer (7 bits per byte). */
+	private static void writeVarInt(ByteBuffer buf, int value) {
+		while ((value & ~0x7F) != 0) {
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+
+	/** Reads a variable-length integer written by {@link #writeVarInt(ByteBuffer, int)}. */
+	private static int readVarInt(ByteBuffer buf) {
+		int value = 0, shift = 0;
+		byte b;
+		do {
+			b = buf.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ReplayAnalysis(%d: %d hits, mean=%.2fms, UR=%.2f)",
+				timestamp, hitErrorCount, hitErrorMean, unstableRate);
+	}
+}
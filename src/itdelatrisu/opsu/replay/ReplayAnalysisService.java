@@ -0,0 +1,307 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.ScoreData;
+import itdelatrisu.opsu.beatmap.Beatmap;
+import itdelatrisu.opsu.beatmap.BeatmapSetList;
+import itdelatrisu.opsu.db.BeatmapDB;
+import itdelatrisu.opsu.db.ScoreDB;
+import itdelatrisu.opsu.options.Options;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.newdawn.slick.util.Log;
+
+/**
+ * Background indexer that analyzes stored replays (see {@link ReplayAnalysis}).
+ * <p>
+ * Scores without an analysis for the current version are queued from the
+ * score database and re-simulated on a single low-priority worker thread,
+ * using detached beatmap copies so that the shared beatmaps are never
+ * modified. Database access happens only on the main thread in
+ * {@link #update()}, which is called while idle in the song menu; each
+ * finished analysis is stored immediately, so indexing resumes where it
+ * left off after a restart.
+ */
+public class ReplayAnalysisService {
+	/** Maximum number of jobs queued in the worker pool. */
+	private static final int MAX_QUEUED_JOBS = 2;
+
+	/**
+	 * Maximum number of replay headers read per update, so that scores of
+	 * uninstalled beatmaps can't stall a frame with synchronous file reads.
+	 */
+	private static final int MAX_HEADER_READS = 4;
+
+	/** A finished analysis, waiting to be stored on the main thread. */
+	private static class Result {
+		/** The score timestamp. */
+		private final long timestamp;
+
+		/** The analysis, or null if the replay could not be analyzed. */
+		private final ReplayAnalysis analysis;
+
+		/** The service generation in which the job was submitted. */
+		private final int generation;
+
+		/** Constructor. */
+		public Result(long timestamp, ReplayAnalysis analysis, int generation) {
+			this.timestamp = timestamp;
+			this.analysis = analysis;
+			this.generation = generation;
+		}
+	}
+
+	/** The worker pool (created on first use). */
+	private static ThreadPoolExecutor executor;
+
+	/** Scores waiting to be analyzed. */
+	private static final ArrayDeque<ScoreData> queue = new ArrayDeque<ScoreData>();
+
+	/** Timestamps of scores already queued in this generation. */
+	private static final Set<Long> submitted = new HashSet<Long>();
+
+	/** Finished analyses, waiting to be stored on the main thread. */
+	private static final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<Result>();
+
+	/** Number of submitted jobs whose results have not yet been stored. */
+	private static int pendingJobs = 0;
+
+	/** Whether the score database has been scanned in this generation. */
+	private static boolean scanned = false;
+
+	/** The current generation (incremented on each reset to discard stale results). */
+	private static int generation = 0;
+
+	// This class should not be instantiated.
+	private ReplayAnalysisService() {}
+
+	/**
+	 * Stores all finished analyses in a single transaction, and submits new
+	 * jobs to the worker. Must be called from the main thread.
+	 */
+	public static void update() {
+		List<ReplayAnalysis> finished = new ArrayList<ReplayAnalysis>();
+		List<Long> failed = new ArrayList<Long>();
+		Result result;
+		while ((result = results.poll()) != null) {
+			if (result.generation != generation)
+				continue;
+			pendingJobs--;
+			if (result.analysis != null)
+				finished.add(result.analysis);
+			else
+				failed.add(result.timestamp);
+		}
+		ScoreDB.addAnalyses(finished, failed);
+
+		if (!scanned) {
+			List<ScoreData> scores = ScoreDB.getUnanalyzedScores();
+			if (scores != null) {
+				for (ScoreData s : scores) {
+					if (submitted.add(s.timestamp))
+						queue.add(s);
+				}
+			}
+			scanned = true;
+		}
+
+		submitJobs();
+	}
+
+	/**
+	 * Scans the score database for new scores on the next update.
+	 */
+	public static void rescan() { scanned = false; }
+
+	/**
+	 * Discards all queued scores and unstored results (e.g. before the library is reloaded).
+	 * Jobs that are already running will finish, but their results will be ignored.
+	 */
+	public static void reset() {
+		generation++;
+		queue.clear();
+		submitted.clear();
+		results.clear();
+		pendingJobs = 0;
+		scanned = false;
+		if (executor != null)
+			executor.getQueue().clear();
+	}
+
+	/**
+	 * Fills the worker queue up to its capacity.
+	 * Replay headers are read here to find the beatmaps (at most
+	 * {@link #MAX_HEADER_READS} per call), and array fields for the detached
+	 * copies are loaded in one batch, so that the worker never touches the database.
+	 */
+	private static void submitJobs() {
+		int capacity = MAX_QUEUED_JOBS - pendingJobs;
+		if (capacity <= 0 || queue.isEmpty())
+			return;
+
+		List<ScoreData> scores = new ArrayList<ScoreData>(capacity);
+		List<Replay> replays = new ArrayList<Replay>(capacity);
+		List<Beatmap> copies = new ArrayList<Beatmap>(capacity);
+		List<Beatmap> loadList = new ArrayList<Beatmap>(capacity);
+		ScoreData s;
+		int headerReads = 0;
+		while (scores.size() < capacity && headerReads < MAX_HEADER_READS && (s = queue.poll()) != null) {
+			headerReads++;
+
+			// missing replay files will never be analyzed
+			File file = new File(Options.getReplayDir(), String.format("%s.osr", s.replayString));
+			Replay replay = new Replay(file);
+			try {
+				replay.loadHeader();
+			} catch (IOException e) {
+				results.add(new Result(s.timestamp, null, generation));
+				pendingJobs++;
+				continue;
+			}
+
+			// beatmap not installed: try again in a later session
+			Beatmap beatmap = BeatmapSetList.get().getBeatmapFromHash(replay.beatmapHash);
+			if (beatmap == null)
+				continue;
+
+			Beatmap copy = createDetachedCopy(beatmap);
+			scores.add(s);
+			replays.add(replay);
+			copies.add(copy);
+			if (copy.timingPoints == null)
+				loadList.add(copy);
+		}
+		if (scores.isEmpty())
+			return;
+		if (!loadList.isEmpty())
+			BeatmapDB.load(loadList, BeatmapDB.LOAD_ARRAY);
+
+		if (executor == null)
+			executor = createExecutor();
+		for (int i = 0, n = scores.size(); i < n; i++) {
+			executor.execute(new AnalysisJob(scores.get(i), replays.get(i), copies.get(i), generation));
+			pendingJobs++;
+		}
+	}
+
+	/**
+	 * Returns a copy of a beatmap containing only the fields needed to
+	 * simulate a replay, so that hit objects are never parsed into the shared object.
+	 * @param beatmap the beatmap
+	 */
+	private static Beatmap createDetachedCopy(Beatmap beatmap) {
+		Beatmap copy = new Beatmap(beatmap.getFile());
+		copy.beatmapID = beatmap.beatmapID;
+		copy.beatmapSetID = beatmap.beatmapSetID;
+		copy.title = beatmap.title;
+		copy.artist = beatmap.artist;
+		copy.creator = beatmap.creator;
+		copy.version = beatmap.version;
+		copy.HPDrainRate = beatmap.HPDrainRate;
+		copy.circleSize = beatmap.circleSize;
+		copy.overallDifficulty = beatmap.overallDifficulty;
+		copy.approachRate = beatmap.approachRate;
+		copy.sliderMultiplier = beatmap.sliderMultiplier;
+		copy.sliderTickRate = beatmap.sliderTickRate;
+		copy.stackLeniency = beatmap.stackLeniency;
+		copy.hitObjectCircle = beatmap.hitObjectCircle;
+		copy.hitObjectSlider = beatmap.hitObjectSlider;
+		copy.hitObjectSpinner = beatmap.hitObjectSpinner;
+		copy.hitObjectsOffset = beatmap.hitObjectsOffset;
+		if (beatmap.timingPoints != null) {
+			copy.timingPoints = beatmap.timingPoints;
+			copy.breaks = beatmap.breaks;
+			copy.combo = beatmap.combo;
+		}
+		return copy;
+	}
+
+	/**
+	 * Creates the worker pool.
+	 */
+	private static ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+			1, 1, 30, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_QUEUED_JOBS),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ReplayAnalysisService");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			}
+		);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/** Simulates a replay against a detached beatmap copy and analyzes it. */
+	private static class AnalysisJob implements Runnable {
+		/** The score. */
+		private final ScoreData score;
+
+		/** The replay (header loaded). */
+		private final Replay replay;
+
+		/** The detached beatmap copy. */
+		private final Beatmap copy;
+
+		/** The service generation in which the job was submitted. */
+		private final int generation;
+
+		/** Constructor. */
+		public AnalysisJob(ScoreData score, Replay replay, Beatmap copy, int generation) {
+			this.score = score;
+			this.replay = replay;
+			this.copy = copy;
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			ReplayAnalysis analysis = null;
+			try {
+				if (copy.timingPoints != null) {
+					ReplaySimulator simulator = new ReplaySimulator(copy, replay);
+					simulator.run();
+					if (replay.frames != null)
+						analysis = ReplayAnalysis.analyze(score.timestamp, replay.frames, simulator.getTimeline());
+				}
+			} catch (Exception e) {
+				Log.warn(String.format("Failed to analyze replay '%s'.", score.replayString), e);
+			}
+			results.add(new Result(score.timestamp, analysis, generation));
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.beatmap.HitObject;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for a sequence of replay frames.
+ * <p>
+ * Each field of {@link ReplayFrame} is kept in its own primitive array, so a
+ * replay costs 20 bytes per frame and no objects are created while loading or
+ * playing it back.
+ */
+public class ReplayFrames {
+	/** Default initial capacity. */
+	private static final int DEFAULT_CAPACITY = 256;
+
+	/** Time since the previous action, in milliseconds. */
+	private int[] timeDiff;
+
+	/** Time, in milliseconds. */
+	private int[] time;
+
+	/** Cursor coordinates (in OsuPixels). */
+	private float[] x, y;
+
+	/** Keys pressed (bitmask). */
+	private int[] keys;
+
+	/** The number of frames. */
+	private int size = 0;
+
+	/**
+	 * Constructor.
+	 */
+	public ReplayFrames() { this(DEFAULT_CAPACITY); }
+
+	/**
+	 * Constructor.
+	 * @param capacity the initial capacity
+	 */
+	public ReplayFrames(int capacity) {
+		capacity = Math.max(capacity, 1);
+		this.timeDiff = new int[capacity];
+		this.time = new int[capacity];
+		this.x = new float[capacity];
+		this.y = new float[capacity];
+		this.keys = new int[capacity];
+	}
+
+	/**
+	 * Appends a frame.
+	 * @param timeDiff time since the previous action (in ms)
+	 * @param time time (in ms)
+	 * @param x cursor x coordinate [0, 512]
+	 * @param y cursor y coordinate [0, 384]
+	 * @param keys keys pressed (bitmask)
+	 */
+	public void add(int timeDiff, int time, float x, float y, int keys) {
+		if (size == this.time.length)
+			grow(size + 1);
+		this.timeDiff[size] = timeDiff;
+		this.time[size] = time;
+		this.x[size] = x;
+		this.y[size] = y;
+		this.keys[size] = keys;
+		size++;
+	}
+
+	/**
+	 * Appends a frame.
+	 * @param frame the frame to add
+	 */
+	public void add(ReplayFrame frame) {
+		add(frame.getTimeDiff(), frame.getTime(), frame.getX(), frame.getY(), frame.getKeys());
+	}
+
+	/**
+	 * Appends all frames from another frame list.
+	 * @param frames the frames to add
+	 */
+	public void addAll(ReplayFrames frames) {
+		int n = frames.size;
+		if (size + n > time.length)
+			grow(size + n);
+		System.arraycopy(frames.timeDiff, 0, timeDiff, size, n);
+		System.arraycopy(frames.time, 0, time, size, n);
+		System.arraycopy(frames.x, 0, x, size, n);
+		System.arraycopy(frames.y, 0, y, size, n);
+		System.arraycopy(frames.keys, 0, keys, size, n);
+		size += n;
+	}
+
+	/**
+	 * Grows the arrays to hold at least the given number of frames.
+	 * @param minCapacity the minimum capacity
+	 */
+	private void grow(int minCapacity) {
+		int capacity = Math.max(time.length + (time.length >> 1), minCapacity);
+		timeDiff = Arrays.copyOf(timeDiff, capacity);
+		time = Arrays.copyOf(time, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+	}
+
+	/**
+	 * Shrinks the arrays to the current number of frames.
+	 */
+	public void trimToSize() {
+		if (size == time.length || size == 0)
+			return;
+		timeDiff = Arrays.copyOf(timeDiff, size);
+		time = Arrays.copyOf(time, size);
+		x = Arrays.copyOf(x, size);
+		y = Arrays.copyOf(y, size);
+		keys = Arrays.copyOf(keys, size);
+	}
+
+	/**
+	 * Returns the number of frames.
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Returns whether there are no frames.
+	 */
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * Returns the frame time, in milliseconds.
+	 * @param i the frame index
+	 */
+	public int getTime(int i) { return time[i]; }
+
+	/**
+	 * Returns the time since the previous action, in milliseconds.
+	 * @param i the frame index
+	 */
+	public int getTimeDiff(int i) { return timeDiff[i]; }
+
+	/**
+	 * Sets the time since the previous action.
+	 * @param i the frame index
+	 * @param diff the time difference, in milliseconds
+	 */
+	public void setTimeDiff(int i, int diff) { timeDiff[i] = diff; }
+
+	/**
+	 * Returns the raw cursor x coordinate.
+	 * @param i the frame index
+	 */
+	public float getX(int i) { return x[i]; }
+
+	/**
+	 * Returns the raw cursor y coordinate.
+	 * @param i the frame index
+	 */
+	public float getY(int i) { return y[i]; }
+
+	/**
+	 * Returns the scaled cursor x coordinate.
+	 * @param i the frame index
+	 */
+	public int getScaledX(int i) { return (int) (x[i] * HitObject.getXMultiplier() + HitObject.getXOffset()); }
+
+	/**
+	 * Returns the scaled cursor y coordinate.
+	 * @param i the frame index
+	 */
+	public int getScaledY(int i) { return (int) (y[i] * HitObject.getYMultiplier() + HitObject.getYOffset()); }
+
+	/**
+	 * Returns the keys pressed (KEY_* bitmask).
+	 * @param i the frame index
+	 */
+	public int getKeys(int i) { return keys[i]; }
+
+	/**
+	 * Returns whether or not a key is pressed.
+	 * @param i the frame index
+	 */
+	public boolean isKeyPressed(int i) { return (keys[i] != ReplayFrame.KEY_NONE); }
+
+	/**
+	 * Returns a frame as a {@link ReplayFrame} object.
+	 * @param i the frame index
+	 */
+	public ReplayFrame get(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", i, size));
+		return new ReplayFrame(timeDiff[i], time[i], x[i], y[i], keys[i]);
+	}
+}
@@ -19,6 +19,7 @@
 package itdelatrisu.opsu.replay;
 
 import itdelatrisu.opsu.ErrorHandler;
+import itdelatrisu.opsu.ScoreData;
 import itdelatrisu.opsu.beatmap.Beatmap;
 import itdelatrisu.opsu.beatmap.BeatmapSetList;
 import itdelatrisu.opsu.db.ScoreDB;
@@ -30,21 +31,37 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.newdawn.slick.util.Log;
 
 /**
  * Importer for replay files.
+ * <p>
+ * Replay headers are read in parallel, the scores are added to the database
+ * in one transaction, and files are moved on a separate I/O thread.
  */
 public class ReplayImporter {
 	/** The subdirectory (within the replay import directory) to move replays that could not be imported. */
 	private static final String FAILED_IMPORT_DIR = "InvalidReplays";
 
-	/** The index of the current file being imported. */
-	private static int fileIndex = -1;
+	/** The current file being imported (the most recent one). */
+	private static volatile File currentFile;
 
-	/** The total number of replays to import. */
-	private static File[] files;
+	/** The number of completed work units (headers read and files moved). */
+	private static final AtomicInteger completedUnits = new AtomicInteger(-1);
+
+	/** The total number of work units (two per replay file). */
+	private static volatile int totalUnits = -1;
 
 	// This class should not be instantiated.
 	private ReplayImporter() {}
@@ -56,19 +73,17 @@ public class ReplayImporter {
 	 */
 	public static void importAllReplaysFromDir(File dir) {
 		// find all OSR files
-		files = dir.listFiles(new FilenameFilter() {
+		File[] files = dir.listFiles(new FilenameFilter() {
 			@Override
 			public boolean accept(File dir, String name) {
 				return name.toLowerCase().endsWith(".osr");
 			}
 		});
-		if (files == null || files.length < 1) {
-			files = null;
+		if (files == null || files.length < 1)
 			return;
-		}
 
 		// get replay directory
-		File replayDir = Options.getReplayDir();
+		final File replayDir = Options.getReplayDir();
 		if (!replayDir.isDirectory()) {
 			if (!replayDir.mkdir()) {
 				ErrorHandler.error(String.format("Failed to create replay directory '%s'.", replayDir.getAbsolutePath()), null, false);
@@ -76,43 +91,117 @@ public class ReplayImporter {
 			}
 		}
 
-		// import OSRs
-		int importCount = 0;
-		for (File file : files) {
-			fileIndex++;
-			Replay r = new Replay(file);
+		totalUnits = files.length * 2;
+		completedUnits.set(0);
+
+		// read headers in worker threads
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), files.length);
+		ExecutorService headerExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ReplayImporter");
+				t.setDaemon(true);
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+		List<Future<Replay>> futures = new ArrayList<Future<Replay>>(files.length);
+		for (final File file : files) {
+			futures.add(headerExecutor.submit(new Callable<Replay>() {
+				@Override
+				public Replay call() throws IOException {
+					currentFile = file;
+					try {
+						Replay r = new Replay(file);
+						r.loadHeader();
+						return r;
+					} finally {
+						completedUnits.incrementAndGet();
+					}
+				}
+			}));
+		}
+		headerExecutor.shutdown();
+
+		// move files on a single I/O thread
+		ExecutorService ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ReplayImporter-IO");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		// collect headers in file order
+		List<Replay> replays = new ArrayList<Replay>(files.length);
+		List<ScoreData> scores = new ArrayList<ScoreData>(files.length);
+		for (int i = 0; i < files.length; i++) {
+			final File file = files[i];
+			Replay r = null;
 			try {
-				r.loadHeader();
-			} catch (IOException e) {
-				moveToFailedDirectory(file);
-				ErrorHandler.error(String.format("Failed to import replay '%s'. The replay file could not be parsed.", file.getName()), e, false);
-				continue;
+				r = futures.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				headerExecutor.shutdownNow();
+				break;
+			} catch (ExecutionException e) {
+				ErrorHandler.error(String.format("Failed to import replay '%s'. The replay file could not be parsed.", file.getName()), e.getCause(), false);
+			}
+			Beatmap beatmap = null;
+			if (r != null) {
+				beatmap = BeatmapSetList.get().getBeatmapFromHash(r.beatmapHash);
+				if (beatmap == null)
+					ErrorHandler.error(String.format("Failed to import replay '%s'. The associated beatmap could not be found.", file.getName()), null, false);
 			}
-			Beatmap beatmap = BeatmapSetList.get().getBeatmapFromHash(r.beatmapHash);
 			if (beatmap != null) {
-				// add score to database
-				ScoreDB.addScore(r.getScoreData(beatmap));
-
-				// move to replay directory
-				File moveToFile = new File(replayDir, String.format("%s.osr", r.getReplayFilename()));
-				try {
-					Files.move(file.toPath(), moveToFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-					importCount++;
-				} catch (IOException e) {
-					Log.warn(String.format("Failed to move replay '%s' to the replay directory '%s'.", file, replayDir), e);
-				}
+				replays.add(r);
+				scores.add(r.getScoreData(beatmap));
 			} else {
-				moveToFailedDirectory(file);
-				ErrorHandler.error(String.format("Failed to import replay '%s'. The associated beatmap could not be found.", file.getName()), null, false);
-				continue;
+				ioExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						moveToFailedDirectory(file);
+						completedUnits.incrementAndGet();
+					}
+				});
 			}
 		}
 
-		fileIndex = -1;
-		files = null;
+		// add scores to database, then move the imported files
+		final AtomicInteger importCount = new AtomicInteger();
+		if (ScoreDB.addScores(scores)) {
+			for (final Replay r : replays) {
+				ioExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						File file = r.getFile();
+						currentFile = file;
+						File moveToFile = new File(replayDir, String.format("%s.osr", r.getReplayFilename()));
+						try {
+							Files.move(file.toPath(), moveToFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+							importCount.incrementAndGet();
+						} catch (IOException e) {
+							Log.warn(String.format("Failed to move replay '%s' to the replay directory '%s'.", file, replayDir), e);
+						}
+						completedUnits.incrementAndGet();
+					}
+				});
+			}
+		}
+		ioExecutor.shutdown();
+		try {
+			ioExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		completedUnits.set(-1);
+		totalUnits = -1;
+		currentFile = null;
 
-		if (importCount > 0) {
-			String text = String.format("Imported %d replay%s.", importCount, importCount == 1 ? "" : "s");
+		if (importCount.get() > 0) {
+			String text = String.format("Imported %d replay%s.", importCount.get(), importCount.get() == 1 ? "" : "s");
 			UI.getNotificationManager().sendNotification(text);
 		}
 	}
@@ -136,10 +225,11 @@ public class ReplayImporter {
 	 * Returns the name of the current file being imported, or null if none.
 	 */
 	public static String getCurrentFileName() {
-		if (files == null || fileIndex == -1)
+		File file = currentFile;
+		if (file == null || totalUnits == -1)
 			return null;
 
-		return files[fileIndex].getName();
+		return file.getName();
 	}
 
 	/**
@@ -147,9 +237,10 @@ public class ReplayImporter {
 	 * @return the completion percent [0, 100] or -1
 	 */
 	public static int getLoadingProgress() {
-		if (files == null || fileIndex == -1)
+		int completed = completedUnits.get(), total = totalUnits;
+		if (completed == -1 || total == -1)
 			return -1;
 
-		return (fileIndex + 1) * 100 / files.length;
+		return Math.min(completed, total) * 100 / total;
 	}
 }
@@ -0,0 +1,587 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.GameData;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.GameScore;
+import itdelatrisu.opsu.ScoreData;
+import itdelatrisu.opsu.beatmap.Beatmap;
+import itdelatrisu.opsu.beatmap.BeatmapHPDropRateCalculator;
+import itdelatrisu.opsu.beatmap.BeatmapParser;
+import itdelatrisu.opsu.beatmap.HitObject;
+import itdelatrisu.opsu.beatmap.TimingPoint;
+import itdelatrisu.opsu.db.BeatmapDB;
+import itdelatrisu.opsu.objects.CircleLogic;
+import itdelatrisu.opsu.objects.HitObjectStacker;
+import itdelatrisu.opsu.objects.HitRules;
+import itdelatrisu.opsu.objects.PlayableObject;
+import itdelatrisu.opsu.objects.SliderLogic;
+import itdelatrisu.opsu.objects.SpinnerLogic;
+import itdelatrisu.opsu.objects.curves.Curve;
+import itdelatrisu.opsu.objects.curves.Vec2f;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Headless replay re-simulation.
+ * <p>
+ * Drives the hit objects of a beatmap off a replay's frames through the same
+ * hit logic ({@link CircleLogic}, {@link SliderLogic}, {@link SpinnerLogic}) and
+ * scoring ({@link GameScore}) used by {@link itdelatrisu.opsu.states.Game}, but
+ * without any rendering, audio, or global state: all positions are in osu!pixels,
+ * and the active mods are read from the replay. The result is the final score
+ * data and a per-object hit timeline.
+ * <p>
+ * Health is drained and restored as in the game, but (as with in-game replay
+ * playback) running out of health does not end the simulation. Hit tests are
+ * performed at full precision in osu!pixels, so borderline hits may differ from
+ * an in-game playback at a particular resolution.
+ * <p>
+ * Instances are not thread-safe. The beatmap parsing and slider curve code
+ * used here also keeps static state, so simulations should not run concurrently.
+ */
+public class ReplaySimulator {
+	/** Playfield dimensions (in osu!pixels). */
+	private static final float PLAYFIELD_WIDTH = 512f, PLAYFIELD_HEIGHT = 384f;
+
+	/** Time between updates after the last replay frame (in ms). */
+	private static final int FINAL_UPDATE_INTERVAL = 16;
+
+	/** Hit error value for results without one. */
+	public static final int NO_HIT_ERROR = Integer.MIN_VALUE;
+
+	/** A hit object result in the timeline. */
+	public static class ObjectResult {
+		/** The hit object index. */
+		public final int index;
+
+		/** The result time (in ms). */
+		public final int time;
+
+		/** The hit result (GameData.HIT_* constants). */
+		public final int result;
+
+		/** The hit error (in ms), or {@link #NO_HIT_ERROR} if the object was not clicked. */
+		public final int hitError;
+
+		/** The health percentage after the result. */
+		public final float health;
+
+		/** Constructor. */
+		public ObjectResult(int index, int time, int result, int hitError, float health) {
+			this.index = index;
+			this.time = time;
+			this.result = result;
+			this.hitError = hitError;
+			this.health = health;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d: result=%d time=%d error=%s health=%.1f", index, result, time,
+					(hitError == NO_HIT_ERROR) ? "-" : Integer.toString(hitError), health);
+		}
+	}
+
+	/** The beatmap. */
+	private final Beatmap beatmap;
+
+	/** The replay. */
+	private final Replay replay;
+
+	/** Hit judgement parameters. */
+	private HitRules rules;
+
+	/** Stack offset (in osu!pixels). */
+	private float stackOffset;
+
+	/** Health drop rate (per ms). */
+	private float hpDropRate;
+
+	/** The scoring state. */
+	private GameScore score;
+
+	/** The simulated objects. */
+	private PlayableObject[] objects;
+
+	/** Object stack heights. */
+	private int[] stacks;
+
+	/** Current object index. */
+	private int objectIndex;
+
+	/** Objects that have passed their start time but are not yet finished. */
+	private List<Integer> passedObjects;
+
+	/** Break state. */
+	private int breakIndex, breakTime;
+
+	/** The track position of the last update. */
+	private int lastTrackPosition;
+
+	/** Number of deaths, used if "Easy" mod is enabled. */
+	private int deaths;
+
+	/** The hit timeline. */
+	private List<ObjectResult> timeline;
+
+	/** The resulting score data. */
+	private ScoreData scoreData;
+
+	/**
+	 * Constructor. Call {@link #run()} to run the simulation.
+	 * <p>
+	 * If any parts of the beatmap have not yet been loaded (e.g. timing points,
+	 * hit objects), they will be loaded here.
+	 * @param beatmap the beatmap
+	 * @param replay the replay
+	 */
+	public ReplaySimulator(Beatmap beatmap, Replay replay) {
+		this.beatmap = beatmap;
+		this.replay = replay;
+		if (beatmap.timingPoints == null)
+			BeatmapDB.load(beatmap, BeatmapDB.LOAD_ARRAY);
+		BeatmapParser.parseHitObjects(beatmap);
+	}
+
+	/**
+	 * Runs the simulation, loading the replay data first if needed.
+	 * @return the resulting score data
+	 * @throws IOException failure to load the replay data
+	 */
+	public ScoreData run() throws IOException {
+		if (!replay.loaded)
+			replay.load();
+
+		setMapModifiers();
+		createObjects();
+		stacks = HitObjectStacker.calculateStacks(beatmap, objects, rules.getApproachTime());
+		for (PlayableObject o : objects) {
+			if (o instanceof SimObject)
+				((SimObject) o).updatePosition();
+		}
+
+		objectIndex = 0;
+		passedObjects = new LinkedList<Integer>();
+		breakIndex = breakTime = 0;
+		lastTrackPosition = 0;
+		deaths = 0;
+		timeline = new ArrayList<ObjectResult>(objects.length);
+
+		// run replay frames
+		float x = 0, y = 0;
+		int keys = ReplayFrame.KEY_NONE, lastKeys = ReplayFrame.KEY_NONE, time = 0;
+		if (replay.frames != null) {
+			ReplayFrames frames = replay.frames;
+			for (int i = 0, n = frames.size(); i < n; i++) {
+				if (!hasMoreObjects())
+					break;
+				x = frames.getX(i);
+				y = frames.getY(i);
+				keys = frames.getKeys(i);
+				time = frames.getTime(i);
+				int deltaKeys = (keys & ~lastKeys);  // keys that turned on
+				if (deltaKeys != ReplayFrame.KEY_NONE)  // send a key press
+					sendGameKeyPress(x, y, time);
+				else if (keys == lastKeys)
+					updateGame(x, y, frames.getTimeDiff(i), time, keys);
+				lastKeys = keys;
+				lastTrackPosition = time;
+			}
+		}
+
+		// out of frames: keep the last input until all objects are finished
+		int endTime = time;
+		for (PlayableObject o : objects)
+			endTime = Math.max(endTime, o.getEndTime());
+		endTime += rules.getHitResultOffsets()[GameData.HIT_MISS] + 1;
+		while (hasMoreObjects() && time < endTime) {
+			time += FINAL_UPDATE_INTERVAL;
+			updateGame(x, y, FINAL_UPDATE_INTERVAL, time, keys);
+			lastTrackPosition = time;
+		}
+
+		scoreData = score.createScoreData(beatmap);
+		scoreData.timestamp = (replay.timestamp != null) ?
+				replay.timestamp.getTime() / 1000L : System.currentTimeMillis() / 1000L;
+		scoreData.replayString = replay.getReplayFilename();
+		scoreData.playerName = replay.playerName;
+		return scoreData;
+	}
+
+	/**
+	 * Returns the resulting score data, or null if not yet run.
+	 */
+	public ScoreData getScoreData() { return scoreData; }
+
+	/**
+	 * Returns the hit timeline (in the order results were sent), or null if not yet run.
+	 */
+	public List<ObjectResult> getTimeline() {
+		return (timeline == null) ? null : Collections.unmodifiableList(timeline);
+	}
+
+	/**
+	 * Initializes the hit rules and scoring state from the beatmap and replay mods.
+	 * @see itdelatrisu.opsu.states.Game#setMapModifiers()
+	 */
+	private void setMapModifiers() {
+		int mods = replay.mods;
+		float multiplier = GameMod.getDifficultyMultiplier(mods);
+		float circleSize = Math.min(beatmap.circleSize * multiplier, 10f);
+		float approachRate = Math.min(beatmap.approachRate * multiplier, 10f);
+		float overallDifficulty = Math.min(beatmap.overallDifficulty * multiplier, 10f);
+		float HPDrainRate = Math.min(beatmap.HPDrainRate * multiplier, 10f);
+
+		rules = new HitRules(circleSize, approachRate, overallDifficulty, 1f,
+				PLAYFIELD_WIDTH / 2, PLAYFIELD_HEIGHT / 2);
+		rules.setMods(mods);
+		stackOffset = HitRules.getCircleDiameter(circleSize) * HitObjectStacker.STACK_OFFSET_MODIFIER;
+
+		BeatmapHPDropRateCalculator hpCalc = new BeatmapHPDropRateCalculator(beatmap, HPDrainRate, overallDifficulty);
+		hpCalc.calculate();
+		hpDropRate = hpCalc.getHpDropRate();
+
+		score = new GameScore();
+		score.setMods(mods);
+		score.setHealthModifiers(HPDrainRate, hpCalc.getHpMultiplierNormal(), hpCalc.getHpMultiplierComboEnd());
+		score.calculateDifficultyMultiplier(beatmap.HPDrainRate, beatmap.circleSize, beatmap.overallDifficulty);
+
+		// the game clears its score data after setting the modifiers (see Game#resetGameData())
+		score.clear();
+	}
+
+	/**
+	 * Creates the simulated objects.
+	 */
+	private void createObjects() {
+		HitObject[] hitObjects = beatmap.objects;
+		objects = new PlayableObject[hitObjects.length];
+		int timingPointIndex = 0;
+		float beatLengthBase = 1, beatLength = 1;
+		if (!beatmap.timingPoints.isEmpty()) {
+			TimingPoint timingPoint = beatmap.timingPoints.get(0);
+			if (!timingPoint.isInherited()) {
+				beatLengthBase = beatLength = timingPoint.getBeatLength();
+				timingPointIndex++;
+			}
+		}
+		for (int i = 0; i < hitObjects.length; i++) {
+			HitObject hitObject = hitObjects[i];
+			boolean end = (i + 1 >= hitObjects.length || hitObjects[i + 1].isNewCombo());
+
+			// pass beatLength to hit objects
+			int hitObjectTime = hitObject.getTime();
+			while (timingPointIndex < beatmap.timingPoints.size()) {
+				TimingPoint timingPoint = beatmap.timingPoints.get(timingPointIndex);
+				if (timingPoint.getTime() > hitObjectTime)
+					break;
+				if (!timingPoint.isInherited())
+					beatLengthBase = beatLength = timingPoint.getBeatLength();
+				else
+					beatLength = beatLengthBase * timingPoint.getSliderMultiplier();
+				timingPointIndex++;
+			}
+
+			if (hitObject.isCircle())
+				objects[i] = new SimCircle(i, hitObject, end);
+			else if (hitObject.isSlider())
+				objects[i] = new SimSlider(i, hitObject, end, beatLength, beatLength / beatLengthBase);
+			else if (hitObject.isSpinner())
+				objects[i] = new SimSpinner(i, hitObject);
+			else
+				objects[i] = new SimDummy(hitObject);
+		}
+	}
+
+	/**
+	 * Returns whether any objects are left to process.
+	 */
+	private boolean hasMoreObjects() {
+		return objectIndex < objects.length || !passedObjects.isEmpty();
+	}
+
+	/**
+	 * Updates health and the hit objects.
+	 * @see itdelatrisu.opsu.states.Game#updateGame(int, int, int, int, int)
+	 */
+	private void updateGame(float x, float y, int delta, int trackPosition, int keys) {
+		if (!hasMoreObjects())
+			return;
+
+		// song beginning
+		if (objectIndex == 0 && trackPosition < beatmap.objects[0].getTime())
+			return;  // nothing to do here
+
+		// break periods
+		if (beatmap.breaks != null && breakIndex < beatmap.breaks.size()) {
+			int breakValue = beatmap.breaks.get(breakIndex);
+			if (breakTime > 0) {  // in a break period
+				if (trackPosition < breakValue &&
+				    (objectIndex >= objects.length || trackPosition < beatmap.objects[objectIndex].getTime() - rules.getApproachTime()))
+					return;
+				else {
+					// break is over
+					breakTime = 0;
+					breakIndex++;
+				}
+			} else if (trackPosition >= breakValue) {
+				// start a break
+				breakTime = breakValue;
+				breakIndex++;
+				return;
+			}
+		}
+
+		// drain health
+		if (lastTrackPosition > 0)
+			score.changeHealth((trackPosition - lastTrackPosition) * -1 * hpDropRate);
+
+		// health ran out: "Easy" mod refills it (time is frozen in the game meanwhile)
+		if (!score.isAlive() && rules.isActive(GameMod.EASY) && !rules.isActive(GameMod.SUDDEN_DEATH)) {
+			deaths++;
+			if (deaths < 3) {
+				while (score.getHealthPercent() < 99f)
+					score.changeHealth(FINAL_UPDATE_INTERVAL / 5f);
+				return;
+			}
+		}
+
+		boolean keyPressed = keys != ReplayFrame.KEY_NONE;
+
+		// update passed objects
+		Iterator<Integer> iter = passedObjects.iterator();
+		while (iter.hasNext()) {
+			int index = iter.next();
+			if (objects[index].update(delta, x, y, keyPressed, trackPosition))
+				iter.remove();
+		}
+
+		// update objects (loop over any skipped indexes)
+		int[] hitResultOffset = rules.getHitResultOffsets();
+		while (objectIndex < objects.length && trackPosition > beatmap.objects[objectIndex].getTime()) {
+			// check if we've already passed the next object's start time
+			boolean overlap =
+				(objectIndex + 1 < objects.length &&
+				trackPosition > beatmap.objects[objectIndex + 1].getTime() - hitResultOffset[GameData.HIT_50]);
+
+			// update hit object and check completion status
+			if (objects[objectIndex].update(delta, x, y, keyPressed, trackPosition))
+				objectIndex++;
+			else if (overlap) {
+				passedObjects.add(objectIndex);
+				objectIndex++;
+			} else
+				break;
+		}
+	}
+
+	/**
+	 * Sends a game key press to the hit objects.
+	 * @see itdelatrisu.opsu.states.Game#sendGameKeyPress(int, int, int, int)
+	 */
+	private void sendGameKeyPress(float x, float y, int trackPosition) {
+		if (!hasMoreObjects())  // nothing to do here
+			return;
+
+		// check missed objects first
+		Iterator<Integer> iter = passedObjects.iterator();
+		while (iter.hasNext()) {
+			int index = iter.next();
+			HitObject hitObject = beatmap.objects[index];
+			if (hitObject.isCircle() && objects[index].mousePressed(x, y, trackPosition)) {
+				iter.remove();  // circle hit, remove it
+				return;
+			} else if (hitObject.isSlider() && objects[index].mousePressed(x, y, trackPosition))
+				return;  // slider initial circle hit
+		}
+
+		// check current object
+		if (objectIndex >= objects.length)
+			return;
+		HitObject hitObject = beatmap.objects[objectIndex];
+		if (hitObject.isCircle() && objects[objectIndex].mousePressed(x, y, trackPosition))
+			objectIndex++;  // circle hit
+		else if (hitObject.isSlider())
+			objects[objectIndex].mousePressed(x, y, trackPosition);
+	}
+
+	/**
+	 * Scores a hit object result and adds it to the timeline.
+	 * @see GameData#sendHitResult
+	 */
+	private void sendHitResult(int index, int time, int result, boolean end, boolean noIncrementCombo, int hitError) {
+		int hitResult = score.handleHitResult(result, end, beatmap.objects[index], noIncrementCombo);
+		timeline.add(new ObjectResult(index, time, hitResult, hitError, score.getHealthPercent()));
+	}
+
+	/**
+	 * Returns the x coordinate of a raw point after stacking.
+	 * @param x the raw x coordinate
+	 * @param stack the stack height
+	 */
+	private float toPlayfieldX(float x, int stack) { return x - stack * stackOffset; }
+
+	/**
+	 * Returns the y coordinate of a raw point after stacking (and flipping, for "Hard Rock").
+	 * @param y the raw y coordinate
+	 * @param stack the stack height
+	 */
+	private float toPlayfieldY(float y, int stack) {
+		return rules.isActive(GameMod.HARD_ROCK) ? PLAYFIELD_HEIGHT - (y + stack * stackOffset) : y - stack * stackOffset;
+	}
+
+	/** A simulated object whose position depends on its stack height. */
+	private interface SimObject {
+		/** Sets the playfield position from the computed stack height. */
+		public void updatePosition();
+	}
+
+	/** A placeholder for an invalid hit object. */
+	private static class SimDummy implements PlayableObject {
+		/** The associated hit object. */
+		private final HitObject hitObject;
+
+		/** Constructor. */
+		public SimDummy(HitObject hitObject) { this.hitObject = hitObject; }
+
+		@Override
+		public boolean update(int delta, float mouseX, float mouseY, boolean keyPressed, int trackPosition) {
+			return (trackPosition > hitObject.getTime());
+		}
+
+		@Override
+		public boolean mousePressed(float x, float y, int trackPosition) { return false; }
+
+		@Override
+		public int getEndTime() { return hitObject.getTime(); }
+	}
+
+	/** A simulated circle. */
+	private class SimCircle extends CircleLogic implements SimObject {
+		/** The hit object index. */
+		private final int index;
+
+		/** Constructor. */
+		public SimCircle(int index, HitObject hitObject, boolean comboEnd) {
+			super(hitObject, ReplaySimulator.this.rules, comboEnd);
+			this.index = index;
+		}
+
+		@Override
+		public void updatePosition() {
+			x = toPlayfieldX(hitObject.getX(), stacks[index]);
+			y = toPlayfieldY(hitObject.getY(), stacks[index]);
+		}
+
+		@Override
+		protected void sendClickResult(int trackPosition, int result, float mouseX, float mouseY, int timeDiff) {
+			sendHitResult(index, trackPosition, result, comboEnd, false, timeDiff);
+		}
+
+		@Override
+		protected void sendResult(int time, int result) {
+			sendHitResult(index, time, result, comboEnd, false, (result == GameData.HIT_MISS) ? NO_HIT_ERROR : 0);
+		}
+	}
+
+	/** A simulated slider. */
+	private class SimSlider extends SliderLogic implements SimObject {
+		/** The hit object index. */
+		private final int index;
+
+		/** The unscaled slider curve. */
+		private final Curve curve;
+
+		/** The initial circle hit error. */
+		private int hitError = NO_HIT_ERROR;
+
+		/** Constructor. */
+		public SimSlider(int index, HitObject hitObject, boolean comboEnd, float beatLength, float timingPointMultiplier) {
+			super(hitObject, ReplaySimulator.this.rules, comboEnd,
+					beatmap.sliderMultiplier, beatmap.sliderTickRate, beatLength, timingPointMultiplier);
+			this.index = index;
+			this.curve = hitObject.getSliderCurve(false);
+		}
+
+		@Override
+		public void updatePosition() {
+			x = toPlayfieldX(hitObject.getX(), stacks[index]);
+			y = toPlayfieldY(hitObject.getY(), stacks[index]);
+		}
+
+		@Override
+		protected Vec2f curvePointAt(float t) {
+			Vec2f p = curve.pointAt(t);
+			return new Vec2f(toPlayfieldX(p.x, stacks[index]), toPlayfieldY(p.y, stacks[index]));
+		}
+
+		@Override
+		protected void sendInitialClickResult(int trackPosition, int result, float mouseX, float mouseY) {
+			hitError = trackPosition - hitObject.getTime();
+			score.handleSliderTickResult(result);
+		}
+
+		@Override
+		protected void sendInitialResult(int trackPosition, int result) {
+			score.handleSliderTickResult(result);
+		}
+
+		@Override
+		protected void sendRepeatResult(int trackPosition, int repeat, boolean hit) {
+			score.handleSliderTickResult(hit ? GameData.HIT_SLIDER30 : GameData.HIT_MISS);
+		}
+
+		@Override
+		protected void sendTickResult(int trackPosition, int tick, boolean hit) {
+			score.handleSliderTickResult(hit ? GameData.HIT_SLIDER10 : GameData.HIT_MISS);
+		}
+
+		@Override
+		protected void sendSliderResult(int time, int result) {
+			sendHitResult(index, time, result, comboEnd, !sliderHeldToEnd, hitError);
+		}
+	}
+
+	/** A simulated spinner. */
+	private class SimSpinner extends SpinnerLogic {
+		/** The hit object index. */
+		private final int index;
+
+		/** Constructor. */
+		public SimSpinner(int index, HitObject hitObject) {
+			super(hitObject, ReplaySimulator.this.rules);
+			this.index = index;
+		}
+
+		@Override
+		protected void sendSpinResult(int result) { score.handleSpinnerSpinResult(result); }
+
+		@Override
+		protected void sendSpinnerResult(int result) {
+			sendHitResult(index, hitObject.getEndTime(), result, true, false, NO_HIT_ERROR);
+		}
+	}
+}
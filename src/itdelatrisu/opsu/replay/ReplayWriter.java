@@ -0,0 +1,351 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.ErrorHandler;
+import itdelatrisu.opsu.io.OsuWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.newdawn.slick.util.Log;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.LZMAOutputStream;
+
+/**
+ * Writes replay files on a single background thread.
+ * <p>
+ * Replay frames are formatted straight into a reusable byte buffer that feeds
+ * the LZMA encoder, which writes through to the file. Files are written to a
+ * temporary file first and then renamed, so a partially written replay is
+ * never visible.
+ */
+public class ReplayWriter {
+	/** Size of the frame text buffer, in bytes. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Maximum time to wait for pending writes on shutdown, in milliseconds. */
+	private static final long SHUTDOWN_TIMEOUT = 5000;
+
+	/** Single-threaded write queue. */
+	private static ThreadPoolExecutor executor;
+
+	// This class should not be instantiated.
+	private ReplayWriter() {}
+
+	/**
+	 * Queues a replay to be written to a file.
+	 * @param replay the replay
+	 * @param file the destination file
+	 */
+	public static synchronized void save(final Replay replay, final File file) {
+		if (executor == null || executor.isShutdown())
+			executor = createExecutor();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+				try {
+					write(replay, tmp);
+					try {
+						Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					} catch (AtomicMoveNotSupportedException e) {
+						Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				} catch (IOException e) {
+					tmp.delete();
+					ErrorHandler.error("Could not save replay data.", e, true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for all queued replays to be written, then stops the writer thread.
+	 */
+	public static synchronized void shutdown() {
+		if (executor == null)
+			return;
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS))
+				Log.warn("Timed out waiting for replays to be written.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor = null;
+	}
+
+	/**
+	 * Creates the writer thread pool.
+	 */
+	private static ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+			1, 1, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ReplayWriter");
+					t.setDaemon(true);
+					return t;
+				}
+			}
+		);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Writes a replay to a file.
+	 * @param replay the replay
+	 * @param file the file to write
+	 * @throws IOException if writing failed
+	 */
+	private static void write(Replay replay, File file) throws IOException {
+		try (FileOutputStream fout = new FileOutputStream(file)) {
+			OsuWriter writer = new OsuWriter(fout);
+
+			// header
+			writer.write(replay.mode);
+			writer.write(replay.version);
+			writer.write(replay.beatmapHash);
+			writer.write(replay.playerName);
+			writer.write(replay.replayHash);
+			writer.write(replay.hit300);
+			writer.write(replay.hit100);
+			writer.write(replay.hit50);
+			writer.write(replay.geki);
+			writer.write(replay.katu);
+			writer.write(replay.miss);
+			writer.write(replay.score);
+			writer.write(replay.combo);
+			writer.write(replay.perfect);
+			writer.write(replay.mods);
+
+			// life data
+			StringBuilder sb = new StringBuilder();
+			LifeFrame[] lifeFrames = replay.lifeFrames;
+			if (lifeFrames != null && lifeFrames.length > 0) {
+				NumberFormat nf = new DecimalFormat("##.##");
+				int lastFrameTime = 0;
+				for (int i = 0; i < lifeFrames.length; i++) {
+					LifeFrame frame = lifeFrames[i];
+					if (i > 0 && frame.getTime() - lastFrameTime < LifeFrame.SAMPLE_INTERVAL)
+						continue;
+
+					sb.append(String.format("%d|%s,", frame.getTime(), nf.format(frame.getHealth())));
+					lastFrameTime = frame.getTime();
+				}
+			}
+			writer.write(sb.toString());
+
+			// timestamp
+			writer.write(replay.timestamp);
+
+			// LZMA-encoded replay data
+			ReplayFrames frames = replay.frames;
+			if (frames == null || frames.isEmpty()) {
+				writer.write(0);
+				writer.close();
+				return;
+			}
+
+			// reserve the compressed length, to be filled in afterwards
+			OutputStream out = writer.getOutputStream();
+			out.flush();
+			FileChannel channel = fout.getChannel();
+			long lengthPosition = channel.position();
+			writer.write(0);
+
+			// the uncompressed size is stored in the LZMA header, so count it first
+			FrameEncoder counter = new FrameEncoder(null);
+			counter.encode(frames, replay.seed);
+			LZMAOutputStream lzma = new LZMAOutputStream(out, new LZMA2Options(), counter.getByteCount());
+			new FrameEncoder(lzma).encode(frames, replay.seed);
+			lzma.finish();
+			out.flush();
+
+			// fill in the compressed length
+			long length = channel.position() - lengthPosition - 4;
+			ByteBuffer buf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) length);
+			buf.flip();
+			channel.write(buf, lengthPosition);
+			writer.close();
+		}
+	}
+
+	/**
+	 * Formats replay frames as "timeDiff|x|y|keys," text into a byte buffer.
+	 * If no output stream is given, only the number of bytes is counted.
+	 */
+	private static class FrameEncoder {
+		/** Scale of the fractional part (5 digits). */
+		private static final int FRACTION_SCALE = 100000;
+
+		/** Largest magnitude formatted without {@link DecimalFormat}. */
+		private static final float MAX_FAST_FLOAT = 1e9f;
+
+		/** The destination stream (or null to only count bytes). */
+		private final OutputStream out;
+
+		/** The byte buffer. */
+		private final byte[] buf = new byte[BUFFER_SIZE];
+
+		/** The current buffer position. */
+		private int pos = 0;
+
+		/** The total number of bytes encoded. */
+		private long count = 0;
+
+		/** Fallback formatter, created on demand. */
+		private NumberFormat nf;
+
+		/**
+		 * Constructor.
+		 * @param out the destination stream, or null to only count bytes
+		 */
+		public FrameEncoder(OutputStream out) { this.out = out; }
+
+		/** Returns the number of bytes encoded. */
+		public long getByteCount() { return count; }
+
+		/**
+		 * Encodes all frames and the trailing seed frame, then flushes the buffer.
+		 * @param frames the frames
+		 * @param seed the seed
+		 * @throws IOException if writing failed
+		 */
+		public void encode(ReplayFrames frames, int seed) throws IOException {
+			for (int i = 0, n = frames.size(); i < n; i++) {
+				writeInt(frames.getTimeDiff(i));
+				writeByte('|');
+				writeFloat(frames.getX(i));
+				writeByte('|');
+				writeFloat(frames.getY(i));
+				writeByte('|');
+				writeInt(frames.getKeys(i));
+				writeByte(',');
+			}
+			writeString(Replay.SEED_STRING);
+			writeString("|0|0|");
+			writeInt(seed);
+			flush();
+		}
+
+		/** Writes a single ASCII character. */
+		private void writeByte(int b) throws IOException {
+			if (pos == buf.length)
+				flush();
+			buf[pos++] = (byte) b;
+		}
+
+		/** Writes an ASCII string. */
+		private void writeString(String s) throws IOException {
+			for (int i = 0, n = s.length(); i < n; i++) {
+				char c = s.charAt(i);
+				writeByte(c < 128 ? c : '?');
+			}
+		}
+
+		/** Writes a decimal integer. */
+		private void writeInt(int v) throws IOException {
+			if (v == Integer.MIN_VALUE) {
+				writeString(Integer.toString(v));
+				return;
+			}
+			if (v < 0) {
+				writeByte('-');
+				v = -v;
+			}
+			writeDigits(v, 1);
+		}
+
+		/**
+		 * Writes the digits of a non-negative number.
+		 * @param v the number
+		 * @param minDigits the minimum number of digits (zero-padded)
+		 */
+		private void writeDigits(long v, int minDigits) throws IOException {
+			int digits = 1;
+			for (long p = 10; p <= v && digits < 19; p *= 10)
+				digits++;
+			for (int i = digits; i < minDigits; i++)
+				writeByte('0');
+			if (pos + digits > buf.length)
+				flush();
+			for (int i = pos + digits - 1; i >= pos; i--) {
+				buf[i] = (byte) ('0' + (v % 10));
+				v /= 10;
+			}
+			pos += digits;
+		}
+
+		/**
+		 * Writes a float exactly as {@code new DecimalFormat("###.#####")} would:
+		 * at most 5 fraction digits, rounded half-even, no trailing zeros.
+		 */
+		private void writeFloat(float v) throws IOException {
+			if (Float.isNaN(v) || Float.isInfinite(v) || Math.abs(v) >= MAX_FAST_FLOAT) {
+				if (nf == null)
+					nf = new DecimalFormat("###.#####");
+				writeString(nf.format(v));
+				return;
+			}
+
+			// a float times 10^5 is exact in double precision, so rint() rounds the true value
+			long scaled = (long) Math.rint(Math.abs((double) v) * FRACTION_SCALE);
+			if (Float.floatToRawIntBits(v) < 0)
+				writeByte('-');
+			writeDigits(scaled / FRACTION_SCALE, 1);
+			int fraction = (int) (scaled % FRACTION_SCALE);
+			if (fraction != 0) {
+				writeByte('.');
+				int digits = 5;
+				while (fraction % 10 == 0) {
+					fraction /= 10;
+					digits--;
+				}
+				writeDigits(fraction, digits);
+			}
+		}
+
+		/** Writes the buffered bytes to the output stream. */
+		private void flush() throws IOException {
+			if (out != null && pos > 0)
+				out.write(buf, 0, pos);
+			count += pos;
+			pos = 0;
+		}
+	}
+}
@@ -33,12 +33,15 @@ import itdelatrisu.opsu.beatmap.Beatmap;
 import itdelatrisu.opsu.beatmap.BeatmapHPDropRateCalculator;
 import itdelatrisu.opsu.beatmap.BeatmapParser;
 import itdelatrisu.opsu.beatmap.HitObject;
+import itdelatrisu.opsu.beatmap.SliderCurveLoader;
 import itdelatrisu.opsu.beatmap.TimingPoint;
 import itdelatrisu.opsu.db.BeatmapDB;
 import itdelatrisu.opsu.db.ScoreDB;
 import itdelatrisu.opsu.objects.Circle;
 import itdelatrisu.opsu.objects.DummyObject;
 import itdelatrisu.opsu.objects.GameObject;
+import itdelatrisu.opsu.objects.HitObjectStacker;
+import itdelatrisu.opsu.objects.HitRules;
 import itdelatrisu.opsu.objects.Slider;
 import itdelatrisu.opsu.objects.Spinner;
 import itdelatrisu.opsu.objects.curves.Curve;
@@ -50,6 +53,7 @@ import itdelatrisu.opsu.replay.LifeFrame;
 import itdelatrisu.opsu.replay.PlaybackSpeed;
 import itdelatrisu.opsu.replay.Replay;
 import itdelatrisu.opsu.replay.ReplayFrame;
+import itdelatrisu.opsu.replay.ReplayFrames;
 import itdelatrisu.opsu.ui.Colors;
 import itdelatrisu.opsu.ui.Fonts;
 import itdelatrisu.opsu.ui.InputOverlayKey;
@@ -63,7 +67,6 @@ import itdelatrisu.opsu.user.UserList;
 import itdelatrisu.opsu.video.FFmpeg;
 import itdelatrisu.opsu.video.Video;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -129,11 +132,11 @@ public class Game extends BasicGameState {
 	/** Minimum time before start of song, in milliseconds, to process skip-related actions. */
 	private static final int SKIP_OFFSET = 2000;
 
-	/** Tolerance in case if hit object is not snapped to the grid. */
-	private static final float STACK_LENIENCE = 3f;
+	/** Minimum track time, in milliseconds, between replay snapshots. */
+	private static final int REPLAY_SNAPSHOT_INTERVAL = 5000;
 
-	/** Stack position offset modifier. */
-	private static final float STACK_OFFSET_MODIFIER = 0.05f;
+	/** Time before a slider appears, in milliseconds, to start building its curve geometry. */
+	private static final int SLIDER_PREPARE_TIME = 1000;
 
 	/** The associated beatmap. */
 	private Beatmap beatmap;
@@ -168,6 +171,9 @@ public class Game extends BasicGameState {
 	/** Time offsets for obtaining each hit result (indexed by HIT_* constants). */
 	private int[] hitResultOffset;
 
+	/** Hit judgement parameters. */
+	private HitRules hitRules;
+
 	/** Current play state. */
 	private PlayState playState;
 
@@ -248,6 +254,9 @@ public class Game extends BasicGameState {
 	/** The keys from the previous replay frame. */
 	private int lastReplayKeys = 0;
 
+	/** Snapshots of the game state taken during replay playback (in order). */
+	private ArrayList<ReplaySnapshot> replaySnapshots;
+
 	/** The last game keys pressed. */
 	private int lastKeysPressed = ReplayFrame.KEY_NONE;
 
@@ -255,7 +264,7 @@ public class Game extends BasicGameState {
 	private int previousMods = 0;
 
 	/** The list of current replay frames (for recording replays). */
-	private LinkedList<ReplayFrame> replayFrames;
+	private ReplayFrames replayFrames;
 
 	/** The list of current life frames (for recording replays). */
 	private LinkedList<LifeFrame> lifeFrames;
@@ -885,43 +894,31 @@ public class Game extends BasicGameState {
 		// watching replay
 		else if (!gameFinished) {
 			// out of frames, use previous data
-			if (replayIndex >= replay.frames.length)
+			ReplayFrames frames = replay.frames;
+			if (replayIndex >= frames.size())
 				updateGame(replayX, replayY, delta, MusicController.getPosition(true), lastKeysPressed);
 
 			boolean hasVideo = (video != null);
 
 			// seeking to a position earlier than original track position
-			if (isSeeking && replayIndex - 1 >= 1 && replayIndex < replay.frames.length &&
-			    trackPosition < replay.frames[replayIndex - 1].getTime()) {
-				replayIndex = 0;
-				while (objectIndex >= 0) {
-					gameObjects[objectIndex].reset();
-					objectIndex--;
-				}
-
-				// reset game data
-				FakeCombinedCurve oldMergedSlider = mergedSlider;
-				resetGameData();
-				mergedSlider = oldMergedSlider;
-
-				// load the first timingPoint
-				if (!beatmap.timingPoints.isEmpty()) {
-					TimingPoint timingPoint = beatmap.timingPoints.get(0);
-					if (!timingPoint.isInherited()) {
-						setBeatLength(timingPoint, true);
-						timingPointIndex++;
-					}
-				}
+			if (isSeeking && replayIndex - 1 >= 1 && replayIndex < frames.size() &&
+			    trackPosition < frames.getTime(replayIndex - 1)) {
+				ReplaySnapshot snapshot = getReplaySnapshot(trackPosition);
+				if (snapshot != null)
+					restoreReplaySnapshot(snapshot);
+				else
+					resetReplay();
 			}
 
 			// update and run replay frames
-			while (replayIndex < replay.frames.length && trackPosition >= replay.frames[replayIndex].getTime()) {
-				ReplayFrame frame = replay.frames[replayIndex];
-				replayX = frame.getScaledX();
-				replayY = frame.getScaledY();
-				replayKeyPressed = frame.isKeyPressed();
-				lastKeysPressed = frame.getKeys();
-				runReplayFrame(frame);
+			while (replayIndex < frames.size() && trackPosition >= frames.getTime(replayIndex)) {
+				int time = frames.getTime(replayIndex);
+				saveReplaySnapshot(time);
+				replayX = frames.getScaledX(replayIndex);
+				replayY = frames.getScaledY(replayIndex);
+				replayKeyPressed = frames.isKeyPressed(replayIndex);
+				lastKeysPressed = frames.getKeys(replayIndex);
+				runReplayFrame(replayX, replayY, lastKeysPressed, time, frames.getTimeDiff(replayIndex));
 				replayIndex++;
 			}
 			mouseX = replayX;
@@ -1006,11 +1003,13 @@ public class Game extends BasicGameState {
 				else if (replayFrames != null) {
 					// finalize replay frames with start/skip frames
 					if (!replayFrames.isEmpty())
-						replayFrames.getFirst().setTimeDiff(replaySkipTime * -1);
-					replayFrames.addFirst(ReplayFrame.getStartFrame(replaySkipTime));
-					replayFrames.addFirst(ReplayFrame.getStartFrame(0));
+						replayFrames.setTimeDiff(0, replaySkipTime * -1);
+					ReplayFrames frames = new ReplayFrames(replayFrames.size() + 2);
+					frames.add(ReplayFrame.getStartFrame(0));
+					frames.add(ReplayFrame.getStartFrame(replaySkipTime));
+					frames.addAll(replayFrames);
 					Replay r = data.getReplay(
-						replayFrames.toArray(new ReplayFrame[replayFrames.size()]),
+						frames,
 						lifeFrames.toArray(new LifeFrame[lifeFrames.size()]),
 						beatmap
 					);
@@ -1514,6 +1513,9 @@ public class Game extends BasicGameState {
 			} else if (playState == PlayState.REPLAY || GameMod.AUTO.isActive()) {
 				retries = 0;
 			}
+			int mods = GameMod.getModState();
+			hitRules.setMods(mods);
+			data.setMods(mods);
 
 			gameObjects = new GameObject[beatmap.objects.length];
 			playbackSpeed = PlaybackSpeed.NORMAL;
@@ -1530,6 +1532,9 @@ public class Game extends BasicGameState {
 				}
 			}
 
+			// finish building the slider curves (started in loadBeatmap())
+			SliderCurveLoader.finish();
+
 			// initialize object maps
 			boolean ignoreSkins = Options.isBeatmapSkinIgnored();
 			Color[] combo = ignoreSkins ? Options.getSkin().getComboColors() : beatmap.getComboColors();
@@ -1607,19 +1612,21 @@ public class Game extends BasicGameState {
 			// load replay frames
 			if (isReplay) {
 				// load initial data
+				replaySnapshots = new ArrayList<ReplaySnapshot>();
 				replayX = container.getWidth() / 2;
 				replayY = container.getHeight() / 2;
 				replayKeyPressed = false;
 				replaySkipTime = -1;
-				for (replayIndex = 0; replayIndex < replay.frames.length; replayIndex++) {
-					ReplayFrame frame = replay.frames[replayIndex];
-					if (frame.getY() < 0) {  // skip time (?)
-						if (frame.getTime() >= 0 && replayIndex > 0)
-							replaySkipTime = frame.getTime();
-					} else if (frame.getTime() == 0) {
-						replayX = frame.getScaledX();
-						replayY = frame.getScaledY();
-						replayKeyPressed = frame.isKeyPressed();
+				ReplayFrames frames = replay.frames;
+				for (replayIndex = 0; replayIndex < frames.size(); replayIndex++) {
+					int time = frames.getTime(replayIndex);
+					if (frames.getY(replayIndex) < 0) {  // skip time (?)
+						if (time >= 0 && replayIndex > 0)
+							replaySkipTime = time;
+					} else if (time == 0) {
+						replayX = frames.getScaledX(replayIndex);
+						replayY = frames.getScaledY(replayIndex);
+						replayKeyPressed = frames.isKeyPressed(replayIndex);
 					} else
 						break;
 				}
@@ -1627,10 +1634,11 @@ public class Game extends BasicGameState {
 
 			// initialize replay-recording structures
 			else {
+				replaySnapshots = null;
 				lastKeysPressed = ReplayFrame.KEY_NONE;
 				replaySkipTime = -1;
-				replayFrames = new LinkedList<ReplayFrame>();
-				replayFrames.add(new ReplayFrame(0, 0, input.getMouseX(), input.getMouseY(), 0));
+				replayFrames = new ReplayFrames();
+				replayFrames.add(0, 0, input.getMouseX(), input.getMouseY(), 0);
 				lifeFrames = new LinkedList<LifeFrame>();
 			}
 
@@ -1736,6 +1744,15 @@ public class Game extends BasicGameState {
 		if (spinnerIndex != -1)
 			stack.add(spinnerIndex);
 
+		// build slider geometry ahead of time
+		if (!loseState) {
+			int prepareTime = trackPosition + approachTime + SLIDER_PREPARE_TIME;
+			for (int index = objectIndex; index < gameObjects.length && beatmap.objects[index].getTime() < prepareTime; index++) {
+				if (gameObjects[index] instanceof Slider)
+					((Slider) gameObjects[index]).prepareGeometry();
+			}
+		}
+
 		// draw hit objects
 		while (!stack.isEmpty()){
 			int idx = stack.pop();
@@ -1854,6 +1871,7 @@ public class Game extends BasicGameState {
 		if (beatmap.timingPoints == null)
 			BeatmapDB.load(beatmap, BeatmapDB.LOAD_ARRAY);
 		BeatmapParser.parseHitObjects(beatmap);
+		SliderCurveLoader.start(beatmap);
 		HitSound.setDefaultSampleSet(beatmap.sampleSet);
 
 		Utils.gc(true);
@@ -1934,13 +1952,7 @@ public class Game extends BasicGameState {
 		int height = container.getHeight();
 
 		// set images
-		File parent = beatmap.getFile().getParentFile();
-		for (GameImage img : GameImage.values()) {
-			if (img.isBeatmapSkinnable()) {
-				img.setDefaultImage();
-				img.setBeatmapSkinImage(parent);
-			}
-		}
+		GameImage.setBeatmapSkinImages(beatmap.getFile().getParentFile());
 
 		// skip button
 		if (GameImage.SKIP.getImages() != null) {
@@ -2011,28 +2023,27 @@ public class Game extends BasicGameState {
 		if (Options.getFixedHP() > 0f)
 			HPDrainRate = Options.getFixedHP();
 
+		// hit judgement parameters (in screen coordinates)
+		hitRules = new HitRules(circleSize, approachRate, overallDifficulty, HitObject.getXMultiplier(),
+				container.getWidth() / 2, container.getHeight() / 2);
+
 		// Stack modifier scales with hit object size
 		// StackOffset = HitObjectRadius / 10
-		//int diameter = (int) (104 - (circleSize * 8));
-		float diameter = 108.848f - (circleSize * 8.9646f);
-		HitObject.setStackOffset(diameter * STACK_OFFSET_MODIFIER);
+		float diameter = HitRules.getCircleDiameter(circleSize);
+		HitObject.setStackOffset(diameter * HitObjectStacker.STACK_OFFSET_MODIFIER);
 
 		// initialize objects
 		Circle.init(container, diameter);
 		Slider.init(container, diameter, beatmap);
-		Spinner.init(container, overallDifficulty);
+		Spinner.init(container);
 		Curve.init(container.getWidth(), container.getHeight(), diameter, (Options.isBeatmapSkinIgnored()) ?
 				Options.getSkin().getSliderBorderColor() : beatmap.getSliderBorderColor());
 
 		// approachRate (hit object approach time)
-		approachTime = (int) Utils.mapDifficultyRange(approachRate, 1800, 1200, 450);
+		approachTime = hitRules.getApproachTime();
 
 		// overallDifficulty (hit result time offsets)
-		hitResultOffset = new int[GameData.HIT_MAX];
-		hitResultOffset[GameData.HIT_300]  = (int) Utils.mapDifficultyRange(overallDifficulty, 80, 50, 20);
-		hitResultOffset[GameData.HIT_100]  = (int) Utils.mapDifficultyRange(overallDifficulty, 140, 100, 60);
-		hitResultOffset[GameData.HIT_50]   = (int) Utils.mapDifficultyRange(overallDifficulty, 200, 150, 100);
-		hitResultOffset[GameData.HIT_MISS] = (int) (500 - (overallDifficulty * 10));
+		hitResultOffset = hitRules.getHitResultOffsets();
 		data.setHitResultOffset(hitResultOffset);
 
 		// HPDrainRate (health change)
@@ -2095,6 +2106,11 @@ public class Game extends BasicGameState {
 	 */
 	public int[] getHitResultOffsets() { return hitResultOffset; }
 
+	/**
+	 * Returns the hit judgement parameters.
+	 */
+	public HitRules getHitRules() { return hitRules; }
+
 	/**
 	 * Returns the beat length.
 	 */
@@ -2155,27 +2171,204 @@ public class Game extends BasicGameState {
 
 		ReplayFrame frame = addReplayFrame(x, y, keys, time);
 		if (frame != null)
-			runReplayFrame(frame);
+			runReplayFrame(frame.getScaledX(), frame.getScaledY(), frame.getKeys(), frame.getTime(), frame.getTimeDiff());
 	}
 
 	/**
 	 * Runs a replay frame.
-	 * @param frame the frame to run
+	 * @param replayX the scaled cursor x coordinate
+	 * @param replayY the scaled cursor y coordinate
+	 * @param keys the keys pressed (bitmask)
+	 * @param time the frame time (in ms)
+	 * @param timeDiff the time since the previous frame (in ms)
 	 */
-	private void runReplayFrame(ReplayFrame frame){
-		int keys = frame.getKeys();
-		int replayX = frame.getScaledX();
-		int replayY = frame.getScaledY();
+	private void runReplayFrame(int replayX, int replayY, int keys, int time, int timeDiff){
 		int deltaKeys = (keys & ~lastReplayKeys);  // keys that turned on
 		if (deltaKeys != ReplayFrame.KEY_NONE)  // send a key press
-			sendGameKeyPress(deltaKeys, replayX, replayY, frame.getTime());
+			sendGameKeyPress(deltaKeys, replayX, replayY, time);
 		else if (keys != lastReplayKeys)
 			;  // do nothing
 		else
-			updateGame(replayX, replayY, frame.getTimeDiff(), frame.getTime(), keys);
+			updateGame(replayX, replayY, timeDiff, time, keys);
 		lastReplayKeys = keys;
 	}
 
+	/**
+	 * Resets the game state to the beginning of the replay.
+	 */
+	private void resetReplay() {
+		replayIndex = 0;
+		while (objectIndex >= 0) {
+			gameObjects[objectIndex].reset();
+			objectIndex--;
+		}
+
+		// reset game data
+		FakeCombinedCurve oldMergedSlider = mergedSlider;
+		resetGameData();
+		mergedSlider = oldMergedSlider;
+
+		// load the first timingPoint
+		if (!beatmap.timingPoints.isEmpty()) {
+			TimingPoint timingPoint = beatmap.timingPoints.get(0);
+			if (!timingPoint.isInherited()) {
+				setBeatLength(timingPoint, true);
+				timingPointIndex++;
+			}
+		}
+	}
+
+	/**
+	 * Saves a snapshot of the game state before running the current replay frame,
+	 * if enough time has passed since the last snapshot.
+	 * @param time the time of the current replay frame
+	 */
+	private void saveReplaySnapshot(int time) {
+		if (replaySnapshots == null)
+			return;
+		int lastIndex = 0, lastTime = 0;
+		if (!replaySnapshots.isEmpty()) {
+			ReplaySnapshot last = replaySnapshots.get(replaySnapshots.size() - 1);
+			lastIndex = last.replayIndex;
+			lastTime = last.time;
+		}
+		if (replayIndex <= lastIndex || time - lastTime < REPLAY_SNAPSHOT_INTERVAL)
+			return;
+
+		ReplaySnapshot snapshot = new ReplaySnapshot();
+		snapshot.replayIndex = replayIndex;
+		snapshot.time = time;
+		snapshot.objectIndex = objectIndex;
+		snapshot.passedObjects = new int[passedObjects.size()];
+		int i = 0;
+		for (int index : passedObjects)
+			snapshot.passedObjects[i++] = index;
+		snapshot.objectStates = new Object[snapshot.passedObjects.length + 1];
+		for (i = 0; i < snapshot.passedObjects.length; i++)
+			snapshot.objectStates[i] = gameObjects[snapshot.passedObjects[i]].saveState();
+		if (objectIndex < gameObjects.length)
+			snapshot.objectStates[i] = gameObjects[objectIndex].saveState();
+		snapshot.data = data.saveState();
+		snapshot.breakIndex = breakIndex;
+		snapshot.breakTime = breakTime;
+		snapshot.breakSound = breakSound;
+		snapshot.timingPointIndex = timingPointIndex;
+		snapshot.beatLengthBase = beatLengthBase;
+		snapshot.beatLength = beatLength;
+		snapshot.deaths = deaths;
+		snapshot.deathTime = deathTime;
+		snapshot.lastTrackPosition = lastTrackPosition;
+		snapshot.lastReplayKeys = lastReplayKeys;
+		snapshot.lastKeysPressed = lastKeysPressed;
+		snapshot.replayX = replayX;
+		snapshot.replayY = replayY;
+		snapshot.replayKeyPressed = replayKeyPressed;
+		replaySnapshots.add(snapshot);
+	}
+
+	/**
+	 * Returns the latest replay snapshot taken at or before a track position.
+	 * @param trackPosition the track position
+	 * @return the snapshot, or null if none
+	 */
+	private ReplaySnapshot getReplaySnapshot(int trackPosition) {
+		if (replaySnapshots == null)
+			return null;
+		int lo = 0, hi = replaySnapshots.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (replaySnapshots.get(mid).time <= trackPosition)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return (lo > 0) ? replaySnapshots.get(lo - 1) : null;
+	}
+
+	/**
+	 * Restores the game state from a replay snapshot.
+	 * Only hit objects updated after the snapshot was taken are reset.
+	 * @param snapshot the snapshot
+	 */
+	private void restoreReplaySnapshot(ReplaySnapshot snapshot) {
+		// reset hit objects
+		for (int i = Math.min(objectIndex, gameObjects.length - 1); i >= snapshot.objectIndex; i--)
+			gameObjects[i].reset();
+		for (int index : passedObjects)
+			gameObjects[index].reset();
+		objectIndex = snapshot.objectIndex;
+		passedObjects = new LinkedList<Integer>();
+		int i;
+		for (i = 0; i < snapshot.passedObjects.length; i++) {
+			int index = snapshot.passedObjects[i];
+			passedObjects.add(index);
+			if (snapshot.objectStates[i] != null)
+				gameObjects[index].restoreState(snapshot.objectStates[i]);
+		}
+		if (objectIndex < gameObjects.length && snapshot.objectStates[i] != null)
+			gameObjects[objectIndex].restoreState(snapshot.objectStates[i]);
+
+		// restore game data
+		data.restoreState(snapshot.data);
+		replayIndex = snapshot.replayIndex;
+		breakIndex = snapshot.breakIndex;
+		breakTime = snapshot.breakTime;
+		breakSound = snapshot.breakSound;
+		timingPointIndex = snapshot.timingPointIndex;
+		beatLengthBase = snapshot.beatLengthBase;
+		beatLength = snapshot.beatLength;
+		if (timingPointIndex > 0) {
+			TimingPoint timingPoint = beatmap.timingPoints.get(timingPointIndex - 1);
+			HitSound.setDefaultSampleSet(timingPoint.getSampleType());
+			SoundController.setSampleVolume(timingPoint.getSampleVolume());
+		}
+		deaths = snapshot.deaths;
+		deathTime = snapshot.deathTime;
+		lastTrackPosition = snapshot.lastTrackPosition;
+		lastReplayKeys = snapshot.lastReplayKeys;
+		lastKeysPressed = snapshot.lastKeysPressed;
+		replayX = snapshot.replayX;
+		replayY = snapshot.replayY;
+		replayKeyPressed = snapshot.replayKeyPressed;
+	}
+
+	/**
+	 * Snapshot of the game state taken during replay playback, used to seek
+	 * backwards without re-running every replay frame from the start.
+	 */
+	private static class ReplaySnapshot {
+		/** The index and time of the next replay frame to run. */
+		private int replayIndex, time;
+
+		/** The current hit object index. */
+		private int objectIndex;
+
+		/** The passed, unfinished hit object indices. */
+		private int[] passedObjects;
+
+		/** States of the passed hit objects, followed by the current hit object. */
+		private Object[] objectStates;
+
+		/** The scoring state. */
+		private GameData.State data;
+
+		/** Break state. */
+		private int breakIndex, breakTime;
+		private boolean breakSound;
+
+		/** Timing point state. */
+		private int timingPointIndex;
+		private float beatLengthBase, beatLength;
+
+		/** "Easy" mod state. */
+		private byte deaths;
+		private int deathTime;
+
+		/** Replay input state. */
+		private int lastTrackPosition, lastReplayKeys, lastKeysPressed, replayX, replayY;
+		private boolean replayKeyPressed;
+	}
+
 	/**
 	 * Sends a game key press and updates the hit objects.
 	 * @param trackPosition the track position
@@ -2222,10 +2415,9 @@ public class Game extends BasicGameState {
 		lastReplayTime = time;
 		int cx = (int) ((x - HitObject.getXOffset()) / HitObject.getXMultiplier());
 		int cy = (int) ((y - HitObject.getYOffset()) / HitObject.getYMultiplier());
-		ReplayFrame frame = new ReplayFrame(timeDiff, time, cx, cy, keys);
 		if (replayFrames != null)
-			replayFrames.add(frame);
-		return frame;
+			replayFrames.add(timeDiff, time, cx, cy, keys);
+		return new ReplayFrame(timeDiff, time, cx, cy, keys);
 	}
 
 	/**
@@ -2324,68 +2516,17 @@ public class Game extends BasicGameState {
 	/**
 	 * Performs stacking calculations on all hit objects, and updates their
 	 * positions if necessary.
-	 * @author peppy (https://gist.github.com/peppy/1167470)
 	 */
 	private void calculateStacks() {
-		// reverse pass for stack calculation
-		for (int i = gameObjects.length - 1; i > 0; i--) {
-			HitObject hitObjectI = beatmap.objects[i];
-
-			// already calculated
-			if (hitObjectI.getStack() != 0 || hitObjectI.isSpinner())
-				continue;
-
-			// search for hit objects in stack
-			for (int n = i - 1; n >= 0; n--) {
-				HitObject hitObjectN = beatmap.objects[n];
-				if (hitObjectN.isSpinner())
-					continue;
-
-				// check if in range stack calculation
-				float timeI = hitObjectI.getTime() - (approachTime * beatmap.stackLeniency);
-				float timeN = hitObjectN.isSlider() ? gameObjects[n].getEndTime() : hitObjectN.getTime();
-				if (timeI > timeN)
-					break;
-
-				// possible special case: if slider end in the stack,
-				// all next hit objects in stack move right down
-				if (hitObjectN.isSlider()) {
-					Vec2f p1 = gameObjects[i].getPointAt(hitObjectI.getTime());
-					Vec2f p2 = gameObjects[n].getPointAt(gameObjects[n].getEndTime());
-					float distance = Utils.distance(p1.x, p1.y, p2.x, p2.y);
-
-					// check if hit object part of this stack
-					if (distance < STACK_LENIENCE * HitObject.getXMultiplier()) {
-						int offset = hitObjectI.getStack() - hitObjectN.getStack() + 1;
-						for (int j = n + 1; j <= i; j++) {
-							HitObject hitObjectJ = beatmap.objects[j];
-							p1 = gameObjects[j].getPointAt(hitObjectJ.getTime());
-							distance = Utils.distance(p1.x, p1.y, p2.x, p2.y);
-
-							// hit object below slider end
-							if (distance < STACK_LENIENCE * HitObject.getXMultiplier())
-								hitObjectJ.setStack(hitObjectJ.getStack() - offset);
-						}
-						break;  // slider end always start of the stack: reset calculation
-					}
-				}
-
-				// not a special case: stack moves up left
-				float distance = Utils.distance(
-						hitObjectI.getX(), hitObjectI.getY(),
-						hitObjectN.getX(), hitObjectN.getY()
-				);
-				if (distance < STACK_LENIENCE) {
-					hitObjectN.setStack(hitObjectI.getStack() + 1);
-					hitObjectI = hitObjectN;
-				}
-			}
-		}
+		int[] stacks = HitObjectStacker.calculateStacks(beatmap, gameObjects, approachTime);
 
 		// update hit object positions
 		for (int i = 0; i < gameObjects.length; i++) {
-			if (beatmap.objects[i].getStack() != 0)
+			HitObject hitObject = beatmap.objects[i];
+			if (stacks[i] != 0 || hitObject.getStack() != 0) {
+				hitObject.setStack(stacks[i]);
 				gameObjects[i].updatePosition();
+			}
 		}
 	}
 
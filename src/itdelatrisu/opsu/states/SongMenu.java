@@ -30,22 +30,22 @@ import itdelatrisu.opsu.audio.MusicController;
 import itdelatrisu.opsu.audio.SoundController;
 import itdelatrisu.opsu.audio.SoundEffect;
 import itdelatrisu.opsu.beatmap.Beatmap;
-import itdelatrisu.opsu.beatmap.BeatmapDifficultyCalculator;
+import itdelatrisu.opsu.beatmap.BeatmapDifficultyService;
 import itdelatrisu.opsu.beatmap.BeatmapGroup;
 import itdelatrisu.opsu.beatmap.BeatmapParser;
-import itdelatrisu.opsu.beatmap.BeatmapSet;
 import itdelatrisu.opsu.beatmap.BeatmapSetList;
 import itdelatrisu.opsu.beatmap.BeatmapSetNode;
 import itdelatrisu.opsu.beatmap.BeatmapSortOrder;
 import itdelatrisu.opsu.beatmap.BeatmapWatchService;
 import itdelatrisu.opsu.beatmap.BeatmapWatchService.BeatmapWatchServiceListener;
-import itdelatrisu.opsu.beatmap.LRUCache;
 import itdelatrisu.opsu.beatmap.OszUnpacker;
+import itdelatrisu.opsu.beatmap.SliderCurveLoader;
 import itdelatrisu.opsu.db.BeatmapDB;
 import itdelatrisu.opsu.db.ScoreDB;
 import itdelatrisu.opsu.options.OptionGroup;
 import itdelatrisu.opsu.options.Options;
 import itdelatrisu.opsu.options.OptionsOverlay;
+import itdelatrisu.opsu.replay.ReplayAnalysisService;
 import itdelatrisu.opsu.states.ButtonMenu.MenuState;
 import itdelatrisu.opsu.ui.Colors;
 import itdelatrisu.opsu.ui.DropdownMenu;
@@ -64,6 +64,8 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent.Kind;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
@@ -115,6 +117,9 @@ public class SongMenu extends BasicGameState {
 	/** Fast scrolling speed multiplier. */
 	private static final float FAST_SCROLL_SPEED = 2f;
 
+	/** Number of beatmap sets before and after the focus node to prefetch backgrounds for. */
+	private static final int BG_PREFETCH_RADIUS = 2;
+
 	/** Song node class representing an BeatmapSetNode and file index. */
 	private static class SongNode {
 		/** Song node. */
@@ -306,29 +311,6 @@ public class SongMenu extends BasicGameState {
 	/** Timer for the music icon animation when a new song node is selected. */
 	private AnimatedValue musicIconBounceTimer = new AnimatedValue(350, 0f, 1f, AnimationEquation.LINEAR);
 
-	/**
-	 * Beatmaps whose difficulties were recently computed (if flag is non-null).
-	 * Unless the Boolean flag is null, then upon removal, the beatmap's objects will
-	 * be cleared (to be garbage collected). If the flag is true, also clear the
-	 * beatmap's array fields (timing points, etc.).
-	 */
-	@SuppressWarnings("serial")
-	private LRUCache<Beatmap, Boolean> beatmapsCalculated = new LRUCache<Beatmap, Boolean>(12) {
-		@Override
-		public void eldestRemoved(Map.Entry<Beatmap, Boolean> eldest) {
-			Boolean b = eldest.getValue();
-			if (b != null) {
-				Beatmap beatmap = eldest.getKey();
-				beatmap.objects = null;
-				if (b) {
-					beatmap.timingPoints = null;
-					beatmap.breaks = null;
-					beatmap.combo = null;
-				}
-			}
-		}
-	};
-
 	/** The star stream. */
 	private StarStream starStream;
 
@@ -799,6 +781,9 @@ public class SongMenu extends BasicGameState {
 			g.setColor(Colors.BLACK_ALPHA);
 			g.fillRect(0, 0, width, height);
 
+			UI.drawLoadingProgress(g, 1f);
+		} else if (SliderCurveLoader.getCurrentFileName() != null) {
+			// building slider curves for the selected beatmap
 			UI.drawLoadingProgress(g, 1f);
 		}
 
@@ -821,9 +806,11 @@ public class SongMenu extends BasicGameState {
 	public void update(GameContainer container, StateBasedGame game, int delta)
 			throws SlickException {
 		UI.update(delta);
-		if (reloadThread == null)
+		if (reloadThread == null) {
 			MusicController.loopTrackIfEnded(true);
-		else if (reloadThread.isFinished()) {
+			BeatmapDifficultyService.update();
+			ReplayAnalysisService.update();
+		} else if (reloadThread.isFinished()) {
 			BeatmapGroup.set(BeatmapGroup.ALL);
 			BeatmapSortOrder.set(BeatmapSortOrder.TITLE);
 			BeatmapSetList.get().reset();
@@ -908,6 +895,8 @@ public class SongMenu extends BasicGameState {
 			searchTimer = 0;
 			updateSearch();
 		}
+		if (reloadThread == null && beatmapMenuTimer == -1)
+			publishSearchResult();
 		if (searchTransitionTimer < SEARCH_TRANSITION_TIME) {
 			searchTransitionTimer += delta;
 			if (searchTransitionTimer > SEARCH_TRANSITION_TIME)
@@ -1403,6 +1392,7 @@ public class SongMenu extends BasicGameState {
 			bgAlpha.setTime(0);
 		playfieldAlpha.setTime(0);
 		lastBgAlpha.setTime(0);
+		ReplayAnalysisService.rescan();
 		songChangeTimer.setTime(songChangeTimer.getDuration());
 		musicIconBounceTimer.setTime(musicIconBounceTimer.getDuration());
 		starStream.clear();
@@ -1592,44 +1582,52 @@ public class SongMenu extends BasicGameState {
 		if (lastSearchResultString == null && search.getText().isEmpty())
 			return;
 
-		// store the start/focus nodes
-		if (focusNode != null)
-			oldFocusNode = new SongNode(BeatmapSetList.get().getBaseNode(focusNode.index), focusNode.beatmapIndex);
+		if (BeatmapSetList.get().startSearch(search.getText())) {
+			// store the start/focus nodes
+			if (focusNode != null)
+				oldFocusNode = new SongNode(BeatmapSetList.get().getBaseNode(focusNode.index), focusNode.beatmapIndex);
+		} else if (!BeatmapSetList.get().isSearching())
+			searchResultString = lastSearchResultString;
+	}
 
-		if (BeatmapSetList.get().search(search.getText())) {
-			// reset song stack
-			randomStack = new Stack<SongNode>();
+	/**
+	 * Re-initializes the song list with the results of a finished search.
+	 */
+	private void publishSearchResult() {
+		if (!BeatmapSetList.get().publishSearchResult())
+			return;
 
-			// empty search
-			if (search.getText().isEmpty())
-				searchResultString = null;
+		// reset song stack
+		randomStack = new Stack<SongNode>();
 
-			// search produced new list: re-initialize it
-			startNode = focusNode = null;
-			scoreMap = null;
-			focusScores = null;
-			int size = BeatmapSetList.get().size();
-			if (size > 0) {
-				BeatmapSetList.get().init();
-				String results = String.format("%d match%s found!", size, (size == 1) ? "" : "es");
-				if (search.getText().isEmpty()) {  // cleared search
-					// use previous start/focus if possible
-					if (oldFocusNode != null) {
-						setFocus(oldFocusNode.getNode(), oldFocusNode.getIndex(), true, true);
-						songChangeTimer.setTime(songChangeTimer.getDuration());
-						musicIconBounceTimer.setTime(musicIconBounceTimer.getDuration());
-					} else
-						setFocus(BeatmapSetList.get().getRandomNode(), 0, true, true);
-				} else {
-					searchResultString = results;
+		// empty search
+		if (search.getText().isEmpty())
+			searchResultString = null;
+
+		// search produced new list: re-initialize it
+		startNode = focusNode = null;
+		scoreMap = null;
+		focusScores = null;
+		int size = BeatmapSetList.get().size();
+		if (size > 0) {
+			BeatmapSetList.get().init();
+			String results = String.format("%d match%s found!", size, (size == 1) ? "" : "es");
+			if (search.getText().isEmpty()) {  // cleared search
+				// use previous start/focus if possible
+				if (oldFocusNode != null) {
+					setFocus(oldFocusNode.getNode(), oldFocusNode.getIndex(), true, true);
+					songChangeTimer.setTime(songChangeTimer.getDuration());
+					musicIconBounceTimer.setTime(musicIconBounceTimer.getDuration());
+				} else
 					setFocus(BeatmapSetList.get().getRandomNode(), 0, true, true);
-				}
-				oldFocusNode = null;
-				lastSearchResultString = results;
-			} else if (!search.getText().isEmpty())
-				searchResultString = lastSearchResultString = "No matches found. Hit ESC to reset.";
-		} else
-			searchResultString = lastSearchResultString;
+			} else {
+				searchResultString = results;
+				setFocus(BeatmapSetList.get().getRandomNode(), 0, true, true);
+			}
+			oldFocusNode = null;
+			lastSearchResultString = results;
+		} else if (!search.getText().isEmpty())
+			searchResultString = lastSearchResultString = "No matches found. Hit ESC to reset.";
 	}
 
 	/**
@@ -1748,8 +1746,8 @@ public class SongMenu extends BasicGameState {
 		if (node.index != expandedIndex) {
 			node = BeatmapSetList.get().expand(node.index);
 
-			// calculate difficulties
-			calculateStarRatings(node.getBeatmapSet());
+			// calculate difficulties in the background
+			BeatmapDifficultyService.prioritize(node);
 
 			// if start node was previously expanded, move it
 			if (startNode != null && startNode.index == expandedIndex)
@@ -1792,8 +1790,9 @@ public class SongMenu extends BasicGameState {
 
 		updateDrawnSongPosition();
 
-		// load background image
+		// load background image, and prefetch neighbouring backgrounds
 		beatmap.loadBackground();
+		prefetchBackgrounds(focusNode);
 		lastFadeBeatmap = lastBeatmap;
 		lastBeatmap = beatmap;
 		boolean lastBgExists = lastFadeBeatmap != null && lastFadeBeatmap.hasLoadedBackground();
@@ -1807,6 +1806,22 @@ public class SongMenu extends BasicGameState {
 		return oldFocus;
 	}
 
+	/**
+	 * Prefetches the background images of the beatmap sets around a node.
+	 * @param node the focus node
+	 */
+	private void prefetchBackgrounds(BeatmapSetNode node) {
+		List<Beatmap> beatmaps = new ArrayList<Beatmap>(BG_PREFETCH_RADIUS * 2);
+		for (int i = 1; i <= BG_PREFETCH_RADIUS; i++) {
+			for (int index : new int[] { node.index + i, node.index - i }) {
+				BeatmapSetNode n = BeatmapSetList.get().getBaseNode(index);
+				if (n != null)
+					beatmaps.add(n.getBeatmapSet().get(0));
+			}
+		}
+		Beatmap.prefetchBackgrounds(beatmaps);
+	}
+
 	/**
 	 * Triggers a reset of game data upon entering this state.
 	 */
@@ -1892,6 +1907,8 @@ public class SongMenu extends BasicGameState {
 
 		// reset state and node references
 		MusicController.reset();
+		BeatmapDifficultyService.reset();
+		ReplayAnalysisService.reset();
 		startNode = focusNode = null;
 		scoreMap = null;
 		focusScores = null;
@@ -1954,33 +1971,6 @@ public class SongMenu extends BasicGameState {
 		songScrolling.scrollToPosition(songScrolling.getMin() + t * (songScrolling.getMax() - songScrolling.getMin()));
 	}
 
-	/**
-	 * Calculates all star ratings for a beatmap set.
-	 * @param beatmapSet the set of beatmaps
-	 */
-	private void calculateStarRatings(BeatmapSet beatmapSet) {
-		for (Beatmap beatmap : beatmapSet) {
-			if (beatmap.starRating >= 0) {  // already calculated
-				beatmapsCalculated.put(beatmap, beatmapsCalculated.get(beatmap));
-				continue;
-			}
-
-			// if timing points are already loaded before this (for whatever reason),
-			// don't clear the array fields to be safe
-			boolean hasTimingPoints = (beatmap.timingPoints != null);
-
-			BeatmapDifficultyCalculator diffCalc = new BeatmapDifficultyCalculator(beatmap);
-			diffCalc.calculate();
-			if (diffCalc.getStarRating() == -1)
-				continue;  // calculations failed
-
-			// save star rating
-			beatmap.starRating = diffCalc.getStarRating();
-			BeatmapDB.setStars(beatmap);
-			beatmapsCalculated.put(beatmap, !hasTimingPoints);
-		}
-	}
-
 	/** Enters the game mods menu. */
 	private void openModsMenu() {
 		SoundController.playSound(SoundEffect.MENUHIT);
@@ -56,6 +56,9 @@ public class Splash extends BasicGameState {
 	/** Minimum elapsed time, in milliseconds, before displaying progress information (if non-verbose). */
 	private static final int PROGRESS_START_TIME = 1000;
 
+	/** Time budget for uploading decoded images each frame, in milliseconds. */
+	private static final int IMAGE_UPLOAD_BUDGET = 8;
+
 	/** Whether or not loading has completed. */
 	private boolean finished = false;
 
@@ -181,6 +184,9 @@ public class Splash extends BasicGameState {
 			}
 		}
 
+		// upload decoded game images
+		GameImage.uploadPendingImages(IMAGE_UPLOAD_BUDGET);
+
 		// fade in logo
 		if (logoAlpha.update(delta))
 			GameImage.MENU_LOGO.getImage().setAlpha(logoAlpha.getValue());
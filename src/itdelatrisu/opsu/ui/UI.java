@@ -24,6 +24,7 @@ import itdelatrisu.opsu.Utils;
 import itdelatrisu.opsu.audio.SoundController;
 import itdelatrisu.opsu.beatmap.BeatmapParser;
 import itdelatrisu.opsu.beatmap.OszUnpacker;
+import itdelatrisu.opsu.beatmap.SliderCurveLoader;
 import itdelatrisu.opsu.options.Options;
 import itdelatrisu.opsu.replay.ReplayImporter;
 import itdelatrisu.opsu.skins.SkinUnpacker;
@@ -48,6 +49,9 @@ public class UI {
 	/** The target frame rate when the window does not have focus. */
 	private static final int IDLE_FPS = 30;
 
+	/** Time budget for uploading decoded images each frame, in milliseconds. */
+	private static final int IMAGE_UPLOAD_BUDGET = 4;
+
 	/** Cursor. */
 	private static Cursor cursor = new Cursor();
 
@@ -109,6 +113,7 @@ public class UI {
 	 * @param delta the delta interval since the last call.
 	 */
 	public static void update(int delta) {
+		GameImage.uploadPendingImages(IMAGE_UPLOAD_BUDGET);
 		cursor.update(delta);
 		updateVolumeDisplay(delta);
 		notificationManager.update(delta);
@@ -295,6 +300,9 @@ public class UI {
 		} else if ((file = ReplayImporter.getCurrentFileName()) != null) {
 			text = "Importing replays...";
 			progress = ReplayImporter.getLoadingProgress();
+		} else if ((file = SliderCurveLoader.getCurrentFileName()) != null) {
+			text = "Loading slider curves...";
+			progress = SliderCurveLoader.getLoadingProgress();
 		} else if ((file = SoundController.getCurrentFileName()) != null) {
 			text = "Loading sounds...";
 			progress = SoundController.getLoadingProgress();
@@ -0,0 +1,192 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link AtlasPacker}.
+ */
+public class AtlasPackerTest {
+	/** Adds random rectangles to a packer and packs them. */
+	private static AtlasPacker packRandom(int maxSize, int border, int count, int maxDim, long seed) {
+		AtlasPacker packer = new AtlasPacker(maxSize, border);
+		Random random = new Random(seed);
+		for (int i = 0; i < count; i++)
+			packer.add(1 + random.nextInt(maxDim), 1 + random.nextInt(maxDim));
+		packer.pack();
+		return packer;
+	}
+
+	@Test
+	public void noOverlapIncludingBorders() {
+		int border = 2;
+		AtlasPacker packer = packRandom(256, border, 300, 40, 1);
+		for (int i = 0; i < packer.size(); i++) {
+			AtlasPacker.Rect a = packer.getRect(i);
+			assertNotNull(a);
+			for (int j = i + 1; j < packer.size(); j++) {
+				AtlasPacker.Rect b = packer.getRect(j);
+				if (a.page != b.page)
+					continue;
+				boolean overlap =
+					a.x - border < b.x + b.width + border && b.x - border < a.x + a.width + border &&
+					a.y - border < b.y + b.height + border && b.y - border < a.y + a.height + border;
+				assertFalse(String.format("%s overlaps %s", a, b), overlap);
+			}
+		}
+	}
+
+	@Test
+	public void pageSizesArePowersOfTwo() {
+		int border = 1;
+		AtlasPacker packer = packRandom(512, border, 400, 60, 2);
+		assertTrue(packer.getPageCount() > 1);
+		for (int page = 0; page < packer.getPageCount(); page++) {
+			int width = packer.getPageWidth(page), height = packer.getPageHeight(page);
+			assertEquals(1, Integer.bitCount(width));
+			assertEquals(1, Integer.bitCount(height));
+			assertTrue(width <= 512 && height <= 512);
+		}
+
+		// every rectangle (with its border) lies within its page
+		for (int i = 0; i < packer.size(); i++) {
+			AtlasPacker.Rect r = packer.getRect(i);
+			assertTrue(r.x - border >= 0 && r.y - border >= 0);
+			assertTrue(r.x + r.width + border <= packer.getPageWidth(r.page));
+			assertTrue(r.y + r.height + border <= packer.getPageHeight(r.page));
+		}
+	}
+
+	@Test
+	public void pageIsShrunkToContents() {
+		AtlasPacker packer = new AtlasPacker(1024, 0);
+		packer.add(100, 20);
+		packer.add(20, 30);
+		packer.pack();
+		assertEquals(1, packer.getPageCount());
+		assertEquals(128, packer.getPageWidth(0));
+		assertEquals(32, packer.getPageHeight(0));
+	}
+
+	@Test
+	public void rejectsOversizedSprites() {
+		AtlasPacker packer = new AtlasPacker(64, 1);
+		int tooWide = packer.add(63, 10);   // 65 wide with its border
+		int tooTall = packer.add(10, 64);
+		int fits = packer.add(62, 62);
+		packer.pack();
+		assertNull(packer.getRect(tooWide));
+		assertNull(packer.getRect(tooTall));
+		assertNotNull(packer.getRect(fits));
+		assertEquals(1, packer.getPageCount());
+	}
+
+	@Test
+	public void noPagesIfNothingFits() {
+		AtlasPacker packer = new AtlasPacker(32, 0);
+		packer.add(33, 1);
+		packer.pack();
+		assertNull(packer.getRect(0));
+		assertEquals(0, packer.getPageCount());
+	}
+
+	@Test
+	public void spillsOntoSecondPage() {
+		AtlasPacker packer = new AtlasPacker(64, 0);
+		for (int i = 0; i < 5; i++)
+			packer.add(32, 32);
+		packer.pack();
+		assertEquals(2, packer.getPageCount());
+		for (int i = 0; i < 4; i++)
+			assertEquals(0, packer.getRect(i).page);
+		AtlasPacker.Rect spilled = packer.getRect(4);
+		assertEquals(1, spilled.page);
+		assertEquals(0, spilled.x);
+		assertEquals(0, spilled.y);
+		assertEquals(64, packer.getPageWidth(0));
+		assertEquals(64, packer.getPageHeight(0));
+		assertEquals(32, packer.getPageWidth(1));
+		assertEquals(32, packer.getPageHeight(1));
+	}
+
+	@Test
+	public void stableIds() {
+		AtlasPacker packer = new AtlasPacker(256, 1);
+		int[][] sizes = { { 10, 5 }, { 30, 40 }, { 10, 5 }, { 7, 40 }, { 10, 5 } };
+		for (int i = 0; i < sizes.length; i++)
+			assertEquals(i, packer.add(sizes[i][0], sizes[i][1]));
+		packer.pack();
+
+		// rectangles are returned by ID with their original dimensions
+		for (int i = 0; i < sizes.length; i++) {
+			AtlasPacker.Rect r = packer.getRect(i);
+			assertEquals(sizes[i][0], r.width);
+			assertEquals(sizes[i][1], r.height);
+		}
+
+		// equal sizes keep insertion order
+		assertTrue(packer.getRect(0).x < packer.getRect(2).x);
+		assertTrue(packer.getRect(2).x < packer.getRect(4).x);
+
+		// packing is deterministic
+		AtlasPacker a = packRandom(256, 1, 200, 50, 3), b = packRandom(256, 1, 200, 50, 3);
+		for (int i = 0; i < a.size(); i++) {
+			AtlasPacker.Rect ra = a.getRect(i), rb = b.getRect(i);
+			assertArrayEquals(
+				new int[] { ra.page, ra.x, ra.y, ra.width, ra.height },
+				new int[] { rb.page, rb.x, rb.y, rb.width, rb.height }
+			);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPowerOfTwoPageSize() {
+		new AtlasPacker(1000, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyRectangle() {
+		new AtlasPacker(64, 1).add(0, 10);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsAddAfterPack() {
+		AtlasPacker packer = new AtlasPacker(64, 1);
+		packer.add(10, 10);
+		packer.pack();
+		packer.add(10, 10);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsGetRectBeforePack() {
+		AtlasPacker packer = new AtlasPacker(64, 1);
+		packer.add(10, 10);
+		packer.getRect(0);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import itdelatrisu.opsu.beatmap.HitObject;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link GameScore}.
+ */
+public class GameScoreTest {
+	/** A circle hit object. */
+	private static final HitObject CIRCLE = new HitObject("256,192,1000,1,0");
+
+	@Test
+	public void comboAndScore() {
+		GameScore score = new GameScore();
+		score.calculateDifficultyMultiplier(5f, 4f, 6f);  // sum 15: multiplier 4
+		assertEquals(GameData.HIT_300, score.handleHitResult(GameData.HIT_300, false, CIRCLE, false));
+		assertEquals(GameData.HIT_300, score.handleHitResult(GameData.HIT_300, false, CIRCLE, false));
+		assertEquals(GameData.HIT_300, score.handleHitResult(GameData.HIT_300, false, CIRCLE, false));
+		assertEquals(3, score.getComboStreak());
+		assertEquals(300 + 300 + (300 + 300 * 4 / 25), score.getScore());
+
+		assertTrue(score.handleSliderTickResult(GameData.HIT_SLIDER10));
+		assertEquals(4, score.getComboStreak());
+		assertFalse(score.handleSliderTickResult(GameData.HIT_MISS));
+		assertEquals(0, score.getComboStreak());
+	}
+
+	@Test
+	public void gekiAndKatu() {
+		GameScore score = new GameScore();
+		score.handleHitResult(GameData.HIT_300, false, CIRCLE, false);
+		assertEquals(GameData.HIT_300G, score.handleHitResult(GameData.HIT_300, true, CIRCLE, false));
+
+		score.handleHitResult(GameData.HIT_100, false, CIRCLE, false);
+		assertEquals(GameData.HIT_300K, score.handleHitResult(GameData.HIT_300, true, CIRCLE, false));
+
+		score.handleHitResult(GameData.HIT_50, false, CIRCLE, false);
+		assertEquals(GameData.HIT_300, score.handleHitResult(GameData.HIT_300, true, CIRCLE, false));
+	}
+
+	@Test
+	public void suddenDeathEmptiesHealthOnMiss() {
+		GameScore score = new GameScore();
+		score.setMods(GameMod.SUDDEN_DEATH.getBit());
+		score.handleHitResult(GameData.HIT_300, false, CIRCLE, false);
+		assertTrue(score.isAlive());
+		score.handleHitResult(GameData.HIT_MISS, false, CIRCLE, false);
+		assertFalse(score.isAlive());
+	}
+
+	@Test
+	public void noFailIsAlwaysAlive() {
+		GameScore score = new GameScore();
+		score.setMods(GameMod.NO_FAIL.getBit());
+		score.changeHealth(-1000f);
+		assertEquals(0f, score.getHealthPercent(), 0f);
+		assertTrue(score.isAlive());
+	}
+
+	@Test
+	public void clearResetsScoreAndHealth() {
+		GameScore fresh = new GameScore();
+		fresh.changeHealth(-50f);
+		fresh.handleHitResult(GameData.HIT_MISS, false, CIRCLE, false);
+
+		GameScore score = new GameScore();
+		score.setHealthModifiers(10f, 1f, 1f);
+		score.handleHitResult(GameData.HIT_300, false, CIRCLE, false);
+		score.changeHealth(-50f);
+		score.clear();
+		assertEquals(100f, score.getHealthPercent(), 0f);
+		assertEquals(0L, score.getScore());
+		assertEquals(0, score.getComboStreak());
+
+		// health modifiers are back to their defaults
+		score.changeHealth(-50f);
+		score.handleHitResult(GameData.HIT_MISS, false, CIRCLE, false);
+		assertEquals(fresh.getHealthPercent(), score.getHealthPercent(), 0.001f);
+	}
+}
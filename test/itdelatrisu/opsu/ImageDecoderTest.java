@@ -0,0 +1,158 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import itdelatrisu.opsu.ImageDecoder.DecodedImageData;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.opengl.ImageData;
+
+/**
+ * Tests for {@link ImageDecoder}.
+ */
+public class ImageDecoderTest {
+	/** A bundled PNG with non-power-of-two dimensions (43x71, with alpha). */
+	private static final String BUNDLED_PNG = "res/button-left.png";
+
+	/**
+	 * Creates image data in texture layout where each pixel encodes its position.
+	 * Unused texture space is filled with 0x7F so that reading it can be detected.
+	 */
+	private static ImageData createImage(int depth, int width, int height, int texWidth, int texHeight, int tag) {
+		int bpp = depth / 8;
+		ByteBuffer buf = BufferUtils.createByteBuffer(texWidth * texHeight * bpp);
+		for (int y = 0; y < texHeight; y++) {
+			for (int x = 0; x < texWidth; x++) {
+				int i = (y * texWidth + x) * bpp;
+				boolean inside = (x < width && y < height);
+				buf.put(i, (byte) (inside ? x : 0x7F));
+				buf.put(i + 1, (byte) (inside ? y : 0x7F));
+				buf.put(i + 2, (byte) (inside ? tag : 0x7F));
+				if (bpp == 4)
+					buf.put(i + 3, (byte) (inside ? 0x10 + x + y : 0x7F));
+			}
+		}
+		return new DecodedImageData(depth, width, height, texWidth, texHeight, buf);
+	}
+
+	/** Returns the RGBA pixel at a page position. */
+	private static int[] getPixel(ImageData page, int x, int y) {
+		ByteBuffer buf = page.getImageBufferData();
+		int i = (y * page.getTexWidth() + x) * 4;
+		return new int[] { buf.get(i) & 0xFF, buf.get(i + 1) & 0xFF, buf.get(i + 2) & 0xFF, buf.get(i + 3) & 0xFF };
+	}
+
+	/** Asserts that a page pixel was copied from a source pixel. */
+	private static void assertPixel(ImageData page, int x, int y, int sx, int sy, int tag, int alpha) {
+		int[] p = getPixel(page, x, y);
+		String where = String.format("page pixel (%d,%d)", x, y);
+		assertEquals(where, sx, p[0]);
+		assertEquals(where, sy, p[1]);
+		assertEquals(where, tag, p[2]);
+		assertEquals(where, alpha, p[3]);
+	}
+
+	@Test
+	public void composeAtlasPageCopiesAndExtrudesEdges() {
+		int border = 2;
+		AtlasPacker packer = new AtlasPacker(64, border);
+		ImageData[] images = {
+			createImage(24, 3, 2, 4, 2, 1),  // texture stride wider than the image
+			createImage(32, 4, 3, 4, 4, 2),
+		};
+		for (ImageData image : images)
+			packer.add(image.getWidth(), image.getHeight());
+		packer.pack();
+		assertEquals(1, packer.getPageCount());
+
+		ImageData page = ImageDecoder.composeAtlasPage(packer, 0, images);
+		assertEquals(32, page.getDepth());
+		assertEquals(packer.getPageWidth(0), page.getWidth());
+		assertEquals(packer.getPageHeight(0), page.getHeight());
+
+		for (int id = 0; id < images.length; id++) {
+			AtlasPacker.Rect r = packer.getRect(id);
+			boolean hasAlpha = (images[id].getDepth() == 32);
+			int tag = id + 1;
+			for (int dy = -border; dy < r.height + border; dy++) {
+				for (int dx = -border; dx < r.width + border; dx++) {
+					// border pixels repeat the nearest edge pixel
+					int sx = Math.max(0, Math.min(dx, r.width - 1));
+					int sy = Math.max(0, Math.min(dy, r.height - 1));
+					int alpha = hasAlpha ? 0x10 + sx + sy : 0xFF;
+					assertPixel(page, r.x + dx, r.y + dy, sx, sy, tag, alpha);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void composeAtlasPageSkipsOtherPages() {
+		AtlasPacker packer = new AtlasPacker(8, 0);
+		ImageData[] images = { createImage(24, 8, 8, 8, 8, 1), createImage(24, 4, 4, 4, 4, 2) };
+		for (ImageData image : images)
+			packer.add(image.getWidth(), image.getHeight());
+		packer.pack();
+		assertEquals(2, packer.getPageCount());
+
+		ImageData page = ImageDecoder.composeAtlasPage(packer, 1, images);
+		assertEquals(4, page.getWidth());
+		assertEquals(4, page.getHeight());
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++)
+				assertPixel(page, x, y, x, y, 2, 0xFF);
+		}
+	}
+
+	@Test
+	public void decodeBundledPng() throws IOException {
+		ImageData data = ImageDecoder.decode(BUNDLED_PNG);
+		assertEquals(32, data.getDepth());
+		assertEquals(43, data.getWidth());
+		assertEquals(71, data.getHeight());
+		assertEquals(64, data.getTexWidth());
+		assertEquals(128, data.getTexHeight());
+
+		// pixels are stored top-down in RGBA order, one texture row apart
+		BufferedImage expected = ImageIO.read(new File(BUNDLED_PNG));
+		for (int y = 0; y < data.getHeight(); y += 7) {
+			for (int x = 0; x < data.getWidth(); x += 5) {
+				int argb = expected.getRGB(x, y);
+				int[] expectedPixel = { (argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, argb >>> 24 };
+				assertArrayEquals(String.format("pixel (%d, %d)", x, y), expectedPixel, getPixel(data, x, y));
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void decodeMissingResource() throws IOException {
+		ImageDecoder.decode("res/does-not-exist.png");
+	}
+}
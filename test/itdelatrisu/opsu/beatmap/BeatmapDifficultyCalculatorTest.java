@@ -0,0 +1,109 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.beatmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BeatmapDifficultyCalculator}.
+ * <p>
+ * The expected values were recorded with the object-based engine that preceded
+ * the primitive-array one, which must reproduce them bit for bit.
+ */
+public class BeatmapDifficultyCalculatorTest {
+	/** Directory containing the test beatmaps. */
+	private static final File DIR = new File("test/itdelatrisu/opsu/beatmap");
+
+	/**
+	 * Loads the fields used by the calculator from a beatmap file, without the
+	 * beatmap database or the full parser.
+	 */
+	private static Beatmap load(String name) throws IOException {
+		File file = new File(DIR, name);
+		Beatmap beatmap = new Beatmap(file);
+		beatmap.timingPoints = new ArrayList<TimingPoint>();
+		List<HitObject> objects = new ArrayList<HitObject>();
+		String section = null;
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty())
+					continue;
+				if (line.startsWith("[")) {
+					section = line;
+					continue;
+				}
+				if ("[Difficulty]".equals(section)) {
+					String[] tokens = line.split(":", 2);
+					if (tokens[0].equals("CircleSize"))
+						beatmap.circleSize = Float.parseFloat(tokens[1]);
+					else if (tokens[0].equals("SliderMultiplier"))
+						beatmap.sliderMultiplier = Float.parseFloat(tokens[1]);
+				} else if ("[TimingPoints]".equals(section))
+					beatmap.timingPoints.add(new TimingPoint(line));
+				else if ("[HitObjects]".equals(section))
+					objects.add(new HitObject(line));
+			}
+		}
+		beatmap.objects = objects.toArray(new HitObject[objects.size()]);
+		return beatmap;
+	}
+
+	/**
+	 * Calculates a beatmap's difficulty and checks every value for exact equality.
+	 */
+	private static void assertDifficulty(String name, double starRating,
+			double speed, double aim, double speedStars, double aimStars) throws IOException {
+		BeatmapDifficultyCalculator calculator = new BeatmapDifficultyCalculator(load(name));
+		calculator.calculate();
+		assertEquals(speed, calculator.getDifficulty(BeatmapDifficultyCalculator.DIFFICULTY_SPEED), 0.0);
+		assertEquals(aim, calculator.getDifficulty(BeatmapDifficultyCalculator.DIFFICULTY_AIM), 0.0);
+		assertEquals(speedStars, calculator.getStars(BeatmapDifficultyCalculator.DIFFICULTY_SPEED), 0.0);
+		assertEquals(aimStars, calculator.getStars(BeatmapDifficultyCalculator.DIFFICULTY_AIM), 0.0);
+		assertEquals(starRating, calculator.getStarRating(), 0.0);
+	}
+
+	@Test
+	public void easyMatchesOldEngine() throws IOException {
+		assertDifficulty("difficulty-easy.osu", 2.623801758014113,
+				347.1990631397526, 388.20815557578607, 1.257746290565191, 1.3299524084876782);
+	}
+
+	@Test
+	public void normalMatchesOldEngine() throws IOException {
+		assertDifficulty("difficulty-normal.osu", 3.6705685504310313,
+				734.0568323219926, 741.0028662060629, 1.8288101165148554, 1.8374423281157355);
+	}
+
+	@Test
+	public void hardMatchesOldEngine() throws IOException {
+		assertDifficulty("difficulty-hard.osu", 3.9795193913385596,
+				745.7458759182008, 912.1071976447672, 1.8433134967097438, 2.0385750953224586);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+
+import itdelatrisu.opsu.ScoreData;
+import itdelatrisu.opsu.beatmap.Beatmap;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the {@link ScoreDB} leaderboard caches.
+ */
+public class ScoreDBTest {
+	/** Temporary directory for the database file. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** The beatmap that all scores are set on. */
+	private Beatmap beatmap;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName("org.sqlite.JDBC");
+		ScoreDB.init(new File(folder.getRoot(), "scores.db").getPath());
+
+		beatmap = new Beatmap(null);
+		beatmap.beatmapID = 1;
+		beatmap.beatmapSetID = 2;
+		beatmap.title = "title";
+		beatmap.artist = "artist";
+		beatmap.creator = "creator";
+		beatmap.version = "version";
+	}
+
+	@After
+	public void tearDown() {
+		ScoreDB.closeConnection();
+	}
+
+	/** Adds a score on the beatmap achieved a number of seconds ago. */
+	private void addScore(long secondsAgo) {
+		ScoreData data = new ScoreData();
+		data.timestamp = System.currentTimeMillis() / 1000L - secondsAgo;
+		data.MID = beatmap.beatmapID;
+		data.MSID = beatmap.beatmapSetID;
+		data.title = beatmap.title;
+		data.artist = beatmap.artist;
+		data.creator = beatmap.creator;
+		data.version = beatmap.version;
+		data.score = 1000;
+		ScoreDB.addScore(data);
+	}
+
+	@Test
+	public void mapScoresTimeSinceIsNotCached() throws InterruptedException {
+		addScore(5);
+		ScoreData first = ScoreDB.getMapScores(beatmap)[0];
+		String label = first.getTimeSince();
+		Thread.sleep(1100);
+
+		// served from the cache, but the label reflects the current time
+		ScoreData second = ScoreDB.getMapScores(beatmap)[0];
+		assertNotSame(first, second);
+		assertEquals(first.timestamp, second.timestamp);
+		assertNotEquals(label, second.getTimeSince());
+	}
+
+	@Test
+	public void mapSetScoresTimeSinceIsNotCached() throws InterruptedException {
+		addScore(5);
+		Map<String, ScoreData[]> first = ScoreDB.getMapSetScores(beatmap);
+		String label = first.get(beatmap.version)[0].getTimeSince();
+		Thread.sleep(1100);
+
+		Map<String, ScoreData[]> second = ScoreDB.getMapSetScores(beatmap);
+		assertNotSame(first.get(beatmap.version)[0], second.get(beatmap.version)[0]);
+		assertNotEquals(label, second.get(beatmap.version)[0].getTimeSince());
+	}
+}
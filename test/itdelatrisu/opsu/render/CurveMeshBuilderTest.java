@@ -0,0 +1,155 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import itdelatrisu.opsu.objects.curves.Vec2f;
+import itdelatrisu.opsu.render.CurveMeshBuilder.Mesh;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CurveMeshBuilder}.
+ */
+public class CurveMeshBuilderTest {
+	/** Curve radius used in all tests. */
+	private static final float RADIUS = 20f;
+
+	/** Triangles in the start and end caps. */
+	private static final int CAP_TRIANGLES = CurveMeshBuilder.DIVIDES;
+
+	/** Triangles in the quad pair drawn for each segment. */
+	private static final int SEGMENT_TRIANGLES = 4;
+
+	/** Returns the number of vertices in a mesh. */
+	private static int vertexCount(Mesh mesh) {
+		return mesh.getBuffer().limit() / CurveMeshBuilder.VERTEX_SIZE;
+	}
+
+	/** Returns a three-point curve turning by the given angle at the middle point. */
+	private static Vec2f[] turn(double theta) {
+		return new Vec2f[] {
+			new Vec2f(0, 0),
+			new Vec2f(100, 0),
+			new Vec2f(100 + (float) (100 * Math.cos(theta)), (float) (100 * Math.sin(theta)))
+		};
+	}
+
+	/**
+	 * Returns the number of joint triangles the old renderer generated for a turning
+	 * angle, using {@code atan2} on both segments and {@code hypot} for their lengths.
+	 */
+	private static int oldJointTriangles(Vec2f[] curve) {
+		float lastAlpha = (float) Math.atan2(curve[1].y - curve[0].y, curve[1].x - curve[0].x);
+		float alpha = (float) Math.atan2(curve[2].y - curve[1].y, curve[2].x - curve[1].x);
+		float theta = alpha - lastAlpha;
+		if (theta > Math.PI) theta -= 2 * Math.PI;
+		if (theta < -Math.PI) theta += 2 * Math.PI;
+		if (Math.abs(theta) < 2 * Math.PI / CurveMeshBuilder.DIVIDES)
+			return 1;
+		return (int) Math.ceil(CurveMeshBuilder.DIVIDES * Math.abs(theta) / (2 * Math.PI));
+	}
+
+	@Test
+	public void straightCurveCounts() {
+		Mesh mesh = CurveMeshBuilder.get().build(new Vec2f[] { new Vec2f(0, 0), new Vec2f(100, 0) }, RADIUS);
+		int vertices = (CAP_TRIANGLES + SEGMENT_TRIANGLES) * 3;
+		assertEquals(vertices, vertexCount(mesh));
+		assertArrayEquals(new int[] { 0, vertices }, mesh.getPointIndices());
+	}
+
+	@Test
+	public void rightAngleCounts() {
+		// a quarter turn takes ceil(DIVIDES / 4) fan triangles
+		Mesh mesh = CurveMeshBuilder.get().build(turn(Math.PI / 2), RADIUS);
+		int first = (CAP_TRIANGLES + SEGMENT_TRIANGLES) * 3;
+		int joint = (CurveMeshBuilder.DIVIDES + 3) / 4;
+		assertEquals(first + (joint + SEGMENT_TRIANGLES) * 3, vertexCount(mesh));
+		assertArrayEquals(new int[] { 0, first, vertexCount(mesh) }, mesh.getPointIndices());
+	}
+
+	@Test
+	public void jointStepsMatchAtan2() {
+		Random random = new Random(1);
+		double step = 2 * Math.PI / CurveMeshBuilder.DIVIDES;
+		for (int i = 0; i < 2000; i++) {
+			double theta = (random.nextDouble() * 2 - 1) * Math.PI;
+
+			// exact multiples of the step may round either way in float math
+			double steps = Math.abs(theta) / step;
+			if (Math.abs(steps - Math.rint(steps)) < 1e-4)
+				continue;
+
+			Vec2f[] curve = turn(theta);
+			Mesh mesh = CurveMeshBuilder.get().build(curve, RADIUS);
+			int joint = vertexCount(mesh) / 3 - CAP_TRIANGLES - 2 * SEGMENT_TRIANGLES;
+			assertEquals("theta = " + theta, oldJointTriangles(curve), joint);
+		}
+	}
+
+	@Test
+	public void zeroLengthSegmentsAreSkipped() {
+		Vec2f a = new Vec2f(0, 0), b = new Vec2f(100, 0), c = new Vec2f(100, 100);
+		Mesh expected = CurveMeshBuilder.get().build(new Vec2f[] { a, b, c }, RADIUS);
+		int expectedVertices = vertexCount(expected);
+		int[] expectedIndices = expected.getPointIndices();
+
+		Mesh mesh = CurveMeshBuilder.get().build(new Vec2f[] { a, a, b, b, c }, RADIUS);
+		assertEquals(expectedVertices, vertexCount(mesh));
+		assertArrayEquals(new int[] {
+			expectedIndices[0], expectedIndices[0], expectedIndices[1], expectedIndices[1], expectedIndices[2]
+		}, mesh.getPointIndices());
+
+		FloatBuffer buffer = mesh.getBuffer();
+		for (int i = 0; i < buffer.limit(); i++)
+			assertFalse(Float.isNaN(buffer.get(i)));
+	}
+
+	@Test
+	public void releasedBuffersAreReused() {
+		// a long curve, so that no smaller pooled buffer from another test can be chosen
+		Vec2f[] curve = new Vec2f[2000];
+		for (int i = 0; i < curve.length; i++)
+			curve[i] = new Vec2f(i, (i % 2) * 10);
+
+		Mesh first = CurveMeshBuilder.get().build(curve, RADIUS);
+		FloatBuffer buffer = first.getBuffer();
+		int limit = buffer.limit();
+		float[] data = new float[limit];
+		buffer.get(data);
+		buffer.rewind();
+		CurveMeshBuilder.release(first);
+
+		Mesh second = CurveMeshBuilder.get().build(curve, RADIUS);
+		assertSame(buffer, second.getBuffer());
+		assertEquals(0, second.getBuffer().position());
+		assertEquals(limit, second.getBuffer().limit());
+		float[] data2 = new float[limit];
+		second.getBuffer().get(data2);
+		assertArrayEquals(data, data2, 0f);
+		CurveMeshBuilder.release(second);
+	}
+}
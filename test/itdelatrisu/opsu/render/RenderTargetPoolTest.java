@@ -0,0 +1,215 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014-2017 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RenderTargetPool}.
+ */
+public class RenderTargetPoolTest {
+	/** A render target stand-in. */
+	private static class Target {
+		/** Creation order. */
+		private final int id;
+
+		/** Whether the target was destroyed. */
+		private boolean destroyed = false;
+
+		/** Constructor. */
+		public Target(int id) { this.id = id; }
+
+		@Override
+		public String toString() { return String.format("Target %d", id); }
+	}
+
+	/** Factory that records created and destroyed targets. */
+	private static class RecordingFactory implements RenderTargetPool.Factory<Target> {
+		/** Created targets, in order. */
+		private final List<Target> created = new ArrayList<Target>();
+
+		/** Destroyed targets, in order. */
+		private final List<Target> destroyed = new ArrayList<Target>();
+
+		@Override
+		public Target create() {
+			Target target = new Target(created.size());
+			created.add(target);
+			return target;
+		}
+
+		@Override
+		public void destroy(Target target) {
+			assertFalse(String.format("%s destroyed twice", target), target.destroyed);
+			target.destroyed = true;
+			destroyed.add(target);
+		}
+	}
+
+	/** The factory. */
+	private RecordingFactory factory;
+
+	@Before
+	public void setUp() {
+		factory = new RecordingFactory();
+	}
+
+	@Test
+	public void reusesReleasedTargets() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 4, 4);
+		Target a = pool.acquire("a");
+		assertTrue(pool.release("a"));
+		assertFalse(pool.release("a"));
+		assertFalse(pool.contains("a"));
+		assertNull(pool.get("a"));
+
+		Target b = pool.acquire("b");
+		assertSame(a, b);
+		assertSame(b, pool.get("b"));
+		assertEquals(1, factory.created.size());
+		assertEquals(1, pool.size());
+	}
+
+	@Test
+	public void reusesMostRecentlyReleasedTargetFirst() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 4, 4);
+		pool.acquire("a");
+		Target b = pool.acquire("b");
+		pool.release("a");
+		pool.release("b");
+		assertSame(b, pool.acquire("c"));
+	}
+
+	@Test
+	public void reacquiringKeyReusesItsTarget() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 4, 4);
+		Target a = pool.acquire("a");
+		assertSame(a, pool.acquire("a"));
+		assertEquals(1, pool.size());
+		assertEquals(1, factory.created.size());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedAtCapacity() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 2, 2);
+		Target a = pool.acquire("a");
+		Target b = pool.acquire("b");
+		pool.get("a");  // "b" is now least recently used
+
+		Target c = pool.acquire("c");
+		assertSame(b, c);
+		assertFalse(pool.contains("b"));
+		assertTrue(pool.contains("a"));
+		assertSame(a, pool.get("a"));
+		assertEquals(2, pool.size());
+		assertEquals(2, factory.created.size());
+		assertTrue(factory.destroyed.isEmpty());
+
+		// touching "a" again leaves "c" least recently used
+		pool.get("a");
+		assertSame(c, pool.acquire("d"));
+		assertTrue(pool.contains("a"));
+	}
+
+	@Test
+	public void trimsIdleTargets() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 4, 1);
+		Target a = pool.acquire("a");
+		Target b = pool.acquire("b");
+		Target c = pool.acquire("c");
+		pool.releaseAll();
+
+		// only the most recently released target is kept
+		assertEquals(1, pool.size());
+		assertEquals(2, factory.destroyed.size());
+		assertTrue(a.destroyed && b.destroyed);
+		assertFalse(c.destroyed);
+		assertSame(c, pool.acquire("d"));
+	}
+
+	@Test
+	public void loweringLimitsDestroysIdleTargets() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 4, 4);
+		pool.acquire("a");
+		pool.acquire("b");
+		pool.acquire("c");
+		pool.release("b");
+		pool.release("c");
+		assertEquals(3, pool.size());
+
+		pool.setCapacity(4, 0);
+		assertEquals(1, pool.size());
+		assertEquals(2, factory.destroyed.size());
+		assertTrue(pool.contains("a"));
+
+		// maxIdle is clamped to the capacity
+		pool.setCapacity(1, 10);
+		pool.release("a");
+		assertEquals(1, pool.size());
+		pool.acquire("e");
+		pool.release("e");
+		assertEquals(1, pool.size());
+	}
+
+	@Test
+	public void countsHitsMissesEvictionsAndPeak() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 2, 2);
+		pool.acquire("a");  // miss
+		pool.acquire("b");  // miss
+		pool.acquire("c");  // eviction
+		pool.release("c");
+		pool.acquire("d");  // hit
+		pool.acquire("a");  // eviction
+		pool.releaseAll();
+		pool.acquire("e");  // hit
+
+		assertEquals(2, pool.getHits());
+		assertEquals(2, pool.getMisses());
+		assertEquals(2, pool.getEvictions());
+		assertEquals(2, pool.getPeak());
+		assertEquals(2, factory.created.size());
+	}
+
+	@Test
+	public void clearDestroysAllTargets() {
+		RenderTargetPool<Target> pool = new RenderTargetPool<Target>(factory, 4, 4);
+		pool.acquire("a");
+		pool.acquire("b");
+		pool.release("b");
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertFalse(pool.contains("a"));
+		assertEquals(2, factory.destroyed.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPositiveCapacity() {
+		new RenderTargetPool<Target>(factory, 0, 0);
+	}
+}